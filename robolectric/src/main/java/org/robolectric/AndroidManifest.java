@@ -2,14 +2,9 @@ package org.robolectric;
 
 import android.app.Activity;
 import android.graphics.Color;
+import org.robolectric.ManifestModel.Element;
 import org.robolectric.res.*;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -139,19 +134,14 @@ public class AndroidManifest {
     if (manifestIsParsed) {
       return;
     }
-    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-
-    Document manifestDocument = null;
+    ManifestModel manifestDocument = null;
     try {
-      DocumentBuilder db = dbf.newDocumentBuilder();
-      InputStream inputStream = androidManifestFile.getInputStream();
-      manifestDocument = db.parse(inputStream);
-      inputStream.close();
+      manifestDocument = ManifestModel.load(androidManifestFile);
     } catch (Exception ignored) {
       ignored.printStackTrace();
     }
 
-    if(manifestDocument.getElementsByTagName("application").item(0) == null) {
+    if (getApplication(manifestDocument) == null) {
       throw new IllegalArgumentException("Missing required <application/> element in " + androidManifestFile.getPath());
     }
 
@@ -183,45 +173,42 @@ public class AndroidManifest {
     manifestIsParsed = true;
   }
 
-  private void parseUsedPermissions(Document manifestDocument) {
-    NodeList elementsByTagName = manifestDocument.getElementsByTagName("uses-permission");
-    int length = elementsByTagName.getLength();
-    for (int i = 0; i < length; i++) {
-      Node node = elementsByTagName.item(i).getAttributes().getNamedItem("android:name");
-      usedPermissions.add(node.getNodeValue());
+  private void parseUsedPermissions(ManifestModel manifestDocument) {
+    for (Element permission : manifestDocument.getElementsByTagName("uses-permission")) {
+      usedPermissions.add(permission.getAttribute("android:name"));
     }
   }
 
-  private void parseContentProviders(Document manifestDocument) {
-    Node application = manifestDocument.getElementsByTagName("application").item(0);
+  private void parseContentProviders(ManifestModel manifestDocument) {
+    Element application = getApplication(manifestDocument);
     if (application == null) return;
 
-    for (Node contentProviderNode : getChildrenTags(application, "provider")) {
-      Node nameItem = contentProviderNode.getAttributes().getNamedItem("android:name");
-      Node authorityItem = contentProviderNode.getAttributes().getNamedItem("android:authorities");
-      if (nameItem != null && authorityItem != null) {
-        providers.add(new ContentProviderData(resolveClassRef(nameItem.getTextContent()), authorityItem.getTextContent()));
+    for (Element contentProviderNode : application.getChildren("provider")) {
+      String name = contentProviderNode.getAttribute("android:name");
+      String authority = contentProviderNode.getAttribute("android:authorities");
+      if (name != null && authority != null) {
+        providers.add(new ContentProviderData(resolveClassRef(name), authority));
       }
     }
   }
 
-  private void parseReceivers(final Document manifestDocument) {
-    Node application = manifestDocument.getElementsByTagName("application").item(0);
+  private void parseReceivers(final ManifestModel manifestDocument) {
+    Element application = getApplication(manifestDocument);
     if (application == null) return;
 
-    for (Node receiverNode : getChildrenTags(application, "receiver")) {
-      Node namedItem = receiverNode.getAttributes().getNamedItem("android:name");
-      if (namedItem == null) continue;
+    for (Element receiverNode : application.getChildren("receiver")) {
+      String name = receiverNode.getAttribute("android:name");
+      if (name == null) continue;
 
-      String receiverName = resolveClassRef(namedItem.getTextContent());
-      MetaData metaData = new MetaData(getChildrenTags(receiverNode, "meta-data"));
+      String receiverName = resolveClassRef(name);
+      MetaData metaData = new MetaData(receiverNode.getChildren("meta-data"));
 
-      for (Node intentFilterNode : getChildrenTags(receiverNode, "intent-filter")) {
+      for (Element intentFilterNode : receiverNode.getChildren("intent-filter")) {
         List<String> actions = new ArrayList<String>();
-        for (Node actionNode : getChildrenTags(intentFilterNode, "action")) {
-          Node nameNode = actionNode.getAttributes().getNamedItem("android:name");
-          if (nameNode != null) {
-            actions.add(nameNode.getTextContent());
+        for (Element actionNode : intentFilterNode.getChildren("action")) {
+          String actionName = actionNode.getAttribute("android:name");
+          if (actionName != null) {
+            actions.add(actionName);
           }
         }
         receivers.add(new ReceiverAndIntentFilter(receiverName, actions, metaData));
@@ -229,30 +216,25 @@ public class AndroidManifest {
     }
   }
 
-  private void parseActivities(final Document manifestDocument) {
-    Node application = manifestDocument.getElementsByTagName("application").item(0);
+  private void parseActivities(final ManifestModel manifestDocument) {
+    Element application = getApplication(manifestDocument);
     if (application == null) return;
 
-    for (Node activityNode : getChildrenTags(application, "activity")) {
+    for (Element activityNode : application.getChildren("activity")) {
       parseActivity(activityNode, false);
     }
 
-    for (Node activityNode : getChildrenTags(application, "activity-alias")) {
+    for (Element activityNode : application.getChildren("activity-alias")) {
       parseActivity(activityNode, true);
     }
   }
 
-  private void parseActivity(Node activityNode, boolean isAlias) {
-    final NamedNodeMap attributes = activityNode.getAttributes();
-    final int attrCount = attributes.getLength();
+  private void parseActivity(Element activityNode, boolean isAlias) {
+    final int attrCount = activityNode.getAttributeCount();
     final List<IntentFilterData> intentFilterData = parseIntentFilters(activityNode);
     final HashMap<String, String> activityAttrs = new HashMap<String, String>(attrCount);
     for(int i = 0; i < attrCount; i++) {
-      Node attr = attributes.item(i);
-      String v = attr.getNodeValue();
-      if( v != null) {
-        activityAttrs.put(attr.getNodeName(), v);
-      }
+      activityAttrs.put(activityNode.getAttributeName(i), activityNode.getAttributeValue(i));
     }
 
     String activityName = resolveClassRef(activityAttrs.get(ActivityData.getNameAttr("android")));
@@ -274,24 +256,22 @@ public class AndroidManifest {
     activityDatas.put(activityName, new ActivityData("android", activityAttrs, intentFilterData, targetActivity));
   }
 
-  private List<IntentFilterData> parseIntentFilters(final Node activityNode) {
+  private List<IntentFilterData> parseIntentFilters(final Element activityNode) {
     ArrayList<IntentFilterData> intentFilterDatas = new ArrayList<IntentFilterData>();
-    for (Node n : getChildrenTags(activityNode, "intent-filter")) {
+    for (Element n : activityNode.getChildren("intent-filter")) {
       ArrayList<String> actionNames = new ArrayList<String>();
       ArrayList<String> categories = new ArrayList<String>();
       //should only be one action.
-      for (Node action : getChildrenTags(n, "action")) {
-        NamedNodeMap attributes = action.getAttributes();
-        Node actionNameNode = attributes.getNamedItem("android:name");
-        if (actionNameNode != null) {
-          actionNames.add(actionNameNode.getNodeValue());
+      for (Element action : n.getChildren("action")) {
+        String actionName = action.getAttribute("android:name");
+        if (actionName != null) {
+          actionNames.add(actionName);
         }
       }
-      for (Node category : getChildrenTags(n, "category")) {
-        NamedNodeMap attributes = category.getAttributes();
-        Node categoryNameNode = attributes.getNamedItem("android:name");
-        if (categoryNameNode != null) {
-          categories.add(categoryNameNode.getNodeValue());
+      for (Element category : n.getChildren("category")) {
+        String categoryName = category.getAttribute("android:name");
+        if (categoryName != null) {
+          categories.add(categoryName);
         }
       }
       IntentFilterData intentFilterData = new IntentFilterData(actionNames, categories);
@@ -302,46 +282,33 @@ public class AndroidManifest {
     return intentFilterDatas;
   }
 
-  private IntentFilterData parseIntentFilterData(final Node intentFilterNode, IntentFilterData intentFilterData) {
-    for (Node n : getChildrenTags(intentFilterNode, "data")) {
-      NamedNodeMap attributes = n.getAttributes();
-      String host = null;
-      String port = null;
-
-      Node schemeNode = attributes.getNamedItem("android:scheme");
-      if (schemeNode != null) {
-        intentFilterData.addScheme(schemeNode.getNodeValue());
-      }
-
-      Node hostNode = attributes.getNamedItem("android:host");
-      if (hostNode != null) {
-        host = hostNode.getNodeValue();
+  private IntentFilterData parseIntentFilterData(final Element intentFilterNode, IntentFilterData intentFilterData) {
+    for (Element n : intentFilterNode.getChildren("data")) {
+      String scheme = n.getAttribute("android:scheme");
+      if (scheme != null) {
+        intentFilterData.addScheme(scheme);
       }
 
-      Node portNode = attributes.getNamedItem("android:port");
-      if (portNode != null) {
-        port = portNode.getNodeValue();
-      }
-      intentFilterData.addAuthority(host, port);
+      intentFilterData.addAuthority(n.getAttribute("android:host"), n.getAttribute("android:port"));
 
-      Node pathNode = attributes.getNamedItem("android:path");
-      if (pathNode != null) {
-        intentFilterData.addPath(pathNode.getNodeValue());
+      String path = n.getAttribute("android:path");
+      if (path != null) {
+        intentFilterData.addPath(path);
       }
 
-      Node pathPatternNode = attributes.getNamedItem("android:pathPattern");
-      if (pathPatternNode != null) {
-        intentFilterData.addPathPattern(pathPatternNode.getNodeValue());
+      String pathPattern = n.getAttribute("android:pathPattern");
+      if (pathPattern != null) {
+        intentFilterData.addPathPattern(pathPattern);
       }
 
-      Node pathPrefixNode = attributes.getNamedItem("android:pathPrefix");
-      if (pathPrefixNode != null) {
-        intentFilterData.addPathPrefix(pathPrefixNode.getNodeValue());
+      String pathPrefix = n.getAttribute("android:pathPrefix");
+      if (pathPrefix != null) {
+        intentFilterData.addPathPrefix(pathPrefix);
       }
 
-      Node mimeTypeNode = attributes.getNamedItem("android:mimeType");
-      if (mimeTypeNode != null) {
-        intentFilterData.addMimeType(mimeTypeNode.getNodeValue());
+      String mimeType = n.getAttribute("android:mimeType");
+      if (mimeType != null) {
+        intentFilterData.addMimeType(mimeType);
       }
     }
     return intentFilterData;
@@ -399,28 +366,22 @@ public class AndroidManifest {
     }
   }
 
-  private void parseApplicationMetaData(final Document manifestDocument) {
-    Node application = manifestDocument.getElementsByTagName("application").item(0);
+  private void parseApplicationMetaData(final ManifestModel manifestDocument) {
+    Element application = getApplication(manifestDocument);
     if (application == null) return;
-    applicationMetaData = new MetaData(getChildrenTags(application, "meta-data"));
+    applicationMetaData = new MetaData(application.getChildren("meta-data"));
   }
 
   private String resolveClassRef(String maybePartialClassName) {
     return (maybePartialClassName.startsWith(".")) ? packageName + maybePartialClassName : maybePartialClassName;
   }
 
-  private List<Node> getChildrenTags(final Node node, final String tagName) {
-    List<Node> children = new ArrayList<Node>();
-    for (int i = 0; i < node.getChildNodes().getLength(); i++) {
-      Node childNode = node.getChildNodes().item(i);
-      if (childNode.getNodeName().equalsIgnoreCase(tagName)) {
-        children.add(childNode);
-      }
-    }
-    return children;
+  private static Element getApplication(final ManifestModel manifestDocument) {
+    List<Element> applications = manifestDocument.getElementsByTagName("application");
+    return applications.isEmpty() ? null : applications.get(0);
   }
 
-  private void parseApplicationFlags(final Document manifestDocument) {
+  private void parseApplicationFlags(final ManifestModel manifestDocument) {
     applicationFlags = getApplicationFlag(manifestDocument, "android:allowBackup", FLAG_ALLOW_BACKUP);
     applicationFlags += getApplicationFlag(manifestDocument, "android:allowClearUserData", FLAG_ALLOW_CLEAR_USER_DATA);
     applicationFlags += getApplicationFlag(manifestDocument, "android:allowTaskReparenting", FLAG_ALLOW_TASK_REPARENTING);
@@ -438,16 +399,16 @@ public class AndroidManifest {
     applicationFlags += getApplicationFlag(manifestDocument, "android:vmSafeMode", FLAG_VM_SAFE_MODE);
   }
 
-  private int getApplicationFlag(final Document doc, final String attribute, final int attributeValue) {
+  private int getApplicationFlag(final ManifestModel doc, final String attribute, final int attributeValue) {
     String flagString = getTagAttributeText(doc, "application", attribute);
     return "true".equalsIgnoreCase(flagString) ? attributeValue : 0;
   }
 
-  private Integer getTagAttributeIntValue(final Document doc, final String tag, final String attribute) {
+  private Integer getTagAttributeIntValue(final ManifestModel doc, final String tag, final String attribute) {
     return getTagAttributeIntValue(doc, tag, attribute, null);
   }
 
-  private Integer getTagAttributeIntValue(final Document doc, final String tag, final String attribute, final Integer defaultValue) {
+  private Integer getTagAttributeIntValue(final ManifestModel doc, final String tag, final String attribute, final Integer defaultValue) {
     String valueString = getTagAttributeText(doc, tag, attribute);
     if (valueString != null) {
       return Integer.parseInt(valueString);
@@ -639,13 +600,11 @@ public class AndroidManifest {
     return receivers.get(receiverIndex).getMetaData().valueMap;
   }
 
-  private static String getTagAttributeText(final Document doc, final String tag, final String attribute) {
-    NodeList elementsByTagName = doc.getElementsByTagName(tag);
-    for (int i = 0; i < elementsByTagName.getLength(); ++i) {
-      Node item = elementsByTagName.item(i);
-      Node namedItem = item.getAttributes().getNamedItem(attribute);
-      if (namedItem != null) {
-        return namedItem.getTextContent();
+  private static String getTagAttributeText(final ManifestModel doc, final String tag, final String attribute) {
+    for (Element element : doc.getElementsByTagName(tag)) {
+      String value = element.getAttribute(attribute);
+      if (value != null) {
+        return value;
       }
     }
     return null;
@@ -698,19 +657,18 @@ public class AndroidManifest {
     private final Map<String, VALUE_TYPE> typeMap = new LinkedHashMap<String, VALUE_TYPE>();
     private boolean initialised;
 
-    public MetaData(List<Node> nodes) {
-      for (Node metaNode : nodes) {
-        NamedNodeMap attributes = metaNode.getAttributes();
-        Node nameAttr = attributes.getNamedItem("android:name");
-        Node valueAttr = attributes.getNamedItem("android:value");
-        Node resourceAttr = attributes.getNamedItem("android:resource");
-
-        if (valueAttr != null) {
-          valueMap.put(nameAttr.getNodeValue(), valueAttr.getNodeValue());
-          typeMap.put(nameAttr.getNodeValue(), VALUE_TYPE.VALUE);
-        } else if (resourceAttr != null) {
-          valueMap.put(nameAttr.getNodeValue(), resourceAttr.getNodeValue());
-          typeMap.put(nameAttr.getNodeValue(), VALUE_TYPE.RESOURCE);
+    public MetaData(List<Element> nodes) {
+      for (Element metaNode : nodes) {
+        String name = metaNode.getAttribute("android:name");
+        String value = metaNode.getAttribute("android:value");
+        String resource = metaNode.getAttribute("android:resource");
+
+        if (value != null) {
+          valueMap.put(name, value);
+          typeMap.put(name, VALUE_TYPE.VALUE);
+        } else if (resource != null) {
+          valueMap.put(name, resource);
+          typeMap.put(name, VALUE_TYPE.RESOURCE);
         }
       }
     }
@@ -0,0 +1,358 @@
+package org.robolectric;
+
+import org.robolectric.res.FsFile;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The elements and attributes of an {@code AndroidManifest.xml}, without text, comments or whitespace, which is all
+ * {@link AndroidManifest} reads from it.
+ *
+ * Models are cached by the SHA-1 of the manifest's content, so a manifest is parsed once per process however many
+ * runners and library manifests point at it, and the same content at two paths is parsed once. When the
+ * {@code robolectric.manifestCacheDir} property names a directory, each model is also written there to a compact
+ * binary file, so test JVMs forked later skip XML parsing entirely. A cache file holds the SHA-1 of the manifest it
+ * was made from and of its own payload, and one that doesn't check out is ignored and the manifest parsed instead.
+ * Class names are left as they are in the manifest, since resolving them depends on the package name, which can be
+ * overridden.
+ */
+public class ManifestModel {
+  private static final int MAGIC = 0x524d4d46; // "RMMF"
+  private static final int FORMAT_VERSION = 2;
+  private static final int MAX_CACHE_FILE_LENGTH = 16 * 1024 * 1024;
+  private static final int MAX_DEPTH = 256;
+
+  private static final ConcurrentMap<String, ManifestModel> MODELS = new ConcurrentHashMap<String, ManifestModel>();
+  private static int parseCount;
+
+  private final Element root;
+
+  private ManifestModel(Element root) {
+    this.root = root;
+  }
+
+  /**
+   * @return The model of the manifest, from the cache when a manifest with the same content was seen before
+   * @throws IOException If the manifest can't be read or isn't well-formed XML
+   */
+  static ManifestModel load(FsFile manifestFile) throws IOException {
+    byte[] content = manifestFile.getBytes();
+    String hash = sha1(content);
+    ManifestModel model = MODELS.get(hash);
+    if (model != null) return model;
+
+    File cacheFile = cacheFile(hash);
+    model = cacheFile == null ? null : readCacheFile(cacheFile, hash);
+    if (model == null) {
+      model = parse(content);
+      if (cacheFile != null) {
+        writeCacheFile(model, cacheFile, hash);
+      }
+    }
+    ManifestModel previous = MODELS.putIfAbsent(hash, model);
+    return previous == null ? model : previous;
+  }
+
+  /**
+   * Forgets the models cached in memory; the cache files stay.
+   */
+  public static void clearMemoryCache() {
+    MODELS.clear();
+  }
+
+  /**
+   * @return The number of manifests parsed from XML in this process
+   */
+  public static synchronized int getParseCount() {
+    return parseCount;
+  }
+
+  Element getRoot() {
+    return root;
+  }
+
+  /**
+   * @return The elements with the tag, anywhere in the manifest, in document order
+   */
+  List<Element> getElementsByTagName(String tag) {
+    List<Element> elements = new ArrayList<Element>();
+    root.collect(tag, elements);
+    return elements;
+  }
+
+  static class Element {
+    private final String tag;
+    private final String[] attributes;
+    private final Element[] children;
+
+    Element(String tag, String[] attributes, Element[] children) {
+      this.tag = tag;
+      this.attributes = attributes;
+      this.children = children;
+    }
+
+    String getTag() {
+      return tag;
+    }
+
+    int getAttributeCount() {
+      return attributes.length / 2;
+    }
+
+    String getAttributeName(int index) {
+      return attributes[index * 2];
+    }
+
+    String getAttributeValue(int index) {
+      return attributes[index * 2 + 1];
+    }
+
+    /**
+     * @return The value of the attribute, or {@code null} if the element doesn't have it
+     */
+    String getAttribute(String name) {
+      for (int i = 0; i < attributes.length; i += 2) {
+        if (attributes[i].equals(name)) return attributes[i + 1];
+      }
+      return null;
+    }
+
+    /**
+     * @return The direct children with the tag, ignoring case
+     */
+    List<Element> getChildren(String tag) {
+      List<Element> matches = new ArrayList<Element>();
+      for (Element child : children) {
+        if (child.tag.equalsIgnoreCase(tag)) {
+          matches.add(child);
+        }
+      }
+      return matches;
+    }
+
+    private void collect(String tag, List<Element> elements) {
+      if (this.tag.equals(tag)) {
+        elements.add(this);
+      }
+      for (Element child : children) {
+        child.collect(tag, elements);
+      }
+    }
+  }
+
+  private static ManifestModel parse(byte[] content) throws IOException {
+    TreeBuilder builder = new TreeBuilder();
+    try {
+      SAXParserFactory.newInstance().newSAXParser().parse(new ByteArrayInputStream(content), builder);
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException("couldn't parse manifest: " + e.getMessage(), e);
+    }
+    synchronized (ManifestModel.class) {
+      parseCount++;
+    }
+    if (builder.root == null) throw new IOException("manifest has no root element");
+    return new ManifestModel(builder.root);
+  }
+
+  private static class TreeBuilder extends DefaultHandler {
+    private final List<String> tags = new ArrayList<String>();
+    private final List<String[]> attributes = new ArrayList<String[]>();
+    private final List<List<Element>> children = new ArrayList<List<Element>>();
+    private Element root;
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attrs) {
+      String[] pairs = new String[attrs.getLength() * 2];
+      for (int i = 0; i < attrs.getLength(); i++) {
+        pairs[i * 2] = attrs.getQName(i);
+        pairs[i * 2 + 1] = attrs.getValue(i);
+      }
+      tags.add(qName);
+      attributes.add(pairs);
+      children.add(new ArrayList<Element>());
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+      int last = tags.size() - 1;
+      List<Element> elementChildren = children.remove(last);
+      Element element = new Element(tags.remove(last), attributes.remove(last),
+          elementChildren.toArray(new Element[elementChildren.size()]));
+      if (last == 0) {
+        root = element;
+      } else {
+        children.get(last - 1).add(element);
+      }
+    }
+  }
+
+  private static File cacheFile(String hash) {
+    String directory = System.getProperty("robolectric.manifestCacheDir");
+    if (directory == null || directory.length() == 0) return null;
+    return new File(directory, hash + ".model");
+  }
+
+  private static ManifestModel readCacheFile(File file, String hash) {
+    if (!file.isFile() || file.length() > MAX_CACHE_FILE_LENGTH) return null;
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      byte[] payload;
+      try {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !in.readUTF().equals(hash)) return null;
+        String payloadHash = in.readUTF();
+        int length = in.readInt();
+        if (length < 0 || length > file.length()) return null;
+        payload = new byte[length];
+        in.readFully(payload);
+        if (!payloadHash.equals(sha1(payload))) return null;
+      } finally {
+        in.close();
+      }
+
+      // the payload is intact, but counts are still checked against what is left of it, so a file that was
+      // written wrong can't make us allocate more than it could possibly hold
+      ByteArrayInputStream bytes = new ByteArrayInputStream(payload);
+      DataInputStream payloadIn = new DataInputStream(bytes);
+      String[] strings = new String[count(payloadIn, bytes, 2)];
+      for (int i = 0; i < strings.length; i++) {
+        strings[i] = payloadIn.readUTF();
+      }
+      return new ManifestModel(readElement(payloadIn, bytes, strings, 0));
+    } catch (IOException e) {
+      // a truncated or foreign file; parse the manifest instead
+      return null;
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static Element readElement(DataInputStream in, ByteArrayInputStream bytes, String[] strings, int depth)
+      throws IOException {
+    if (depth > MAX_DEPTH) throw new IOException("elements nested too deep");
+    String tag = strings[in.readInt()];
+    String[] attributes = new String[count(in, bytes, 8) * 2];
+    for (int i = 0; i < attributes.length; i++) {
+      attributes[i] = strings[in.readInt()];
+    }
+    Element[] children = new Element[count(in, bytes, 12)];
+    for (int i = 0; i < children.length; i++) {
+      children[i] = readElement(in, bytes, strings, depth + 1);
+    }
+    return new Element(tag, attributes, children);
+  }
+
+  /**
+   * Reads a count of items that take at least {@code minItemLength} bytes each.
+   */
+  private static int count(DataInputStream in, ByteArrayInputStream bytes, int minItemLength) throws IOException {
+    int count = in.readInt();
+    if (count < 0 || count > bytes.available() / minItemLength) throw new IOException("bad count: " + count);
+    return count;
+  }
+
+  private static void writeCacheFile(ManifestModel model, File file, String hash) {
+    File directory = file.getParentFile();
+    if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) return;
+
+    Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+    List<String> strings = new ArrayList<String>();
+    index(model.root, stringIndexes, strings);
+
+    // write to a file of our own and rename it, so concurrent forks never see a partial model
+    File temporaryFile = new File(directory, file.getName() + "." + System.nanoTime() + ".tmp");
+    try {
+      ByteArrayOutputStream payload = new ByteArrayOutputStream();
+      DataOutputStream payloadOut = new DataOutputStream(payload);
+      payloadOut.writeInt(strings.size());
+      for (String string : strings) {
+        payloadOut.writeUTF(string);
+      }
+      writeElement(model.root, payloadOut, stringIndexes);
+      payloadOut.close();
+      byte[] payloadBytes = payload.toByteArray();
+
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(hash);
+        out.writeUTF(sha1(payloadBytes));
+        out.writeInt(payloadBytes.length);
+        out.write(payloadBytes);
+      } finally {
+        out.close();
+      }
+      if (!temporaryFile.renameTo(file) && !file.isFile()) {
+        temporaryFile.delete();
+      }
+    } catch (IOException e) {
+      // the cache is only an optimization
+    } finally {
+      temporaryFile.delete();
+    }
+  }
+
+  private static void index(Element element, Map<String, Integer> stringIndexes, List<String> strings) {
+    indexString(element.tag, stringIndexes, strings);
+    for (String attribute : element.attributes) {
+      indexString(attribute, stringIndexes, strings);
+    }
+    for (Element child : element.children) {
+      index(child, stringIndexes, strings);
+    }
+  }
+
+  private static void indexString(String string, Map<String, Integer> stringIndexes, List<String> strings) {
+    if (!stringIndexes.containsKey(string)) {
+      stringIndexes.put(string, strings.size());
+      strings.add(string);
+    }
+  }
+
+  private static void writeElement(Element element, DataOutputStream out, Map<String, Integer> stringIndexes) throws IOException {
+    out.writeInt(stringIndexes.get(element.tag));
+    out.writeInt(element.attributes.length / 2);
+    for (String attribute : element.attributes) {
+      out.writeInt(stringIndexes.get(attribute));
+    }
+    out.writeInt(element.children.length);
+    for (Element child : element.children) {
+      writeElement(child, out, stringIndexes);
+    }
+  }
+
+  private static String sha1(byte[] content) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(content);
+      StringBuilder hex = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 algorithm is not available: " + e);
+    }
+  }
+}
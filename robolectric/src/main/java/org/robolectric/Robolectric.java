@@ -1369,6 +1369,7 @@ public class Robolectric {
     Robolectric.packageManager = null;
     Robolectric.activityThread = null;
 
+    Feature.resetAll();
     RobolectricBase.reset();
   }
 
@@ -5,6 +5,7 @@ import android.os.Build;
 import org.jetbrains.annotations.TestOnly;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
+import org.junit.runner.Description;
 import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.BlockJUnit4ClassRunner;
 import org.junit.runners.model.FrameworkMethod;
@@ -19,10 +20,14 @@ import org.robolectric.internal.ReflectionHelpers;
 import org.robolectric.res.*;
 import org.robolectric.util.AnnotationUtil;
 import org.robolectric.util.Pair;
+import org.robolectric.util.PerfStats;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.*;
 import java.net.URL;
@@ -50,6 +55,7 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
   private SdkConfig lastSdkConfig;
   private SdkEnvironment lastSdkEnvironment;
   private final HashSet<Class<?>> loadedTestClasses = new HashSet<Class<?>>();
+  private final Map<Description, TestTiming> testTimings = new LinkedHashMap<Description, TestTiming>();
 
   /**
    * Creates a runner to run {@code testClass}. Looks in your working directory for your AndroidManifest.xml file
@@ -60,6 +66,9 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
    */
   public RobolectricTestRunner(final Class<?> testClass) throws InitializationError {
     super(testClass);
+    if (System.getProperty("robolectric.timingReportDir") != null) {
+      PerfStats.enable();
+    }
 
     EnvHolder envHolder;
     synchronized (envHoldersByTestRunner) {
@@ -161,6 +170,7 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
           }
         } finally {
           afterClass();
+          reportTestTimings();
         }
       }
     };
@@ -178,84 +188,105 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     return new Statement() {
       @Override
       public void evaluate() throws Throwable {
-        final Config config = getConfig(method.getMethod());
-        AndroidManifest appManifest = getAppManifest(config);
-        SdkEnvironment sdkEnvironment = getEnvironment(appManifest, config);
-        Thread.currentThread().setContextClassLoader(sdkEnvironment.getRobolectricClassLoader());
-
-        Class bootstrappedTestClass = sdkEnvironment.bootstrappedClass(getTestClass().getJavaClass());
-        HelperTestRunner helperTestRunner = getHelperTestRunner(bootstrappedTestClass);
-
-        final Method bootstrappedMethod;
+        TestTiming timing = new TestTiming(getTestClass().getName(), testName(method));
         try {
-          //noinspection unchecked
-          bootstrappedMethod = bootstrappedTestClass.getMethod(method.getName());
-        } catch (NoSuchMethodException e) {
-          throw new RuntimeException(e);
+          runTest(method, timing);
+        } finally {
+          timing.finish();
+          Description description = describeChild(method);
+          synchronized (testTimings) {
+            testTimings.put(description, timing);
+          }
+          TestTimingListener.publish(description, timing);
         }
+      }
+    };
+  }
 
-        configureShadows(sdkEnvironment, config);
+  private void runTest(FrameworkMethod method, TestTiming timing) throws Throwable {
+    final Config config = getConfig(method.getMethod());
+    AndroidManifest appManifest = getAppManifest(config);
+    SdkEnvironment sdkEnvironment = getEnvironment(appManifest, config);
+    Thread.currentThread().setContextClassLoader(sdkEnvironment.getRobolectricClassLoader());
 
-        ParallelUniverseInterface parallelUniverseInterface = getHooksInterface(sdkEnvironment);
-        try {
-          // Only invoke @BeforeClass once per class
-          if (!loadedTestClasses.contains(bootstrappedTestClass)) {
-            invokeBeforeClass(bootstrappedTestClass);
-          }
-          assureTestLifecycle(sdkEnvironment);
-
-          parallelUniverseInterface.resetStaticState(config);
-          parallelUniverseInterface.setSdkConfig(sdkEnvironment.getSdkConfig());
-
-          boolean strictI18n = determineI18nStrictState(bootstrappedMethod);
-
-          int sdkVersion = pickReportedSdkVersion(config, appManifest);
-          Class<?> versionClass = sdkEnvironment.bootstrappedClass(Build.VERSION.class);
-          Field sdk_int = versionClass.getDeclaredField("SDK_INT");
-          sdk_int.setAccessible(true);
-          Field modifiers = Field.class.getDeclaredField("modifiers");
-          modifiers.setAccessible(true);
-          modifiers.setInt(sdk_int, sdk_int.getModifiers() & ~Modifier.FINAL);
-          sdk_int.setInt(null, sdkVersion);
-
-          ResourceLoader systemResourceLoader = sdkEnvironment.getSystemResourceLoader(getJarResolver(), RobolectricTestRunner.this);
-          setUpApplicationState(bootstrappedMethod, parallelUniverseInterface, strictI18n, systemResourceLoader, appManifest, config);
-          testLifecycle.beforeTest(bootstrappedMethod);
-        } catch (Exception e) {
-          e.printStackTrace();
-          throw new RuntimeException(e);
-        }
+    Class bootstrappedTestClass = sdkEnvironment.bootstrappedClass(getTestClass().getJavaClass());
+    HelperTestRunner helperTestRunner = getHelperTestRunner(bootstrappedTestClass);
 
-        final Statement statement = helperTestRunner.methodBlock(new FrameworkMethod(bootstrappedMethod));
+    final Method bootstrappedMethod;
+    try {
+      //noinspection unchecked
+      bootstrappedMethod = bootstrappedTestClass.getMethod(method.getName());
+    } catch (NoSuchMethodException e) {
+      throw new RuntimeException(e);
+    }
+
+    configureShadows(sdkEnvironment, config);
+
+    ParallelUniverseInterface parallelUniverseInterface = getHooksInterface(sdkEnvironment);
+    try {
+      timing.lap(TestTiming.ENVIRONMENT);
+
+      // Only invoke @BeforeClass once per class
+      if (!loadedTestClasses.contains(bootstrappedTestClass)) {
+        invokeBeforeClass(bootstrappedTestClass);
+        timing.lap(TestTiming.BEFORE_CLASS);
+      }
+      assureTestLifecycle(sdkEnvironment);
+
+      parallelUniverseInterface.resetStaticState(config);
+      parallelUniverseInterface.setSdkConfig(sdkEnvironment.getSdkConfig());
+      timing.lap(TestTiming.RESET_STATIC_STATE);
+
+      boolean strictI18n = determineI18nStrictState(bootstrappedMethod);
+
+      int sdkVersion = pickReportedSdkVersion(config, appManifest);
+      Class<?> versionClass = sdkEnvironment.bootstrappedClass(Build.VERSION.class);
+      Field sdk_int = versionClass.getDeclaredField("SDK_INT");
+      sdk_int.setAccessible(true);
+      Field modifiers = Field.class.getDeclaredField("modifiers");
+      modifiers.setAccessible(true);
+      modifiers.setInt(sdk_int, sdk_int.getModifiers() & ~Modifier.FINAL);
+      sdk_int.setInt(null, sdkVersion);
+
+      ResourceLoader systemResourceLoader = sdkEnvironment.getSystemResourceLoader(getJarResolver(), RobolectricTestRunner.this);
+      setUpApplicationState(bootstrappedMethod, parallelUniverseInterface, strictI18n, systemResourceLoader, appManifest, config);
+      testLifecycle.beforeTest(bootstrappedMethod);
+      timing.lap(TestTiming.SET_UP_APPLICATION_STATE);
+    } catch (Exception e) {
+      e.printStackTrace();
+      throw new RuntimeException(e);
+    }
 
-        Map<Field, Object> withConstantAnnos = getWithConstantAnnotations(bootstrappedMethod);
+    final Statement statement = helperTestRunner.methodBlock(new FrameworkMethod(bootstrappedMethod));
 
-        // todo: this try/finally probably isn't right -- should mimic RunAfters? [xw]
+    Map<Field, Object> withConstantAnnos = getWithConstantAnnotations(bootstrappedMethod);
+
+    // todo: this try/finally probably isn't right -- should mimic RunAfters? [xw]
+    try {
+      if (withConstantAnnos.isEmpty()) {
+        statement.evaluate();
+      } else {
+        synchronized (this) {
+          setupConstants(withConstantAnnos);
+          statement.evaluate();
+          setupConstants(withConstantAnnos);
+        }
+      }
+    } finally {
+      timing.lap(TestTiming.TEST);
+      try {
+        parallelUniverseInterface.tearDownApplication();
+      } finally {
         try {
-          if (withConstantAnnos.isEmpty()) {
-            statement.evaluate();
-          } else {
-            synchronized (this) {
-              setupConstants(withConstantAnnos);
-              statement.evaluate();
-              setupConstants(withConstantAnnos);
-            }
-          }
+          internalAfterTest(bootstrappedMethod);
         } finally {
-          try {
-            parallelUniverseInterface.tearDownApplication();
-          } finally {
-            try {
-              internalAfterTest(bootstrappedMethod);
-            } finally {
-              parallelUniverseInterface.resetStaticState(config); // afterward too, so stuff doesn't hold on to classes?
-              // todo: is this really needed?
-              Thread.currentThread().setContextClassLoader(RobolectricTestRunner.class.getClassLoader());
-            }
-          }
+          parallelUniverseInterface.resetStaticState(config); // afterward too, so stuff doesn't hold on to classes?
+          // todo: is this really needed?
+          Thread.currentThread().setContextClassLoader(RobolectricTestRunner.class.getClassLoader());
+          timing.lap(TestTiming.TEAR_DOWN);
         }
       }
-    };
+    }
   }
 
   private void invokeBeforeClass(final Class clazz) throws Throwable {
@@ -486,6 +517,39 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     testLifecycle = null;
   }
 
+  /**
+   * Writes the timings of the tests run so far as JSON, if the {@code robolectric.timingReportDir} system property
+   * names a directory to write them to, and forgets them.
+   */
+  private void reportTestTimings() {
+    List<TestTiming> timings;
+    synchronized (testTimings) {
+      timings = new ArrayList<TestTiming>(testTimings.values());
+      for (Description description : testTimings.keySet()) {
+        TestTimingListener.discard(description);
+      }
+      testTimings.clear();
+    }
+
+    String reportDir = System.getProperty("robolectric.timingReportDir");
+    if (reportDir == null || timings.isEmpty()) return;
+
+    String testClassName = getTestClass().getName();
+    String reportName = getName().equals(testClassName) ? testClassName : testClassName + getName();
+    File reportFile = new File(reportDir, reportName.replaceAll("[^\\w.$\\[\\]-]", "_") + ".json");
+    try {
+      reportFile.getParentFile().mkdirs();
+      Writer writer = new OutputStreamWriter(new FileOutputStream(reportFile), "UTF-8");
+      try {
+        TestTiming.writeJson(testClassName, timings, writer);
+      } finally {
+        writer.close();
+      }
+    } catch (IOException e) {
+      System.err.println("WARNING: couldn't write test timings to " + reportFile + ": " + e);
+    }
+  }
+
   @TestOnly
   boolean allStateIsCleared() {
     return testLifecycle == null;
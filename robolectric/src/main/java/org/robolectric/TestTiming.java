@@ -0,0 +1,152 @@
+package org.robolectric;
+
+import org.robolectric.util.PerfStats;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Where the time of one test run by {@link RobolectricTestRunner} went, phase by phase, along with the
+ * {@link PerfStats} counted while it ran.
+ *
+ * The phases, in order, are {@link #ENVIRONMENT}, {@link #BEFORE_CLASS}, {@link #RESET_STATIC_STATE},
+ * {@link #SET_UP_APPLICATION_STATE}, {@link #TEST} and {@link #TEAR_DOWN}. Only the first test of a class in each
+ * SDK environment has a {@link #BEFORE_CLASS} phase, and a test that fails during setup has only the phases it got
+ * through.
+ * Timings are handed to any {@link TestTimingListener} as each test finishes, and written as JSON per test class
+ * into the directory named by the {@code robolectric.timingReportDir} system property, if set.
+ */
+public class TestTiming {
+  /** Picking the config, manifest and SDK environment, loading the test class and installing shadows. */
+  public static final String ENVIRONMENT = "environment";
+  /** The test class's {@code @BeforeClass} methods. */
+  public static final String BEFORE_CLASS = "beforeClass";
+  /** Creating the test lifecycle and resetting the static state of shadows and Android classes. */
+  public static final String RESET_STATIC_STATE = "resetStaticState";
+  /** Setting up resources and the application, including {@code Application.onCreate()}. */
+  public static final String SET_UP_APPLICATION_STATE = "setUpApplicationState";
+  /** The test method, with its {@code @Before} and {@code @After} methods. */
+  public static final String TEST = "test";
+  /** Terminating the application and resetting static state again. */
+  public static final String TEAR_DOWN = "tearDown";
+
+  private final String className;
+  private final String methodName;
+  private final Map<String, Long> phaseNanos = new LinkedHashMap<String, Long>();
+  private final PerfStats startStats;
+  private long lapStart;
+  private PerfStats stats;
+
+  TestTiming(String className, String methodName) {
+    this.className = className;
+    this.methodName = methodName;
+    this.startStats = PerfStats.snapshot();
+    this.lapStart = System.nanoTime();
+  }
+
+  /**
+   * Ends a phase, which started when the previous one ended.
+   */
+  void lap(String phase) {
+    long now = System.nanoTime();
+    phaseNanos.put(phase, now - lapStart);
+    lapStart = now;
+  }
+
+  void finish() {
+    stats = PerfStats.snapshot().since(startStats);
+  }
+
+  public String getClassName() {
+    return className;
+  }
+
+  public String getMethodName() {
+    return methodName;
+  }
+
+  /**
+   * @return the duration of every phase the test went through, in nanoseconds, in order
+   */
+  public Map<String, Long> getPhaseNanos() {
+    return Collections.unmodifiableMap(phaseNanos);
+  }
+
+  /**
+   * @return the duration of the phase in nanoseconds, or 0 if the test didn't get to it
+   */
+  public long getPhaseNanos(String phase) {
+    Long nanos = phaseNanos.get(phase);
+    return nanos == null ? 0 : nanos;
+  }
+
+  public long getTotalNanos() {
+    long total = 0;
+    for (long nanos : phaseNanos.values()) {
+      total += nanos;
+    }
+    return total;
+  }
+
+  /**
+   * @return the work counted while the test ran, from setup to tear down
+   */
+  public PerfStats getStats() {
+    return stats;
+  }
+
+  static void writeJson(String testClassName, List<TestTiming> timings, Writer writer) throws IOException {
+    writer.write("{\n  \"testClass\": " + quote(testClassName) + ",\n  \"tests\": [");
+    for (int i = 0; i < timings.size(); i++) {
+      writer.write(i == 0 ? "\n" : ",\n");
+      timings.get(i).writeJson(writer);
+    }
+    writer.write("\n  ]\n}\n");
+  }
+
+  private void writeJson(Writer writer) throws IOException {
+    writer.write("    {\n      \"name\": " + quote(methodName) + ",\n");
+    writer.write("      \"totalMs\": " + millis(getTotalNanos()) + ",\n");
+    writer.write("      \"phasesMs\": {");
+    String separator = "";
+    for (Map.Entry<String, Long> phase : phaseNanos.entrySet()) {
+      writer.write(separator + quote(phase.getKey()) + ": " + millis(phase.getValue()));
+      separator = ", ";
+    }
+    writer.write("},\n");
+    writer.write("      \"applicationOnCreateMs\": " + millis(stats.getApplicationCreateNanos()) + ",\n");
+    writer.write("      \"classesLoaded\": " + stats.getClassesLoaded() + ",\n");
+    writer.write("      \"classesInstrumented\": " + stats.getClassesInstrumented() + ",\n");
+    writer.write("      \"classLoadingMs\": " + millis(stats.getClassLoadingNanos()) + ",\n");
+    writer.write("      \"planCacheHits\": " + stats.getPlanCacheHits() + ",\n");
+    writer.write("      \"planCacheMisses\": " + stats.getPlanCacheMisses() + ",\n");
+    writer.write("      \"planCacheHitRate\": " + String.format(Locale.US, "%.4f", stats.getPlanCacheHitRate()) + ",\n");
+    writer.write("      \"resourceLoads\": " + stats.getResourceLoads() + ",\n");
+    writer.write("      \"resourceLoadingMs\": " + millis(stats.getResourceLoadingNanos()) + "\n");
+    writer.write("    }");
+  }
+
+  private static String millis(long nanos) {
+    return String.format(Locale.US, "%.3f", nanos / 1e6);
+  }
+
+  private static String quote(String text) {
+    StringBuilder builder = new StringBuilder(text.length() + 2).append('"');
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '"' || c == '\\') {
+        builder.append('\\').append(c);
+      } else if (c < ' ') {
+        builder.append(String.format("\\u%04x", (int) c));
+      } else {
+        builder.append(c);
+      }
+    }
+    return builder.append('"').toString();
+  }
+}
@@ -0,0 +1,46 @@
+package org.robolectric;
+
+import org.junit.runner.Description;
+import org.junit.runner.notification.RunListener;
+import org.robolectric.util.PerfStats;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A JUnit {@link RunListener} that is told where the time of each test run by {@link RobolectricTestRunner} went.
+ * Register it like any other listener, e.g. with {@code JUnitCore.addListener()} or surefire's {@code listener}
+ * property, and implement {@link #testTimed(Description, TestTiming)}.
+ */
+public abstract class TestTimingListener extends RunListener {
+  private static final ConcurrentMap<Description, TestTiming> PENDING = new ConcurrentHashMap<Description, TestTiming>();
+
+  protected TestTimingListener() {
+    PerfStats.enable();
+  }
+
+  static void publish(Description description, TestTiming timing) {
+    PENDING.put(description, timing);
+  }
+
+  /**
+   * Forgets the timing of a test, once every listener has been told about it.
+   */
+  static void discard(Description description) {
+    PENDING.remove(description);
+  }
+
+  @Override
+  public void testFinished(Description description) throws Exception {
+    TestTiming timing = PENDING.get(description);
+    if (timing != null) {
+      testTimed(description, timing);
+    }
+  }
+
+  /**
+   * Called as each test run by {@link RobolectricTestRunner} finishes, before {@link #testFinished(Description)}
+   * returns.
+   */
+  public abstract void testTimed(Description description, TestTiming timing);
+}
@@ -22,6 +22,7 @@ import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.tree.TypeInsnNode;
 import org.objectweb.asm.util.CheckClassAdapter;
 import org.objectweb.asm.util.TraceClassVisitor;
+import org.robolectric.util.PerfStats;
 
 import java.io.FileOutputStream;
 import java.io.FileWriter;
@@ -62,6 +63,13 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
   static final String GET_ROBO_DATA_METHOD_NAME = "$$robo$getData";
   private static final String GET_ROBO_DATA_SIGNATURE = "()Ljava/lang/Object;";
 
+  /** Per thread, the time spent loading classes while loading the class being loaded, which it mustn't count. */
+  private static final ThreadLocal<long[]> NESTED_LOAD_NANOS = new ThreadLocal<long[]>() {
+    @Override protected long[] initialValue() {
+      return new long[1];
+    }
+  };
+
   private static boolean debug = false;
 
   private final Setup setup;
@@ -123,39 +131,14 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
   @Override
   protected Class<?> findClass(final String className) throws ClassNotFoundException {
     if (setup.shouldAcquire(className)) {
-      byte[] origClassBytes = getByteCode(className);
-
-      final ClassReader classReader = new ClassReader(origClassBytes);
-      ClassNode classNode = new ClassNode(Opcodes.ASM4) {
-        @Override
-        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
-          desc = remapParamType(desc);
-          return super.visitField(access, name, desc, signature, value);
-        }
-
-        @Override
-        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
-          return super.visitMethod(access, name, remapParams(desc), signature, exceptions);
-        }
-      };
-      classReader.accept(classNode, 0);
-
+      long[] nestedLoadNanos = NESTED_LOAD_NANOS.get();
+      long outerNestedLoadNanos = nestedLoadNanos[0];
+      nestedLoadNanos[0] = 0;
+      long startTime = System.nanoTime();
       try {
-        byte[] bytes;
-        AsmClassInfo classInfo = new AsmClassInfo(className, classNode);
-        if (setup.shouldInstrument(classInfo)) {
-          bytes = getInstrumentedBytes(className, classNode, setup.containsStubs(classInfo));
-        } else {
-          bytes = origClassBytes;
-        }
-//                System.out.println("[DEBUG] Defining " + classFilename + " (" + bytes.length + ") in " + this + ": class" + number++);
-        ensurePackage(className);
-        return defineClass(className, bytes, 0, bytes.length);
-      } catch (Exception e) {
-        throw new ClassNotFoundException("couldn't load " + className, e);
-      } catch (OutOfMemoryError e) {
-        System.err.println("[ERROR] couldn't load " + className + " in " + this);
-        throw e;
+        return acquireClass(className, startTime, nestedLoadNanos);
+      } finally {
+        nestedLoadNanos[0] = outerNestedLoadNanos + System.nanoTime() - startTime;
       }
     } else {
       throw new IllegalStateException("how did we get here? " + className);
@@ -163,6 +146,46 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
     }
   }
 
+  private Class<?> acquireClass(final String className, long startTime, long[] nestedLoadNanos) throws ClassNotFoundException {
+    byte[] origClassBytes = getByteCode(className);
+
+    final ClassReader classReader = new ClassReader(origClassBytes);
+    ClassNode classNode = new ClassNode(Opcodes.ASM4) {
+      @Override
+      public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+        desc = remapParamType(desc);
+        return super.visitField(access, name, desc, signature, value);
+      }
+
+      @Override
+      public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        return super.visitMethod(access, name, remapParams(desc), signature, exceptions);
+      }
+    };
+    classReader.accept(classNode, 0);
+
+    try {
+      byte[] bytes;
+      AsmClassInfo classInfo = new AsmClassInfo(className, classNode);
+      boolean instrumented = setup.shouldInstrument(classInfo);
+      if (instrumented) {
+        bytes = getInstrumentedBytes(className, classNode, setup.containsStubs(classInfo));
+      } else {
+        bytes = origClassBytes;
+      }
+//                System.out.println("[DEBUG] Defining " + classFilename + " (" + bytes.length + ") in " + this + ": class" + number++);
+      ensurePackage(className);
+      Class<?> theClass = defineClass(className, bytes, 0, bytes.length);
+      PerfStats.classLoaded(instrumented, System.nanoTime() - startTime - nestedLoadNanos[0]);
+      return theClass;
+    } catch (Exception e) {
+      throw new ClassNotFoundException("couldn't load " + className, e);
+    } catch (OutOfMemoryError e) {
+      System.err.println("[ERROR] couldn't load " + className + " in " + this);
+      throw e;
+    }
+  }
+
   protected byte[] getByteCode(String className) throws ClassNotFoundException {
     String classFilename = className.replace('.', '/') + ".class";
     InputStream classBytesStream = urls.getResourceAsStream(classFilename);
@@ -3,6 +3,7 @@ package org.robolectric.bytecode;
 import android.R;
 import org.robolectric.AndroidManifest;
 import org.robolectric.DependencyJar;
+import org.robolectric.ManifestModel;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.SdkConfig;
 import org.robolectric.SdkEnvironment;
@@ -22,6 +23,7 @@ import org.robolectric.internal.ParallelUniverseInterface;
 import org.robolectric.res.ResourceLoader;
 import org.robolectric.res.ResourcePath;
 import org.robolectric.util.I18nException;
+import org.robolectric.util.PerfStats;
 import org.robolectric.util.Transcript;
 
 import java.util.ArrayList;
@@ -41,6 +43,7 @@ public class Setup {
       RealObject.class,
       ShadowWrangler.class,
       AndroidManifest.class,
+      ManifestModel.class,
       R.class,
 
       org.robolectric.bytecode.InstrumentingClassLoader.class,
@@ -64,6 +67,7 @@ public class Setup {
       Transcript.class,
       org.robolectric.bytecode.DirectObjectMarker.class,
       DependencyJar.class,
+      PerfStats.class,
       ParallelUniverseInterface.class
   );
 
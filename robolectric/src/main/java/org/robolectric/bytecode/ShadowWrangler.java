@@ -7,6 +7,7 @@ import org.robolectric.annotation.RealObject;
 import org.robolectric.internal.ReflectionHelpers;
 import org.robolectric.shadows.ShadowWindow;
 import org.robolectric.util.Function;
+import org.robolectric.util.PerfStats;
 
 import java.lang.reflect.*;
 import java.util.*;
@@ -76,7 +77,11 @@ public class ShadowWrangler implements ClassHandler {
   @Override
   synchronized public Plan methodInvoked(String signature, boolean isStatic, Class<?> theClass) {
     if (debug) System.out.println("[DEBUG] " + signature);
-    if (planCache.containsKey(signature)) return planCache.get(signature);
+    if (planCache.containsKey(signature)) {
+      PerfStats.planLookedUp(true);
+      return planCache.get(signature);
+    }
+    PerfStats.planLookedUp(false);
     Plan plan = calculatePlan(signature, isStatic, theClass);
     planCache.put(signature, plan);
     return plan;
@@ -15,6 +15,7 @@ import org.robolectric.shadows.ShadowActivityThread;
 import org.robolectric.shadows.ShadowContextImpl;
 import org.robolectric.shadows.ShadowLog;
 import org.robolectric.shadows.ShadowResources;
+import org.robolectric.util.PerfStats;
 
 import java.lang.reflect.Method;
 
@@ -59,6 +60,10 @@ public class ParallelUniverse implements ParallelUniverseInterface {
 
   @Override
   public void setUpApplicationState(Method method, TestLifecycle testLifecycle, boolean strictI18n, ResourceLoader systemResourceLoader, AndroidManifest appManifest, Config config) {
+    if (method != null) {
+      ShadowLog.setLogName(method.getDeclaringClass().getName());
+    }
+
     Robolectric.application = null;
     Robolectric.packageManager = new RobolectricPackageManager();
     Robolectric.packageManager.addPackage(DEFAULT_PACKAGE_NAME);
@@ -123,7 +128,9 @@ public class ParallelUniverse implements ParallelUniverseInterface {
       shadowOf(application).setStrictI18n(strictI18n);
 
       Robolectric.application = application;
+      long startTime = System.nanoTime();
       application.onCreate();
+      PerfStats.applicationCreated(System.nanoTime() - startTime);
     }
   }
 
@@ -5,18 +5,24 @@ import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reflective access to private members. Members are looked up once per class, name and parameter types, made
+ * accessible, and kept, so repeated calls (e.g. every lifecycle step of an activity) cost a map lookup rather than
+ * a walk up the class hierarchy. Class loaders live as long as the JVM here, so the cache doesn't hold anything
+ * longer than it would be alive anyway.
+ */
 public class ReflectionHelpers {
+  private static final Map<MemberKey, Field> FIELDS = new ConcurrentHashMap<MemberKey, Field>();
+  private static final Map<MemberKey, Method> METHODS = new ConcurrentHashMap<MemberKey, Method>();
+  private static final Map<MemberKey, Constructor> CONSTRUCTORS = new ConcurrentHashMap<MemberKey, Constructor>();
+
   public static <R> R getFieldReflectively(final Object object, final String fieldName) {
     try {
-      return traverseClassHierarchy(object.getClass(), NoSuchFieldException.class, new InsideTraversal<R>() {
-        @Override
-        public R run(Class traversalClass) throws Exception {
-          Field field = traversalClass.getDeclaredField(fieldName);
-          field.setAccessible(true);
-          return (R) field.get(object);
-        }
-      });
+      return (R) findField(object.getClass(), fieldName).get(object);
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
@@ -24,15 +30,7 @@ public class ReflectionHelpers {
 
   public static void setFieldReflectively(final Object object, final String fieldName, final Object fieldNewValue) {
     try {
-      traverseClassHierarchy(object.getClass(), NoSuchFieldException.class, new InsideTraversal<Void>() {
-        @Override
-        public Void run(Class traversalClass) throws Exception {
-          Field field = traversalClass.getDeclaredField(fieldName);
-          field.setAccessible(true);
-          field.set(object, fieldNewValue);
-          return null;
-        }
-      });
+      findField(object.getClass(), fieldName).set(object, fieldNewValue);
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
@@ -56,14 +54,7 @@ public class ReflectionHelpers {
       final Class[] classes = ClassParameter.getClasses(classParameters);
       final Object[] values = ClassParameter.getValues(classParameters);
 
-      return traverseClassHierarchy(instance.getClass(), NoSuchMethodException.class, new InsideTraversal<R>() {
-        @Override
-        public R run(Class traversalClass) throws Exception {
-          Method declaredMethod = traversalClass.getDeclaredMethod(methodName, classes);
-          declaredMethod.setAccessible(true);
-          return (R) declaredMethod.invoke(instance, values);
-        }
-      });
+      return (R) findMethod(instance.getClass(), methodName, classes, true).invoke(instance, values);
     } catch (InvocationTargetException e) {
       throw (RuntimeException) e.getTargetException();
     } catch (Exception e) {
@@ -76,9 +67,7 @@ public class ReflectionHelpers {
       Class[] classes = ClassParameter.getClasses(classParameters);
       Object[] values = ClassParameter.getValues(classParameters);
 
-      Method method = containingClass.getDeclaredMethod(methodName, classes);
-      method.setAccessible(true);
-      return (R) method.invoke(null, values);
+      return (R) findMethod(containingClass, methodName, classes, false).invoke(null, values);
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
@@ -97,9 +86,7 @@ public class ReflectionHelpers {
       final Class[] classes = ClassParameter.getClasses(classParameters);
       final Object[] values = ClassParameter.getValues(classParameters);
 
-      Constructor constructor = targetClass.getDeclaredConstructor(classes);
-      constructor.setAccessible(true);
-      return (R) constructor.newInstance(values);
+      return (R) findConstructor(targetClass, classes).newInstance(values);
     } catch (InstantiationException e) {
       throw new RuntimeException("error instantiating " + targetClass.getName(), e);
     } catch (Exception e) {
@@ -107,21 +94,83 @@ public class ReflectionHelpers {
     }
   }
 
-  private static <R, E extends Exception> R traverseClassHierarchy(Class<?> targetClass, Class<? extends E> exceptionClass, InsideTraversal<R> insideTraversal) throws Exception {
-    Class hierarchyTraversalClass = targetClass;
-    while (true) {
+  private static Field findField(Class<?> targetClass, String fieldName) throws NoSuchFieldException {
+    MemberKey key = new MemberKey(targetClass, fieldName, null);
+    Field field = FIELDS.get(key);
+    if (field != null) return field;
+
+    Class<?> hierarchyTraversalClass = targetClass;
+    while (field == null) {
+      if (hierarchyTraversalClass == null) {
+        throw new NoSuchFieldException(fieldName);
+      }
+      try {
+        field = hierarchyTraversalClass.getDeclaredField(fieldName);
+      } catch (NoSuchFieldException e) {
+        hierarchyTraversalClass = hierarchyTraversalClass.getSuperclass();
+      }
+    }
+    field.setAccessible(true);
+    FIELDS.put(key, field);
+    return field;
+  }
+
+  private static Method findMethod(Class<?> targetClass, String methodName, Class[] parameterTypes, boolean inherited) throws NoSuchMethodException {
+    MemberKey key = new MemberKey(targetClass, (inherited ? "" : "static ") + methodName, parameterTypes);
+    Method method = METHODS.get(key);
+    if (method != null) return method;
+
+    Class<?> hierarchyTraversalClass = targetClass;
+    while (method == null) {
+      if (hierarchyTraversalClass == null) {
+        throw new NoSuchMethodException(methodName);
+      }
       try {
-        return insideTraversal.run(hierarchyTraversalClass);
-      } catch (Exception e) {
-        if (!exceptionClass.isInstance(e)) {
-          throw e;
-        }
+        method = hierarchyTraversalClass.getDeclaredMethod(methodName, parameterTypes);
+      } catch (NoSuchMethodException e) {
+        if (!inherited) throw e;
         hierarchyTraversalClass = hierarchyTraversalClass.getSuperclass();
-        if (hierarchyTraversalClass == null) {
-          throw new RuntimeException(e);
-        }
       }
     }
+    method.setAccessible(true);
+    METHODS.put(key, method);
+    return method;
+  }
+
+  private static Constructor findConstructor(Class<?> targetClass, Class[] parameterTypes) throws NoSuchMethodException {
+    MemberKey key = new MemberKey(targetClass, "<init>", parameterTypes);
+    Constructor constructor = CONSTRUCTORS.get(key);
+    if (constructor == null) {
+      constructor = targetClass.getDeclaredConstructor(parameterTypes);
+      constructor.setAccessible(true);
+      CONSTRUCTORS.put(key, constructor);
+    }
+    return constructor;
+  }
+
+  private static class MemberKey {
+    private final Class<?> targetClass;
+    private final String name;
+    private final Class[] parameterTypes;
+    private final int hashCode;
+
+    MemberKey(Class<?> targetClass, String name, Class[] parameterTypes) {
+      this.targetClass = targetClass;
+      this.name = name;
+      this.parameterTypes = parameterTypes;
+      this.hashCode = 31 * (31 * targetClass.hashCode() + name.hashCode()) + Arrays.hashCode(parameterTypes);
+    }
+
+    @Override public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof MemberKey)) return false;
+      MemberKey other = (MemberKey) o;
+      return targetClass == other.targetClass && name.equals(other.name) && Arrays.equals(parameterTypes, other.parameterTypes);
+    }
+
+    @Override public int hashCode() {
+      return hashCode;
+    }
   }
 
   public static class ClassParameter<V> {
@@ -169,8 +218,4 @@ public class ReflectionHelpers {
       this.val = val;
     }
   }
-
-  private static interface InsideTraversal<R> {
-    public R run(Class traversalClass) throws Exception;
-  }
 }
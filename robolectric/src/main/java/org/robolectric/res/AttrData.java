@@ -1,16 +1,96 @@
 package org.robolectric.res;
 
+import org.robolectric.util.Util;
+
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * An {@code <attr>} declaration. The format string and the enum or flag values are compiled once, when the attr is
+ * loaded: the formats into a bit set (and an array in declaration order), the values into int tables.
+ */
 public class AttrData {
+  public static final int FORMAT_REFERENCE = 1;
+  public static final int FORMAT_STRING = 1 << 1;
+  public static final int FORMAT_INTEGER = 1 << 2;
+  public static final int FORMAT_BOOLEAN = 1 << 3;
+  public static final int FORMAT_COLOR = 1 << 4;
+  public static final int FORMAT_FLOAT = 1 << 5;
+  public static final int FORMAT_DIMENSION = 1 << 6;
+  public static final int FORMAT_FRACTION = 1 << 7;
+  public static final int FORMAT_ENUM = 1 << 8;
+  public static final int FORMAT_FLAG = 1 << 9;
+
+  private static final Map<String, Integer> FORMATS_BY_NAME = new HashMap<String, Integer>();
+
+  static {
+    FORMATS_BY_NAME.put("reference", FORMAT_REFERENCE);
+    FORMATS_BY_NAME.put("string", FORMAT_STRING);
+    FORMATS_BY_NAME.put("integer", FORMAT_INTEGER);
+    FORMATS_BY_NAME.put("boolean", FORMAT_BOOLEAN);
+    FORMATS_BY_NAME.put("color", FORMAT_COLOR);
+    FORMATS_BY_NAME.put("float", FORMAT_FLOAT);
+    FORMATS_BY_NAME.put("dimension", FORMAT_DIMENSION);
+    FORMATS_BY_NAME.put("fraction", FORMAT_FRACTION);
+    FORMATS_BY_NAME.put("enum", FORMAT_ENUM);
+    FORMATS_BY_NAME.put("flag", FORMAT_FLAG);
+  }
+
   private final String name;
   private final String format;
   private final List<Pair> pairs;
+  private final int formats;
+  private final int[] formatsInOrder;
+  private final Map<String, Integer> intValuesByName;
+  private final int[] sortedIntValues;
+  private final Map<String, ConvertedValue> convertedValues = new ConcurrentHashMap<String, ConvertedValue>();
 
   public AttrData(String name, String format, List<Pair> pairs) {
     this.name = name;
     this.format = format;
     this.pairs = pairs;
+
+    String[] formatNames = format.split("\\|");
+    int[] inOrder = new int[formatNames.length];
+    int count = 0;
+    int all = 0;
+    for (String formatName : formatNames) {
+      Integer bit = FORMATS_BY_NAME.get(formatName);
+      if (bit != null && (all & bit) == 0) {
+        inOrder[count++] = bit;
+        all |= bit;
+      }
+    }
+    this.formats = all;
+    this.formatsInOrder = Arrays.copyOf(inOrder, count);
+
+    this.intValuesByName = new HashMap<String, Integer>();
+    int[] values = new int[pairs == null ? 0 : pairs.size()];
+    count = 0;
+    if (pairs != null) {
+      for (Pair pair : pairs) {
+        Integer value = parseValue(pair.value);
+        if (value != null) {
+          if (!intValuesByName.containsKey(pair.name)) {
+            intValuesByName.put(pair.name, value);
+          }
+          values[count++] = value;
+        }
+      }
+    }
+    this.sortedIntValues = Arrays.copyOf(values, count);
+    Arrays.sort(sortedIntValues);
+  }
+
+  private static Integer parseValue(String value) {
+    try {
+      return Util.parseInt(value);
+    } catch (NumberFormatException e) {
+      return null;
+    }
   }
 
   public String getFormat() {
@@ -21,6 +101,53 @@ public class AttrData {
     return name;
   }
 
+  /**
+   * @return The {@code FORMAT_} bits of every format this attr accepts.
+   */
+  public int getFormats() {
+    return formats;
+  }
+
+  public boolean hasFormat(int format) {
+    return (formats & format) != 0;
+  }
+
+  /**
+   * @return The {@code FORMAT_} bit of each format this attr accepts, in the order they were declared. Don't
+   * modify the array.
+   */
+  public int[] getFormatsInOrder() {
+    return formatsInOrder;
+  }
+
+  /**
+   * @return The int value of the named enum or flag value, or {@code null} if there's no such value.
+   */
+  public Integer getIntValueFor(String key) {
+    return intValuesByName.get(key);
+  }
+
+  /**
+   * @return Whether one of the enum or flag values is {@code value}.
+   */
+  public boolean isIntValue(int value) {
+    return Arrays.binarySearch(sortedIntValues, value) >= 0;
+  }
+
+  /**
+   * @return What {@code literal} was converted to by an earlier {@link #putConvertedValue}, or {@code null}.
+   */
+  public ConvertedValue getConvertedValue(String literal) {
+    return convertedValues.get(literal);
+  }
+
+  /**
+   * Remembers what a literal value of this attr converts to, since that only depends on the literal and the attr.
+   */
+  public void putConvertedValue(String literal, ConvertedValue converted) {
+    convertedValues.put(literal, converted);
+  }
+
   public String getValueFor(String key) {
     if (pairs == null) return null;
     for (Pair pair : pairs) {
@@ -64,6 +191,25 @@ public class AttrData {
     return builder.toString();
   }
 
+  /**
+   * The fields of a {@code TypedValue} that a literal value converts to. Attrs are shared between SDK class
+   * loaders, so they can't hold on to the {@code TypedValue} itself, nor to its asset cookie: cookies are handed
+   * out per class loader, so only whether the value carries the literal's cookie is kept.
+   */
+  public static class ConvertedValue {
+    public final int type;
+    public final int data;
+    public final CharSequence string;
+    public final boolean hasStringCookie;
+
+    public ConvertedValue(int type, int data, CharSequence string, boolean hasStringCookie) {
+      this.type = type;
+      this.data = data;
+      this.string = string;
+      this.hasStringCookie = hasStringCookie;
+    }
+  }
+
   public static class Pair {
     private final String name;
     private final String value;
@@ -1,6 +1,7 @@
 package org.robolectric.res;
 
 import org.jetbrains.annotations.NotNull;
+import org.robolectric.util.PerfStats;
 import org.w3c.dom.Document;
 
 import java.io.IOException;
@@ -26,8 +27,10 @@ abstract class XResourceLoader implements ResourceLoader {
 
   void initialize() {
     if (isInitialized) return;
+    long startTime = System.nanoTime();
     doInitialize();
     isInitialized = true;
+    PerfStats.resourcesLoaded(System.nanoTime() - startTime);
 
     makeImmutable();
   }
@@ -72,6 +75,7 @@ abstract class XResourceLoader implements ResourceLoader {
 
   @Override
   public DrawableNode getDrawableNode(ResName resName, String qualifiers) {
+    initialize();
     return drawableData.get(resName, qualifiers);
   }
 
@@ -0,0 +1,217 @@
+package org.robolectric.res.builder;
+
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+import android.os.PatternMatcher;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.robolectric.AndroidManifest;
+import org.robolectric.res.ActivityData;
+import org.robolectric.res.IntentFilterData;
+
+/**
+ * Activity intent filters declared in a set of manifests, compiled into {@link IntentFilter}s once and
+ * indexed by action, data scheme and MIME type so that resolving an implicit intent only matches it
+ * against the filters which could possibly accept it.
+ */
+class IntentFilterIndex {
+  private static final String NONE = "";
+  private static final String ANY = "*";
+
+  private final Map<String, List<Entry>> entriesByKey = new HashMap<String, List<Entry>>();
+  private final Map<String, List<Entry>> typedEntriesByActionAndScheme = new HashMap<String, List<Entry>>();
+
+  static IntentFilterIndex build(Collection<AndroidManifest> manifests) {
+    IntentFilterIndex index = new IntentFilterIndex();
+    int ordinal = 0;
+    for (AndroidManifest manifest : manifests) {
+      for (Map.Entry<String, ActivityData> activity : manifest.getActivityDatas().entrySet()) {
+        String activityName = activity.getKey();
+        ActivityData activityData = activity.getValue();
+        if (activityData.getTargetActivity() != null) {
+          activityName = activityData.getTargetActivityName();
+        }
+
+        for (IntentFilterData intentFilterData : activityData.getIntentFilters()) {
+          index.add(new Entry(ordinal, manifest.getPackageName(), activityName, intentFilterData), intentFilterData);
+        }
+        ordinal++;
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Returns one entry per activity with a filter matching the intent, in manifest declaration order.
+   */
+  List<Entry> query(Intent intent) {
+    String action = intent.getAction();
+    if (action == null) {
+      return Collections.emptyList();
+    }
+
+    Uri data = intent.getData();
+    String scheme = data != null ? data.getScheme() : null;
+    List<String> schemeKeys = scheme == null || scheme.equals(NONE) ? Collections.singletonList(NONE) : list(scheme, NONE);
+
+    String type = intent.getType();
+    String majorType = type == null ? NONE : majorType(type);
+
+    Map<Integer, Entry> matches = new TreeMap<Integer, Entry>();
+    for (String schemeKey : schemeKeys) {
+      if (type == null) {
+        collect(entriesByKey.get(key(action, schemeKey, NONE)), intent, matches);
+      } else if (majorType.equals(ANY)) {
+        // "*/*" asks for any filter declaring a type at all
+        collect(typedEntriesByActionAndScheme.get(key(action, schemeKey)), intent, matches);
+      } else {
+        collect(entriesByKey.get(key(action, schemeKey, majorType)), intent, matches);
+        collect(entriesByKey.get(key(action, schemeKey, ANY)), intent, matches);
+      }
+    }
+    return new ArrayList<Entry>(matches.values());
+  }
+
+  private void add(Entry entry, IntentFilterData intentFilterData) {
+    List<String> schemeKeys = intentFilterData.getSchemes().isEmpty() ? Collections.singletonList(NONE) : intentFilterData.getSchemes();
+    List<String> typeKeys = new ArrayList<String>();
+    for (String mimeType : intentFilterData.getMimeTypes()) {
+      typeKeys.add(majorType(mimeType));
+    }
+    if (typeKeys.isEmpty()) {
+      typeKeys.add(NONE);
+    }
+
+    for (String action : intentFilterData.getActions()) {
+      for (String schemeKey : schemeKeys) {
+        if (!intentFilterData.getMimeTypes().isEmpty()) {
+          put(typedEntriesByActionAndScheme, key(action, schemeKey), entry);
+        }
+        for (String typeKey : typeKeys) {
+          put(entriesByKey, key(action, schemeKey, typeKey), entry);
+        }
+      }
+    }
+  }
+
+  private static void collect(List<Entry> candidates, Intent intent, Map<Integer, Entry> matches) {
+    if (candidates == null) return;
+    for (Entry candidate : candidates) {
+      if (!matches.containsKey(candidate.ordinal) && candidate.matches(intent)) {
+        matches.put(candidate.ordinal, candidate);
+      }
+    }
+  }
+
+  private static void put(Map<String, List<Entry>> map, String key, Entry entry) {
+    List<Entry> entries = map.get(key);
+    if (entries == null) {
+      entries = new ArrayList<Entry>();
+      map.put(key, entries);
+    }
+    if (entries.isEmpty() || entries.get(entries.size() - 1) != entry) {
+      entries.add(entry);
+    }
+  }
+
+  private static String key(String... parts) {
+    StringBuilder builder = new StringBuilder();
+    for (String part : parts) {
+      builder.append(part).append('\0');
+    }
+    return builder.toString();
+  }
+
+  private static List<String> list(String... values) {
+    List<String> list = new ArrayList<String>(values.length);
+    Collections.addAll(list, values);
+    return list;
+  }
+
+  private static String majorType(String mimeType) {
+    int slash = mimeType.indexOf('/');
+    return slash < 0 ? mimeType : mimeType.substring(0, slash);
+  }
+
+  static class Entry {
+    final int ordinal;
+    final String packageName;
+    final String activityName;
+    final IntentFilter intentFilter;
+    private IntentFilter.MalformedMimeTypeException malformedMimeType;
+
+    Entry(int ordinal, String packageName, String activityName, IntentFilterData intentFilterData) {
+      this.ordinal = ordinal;
+      this.packageName = packageName;
+      this.activityName = activityName;
+      this.intentFilter = compile(intentFilterData);
+    }
+
+    /**
+     * A filter with a malformed MIME type fails the queries that reach it, rather than the manifest being added.
+     */
+    boolean matches(Intent intent) {
+      if (!intentFilter.matchAction(intent.getAction())) {
+        return false;
+      }
+      if (malformedMimeType != null) {
+        throw new RuntimeException(malformedMimeType);
+      }
+      if (intentFilter.matchCategories(intent.getCategories()) != null) {
+        return false;
+      }
+      int matchResult = intentFilter.matchData(intent.getType(),
+          (intent.getData() != null ? intent.getData().getScheme() : null),
+          intent.getData());
+      return matchResult != IntentFilter.NO_MATCH_DATA && matchResult != IntentFilter.NO_MATCH_TYPE;
+    }
+
+    private IntentFilter compile(IntentFilterData intentFilterData) {
+      IntentFilter intentFilter = new IntentFilter();
+
+      for (String action : intentFilterData.getActions()) {
+        intentFilter.addAction(action);
+      }
+
+      for (String category : intentFilterData.getCategories()) {
+        intentFilter.addCategory(category);
+      }
+
+      for (String scheme : intentFilterData.getSchemes()) {
+        intentFilter.addDataScheme(scheme);
+      }
+
+      for (String mimeType : intentFilterData.getMimeTypes()) {
+        try {
+          intentFilter.addDataType(mimeType);
+        } catch (IntentFilter.MalformedMimeTypeException ex) {
+          malformedMimeType = ex;
+        }
+      }
+
+      for (String path : intentFilterData.getPaths()) {
+        intentFilter.addDataPath(path, PatternMatcher.PATTERN_LITERAL);
+      }
+
+      for (String pathPattern : intentFilterData.getPathPatterns()) {
+        intentFilter.addDataPath(pathPattern, PatternMatcher.PATTERN_SIMPLE_GLOB);
+      }
+
+      for (String pathPrefix : intentFilterData.getPathPrefixes()) {
+        intentFilter.addDataPath(pathPrefix, PatternMatcher.PATTERN_PREFIX);
+      }
+
+      for (IntentFilterData.DataAuthority authority : intentFilterData.getAuthorities()) {
+        intentFilter.addDataAuthority(authority.getHost(), authority.getPort());
+      }
+
+      return intentFilter;
+    }
+  }
+}
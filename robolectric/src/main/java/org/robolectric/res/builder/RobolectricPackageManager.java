@@ -10,7 +10,6 @@ import android.content.pm.ProviderInfo;
 import android.content.pm.ResolveInfo;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
-import android.os.PatternMatcher;
 import android.util.Pair;
 import java.io.File;
 import java.util.ArrayList;
@@ -27,7 +26,6 @@ import org.robolectric.AndroidManifest;
 import org.robolectric.Robolectric;
 import org.robolectric.res.ActivityData;
 import org.robolectric.res.ContentProviderData;
-import org.robolectric.res.IntentFilterData;
 import org.robolectric.res.ResName;
 import org.robolectric.res.ResourceIndex;
 import org.robolectric.res.ResourceLoader;
@@ -91,6 +89,7 @@ public class RobolectricPackageManager extends StubPackageManager {
   }
 
   private final Map<String, AndroidManifest> androidManifests = new LinkedHashMap<String, AndroidManifest>();
+  private IntentFilterIndex intentFilterIndex;
   private final Map<String, PackageInfo> packageInfos = new LinkedHashMap<String, PackageInfo>();
   private Map<Intent, List<ResolveInfo>> resolveInfoForIntent = new TreeMap<Intent, List<ResolveInfo>>(new IntentComparator());
   private Map<ComponentName, ComponentState> componentList = new LinkedHashMap<ComponentName, ComponentState>();
@@ -360,6 +359,7 @@ public class RobolectricPackageManager extends StubPackageManager {
 
   public void addManifest(AndroidManifest androidManifest, ResourceLoader loader) {
     androidManifests.put(androidManifest.getPackageName(), androidManifest);
+    intentFilterIndex = null;
     ResourceIndex resourceIndex = loader.getResourceIndex();
 
     // first opportunity to access a resource index for this manifest, use it to init the references
@@ -474,90 +474,22 @@ public class RobolectricPackageManager extends StubPackageManager {
   private List<ResolveInfo> queryImplicitIntent(Intent intent, int flags) {
     List<ResolveInfo> resolveInfoList = new ArrayList<ResolveInfo>();
 
-    for (Map.Entry<String, AndroidManifest> androidManifest : androidManifests.entrySet()) {
-      String packageName = androidManifest.getKey();
-      AndroidManifest appManifest = androidManifest.getValue();
-
-      for (Map.Entry<String, ActivityData> activity : appManifest.getActivityDatas().entrySet()) {
-        String activityName = activity.getKey();
-        ActivityData activityData = activity.getValue();
-        if (activityData.getTargetActivity() != null) {
-          activityName = activityData.getTargetActivityName();
-        }
+    if (intentFilterIndex == null) {
+      intentFilterIndex = IntentFilterIndex.build(androidManifests.values());
+    }
 
-        if (matchIntentFilter(activityData, intent)) {
-          ResolveInfo resolveInfo = new ResolveInfo();
-          resolveInfo.resolvePackageName = packageName;
-          resolveInfo.activityInfo = new ActivityInfo();
-          resolveInfo.activityInfo.targetActivity = activityName;
+    for (IntentFilterIndex.Entry entry : intentFilterIndex.query(intent)) {
+      ResolveInfo resolveInfo = new ResolveInfo();
+      resolveInfo.resolvePackageName = entry.packageName;
+      resolveInfo.activityInfo = new ActivityInfo();
+      resolveInfo.activityInfo.targetActivity = entry.activityName;
 
-          resolveInfoList.add(resolveInfo);
-        }
-      }
+      resolveInfoList.add(resolveInfo);
     }
 
     return resolveInfoList;
   }
 
-  private boolean matchIntentFilter(ActivityData activityData, Intent intent) {
-    for (IntentFilterData intentFilterData : activityData.getIntentFilters()) {
-      List<String> actionList = intentFilterData.getActions();
-      List<String> categoryList = intentFilterData.getCategories();
-      IntentFilter intentFilter = new IntentFilter();
-
-      for (String action : actionList) {
-        intentFilter.addAction(action);
-      }
-
-      for (String category : categoryList) {
-        intentFilter.addCategory(category);
-      }
-
-      for (String scheme : intentFilterData.getSchemes()) {
-        intentFilter.addDataScheme(scheme);
-      }
-
-      for (String mimeType : intentFilterData.getMimeTypes()) {
-        try {
-          intentFilter.addDataType(mimeType);
-        } catch (IntentFilter.MalformedMimeTypeException ex) {
-          throw new RuntimeException(ex);
-        }
-      }
-
-      for (String path : intentFilterData.getPaths()) {
-        intentFilter.addDataPath(path, PatternMatcher.PATTERN_LITERAL);
-      }
-
-      for (String pathPattern : intentFilterData.getPathPatterns()) {
-        intentFilter.addDataPath(pathPattern, PatternMatcher.PATTERN_SIMPLE_GLOB);
-      }
-
-      for (String pathPrefix : intentFilterData.getPathPrefixes()) {
-        intentFilter.addDataPath(pathPrefix, PatternMatcher.PATTERN_PREFIX);
-      }
-
-      for (IntentFilterData.DataAuthority authority : intentFilterData.getAuthorities()) {
-        intentFilter.addDataAuthority(authority.getHost(), authority.getPort());
-      }
-
-      // match action
-      boolean matchActionResult = intentFilter.matchAction(intent.getAction());
-      // match category
-      String matchCategoriesResult = intentFilter.matchCategories(intent.getCategories());
-      // match data
-
-      int matchResult = intentFilter.matchData(intent.getType(),
-          (intent.getData() != null ? intent.getData().getScheme() : null),
-          intent.getData());
-      if (matchActionResult && (matchCategoriesResult == null) &&
-          (matchResult != IntentFilter.NO_MATCH_DATA && matchResult != IntentFilter.NO_MATCH_TYPE)){
-        return true;
-      }
-    }
-    return false;
-  }
-
   public boolean isQueryIntentImplicitly() {
     return queryIntentImplicitly;
   }
@@ -5,8 +5,13 @@ import android.content.res.XmlResourceParser;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 import org.robolectric.res.Attribute;
 import org.robolectric.res.Fs;
 import org.robolectric.res.FsFile;
@@ -14,7 +19,6 @@ import org.robolectric.res.ResName;
 import org.robolectric.res.ResourceIndex;
 import org.robolectric.res.XmlFileLoader;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -52,18 +56,67 @@ public class XmlFileBuilder {
     return false;
   }
 
+  /**
+   * Files parsed by {@link #getXmlResourceParser}, keyed by package and path. Resource files don't change while
+   * tests run, so each layout (the path already says which qualifiers it is for) is parsed and compiled once
+   * instead of every time it's inflated, and so are the layouts it includes. Only the compiled form is kept: the
+   * DOM it came from isn't safe to walk from several threads at once. The least recently inflated files are
+   * dropped once there are too many.
+   */
+  private static final Map<String, ParsedFile> PARSED_FILES = new LinkedHashMap<String, ParsedFile>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, ParsedFile> eldest) {
+      return size() > 500;
+    }
+  };
+
+  /**
+   * Documents loaded with the other resources (e.g. {@code res/xml}) compiled so far. The compiled form doesn't
+   * refer back to its document, so entries go away with the resources they were loaded with.
+   */
+  private static final Map<Document, CompiledXml> COMPILED_DOCUMENTS = new WeakHashMap<Document, CompiledXml>();
+
   public static XmlResourceParser getXmlResourceParser(String file, String packageName, ResourceIndex resourceIndex) {
-    FsFile fsFile = Fs.fileFromPath(file);
-    Document document = new XmlFileLoader(null, "xml").parse(fsFile);
-    if (document == null) {
-      throw new Resources.NotFoundException("couldn't find resource " + fsFile.getPath());
+    String key = packageName + ":" + file;
+    ParsedFile parsedFile;
+    synchronized (PARSED_FILES) {
+      parsedFile = PARSED_FILES.get(key);
+    }
+    if (parsedFile == null) {
+      FsFile fsFile = Fs.fileFromPath(file);
+      Document document = new XmlFileLoader(null, "xml").parse(fsFile);
+      if (document == null) {
+        throw new Resources.NotFoundException("couldn't find resource " + fsFile.getPath());
+      }
+      replaceResAutoNamespace(document, packageName);
+      parsedFile = new ParsedFile(new CompiledXml(document, packageName), fsFile.getPath());
+      synchronized (PARSED_FILES) {
+        PARSED_FILES.put(key, parsedFile);
+      }
+    }
+    return new XmlResourceParserImpl(parsedFile.xml, parsedFile.path, resourceIndex);
+  }
+
+  private static class ParsedFile {
+    final CompiledXml xml;
+    final String path;
+
+    ParsedFile(CompiledXml xml, String path) {
+      this.xml = xml;
+      this.path = path;
     }
-    replaceResAutoNamespace(document, packageName);
-    return new XmlFileBuilder().getXml(document, fsFile.getPath(), packageName, resourceIndex);
   }
 
   public XmlResourceParser getXml(Document document, String fileName, String packageName, ResourceIndex resourceIndex) {
-    return new XmlResourceParserImpl(document, fileName, packageName, resourceIndex);
+    CompiledXml xml;
+    synchronized (COMPILED_DOCUMENTS) {
+      xml = COMPILED_DOCUMENTS.get(document);
+      if (xml == null || !xml.packageName.equals(packageName)) {
+        xml = new CompiledXml(document, packageName);
+        COMPILED_DOCUMENTS.put(document, xml);
+      }
+    }
+    return new XmlResourceParserImpl(xml, fileName, resourceIndex);
   }
 
   /**
@@ -97,13 +150,275 @@ public class XmlFileBuilder {
     }
   }
 
+  /**
+   * A document flattened into arrays, the way aapt compiles XML resources: the parser events in order, the nodes
+   * they are on, the attributes of each element, and a pool that every name, namespace and value is an index
+   * into. Navigating it is moving a cursor along the event array and attribute lookups compare ints, so parsing
+   * allocates next to nothing. Instances are immutable (qualified attribute values are filled in on first use, which
+   * is idempotent) and shared by every parser of the same file.
+   */
+  static class CompiledXml {
+    private static final int NONE = -1;
+
+    final String packageName;
+
+    private final String[] strings;
+    private final Map<String, Integer> stringIndices;
+
+    private final int[] eventTypes;
+    private final int[] eventNodes;
+
+    private final int[] nodeNames;
+    private final int[] nodeNamespaces;
+    private final int[] nodeTexts;
+    private final int[] nodeFirstAttributes;
+    private final int[] nodeAttributeCounts;
+
+    private final int[] attributeNamespaces;
+    private final int[] attributeLocalNames;
+    private final int[] attributeNames;
+    private final int[] attributeValues;
+    private final String[] qualifiedValues;
+
+    CompiledXml(Document document, String packageName) {
+      this.packageName = packageName;
+      Builder builder = new Builder(packageName);
+      // documents loaded with the other resources are shared, and the DOM doesn't support concurrent reads
+      synchronized (document) {
+        builder.addElement(document.getDocumentElement());
+      }
+      builder.events.add(XmlResourceParser.END_DOCUMENT, NONE);
+
+      strings = builder.strings.toArray(new String[builder.strings.size()]);
+      stringIndices = builder.stringIndices;
+      eventTypes = builder.events.toArray(0);
+      eventNodes = builder.events.toArray(1);
+      nodeNames = builder.nodes.toArray(0);
+      nodeNamespaces = builder.nodes.toArray(1);
+      nodeTexts = builder.nodes.toArray(2);
+      nodeFirstAttributes = builder.nodes.toArray(3);
+      nodeAttributeCounts = builder.nodes.toArray(4);
+      attributeNamespaces = builder.attributes.toArray(0);
+      attributeLocalNames = builder.attributes.toArray(1);
+      attributeNames = builder.attributes.toArray(2);
+      attributeValues = builder.attributes.toArray(3);
+      qualifiedValues = new String[attributeValues.length];
+    }
+
+    int eventCount() {
+      return eventTypes.length;
+    }
+
+    int eventType(int event) {
+      return eventTypes[event];
+    }
+
+    int eventNode(int event) {
+      return eventNodes[event];
+    }
+
+    String name(int node) {
+      return strings[nodeNames[node]];
+    }
+
+    String namespace(int node) {
+      int namespace = nodeNamespaces[node];
+      return namespace == NONE ? null : strings[namespace];
+    }
+
+    String text(int node) {
+      return strings[nodeTexts[node]];
+    }
+
+    /**
+     * @return The number of attributes of the element, or -1 for a text node.
+     */
+    int attributeCount(int node) {
+      return nodeAttributeCounts[node];
+    }
+
+    /**
+     * @return The index of the element's {@code index}th attribute in the attribute table.
+     */
+    int attribute(int node, int index) {
+      if (index < 0 || index >= nodeAttributeCounts[node]) {
+        throw new IndexOutOfBoundsException(String.valueOf(index));
+      }
+      return nodeFirstAttributes[node] + index;
+    }
+
+    /**
+     * @return The index in the attribute table of the element's attribute with the given namespace and local name,
+     * or -1 if it doesn't have one. Names that aren't in the pool can't be on any element, so they cost one lookup.
+     */
+    int findAttribute(int node, String namespace, String localName) {
+      Integer name = stringIndices.get(localName);
+      if (name == null) return NONE;
+      int namespaceIndex = NONE;
+      if (namespace != null) {
+        Integer index = stringIndices.get(namespace);
+        if (index == null) return NONE;
+        namespaceIndex = index;
+      }
+      int first = nodeFirstAttributes[node];
+      int end = first + Math.max(0, nodeAttributeCounts[node]);
+      for (int attribute = first; attribute < end; attribute++) {
+        if (attributeLocalNames[attribute] == name && attributeNamespaces[attribute] == namespaceIndex) {
+          return attribute;
+        }
+      }
+      return NONE;
+    }
+
+    String attributeNamespace(int attribute) {
+      int namespace = attributeNamespaces[attribute];
+      return namespace == NONE ? null : strings[namespace];
+    }
+
+    String attributeName(int attribute) {
+      return strings[attributeNames[attribute]];
+    }
+
+    String attributeValue(int attribute) {
+      return strings[attributeValues[attribute]];
+    }
+
+    /**
+     * @return The attribute's value with any resource or style reference in it qualified with its package.
+     */
+    String qualifiedAttributeValue(int attribute) {
+      String qualified = qualifiedValues[attribute];
+      if (qualified == null) {
+        qualified = new Attribute(XmlResourceParserImpl.FAKE_RES_NAME, attributeValue(attribute), packageName).qualifiedValue();
+        qualifiedValues[attribute] = qualified;
+      }
+      return qualified;
+    }
+
+    private static class Builder {
+      private final String resNamespace;
+      private final List<String> strings = new ArrayList<String>();
+      private final Map<String, Integer> stringIndices = new HashMap<String, Integer>();
+      private final IntTable events = new IntTable(2);
+      private final IntTable nodes = new IntTable(5);
+      private final IntTable attributes = new IntTable(4);
+
+      Builder(String packageName) {
+        this.resNamespace = Attribute.ANDROID_RES_NS_PREFIX + packageName;
+      }
+
+      void addElement(Node element) {
+        int node = addNode(element, textContent(element));
+        NamedNodeMap attributeMap = element.getAttributes();
+        nodes.set(node, 3, attributes.size());
+        nodes.set(node, 4, attributeMap.getLength());
+        for (int i = 0; i < attributeMap.getLength(); i++) {
+          Node attribute = attributeMap.item(i);
+          String localName = attribute.getLocalName() == null ? attribute.getNodeName() : attribute.getLocalName();
+          String name = resNamespace.equals(attribute.getNamespaceURI()) ? attribute.getLocalName() : attribute.getNodeName();
+          attributes.add(intern(attribute.getNamespaceURI()), intern(localName), intern(name), intern(attribute.getNodeValue()));
+        }
+
+        events.add(XmlResourceParser.START_TAG, node);
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+          addChild(child);
+        }
+        events.add(XmlResourceParser.END_TAG, node);
+      }
+
+      private void addChild(Node child) {
+        switch (child.getNodeType()) {
+          case Node.ELEMENT_NODE:
+            addElement(child);
+            break;
+          case Node.TEXT_NODE:
+            if (!isWhitespace(child.getNodeValue())) {
+              events.add(XmlResourceParser.TEXT, addNode(child, child.getNodeValue()));
+            }
+            break;
+          case Node.CDATA_SECTION_NODE:
+          case Node.COMMENT_NODE:
+            // skipped, like Android does
+            break;
+          default:
+            throw new IllegalArgumentException("Robolectric -> Unsupported node type: " + child.getNodeType() + ".");
+        }
+      }
+
+      private int addNode(Node node, String text) {
+        return nodes.add(intern(node.getNodeName()), intern(node.getNamespaceURI()), intern(text), 0, -1);
+      }
+
+      /**
+       * Elements report their text content, like the DOM does, but only when it's more than whitespace so the
+       * text between tags isn't kept around for every element.
+       */
+      private static String textContent(Node element) {
+        String text = element.getTextContent();
+        return text == null || isWhitespace(text) ? "" : text;
+      }
+
+      private int intern(String string) {
+        if (string == null) return NONE;
+        Integer index = stringIndices.get(string);
+        if (index == null) {
+          index = strings.size();
+          strings.add(string);
+          stringIndices.put(string, index);
+        }
+        return index;
+      }
+    }
+  }
+
+  /**
+   * Rows of ints stored column by column, growing as rows are added.
+   */
+  private static class IntTable {
+    private int[][] columns;
+    private int size;
+
+    IntTable(int columnCount) {
+      columns = new int[columnCount][16];
+    }
+
+    int add(int... row) {
+      if (size == columns[0].length) {
+        for (int i = 0; i < columns.length; i++) {
+          columns[i] = Arrays.copyOf(columns[i], size * 2);
+        }
+      }
+      for (int i = 0; i < columns.length; i++) {
+        columns[i][size] = row[i];
+      }
+      return size++;
+    }
+
+    void set(int row, int column, int value) {
+      columns[column][row] = value;
+    }
+
+    int size() {
+      return size;
+    }
+
+    int[] toArray(int column) {
+      return Arrays.copyOf(columns[column], size);
+    }
+  }
+
+  private static boolean isWhitespace(String text) {
+    return text != null && text.split("\\s").length == 0;
+  }
+
   /**
    * Concrete implementation of the {@link XmlResourceParser}.
    * <p/>
    * <p>Clients expects a pull parser while the resource loader
    * initialise this object with a {@link Document}.
-   * This implementation navigates the dom and emulates a pull
-   * parser by raising all the opportune events.
+   * This implementation walks the document compiled into a
+   * {@link CompiledXml} and emulates a pull parser by raising
+   * all the opportune events.
    * <p/>
    * <p>Note that the original android implementation is based on
    * a set of native methods calls. Here those methods are
@@ -114,14 +429,15 @@ public class XmlFileBuilder {
   public static class XmlResourceParserImpl
       implements XmlResourceParser {
 
-    private static final ResName FAKE_RES_NAME = new ResName("_robolectric_", "attr", "_fake_");
+    static final ResName FAKE_RES_NAME = new ResName("_robolectric_", "attr", "_fake_");
 
-    private final Document document;
+    private final CompiledXml xml;
     private final String fileName;
     private final String packageName;
     private final ResourceIndex resourceIndex;
 
-    private Node currentNode;
+    private int currentEvent = -1;
+    private int currentNode = -1;
 
     private boolean mStarted = false;
     private boolean mDecNextDepth = false;
@@ -129,9 +445,13 @@ public class XmlFileBuilder {
     private int mEventType = START_DOCUMENT;
 
     public XmlResourceParserImpl(Document document, String fileName, String packageName, ResourceIndex resourceIndex) {
-      this.document = document;
+      this(new CompiledXml(document, packageName), fileName, resourceIndex);
+    }
+
+    XmlResourceParserImpl(CompiledXml xml, String fileName, ResourceIndex resourceIndex) {
+      this.xml = xml;
       this.fileName = fileName;
-      this.packageName = packageName;
+      this.packageName = xml.packageName;
       this.resourceIndex = resourceIndex;
     }
 
@@ -215,10 +535,10 @@ public class XmlFileBuilder {
     }
 
     public String getText() {
-      if (currentNode == null) {
+      if (currentNode < 0) {
         return "";
       }
-      return currentNode.getTextContent();
+      return xml.text(currentNode);
     }
 
     public int getLineNumber() {
@@ -235,10 +555,7 @@ public class XmlFileBuilder {
     /*package*/
     public boolean isWhitespace(String text)
         throws XmlPullParserException {
-      if (text == null) {
-        return false;
-      }
-      return text.split("\\s").length == 0;
+      return XmlFileBuilder.isWhitespace(text);
     }
 
     public boolean isWhitespace()
@@ -265,10 +582,10 @@ public class XmlFileBuilder {
     }
 
     public String getNamespace() {
-      if (currentNode == null) {
+      if (currentNode < 0) {
         return "";
       }
-      String namespace = currentNode.getNamespaceURI();
+      String namespace = xml.namespace(currentNode);
       if (namespace == null) {
         return "";
       }
@@ -276,49 +593,38 @@ public class XmlFileBuilder {
     }
 
     public String getName() {
-      if (currentNode == null) {
+      if (currentNode < 0) {
         return "";
       }
-      return currentNode.getNodeName();
+      return xml.name(currentNode);
     }
 
-    Node getAttributeAt(int index) {
-      if (currentNode == null) {
+    int getAttributeAt(int index) {
+      if (currentNode < 0) {
         throw new IndexOutOfBoundsException(String.valueOf(index));
       }
-      NamedNodeMap map = currentNode.getAttributes();
-      if (index >= map.getLength()) {
-        throw new IndexOutOfBoundsException(String.valueOf(index));
-      }
-      return map.item(index);
+      return xml.attribute(currentNode, index);
     }
 
     public String getAttribute(String namespace, String name) {
-      if (currentNode == null) {
-        return null;
-      }
+      int attribute = findAttribute(namespace, name);
+      return attribute < 0 ? null : xml.attributeValue(attribute);
+    }
 
-      Element element = (Element) currentNode;
-      if (element.hasAttributeNS(namespace, name)) {
-        return element.getAttributeNS(namespace, name);
+    private int findAttribute(String namespace, String name) {
+      if (currentNode < 0) {
+        return -1;
       }
-      return null;
+      return xml.findAttribute(currentNode, namespace, name);
     }
 
     public String getAttributeNamespace(int index) {
-      Node attr = getAttributeAt(index);
-      if (attr == null) {
-        return null;
-      }
-      return attr.getNamespaceURI();
+      return xml.attributeNamespace(getAttributeAt(index));
     }
 
     public String getAttributeName(int index) {
       try {
-        Node attr = getAttributeAt(index);
-        return (Attribute.ANDROID_RES_NS_PREFIX + packageName).equals(attr.getNamespaceURI()) ?
-          attr.getLocalName() :
-          attr.getNodeName();
+        return xml.attributeName(getAttributeAt(index));
       } catch (IndexOutOfBoundsException ex) {
         return null;
       }
@@ -335,20 +641,14 @@ public class XmlFileBuilder {
     }
 
     public int getAttributeCount() {
-      if (currentNode == null) {
+      if (currentNode < 0) {
         return -1;
       }
-      return currentNode.getAttributes().getLength();
+      return xml.attributeCount(currentNode);
     }
 
     public String getAttributeValue(int index) {
-      return qualify(getAttributeAt(index).getNodeValue());
-    }
-
-    private String qualify(String value) {
-      Attribute attribute = asAttribute(value);
-      if (attribute == null) return null;
-      return attribute.qualifiedValue();
+      return xml.qualifiedAttributeValue(getAttributeAt(index));
     }
 
     private Attribute asAttribute(String value) {
@@ -372,7 +672,8 @@ public class XmlFileBuilder {
     }
 
     public String getAttributeValue(String namespace, String name) {
-      return qualify(getAttribute(namespace, name));
+      int attribute = findAttribute(namespace, name);
+      return attribute < 0 ? null : xml.qualifiedAttributeValue(attribute);
     }
 
     public int next() throws XmlPullParserException, IOException {
@@ -408,157 +709,13 @@ public class XmlFileBuilder {
     }
 
     /**
-     * A twin implementation of the native android nativeNext(status)
-     *
-     * @throws XmlPullParserException
+     * A twin implementation of the native android nativeNext(status):
+     * moves to the next compiled event.
      */
-    private int nativeNext() throws XmlPullParserException {
-      switch (mEventType) {
-        case (CDSECT): {
-          throw new IllegalArgumentException(
-              "CDSECT is not handled by Android");
-        }
-        case (COMMENT): {
-          throw new IllegalArgumentException(
-              "COMMENT is not handled by Android");
-        }
-        case (DOCDECL): {
-          throw new IllegalArgumentException(
-              "DOCDECL is not handled by Android");
-        }
-        case (ENTITY_REF): {
-          throw new IllegalArgumentException(
-              "ENTITY_REF is not handled by Android");
-        }
-        case (END_DOCUMENT): {
-          // The end document event should have been filtered
-          // from the invoker. This should never happen.
-          throw new IllegalArgumentException(
-              "END_DOCUMENT should not be found here.");
-        }
-        case (END_TAG): {
-          return navigateToNextNode(currentNode);
-        }
-        case (IGNORABLE_WHITESPACE): {
-          throw new IllegalArgumentException(
-              "IGNORABLE_WHITESPACE");
-        }
-        case (PROCESSING_INSTRUCTION): {
-          throw new IllegalArgumentException(
-              "PROCESSING_INSTRUCTION");
-        }
-        case (START_DOCUMENT): {
-          currentNode = document.getDocumentElement();
-          return START_TAG;
-        }
-        case (START_TAG): {
-          if (currentNode.hasChildNodes()) {
-            // The node has children, navigate down
-            return processNextNodeType(
-                currentNode.getFirstChild());
-          } else {
-            // The node has no children
-            return END_TAG;
-          }
-        }
-        case (TEXT): {
-          return navigateToNextNode(currentNode);
-        }
-        default: {
-          // This can only happen if mEventType is
-          // assigned with an unmapped integer.
-          throw new RuntimeException(
-              "Robolectric-> Uknown XML event type: " + mEventType);
-        }
-      }
-
-    }
-
-    /*protected*/ int processNextNodeType(Node node)
-        throws XmlPullParserException {
-      switch (node.getNodeType()) {
-        case (Node.ATTRIBUTE_NODE): {
-          throw new IllegalArgumentException("ATTRIBUTE_NODE");
-        }
-        case (Node.CDATA_SECTION_NODE): {
-          return navigateToNextNode(node);
-        }
-        case (Node.COMMENT_NODE): {
-          return navigateToNextNode(node);
-        }
-        case (Node.DOCUMENT_FRAGMENT_NODE): {
-          throw new IllegalArgumentException("DOCUMENT_FRAGMENT_NODE");
-        }
-        case (Node.DOCUMENT_NODE): {
-          throw new IllegalArgumentException("DOCUMENT_NODE");
-        }
-        case (Node.DOCUMENT_TYPE_NODE): {
-          throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
-        }
-        case (Node.ELEMENT_NODE): {
-          currentNode = node;
-          return START_TAG;
-        }
-        case (Node.ENTITY_NODE): {
-          throw new IllegalArgumentException("ENTITY_NODE");
-        }
-        case (Node.ENTITY_REFERENCE_NODE): {
-          throw new IllegalArgumentException("ENTITY_REFERENCE_NODE");
-        }
-        case (Node.NOTATION_NODE): {
-          throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
-        }
-        case (Node.PROCESSING_INSTRUCTION_NODE): {
-          throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
-        }
-        case (Node.TEXT_NODE): {
-          if (isWhitespace(node.getNodeValue())) {
-            // Skip whitespaces
-            return navigateToNextNode(node);
-          } else {
-            currentNode = node;
-            return TEXT;
-          }
-        }
-        default: {
-          throw new RuntimeException(
-              "Robolectric -> Unknown node type: " +
-                  node.getNodeType() + ".");
-        }
-      }
-    }
-
-    /**
-     * Navigate to the next node after a node and all of his
-     * children have been explored.
-     * <p/>
-     * <p>If the node has unexplored siblings navigate to the
-     * next sibling. Otherwise return to its parent.
-     *
-     * @param node the node which was just explored.
-     * @return {@link XmlPullParserException#START_TAG} if the given
-     *         node has siblings, {@link XmlPullParserException#END_TAG}
-     *         if the node has no unexplored siblings or
-     *         {@link XmlPullParserException#END_DOCUMENT} if the explored
-     *         was the root document.
-     * @throws XmlPullParserException if the parser fails to
-     *                                parse the next node.
-     */
-    int navigateToNextNode(Node node)
-        throws XmlPullParserException {
-      Node nextNode = node.getNextSibling();
-      if (nextNode != null) {
-        // Move to the next siblings
-        return processNextNodeType(nextNode);
-      } else {
-        // Goes back to the parent
-        if (document.getDocumentElement().equals(node)) {
-          currentNode = null;
-          return END_DOCUMENT;
-        }
-        currentNode = node.getParentNode();
-        return END_TAG;
-      }
+    private int nativeNext() {
+      currentEvent++;
+      currentNode = xml.eventNode(currentEvent);
+      return xml.eventType(currentEvent);
     }
 
     public void require(int type, String namespace, String name)
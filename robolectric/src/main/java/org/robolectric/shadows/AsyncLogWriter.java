@@ -0,0 +1,326 @@
+package org.robolectric.shadows;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Formats and writes {@link ShadowLog} output on a background thread. Log calls only enqueue their
+ * {@link ShadowLog.LogItem}; the writer drains the queue in batches, formats them (stack traces included) and
+ * flushes its {@link Sink} once per batch. The queue is bounded, so a thread logging faster than the sink can
+ * keep up with eventually blocks instead of growing the heap.
+ */
+class AsyncLogWriter {
+  private static final int QUEUE_CAPACITY = 8192;
+  private static final int MAX_BATCH_SIZE = 512;
+
+  private final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(QUEUE_CAPACITY);
+  private final PrintStream printStream;
+  private final Thread thread;
+  private Sink sink;
+  private boolean sinkFailed;
+  private boolean closed;
+
+  AsyncLogWriter(Sink sink) {
+    this.sink = sink;
+    this.printStream = new PrintStream(new OutputStream() {
+      @Override public void write(int b) {
+        write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override public void write(byte[] bytes, int offset, int length) {
+        byte[] copy = new byte[length];
+        System.arraycopy(bytes, offset, copy, 0, length);
+        enqueue(copy);
+      }
+    });
+    this.thread = new Thread(new Runnable() {
+      @Override public void run() {
+        drain();
+      }
+    }, "robolectric-log-writer");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * @return A stream whose output is written by this writer, in order with the appended log items.
+   */
+  PrintStream getPrintStream() {
+    return printStream;
+  }
+
+  void append(ShadowLog.LogItem item) {
+    enqueue(item);
+  }
+
+  /**
+   * Makes everything enqueued so far be written to the given sink instead, closing the current one.
+   */
+  void switchTo(Sink sink) {
+    enqueue(sink);
+  }
+
+  /**
+   * Waits until everything enqueued before this call has been written and the sink flushed.
+   */
+  void flush() {
+    if (Thread.currentThread() == thread) return;
+    CountDownLatch barrier = new CountDownLatch(1);
+    if (enqueue(barrier)) {
+      awaitUninterruptibly(barrier);
+    }
+  }
+
+  /**
+   * Writes everything still queued, closes the sink and stops the writer thread.
+   */
+  void close() {
+    flush();
+    synchronized (this) {
+      closed = true;
+    }
+    thread.interrupt();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private boolean enqueue(Object command) {
+    synchronized (this) {
+      if (closed) return false;
+    }
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          queue.put(command);
+          return true;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) Thread.currentThread().interrupt();
+    }
+  }
+
+  private void drain() {
+    List<Object> batch = new ArrayList<Object>(MAX_BATCH_SIZE);
+    StringBuilder text = new StringBuilder();
+    while (true) {
+      try {
+        batch.add(queue.take());
+      } catch (InterruptedException e) {
+        if (isClosed() && queue.isEmpty()) break;
+        continue;
+      }
+      queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+      for (Object command : batch) {
+        if (command instanceof ShadowLog.LogItem) {
+          text.append(((ShadowLog.LogItem) command).format());
+        } else if (command instanceof byte[]) {
+          writeText(text);
+          write((byte[]) command);
+        } else if (command instanceof Sink) {
+          writeText(text);
+          closeSink();
+          sink = (Sink) command;
+          sinkFailed = false;
+        } else if (command instanceof CountDownLatch) {
+          writeText(text);
+          flushSink();
+          ((CountDownLatch) command).countDown();
+        }
+      }
+      writeText(text);
+      if (queue.isEmpty()) {
+        flushSink();
+      }
+      batch.clear();
+    }
+    closeSink();
+  }
+
+  private synchronized boolean isClosed() {
+    return closed;
+  }
+
+  private void writeText(StringBuilder text) {
+    if (text.length() > 0) {
+      write(text.toString().getBytes());
+      text.setLength(0);
+    }
+  }
+
+  private void write(byte[] bytes) {
+    if (sinkFailed) return;
+    try {
+      sink.write(bytes);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  private void flushSink() {
+    if (sinkFailed) return;
+    try {
+      sink.flush();
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  private void closeSink() {
+    try {
+      sink.close();
+    } catch (IOException e) {
+      if (!sinkFailed) fail(e);
+    }
+  }
+
+  /*
+    A sink that failed once, e.g. on a full disk, would most likely fail for every batch after it, so it's reported
+    once and nothing more is written to it; the next sink switched to starts afresh.
+   */
+  private void fail(IOException e) {
+    sinkFailed = true;
+    System.err.println("robolectric: couldn't write log output, dropping it from now on: " + e);
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        latch.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+  }
+
+  interface Sink {
+    void write(byte[] bytes) throws IOException;
+
+    void flush() throws IOException;
+
+    void close() throws IOException;
+  }
+
+  static class PrintStreamSink implements Sink {
+    private final PrintStream stream;
+    private final boolean closeable;
+
+    PrintStreamSink(PrintStream stream, boolean closeable) {
+      this.stream = stream;
+      this.closeable = closeable;
+    }
+
+    @Override public void write(byte[] bytes) {
+      stream.write(bytes, 0, bytes.length);
+    }
+
+    @Override public void flush() {
+      stream.flush();
+    }
+
+    @Override public void close() {
+      if (closeable) {
+        stream.close();
+      } else {
+        stream.flush();
+      }
+    }
+  }
+
+  /**
+   * Writes into a memory-mapped file, growing the mapping a region at a time. The file is locked while the sink
+   * is open and truncated to what was actually written when it is closed.
+   */
+  static class MappedFileSink implements Sink {
+    private static final int REGION_SIZE = 1024 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileLock lock;
+    private MappedByteBuffer region;
+    private long regionStart;
+
+    private MappedFileSink(RandomAccessFile file, FileLock lock) throws IOException {
+      this.file = file;
+      this.lock = lock;
+      file.setLength(0);
+      map(0);
+    }
+
+    /**
+     * Opens {@code <name>.log} in the given directory, or {@code <name>-1.log}, {@code <name>-2.log}... if
+     * another writer in this process already has it open.
+     */
+    static MappedFileSink open(File directory, String name) throws IOException {
+      for (int i = 0; ; i++) {
+        RandomAccessFile file = new RandomAccessFile(new File(directory, name + (i == 0 ? "" : "-" + i) + ".log"), "rw");
+        FileLock lock;
+        try {
+          lock = file.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+          lock = null;
+        }
+        if (lock != null) {
+          return new MappedFileSink(file, lock);
+        }
+        file.close();
+      }
+    }
+
+    @Override public void write(byte[] bytes) throws IOException {
+      int offset = 0;
+      while (offset < bytes.length) {
+        if (!region.hasRemaining()) {
+          map(regionStart + region.position());
+        }
+        int count = Math.min(region.remaining(), bytes.length - offset);
+        region.put(bytes, offset, count);
+        offset += count;
+      }
+    }
+
+    @Override public void flush() {
+    }
+
+    @Override public void close() throws IOException {
+      long size = regionStart + region.position();
+      region.force();
+      region = null;
+      try {
+        file.setLength(size);
+        lock.release();
+      } finally {
+        file.close();
+      }
+    }
+
+    private void map(long start) throws IOException {
+      if (region != null) {
+        region.force();
+      }
+      region = file.getChannel().map(FileChannel.MapMode.READ_WRITE, start, REGION_SIZE);
+      regionStart = start;
+    }
+  }
+}
@@ -15,25 +15,53 @@ import org.robolectric.res.ResourceLoader;
 import org.robolectric.res.TypedResource;
 import org.robolectric.util.Util;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Converter<T> {
-  private static int nextStringCookie = 0xbaaa5;
-  private static final Map<String, ResType> ATTR_TYPE_MAP = new LinkedHashMap<String, ResType>();
-
-  static {
-    ATTR_TYPE_MAP.put("boolean", ResType.BOOLEAN);
-    ATTR_TYPE_MAP.put("color", ResType.COLOR);
-    ATTR_TYPE_MAP.put("dimension", ResType.DIMEN);
-    ATTR_TYPE_MAP.put("float", ResType.FLOAT);
-    ATTR_TYPE_MAP.put("integer", ResType.INTEGER);
-    ATTR_TYPE_MAP.put("string", ResType.CHAR_SEQUENCE);
-    ATTR_TYPE_MAP.put("fraction", ResType.FRACTION);
+  private static final int MAX_STRING_COOKIES = 10000;
+  private static final AtomicInteger nextStringCookie = new AtomicInteger(0xbaaa5);
+  private static final ConcurrentMap<String, Integer> STRING_COOKIES = new ConcurrentHashMap<String, Integer>();
+
+  // converters without state are shared
+  private static final Converter FROM_ATTR_DATA = new FromAttrData();
+  private static final Converter FROM_BOOLEAN = new FromBoolean();
+  private static final Converter FROM_CHAR_SEQUENCE = new FromCharSequence();
+  private static final Converter FROM_COLOR = new FromColor();
+  private static final Converter FROM_FILE_PATH = new FromFilePath();
+  private static final Converter FROM_DIMEN = new FromDimen();
+  private static final Converter FROM_FILE = new FromFile();
+  private static final Converter FROM_FLOAT = new FromFloat();
+  private static final Converter FROM_INT = new FromInt();
+  private static final Converter FROM_FRACTION = new FromFraction();
+  private static final Converter FROM_ARRAY = new FromArray();
+
+  /**
+   * Returns the asset cookie for a string value. Resources caches the drawables and color state lists it loads
+   * from file paths under the value's cookie and data, and our data is always 0, so the same string always gets
+   * the same cookie and no two strings share one.
+   *
+   * Cookies are never handed out twice, so forgetting them (when the table fills up, or when the environment
+   * is reset) only costs a cache miss.
+   */
+  static int getStringCookie(String string) {
+    Integer cookie = STRING_COOKIES.get(string);
+    if (cookie == null) {
+      if (STRING_COOKIES.size() >= MAX_STRING_COOKIES) {
+        STRING_COOKIES.clear();
+      }
+      Integer newCookie = nextStringCookie.getAndIncrement();
+      cookie = STRING_COOKIES.putIfAbsent(string, newCookie);
+      if (cookie == null) {
+        cookie = newCookie;
+      }
+    }
+    return cookie;
   }
 
-  synchronized private static int getNextStringCookie() {
-    return nextStringCookie++;
+  static void resetStringCookies() {
+    STRING_COOKIES.clear();
   }
 
   public static void convertAndFill(Attribute attribute, TypedValue outValue, ResourceLoader resourceLoader, String qualifiers, boolean resolveRefs) {
@@ -52,10 +80,7 @@ public class Converter<T> {
   }
 
   public static void convertAndFill(Attribute attribute, TypedValue outValue, ResourceLoader resourceLoader, String qualifiers, AttrData attrData, boolean resolveRefs) {
-    // short-circuit Android caching of loaded resources cuz our string positions don't remain stable...
-    outValue.assetCookie = getNextStringCookie();
-    String format = attrData.getFormat();
-    String[] types = format.split("\\|");
+    outValue.assetCookie = getStringCookie(attribute.value);
 
     // dereference resource and style references...
     if (attribute.isStyleReference()) {
@@ -91,8 +116,9 @@ public class Converter<T> {
           } else {
             outValue.type = TypedValue.TYPE_STRING;
             outValue.data = 0;
-            outValue.assetCookie = getNextStringCookie();
-            outValue.string = drawableNode.getFsFile().getPath();
+            String path = drawableNode.getFsFile().getPath();
+            outValue.string = path;
+            outValue.assetCookie = getStringCookie(path);
             return;
           }
         } else {
@@ -102,8 +128,9 @@ public class Converter<T> {
         if (dereferencedRef.isFile()) {
           outValue.type = TypedValue.TYPE_STRING;
           outValue.data = 0;
-          outValue.assetCookie = getNextStringCookie();
-          outValue.string = dereferencedRef.asString();
+          String path = dereferencedRef.asString();
+          outValue.string = path;
+          outValue.assetCookie = getStringCookie(path);
           return;
         } else if (dereferencedRef.getData() instanceof String) {
           attribute = new Attribute(attribute.resName, dereferencedRef.asString(), resName.packageName);
@@ -125,70 +152,104 @@ public class Converter<T> {
       return;
     }
 
+    // a literal converts the same way every time, so only the first use of it with this attr does the work
+    AttrData.ConvertedValue converted = attrData.getConvertedValue(attribute.value);
+    if (converted == null) {
+      converted = convertLiteral(attribute.value, attrData);
+      if (converted == null) return;
+      attrData.putConvertedValue(attribute.value, converted);
+    }
+    outValue.type = converted.type;
+    outValue.data = converted.data;
+    outValue.string = converted.string;
+    outValue.assetCookie = converted.hasStringCookie ? getStringCookie(attribute.value) : 0;
+  }
+
+  private static AttrData.ConvertedValue convertLiteral(String value, AttrData attrData) {
+    int[] formats = attrData.getFormatsInOrder();
+
     // Special case for attrs that can be integers or enums, like numColumns.
     // todo: generalize this!
-    if (format.equals("integer|enum") || format.equals("dimension|enum")) {
-      if (attribute.value.matches("^\\d.*")) {
-        types = new String[] { types[0] };
+    int allFormats = attrData.getFormats();
+    if (allFormats == (AttrData.FORMAT_INTEGER | AttrData.FORMAT_ENUM)
+        || allFormats == (AttrData.FORMAT_DIMENSION | AttrData.FORMAT_ENUM)) {
+      if (value.length() > 0 && Character.isDigit(value.charAt(0))) {
+        formats = new int[] { formats[0] };
       } else {
-        types = new String[] { "enum" };
+        formats = new int[] { AttrData.FORMAT_ENUM };
       }
     }
 
-    for (String type : types) {
-      if ("reference".equals(type)) continue; // already handled above
-
-      Converter converter = ATTR_TYPE_MAP.containsKey(type)
-          ? getConverter(ATTR_TYPE_MAP.get(type))
-          : null;
-
-      if (converter == null) {
-        if (type.equals("enum")) {
-          converter = new EnumConverter(attrData);
-        } else if (type.equals("flag")) {
-          converter = new FlagConverter(attrData);
-        }
-      }
-
+    for (int format : formats) {
+      Converter converter = getConverter(format, attrData);
       if (converter != null) {
+        TypedValue converted = new TypedValue();
+        // converters that don't set a cookie leave the literal's own cookie in place
+        converted.assetCookie = -1;
         try {
-          converter.fillTypedValue(attribute.value, outValue);
+          converter.fillTypedValue(value, converted);
         } catch (Exception e) {
-          throw new RuntimeException("error converting " + attribute.value + " using " + converter.getClass().getSimpleName(), e);
+          throw new RuntimeException("error converting " + value + " using " + converter.getClass().getSimpleName(), e);
         }
-        return;
+        return new AttrData.ConvertedValue(converted.type, converted.data, converted.string, converted.assetCookie != 0);
       }
     }
+    return null;
+  }
+
+  private static Converter getConverter(int format, AttrData attrData) {
+    switch (format) {
+      case AttrData.FORMAT_BOOLEAN:
+        return FROM_BOOLEAN;
+      case AttrData.FORMAT_COLOR:
+        return FROM_COLOR;
+      case AttrData.FORMAT_DIMENSION:
+        return FROM_DIMEN;
+      case AttrData.FORMAT_FLOAT:
+        return FROM_FLOAT;
+      case AttrData.FORMAT_INTEGER:
+        return FROM_INT;
+      case AttrData.FORMAT_STRING:
+        return FROM_CHAR_SEQUENCE;
+      case AttrData.FORMAT_FRACTION:
+        return FROM_FRACTION;
+      case AttrData.FORMAT_ENUM:
+        return new EnumConverter(attrData);
+      case AttrData.FORMAT_FLAG:
+        return new FlagConverter(attrData);
+      default:
+        return null; // references were already handled
+    }
   }
 
   public static Converter getConverter(ResType resType) {
     switch (resType) {
       case ATTR_DATA:
-        return new FromAttrData();
+        return FROM_ATTR_DATA;
       case BOOLEAN:
-        return new FromBoolean();
+        return FROM_BOOLEAN;
       case CHAR_SEQUENCE:
-        return new FromCharSequence();
+        return FROM_CHAR_SEQUENCE;
       case COLOR:
-        return new FromColor();
+        return FROM_COLOR;
       case COLOR_STATE_LIST:
-        return new FromFilePath();
+        return FROM_FILE_PATH;
       case DIMEN:
-        return new FromDimen();
+        return FROM_DIMEN;
       case FILE:
-        return new FromFile();
+        return FROM_FILE;
       case FLOAT:
-        return new FromFloat();
+        return FROM_FLOAT;
       case INTEGER:
-        return new FromInt();
+        return FROM_INT;
       case FRACTION:
-        return new FromFraction();
+        return FROM_FRACTION;
       case LAYOUT:
-        return new FromFilePath();
+        return FROM_FILE_PATH;
 
       case CHAR_SEQUENCE_ARRAY:
       case INTEGER_ARRAY:
-        return new FromArray();
+        return FROM_ARRAY;
       default:
         throw new UnsupportedOperationException(resType.name());
     }
@@ -238,7 +299,7 @@ public class Converter<T> {
     @Override public void fillTypedValue(String data, TypedValue typedValue) {
       typedValue.type = TypedValue.TYPE_STRING;
       typedValue.data = 0;
-      typedValue.assetCookie = getNextStringCookie();
+      typedValue.assetCookie = getStringCookie(data);
       typedValue.string = data;
     }
   }
@@ -261,7 +322,7 @@ public class Converter<T> {
       typedValue.type = TypedValue.TYPE_STRING;
       typedValue.data = 0;
       typedValue.string = data;
-      typedValue.assetCookie = getNextStringCookie();
+      typedValue.assetCookie = getStringCookie(data);
     }
   }
 
@@ -294,8 +355,9 @@ public class Converter<T> {
     @Override public void fillTypedValue(FsFile data, TypedValue typedValue) {
       typedValue.type = TypedValue.TYPE_STRING;
       typedValue.data = 0;
-      typedValue.string = data.getPath();
-      typedValue.assetCookie = getNextStringCookie();
+      String path = data.getPath();
+      typedValue.string = path;
+      typedValue.assetCookie = getStringCookie(path);
     }
   }
 
@@ -390,16 +452,19 @@ public class Converter<T> {
     }
 
     protected int findValueFor(String key) {
-      String valueFor = attrData.getValueFor(key);
-      if (valueFor == null) {
-        // Maybe they have passed in the value directly, rather than the name.
-        if (attrData.isValue(key)) {
-          valueFor = key;
-        } else {
-          throw new RuntimeException("no value found for " + key);
+      Integer valueFor = attrData.getIntValueFor(key);
+      if (valueFor != null) {
+        return valueFor;
+      }
+      // Maybe they have passed in the value directly, rather than the name.
+      try {
+        int value = Util.parseInt(key);
+        if (attrData.isIntValue(value)) {
+          return value;
         }
+      } catch (NumberFormatException ignored) {
       }
-      return Util.parseInt(valueFor);
+      throw new RuntimeException("no value found for " + key);
     }
   }
 }
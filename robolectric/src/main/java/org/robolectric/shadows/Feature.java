@@ -0,0 +1,52 @@
+package org.robolectric.shadows;
+
+/**
+ * Simulations that are more faithful than the default shadows but slower, or that depend on the host, so tests opt
+ * into them. Each one is off unless its system property is {@code true}; the properties are read once, when the
+ * SDK environment is set up. A test can turn a feature on or off for itself, and every feature goes back to its
+ * default when static state is reset before the next test.
+ */
+public enum Feature {
+  /** Canvases draw real pixels into their bitmap. See {@link ShadowCanvas#setRasterEnabled(boolean)}. */
+  RASTER_GRAPHICS("robolectric.rasterGraphics"),
+
+  /** Paints measure text with the JDK's font engine. See {@link ShadowPaint#setTextMeasurementEnabled(boolean)}. */
+  TEXT_MEASUREMENT("robolectric.textMeasurement"),
+
+  /** Animators step with the choreographer's frames. See {@link ShadowValueAnimator#setFrameDrivenEnabled(boolean)}. */
+  FRAME_DRIVEN_ANIMATORS("robolectric.frameDrivenAnimators"),
+
+  /** The choreographer runs frames on a simulated vsync. See {@link ShadowChoreographer#setVsyncEnabled(boolean)}. */
+  SIMULATED_VSYNC("robolectric.simulatedVsync"),
+
+  /** Shared preferences are written to files. See {@link ShadowContext#setPersistentSharedPreferencesEnabled(boolean)}. */
+  PERSISTENT_SHARED_PREFERENCES("robolectric.persistentSharedPreferences");
+
+  private final String systemProperty;
+  private final boolean enabledByDefault;
+  private boolean enabled;
+
+  Feature(String systemProperty) {
+    this.systemProperty = systemProperty;
+    this.enabledByDefault = Boolean.getBoolean(systemProperty);
+    this.enabled = enabledByDefault;
+  }
+
+  public String getSystemProperty() {
+    return systemProperty;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public static void resetAll() {
+    for (Feature feature : values()) {
+      feature.enabled = feature.enabledByDefault;
+    }
+  }
+}
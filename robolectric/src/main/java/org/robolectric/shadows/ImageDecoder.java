@@ -0,0 +1,164 @@
+package org.robolectric.shadows;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decodes PNG, JPEG, GIF and whatever else the JDK's image I/O can read into the non-premultiplied ARGB pixels
+ * {@link ShadowBitmap} stores, for {@link ShadowBitmapFactory}.
+ *
+ * Reading the bounds only parses the image header. Full decodes subsample while reading, so a large image decoded
+ * with {@code inSampleSize} never exists at full size in memory. Results for images with a stable key (resources
+ * and files) are kept in a least-recently-used cache bounded by the bytes of pixels it holds.
+ */
+class ImageDecoder {
+  static final long DEFAULT_CACHE_BYTES = 32 * 1024 * 1024;
+
+  private static final Cache CACHE = new Cache(Long.getLong("robolectric.bitmapCacheBytes", DEFAULT_CACHE_BYTES));
+
+  interface Source {
+    ImageInputStream open() throws IOException;
+  }
+
+  static class Image {
+    final int width;
+    final int height;
+    /** Pixels row by row, or {@code null} if only the bounds were read. */
+    final int[] pixels;
+
+    Image(int width, int height, int[] pixels) {
+      this.width = width;
+      this.height = height;
+      this.pixels = pixels;
+    }
+
+    int byteCount() {
+      return pixels == null ? 0 : pixels.length * 4;
+    }
+  }
+
+  /**
+   * Decodes the image, or just its bounds, going through the cache when a key is given.
+   *
+   * @param key Identifies the image contents, or {@code null} if they can't be cached
+   * @param source Where to read the image from
+   * @param justBounds Whether only the size is wanted
+   * @param sampleSize Subsampling factor; the image is decoded at {@code size / sampleSize}
+   * @return The image, or {@code null} if the source isn't an image that image I/O can read
+   */
+  static Image decode(String key, Source source, boolean justBounds, int sampleSize) {
+    sampleSize = Math.max(1, sampleSize);
+    String cacheKey = key == null ? null : key + "@" + sampleSize;
+    if (cacheKey != null) {
+      Image cached = CACHE.get(cacheKey);
+      if (cached != null && (justBounds || cached.pixels != null)) {
+        return cached;
+      }
+    }
+
+    Image image = read(source, justBounds, sampleSize);
+    if (image != null && cacheKey != null) {
+      CACHE.put(cacheKey, image);
+    }
+    return image;
+  }
+
+  private static Image read(Source source, boolean justBounds, int sampleSize) {
+    ImageInputStream in = null;
+    ImageReader reader = null;
+    try {
+      in = source.open();
+      if (in == null) return null;
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+      if (!readers.hasNext()) return null;
+      reader = readers.next();
+      reader.setInput(in, true, true);
+
+      int width = sampled(reader.getWidth(0), sampleSize);
+      int height = sampled(reader.getHeight(0), sampleSize);
+      if (justBounds) {
+        return new Image(width, height, null);
+      }
+
+      ImageReadParam param = reader.getDefaultReadParam();
+      if (sampleSize > 1) {
+        param.setSourceSubsampling(sampleSize, sampleSize, 0, 0);
+      }
+      BufferedImage decoded = reader.read(0, param);
+      width = Math.min(width, decoded.getWidth());
+      height = Math.min(height, decoded.getHeight());
+      int[] pixels = decoded.getRGB(0, 0, width, height, null, 0, width);
+      return new Image(width, height, pixels);
+    } catch (IOException e) {
+      return null;
+    } catch (RuntimeException e) {
+      // image I/O throws all sorts of unchecked exceptions on images it can't handle, e.g. CMYK JPEGs
+      return null;
+    } finally {
+      if (reader != null) {
+        reader.dispose();
+      }
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException ignored) {
+        }
+      }
+    }
+  }
+
+  private static int sampled(int size, int sampleSize) {
+    return Math.max(1, size / sampleSize);
+  }
+
+  /**
+   * Least-recently-used map of decoded images, evicting once the pixels it holds exceed the byte budget or it
+   * holds too many entries.
+   */
+  static class Cache {
+    private static final int MAX_ENTRIES = 1024;
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Image> images = new LinkedHashMap<String, Image>(16, 0.75f, true);
+    private long bytes;
+
+    Cache(long maxBytes) {
+      this.maxBytes = maxBytes;
+    }
+
+    synchronized Image get(String key) {
+      return images.get(key);
+    }
+
+    synchronized void put(String key, Image image) {
+      if (image.byteCount() > maxBytes) return;
+
+      Image previous = images.put(key, image);
+      if (previous != null) {
+        bytes -= previous.byteCount();
+      }
+      bytes += image.byteCount();
+
+      Iterator<Map.Entry<String, Image>> eldest = images.entrySet().iterator();
+      while ((bytes > maxBytes || images.size() > MAX_ENTRIES) && eldest.hasNext()) {
+        bytes -= eldest.next().getValue().byteCount();
+        eldest.remove();
+      }
+    }
+
+    synchronized long byteCount() {
+      return bytes;
+    }
+
+    synchronized int size() {
+      return images.size();
+    }
+  }
+}
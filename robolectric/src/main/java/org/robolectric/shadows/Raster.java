@@ -0,0 +1,155 @@
+package org.robolectric.shadows;
+
+import java.util.Arrays;
+
+/**
+ * Pixel operations behind the raster mode of {@link ShadowCanvas}. Pixels are non-premultiplied ARGB ints, as
+ * returned by {@link android.graphics.Bitmap#getPixel(int, int)}, stored row by row.
+ *
+ * Every operation is broken down into horizontal spans of a single row which are then filled or blended in a
+ * tight loop over a contiguous range of the array. Opaque spans are plain {@link Arrays#fill} or
+ * {@link System#arraycopy} calls, which the JIT turns into vectorized stores.
+ */
+class Raster {
+  private final int[] pixels;
+  private final int width;
+
+  Raster(int[] pixels, int width) {
+    this.pixels = pixels;
+    this.width = width;
+  }
+
+  /**
+   * Fills the given device rectangle, already clipped to the raster, drawing {@code color} over what is there.
+   */
+  void fillRect(int left, int top, int right, int bottom, int color) {
+    for (int y = top; y < bottom; y++) {
+      fillSpan(y, left, right, color);
+    }
+  }
+
+  /**
+   * Fills the ellipse inscribed in the given device rectangle, one row span at a time; the clip applies to
+   * the spans. A pixel is inside when its center is. With a positive {@code inset} only the ring between the
+   * ellipse and the one inset by that much inside it is filled, which is how ovals are stroked.
+   */
+  void fillOval(float left, float top, float right, float bottom, float inset,
+                int clipLeft, int clipTop, int clipRight, int clipBottom, int color) {
+    float cx = (left + right) / 2;
+    float cy = (top + bottom) / 2;
+    float rx = (right - left) / 2;
+    float ry = (bottom - top) / 2;
+    if (rx <= 0 || ry <= 0) return;
+    float innerRx = rx - inset;
+    float innerRy = ry - inset;
+    boolean ring = inset > 0 && innerRx > 0 && innerRy > 0;
+
+    int firstRow = Math.max(clipTop, (int) Math.floor(top));
+    int lastRow = Math.min(clipBottom, (int) Math.ceil(bottom));
+    for (int y = firstRow; y < lastRow; y++) {
+      float dx = halfWidth(y + 0.5f - cy, rx, ry);
+      if (dx < 0) continue;
+      int spanLeft = Math.max(clipLeft, (int) Math.ceil(cx - dx - 0.5f));
+      int spanRight = Math.min(clipRight, (int) Math.floor(cx + dx - 0.5f) + 1);
+
+      float innerDx = ring ? halfWidth(y + 0.5f - cy, innerRx, innerRy) : -1;
+      if (innerDx < 0) {
+        fillSpan(y, spanLeft, spanRight, color);
+      } else {
+        int holeLeft = Math.max(spanLeft, (int) Math.ceil(cx - innerDx - 0.5f));
+        int holeRight = Math.min(spanRight, (int) Math.floor(cx + innerDx - 0.5f) + 1);
+        fillSpan(y, spanLeft, holeLeft, color);
+        fillSpan(y, Math.max(spanLeft, holeRight), spanRight, color);
+      }
+    }
+  }
+
+  private static float halfWidth(float dy, float rx, float ry) {
+    float normalized = dy / ry;
+    float squared = 1 - normalized * normalized;
+    return squared < 0 ? -1 : rx * (float) Math.sqrt(squared);
+  }
+
+  /**
+   * Draws the {@code src} rectangle of the source pixels scaled into the {@code dst} rectangle, with nearest
+   * neighbour sampling. Only the part of {@code dst} within the clip is touched.
+   */
+  void drawPixels(int[] srcPixels, int srcWidth, int srcLeft, int srcTop, int srcRight, int srcBottom,
+                  float dstLeft, float dstTop, float dstRight, float dstBottom,
+                  int clipLeft, int clipTop, int clipRight, int clipBottom) {
+    float dstWidth = dstRight - dstLeft;
+    float dstHeight = dstBottom - dstTop;
+    if (dstWidth <= 0 || dstHeight <= 0 || srcRight <= srcLeft || srcBottom <= srcTop) return;
+
+    int left = Math.max(clipLeft, Math.round(dstLeft));
+    int top = Math.max(clipTop, Math.round(dstTop));
+    int right = Math.min(clipRight, Math.round(dstRight));
+    int bottom = Math.min(clipBottom, Math.round(dstBottom));
+    if (left >= right || top >= bottom) return;
+
+    float xScale = (srcRight - srcLeft) / dstWidth;
+    float yScale = (srcBottom - srcTop) / dstHeight;
+    int[] columns = new int[right - left];
+    for (int x = left; x < right; x++) {
+      columns[x - left] = clamp(srcLeft + (int) ((x + 0.5f - dstLeft) * xScale), srcLeft, srcRight - 1);
+    }
+    boolean unscaled = xScale == 1 && columns[columns.length - 1] - columns[0] == columns.length - 1;
+
+    for (int y = top; y < bottom; y++) {
+      int srcRow = clamp(srcTop + (int) ((y + 0.5f - dstTop) * yScale), srcTop, srcBottom - 1) * srcWidth;
+      int dstRow = y * width;
+      if (unscaled && isOpaque(srcPixels, srcRow + columns[0], columns.length)) {
+        System.arraycopy(srcPixels, srcRow + columns[0], pixels, dstRow + left, columns.length);
+        continue;
+      }
+      for (int i = 0; i < columns.length; i++) {
+        int index = dstRow + left + i;
+        pixels[index] = blend(srcPixels[srcRow + columns[i]], pixels[index]);
+      }
+    }
+  }
+
+  private void fillSpan(int y, int left, int right, int color) {
+    if (left >= right) return;
+    int alpha = color >>> 24;
+    if (alpha == 0) return;
+    int row = y * width;
+    if (alpha == 0xff) {
+      Arrays.fill(pixels, row + left, row + right, color);
+    } else {
+      for (int i = row + left; i < row + right; i++) {
+        pixels[i] = blend(color, pixels[i]);
+      }
+    }
+  }
+
+  private static boolean isOpaque(int[] pixels, int offset, int length) {
+    for (int i = offset; i < offset + length; i++) {
+      if ((pixels[i] >>> 24) != 0xff) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Composites non-premultiplied {@code src} over {@code dst} (Porter-Duff SRC_OVER).
+   */
+  static int blend(int src, int dst) {
+    int srcAlpha = src >>> 24;
+    if (srcAlpha == 0xff) return src;
+    if (srcAlpha == 0) return dst;
+
+    int dstAlpha = dst >>> 24;
+    int dstWeight = dstAlpha * (0xff - srcAlpha) / 0xff;
+    int outAlpha = srcAlpha + dstWeight;
+    if (outAlpha == 0) return 0;
+
+    int red = (((src >> 16) & 0xff) * srcAlpha + ((dst >> 16) & 0xff) * dstWeight) / outAlpha;
+    int green = (((src >> 8) & 0xff) * srcAlpha + ((dst >> 8) & 0xff) * dstWeight) / outAlpha;
+    int blue = ((src & 0xff) * srcAlpha + (dst & 0xff) * dstWeight) / outAlpha;
+    return (outAlpha << 24) | (red << 16) | (green << 8) | blue;
+  }
+
+  private static int clamp(int value, int min, int max) {
+    return value < min ? min : value > max ? max : value;
+  }
+}
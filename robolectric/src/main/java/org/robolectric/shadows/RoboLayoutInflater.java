@@ -5,12 +5,22 @@ import android.util.AttributeSet;
 import android.view.LayoutInflater;
 import android.view.View;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class RoboLayoutInflater extends LayoutInflater {
   private static final String[] sClassPrefixList = {
       "android.widget.",
       "android.webkit."
   };
 
+  /**
+   * The prefix each unqualified view name was found with, or {@link #SUPER_PREFIX} for names only the base class
+   * can find (like {@code View}), so only the first inflation of a name pays for the failed class lookups.
+   */
+  private static final Map<String, Object> prefixesByName = new ConcurrentHashMap<String, Object>();
+  private static final Object SUPER_PREFIX = new Object();
+
   /**
    * Instead of instantiating directly, you should retrieve an instance
    * through {@link android.content.Context#getSystemService}
@@ -33,10 +43,18 @@ public class RoboLayoutInflater extends LayoutInflater {
    call through to our super class.
    */
   @Override protected View onCreateView(String name, AttributeSet attrs) throws ClassNotFoundException {
+    Object knownPrefix = prefixesByName.get(name);
+    if (knownPrefix == SUPER_PREFIX) {
+      return super.onCreateView(name, attrs);
+    } else if (knownPrefix != null) {
+      return createView(name, (String) knownPrefix, attrs);
+    }
+
     for (String prefix : sClassPrefixList) {
       try {
         View view = createView(name, prefix, attrs);
         if (view != null) {
+          prefixesByName.put(name, prefix);
           return view;
         }
       } catch (ClassNotFoundException e) {
@@ -45,7 +63,9 @@ public class RoboLayoutInflater extends LayoutInflater {
       }
     }
 
-    return super.onCreateView(name, attrs);
+    View view = super.onCreateView(name, attrs);
+    prefixesByName.put(name, SUPER_PREFIX);
+    return view;
   }
 
   public LayoutInflater cloneInContext(Context newContext) {
@@ -4,6 +4,7 @@ import android.animation.Animator;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.RealObject;
+import org.robolectric.internal.ReflectionHelpers;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -33,6 +34,15 @@ public class ShadowAnimator {
   @Implementation
   public void addListener(AnimatorListener listener) {
     listeners.add(listener);
+    if (ShadowValueAnimator.isFrameDrivenEnabled()) {
+      // frame-driven animators notify through the real listener list
+      ArrayList<AnimatorListener> realListeners = ReflectionHelpers.getFieldReflectively(realObject, "mListeners");
+      if (realListeners == null) {
+        realListeners = new ArrayList<AnimatorListener>();
+        ReflectionHelpers.setFieldReflectively(realObject, "mListeners", realListeners);
+      }
+      realListeners.add(listener);
+    }
   }
 
   @Implementation
@@ -33,6 +33,7 @@ import org.robolectric.res.ResourceLoader;
 import org.robolectric.tester.org.apache.http.FakeHttpLayer;
 import org.robolectric.util.Scheduler;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -43,6 +44,8 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static android.content.pm.PackageManager.PERMISSION_DENIED;
 import static android.content.pm.PackageManager.PERMISSION_GRANTED;
@@ -65,7 +68,8 @@ public class ShadowApplication extends ShadowContextWrapper {
   private List<Intent> stoppedServies = new ArrayList<Intent>();
   private List<Intent> broadcastIntents = new ArrayList<Intent>();
   private List<ServiceConnection> unboundServiceConnections = new ArrayList<ServiceConnection>();
-  private List<Wrapper> registeredReceivers = new ArrayList<Wrapper>();
+  private int broadcastIntentsLimit = -1;
+  private final ReceiverRegistry registeredReceivers = new ReceiverRegistry();
   private Map<String, Intent> stickyIntents = new LinkedHashMap<String, Intent>();
   private FakeHttpLayer fakeHttpLayer = new FakeHttpLayer();
   private Looper mainLooper = ShadowLooper.myLooper();
@@ -387,15 +391,12 @@ public class ShadowApplication extends ShadowContextWrapper {
     Returns the BroadcaseReceivers wrappers, matching intent's action and permissions.
    */
   private List<Wrapper> getAppropriateWrappers(Intent intent, String receiverPermission) {
-    broadcastIntents.add(intent);
+    recordBroadcastIntent(intent);
 
     List<Wrapper> result = new ArrayList<Wrapper>();
 
-    List<Wrapper> copy = new ArrayList<Wrapper>();
-    copy.addAll(registeredReceivers);
-    for (Wrapper wrapper : copy) {
-      if (hasMatchingPermission(wrapper.broadcastPermission, receiverPermission)
-          && wrapper.intentFilter.matchAction(intent.getAction())) {
+    for (Wrapper wrapper : getWrappersForAction(intent.getAction())) {
+      if (hasMatchingPermission(wrapper.broadcastPermission, receiverPermission)) {
         final int match = wrapper.intentFilter.matchData(intent.getType(), intent.getScheme(), intent.getData());
         if (match != IntentFilter.NO_MATCH_DATA && match != IntentFilter.NO_MATCH_TYPE) {
           result.add(wrapper);
@@ -451,10 +452,42 @@ public class ShadowApplication extends ShadowContextWrapper {
     postToWrappers(wrappers, intent, receiverPermission);
   }
 
+  private void recordBroadcastIntent(Intent intent) {
+    if (broadcastIntentsLimit != 0) {
+      broadcastIntents.add(intent);
+      trimBroadcastIntents();
+    }
+  }
+
+  private void trimBroadcastIntents() {
+    if (broadcastIntentsLimit >= 0 && broadcastIntents.size() > broadcastIntentsLimit) {
+      broadcastIntents.subList(0, broadcastIntents.size() - broadcastIntentsLimit).clear();
+    }
+  }
+
+  /*
+    Returns the registered wrappers whose filter declares the given action, in registration order.
+   */
+  private List<Wrapper> getWrappersForAction(String action) {
+    return action == null ? Collections.<Wrapper>emptyList() : registeredReceivers.forAction(action);
+  }
+
   public List<Intent> getBroadcastIntents() {
     return broadcastIntents;
   }
 
+  /**
+   * Non-Android accessor. Limits how many broadcast intents are kept for {@link #getBroadcastIntents()}, dropping
+   * the oldest ones first. A limit of {@code 0} stops recording broadcasts; a negative limit (the default) keeps
+   * all of them.
+   *
+   * @param limit maximum number of broadcast intents to retain
+   */
+  public void setBroadcastIntentsLimit(int limit) {
+    this.broadcastIntentsLimit = limit;
+    trimBroadcastIntents();
+  }
+
   @Implementation
   public void sendStickyBroadcast(Intent intent) {
     stickyIntents.put(intent.getAction(), intent);
@@ -478,9 +511,13 @@ public class ShadowApplication extends ShadowContextWrapper {
     return registerReceiverWithContext(receiver, filter, broadcastPermission, scheduler, realApplication);
   }
 
+  /*
+    As on Android, where the filter is handed to the system when the receiver is registered, changes made to the
+    filter afterwards don't affect which broadcasts the receiver gets, so the receiver is indexed by a copy of it.
+   */
   Intent registerReceiverWithContext(BroadcastReceiver receiver, IntentFilter filter, String broadcastPermission, Handler scheduler, Context context) {
     if (receiver != null) {
-      registeredReceivers.add(new Wrapper(receiver, filter, context, broadcastPermission, scheduler));
+      registeredReceivers.add(new Wrapper(receiver, filter == null ? null : new IntentFilter(filter), context, broadcastPermission, scheduler));
     }
     return processStickyIntents(filter, receiver, context);
   }
@@ -511,16 +548,7 @@ public class ShadowApplication extends ShadowContextWrapper {
   @Override
   @Implementation
   public void unregisterReceiver(BroadcastReceiver broadcastReceiver) {
-    boolean found = false;
-    Iterator<Wrapper> iterator = registeredReceivers.iterator();
-    while (iterator.hasNext()) {
-      Wrapper wrapper = iterator.next();
-      if (wrapper.broadcastReceiver == broadcastReceiver) {
-        iterator.remove();
-        found = true;
-      }
-    }
-    if (!found) {
+    if (!registeredReceivers.removeReceiver(broadcastReceiver)) {
       throw new IllegalArgumentException("Receiver not registered: " + broadcastReceiver);
     }
   }
@@ -563,20 +591,13 @@ public class ShadowApplication extends ShadowContextWrapper {
   }
 
   public boolean hasReceiverForIntent(Intent intent) {
-    for (Wrapper wrapper : registeredReceivers) {
-      if (wrapper.intentFilter.matchAction(intent.getAction())) {
-        return true;
-      }
-    }
-    return false;
+    return !getWrappersForAction(intent.getAction()).isEmpty();
   }
 
   public List<BroadcastReceiver> getReceiversForIntent(Intent intent) {
     ArrayList<BroadcastReceiver> broadcastReceivers = new ArrayList<BroadcastReceiver>();
-    for (Wrapper wrapper : registeredReceivers) {
-      if (wrapper.intentFilter.matchAction(intent.getAction())) {
-        broadcastReceivers.add(wrapper.getBroadcastReceiver());
-      }
+    for (Wrapper wrapper : getWrappersForAction(intent.getAction())) {
+      broadcastReceivers.add(wrapper.getBroadcastReceiver());
     }
     return broadcastReceivers;
   }
@@ -723,6 +744,150 @@ public class ShadowApplication extends ShadowContextWrapper {
     this.latestListPopupWindow = latestListPopupWindow;
   }
 
+  /*
+    The registered receivers in registration order, indexed by the actions their filters declare. Every change,
+    including ones made through getRegisteredReceivers(), updates the list and the index together under the
+    registry's lock; only the lists of the actions the changed receiver declares are copied. Readers never lock:
+    the list and the per-action lists are copy-on-write, so iterating them while receivers (un)register is safe.
+   */
+  private static class ReceiverRegistry extends AbstractList<Wrapper> {
+    private final List<Wrapper> wrappers = new CopyOnWriteArrayList<Wrapper>();
+    private final Map<String, List<Wrapper>> wrappersByAction = new ConcurrentHashMap<String, List<Wrapper>>();
+
+    @Override public Wrapper get(int index) {
+      return wrappers.get(index);
+    }
+
+    @Override public int size() {
+      return wrappers.size();
+    }
+
+    /*
+      Iterates over the receivers registered when it was created; removing through it unregisters the receiver.
+     */
+    @Override public Iterator<Wrapper> iterator() {
+      final Iterator<Wrapper> snapshot = wrappers.iterator();
+      return new Iterator<Wrapper>() {
+        private Wrapper last;
+
+        @Override public boolean hasNext() {
+          return snapshot.hasNext();
+        }
+
+        @Override public Wrapper next() {
+          return last = snapshot.next();
+        }
+
+        @Override public void remove() {
+          if (last == null) throw new IllegalStateException();
+          removeWrapper(last);
+          last = null;
+        }
+      };
+    }
+
+    @Override public synchronized void add(int index, Wrapper wrapper) {
+      boolean appending = index == wrappers.size();
+      wrappers.add(index, wrapper);
+      modCount++;
+      if (appending) {
+        for (String action : actionsOf(wrapper)) {
+          List<Wrapper> forAction = new ArrayList<Wrapper>(forAction(action));
+          forAction.add(wrapper);
+          put(action, forAction);
+        }
+      } else {
+        for (String action : actionsOf(wrapper)) {
+          reindex(action);
+        }
+      }
+    }
+
+    @Override public synchronized Wrapper set(int index, Wrapper wrapper) {
+      Wrapper previous = wrappers.set(index, wrapper);
+      for (String action : actionsOf(previous)) {
+        reindex(action);
+      }
+      for (String action : actionsOf(wrapper)) {
+        reindex(action);
+      }
+      return previous;
+    }
+
+    @Override public synchronized Wrapper remove(int index) {
+      Wrapper removed = wrappers.remove(index);
+      modCount++;
+      unindex(removed);
+      return removed;
+    }
+
+    synchronized boolean removeReceiver(BroadcastReceiver broadcastReceiver) {
+      boolean found = false;
+      for (Wrapper wrapper : wrappers) {
+        if (wrapper.broadcastReceiver == broadcastReceiver) {
+          removeWrapper(wrapper);
+          found = true;
+        }
+      }
+      return found;
+    }
+
+    private synchronized void removeWrapper(Wrapper wrapper) {
+      if (wrappers.remove(wrapper)) {
+        modCount++;
+        unindex(wrapper);
+      }
+    }
+
+    List<Wrapper> forAction(String action) {
+      List<Wrapper> forAction = wrappersByAction.get(action);
+      return forAction == null ? Collections.<Wrapper>emptyList() : forAction;
+    }
+
+    private void unindex(Wrapper wrapper) {
+      for (String action : actionsOf(wrapper)) {
+        List<Wrapper> forAction = new ArrayList<Wrapper>(forAction(action));
+        for (Iterator<Wrapper> iterator = forAction.iterator(); iterator.hasNext(); ) {
+          if (iterator.next() == wrapper) {
+            iterator.remove();
+            break;
+          }
+        }
+        put(action, forAction);
+      }
+    }
+
+    private void reindex(String action) {
+      List<Wrapper> forAction = new ArrayList<Wrapper>();
+      for (Wrapper wrapper : wrappers) {
+        if (wrapper.intentFilter.hasAction(action)) {
+          forAction.add(wrapper);
+        }
+      }
+      put(action, forAction);
+    }
+
+    private void put(String action, List<Wrapper> forAction) {
+      if (forAction.isEmpty()) {
+        wrappersByAction.remove(action);
+      } else {
+        wrappersByAction.put(action, Collections.unmodifiableList(forAction));
+      }
+    }
+
+    private static List<String> actionsOf(Wrapper wrapper) {
+      List<String> actions = new ArrayList<String>();
+      Iterator<String> iterator = wrapper.intentFilter.actionsIterator();
+      while (iterator != null && iterator.hasNext()) {
+        String action = iterator.next();
+        if (!actions.contains(action)) {
+          actions.add(action);
+        }
+      }
+      return actions;
+    }
+  }
+
   public class Wrapper {
     public BroadcastReceiver broadcastReceiver;
     public IntentFilter intentFilter;
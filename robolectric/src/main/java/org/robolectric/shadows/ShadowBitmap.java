@@ -11,7 +11,9 @@ import org.robolectric.res.ResName;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 
+import static org.robolectric.Robolectric.directlyOn;
 import static org.robolectric.Robolectric.shadowOf;
 
 @SuppressWarnings({"UnusedDeclaration"})
@@ -176,6 +178,7 @@ public class ShadowBitmap {
     shadowBitmap.createdFromFilter = filter;
     shadowBitmap.width = dstWidth;
     shadowBitmap.height = dstHeight;
+    shadowBitmap.copyPixelsFrom(shadowOf(src), 0, 0, src.getWidth(), src.getHeight());
     return scaledBitmap;
   }
 
@@ -199,6 +202,7 @@ public class ShadowBitmap {
     shadowBitmap.createdFromHeight = height;
     shadowBitmap.width = width;
     shadowBitmap.height = height;
+    shadowBitmap.copyPixelsFrom(shadowOf(src), x, y, width, height);
     return newBitmap;
   }
 
@@ -237,6 +241,9 @@ public class ShadowBitmap {
     shadowBitmap.createdFromFilter = filter;
     shadowBitmap.width = width;
     shadowBitmap.height = height;
+    if (matrix == null || matrix.isIdentity()) {
+      shadowBitmap.copyPixelsFrom(shadowOf(src), x, y, width, height);
+    }
     return newBitmap;
   }
 
@@ -283,6 +290,84 @@ public class ShadowBitmap {
     colors[y * getWidth() + x] = color;
   }
 
+  @Implementation
+  public void getPixels(int[] pixels, int offset, int stride, int x, int y, int width, int height) {
+    if (!ShadowCanvas.isRasterEnabled()) {
+      directlyOn(realBitmap, Bitmap.class).getPixels(pixels, offset, stride, x, y, width, height);
+      return;
+    }
+    internalCheckPixelsAccess(x, y, width, height, offset, stride, pixels);
+    for (int row = 0; row < height; row++) {
+      if (colors != null) {
+        System.arraycopy(colors, (y + row) * getWidth() + x, pixels, offset + row * stride, width);
+      } else {
+        Arrays.fill(pixels, offset + row * stride, offset + row * stride + width, 0);
+      }
+    }
+  }
+
+  @Implementation
+  public void setPixels(int[] pixels, int offset, int stride, int x, int y, int width, int height) {
+    if (!ShadowCanvas.isRasterEnabled()) {
+      directlyOn(realBitmap, Bitmap.class).setPixels(pixels, offset, stride, x, y, width, height);
+      return;
+    }
+    if (isRecycled()) {
+      throw new IllegalStateException("Can't call setPixels() on a recycled bitmap");
+    } else if (!isMutable()) {
+      throw new IllegalStateException("Bitmap is immutable");
+    }
+    internalCheckPixelsAccess(x, y, width, height, offset, stride, pixels);
+    int[] target = getOrCreatePixelArray();
+    for (int row = 0; row < height; row++) {
+      System.arraycopy(pixels, offset + row * stride, target, (y + row) * getWidth() + x, width);
+    }
+  }
+
+  @Implementation
+  public void eraseColor(int color) {
+    if (!ShadowCanvas.isRasterEnabled()) {
+      directlyOn(realBitmap, Bitmap.class).eraseColor(color);
+      return;
+    }
+    if (isRecycled()) {
+      throw new IllegalStateException("Can't erase a recycled bitmap");
+    } else if (!isMutable()) {
+      throw new IllegalStateException("cannot erase immutable bitmaps");
+    }
+    if (getWidth() > 0 && getHeight() > 0) {
+      Arrays.fill(getOrCreatePixelArray(), color);
+    }
+  }
+
+  /**
+   * @return This bitmap's pixels, or {@code null} if none were ever set or drawn.
+   */
+  int[] getPixelArray() {
+    return colors;
+  }
+
+  void setPixelArray(int[] pixels) {
+    colors = pixels;
+  }
+
+  /**
+   * @return This bitmap's pixels, allocated as transparent black if none were set or drawn yet.
+   */
+  int[] getOrCreatePixelArray() {
+    if (colors == null) {
+      colors = new int[getWidth() * getHeight()];
+    }
+    return colors;
+  }
+
+  private void copyPixelsFrom(ShadowBitmap src, int x, int y, int width, int height) {
+    if (src.colors == null || x < 0 || y < 0 || x + width > src.width || y + height > src.height) return;
+    colors = new int[this.width * this.height];
+    new Raster(colors, this.width).drawPixels(src.colors, src.width, x, y, x + width, y + height,
+        0, 0, this.width, this.height, 0, 0, this.width, this.height);
+  }
+
   @Implementation
   public int getRowBytes() {
     return getBytesPerPixel(config) * getWidth();
@@ -310,6 +395,11 @@ public class ShadowBitmap {
     shadowBitmap.createdFromBitmap = realBitmap;
     shadowBitmap.config = config;
     shadowBitmap.mutable = isMutable;
+    shadowBitmap.width = width;
+    shadowBitmap.height = height;
+    if (colors != null) {
+      shadowBitmap.colors = colors.clone();
+    }
     return newBitmap;
   }
 
@@ -418,6 +508,21 @@ public class ShadowBitmap {
     appendDescription(" for resource:" + resName.getFullyQualifiedName());
   }
 
+  private void internalCheckPixelsAccess(int x, int y, int width, int height, int offset, int stride, int[] pixels) {
+    if (x < 0 || y < 0 || width < 0 || height < 0 || x + width > getWidth() || y + height > getHeight()) {
+      throw new IllegalArgumentException("x, y, width and height must be within the bitmap");
+    }
+    if (Math.abs(stride) < width) {
+      throw new IllegalArgumentException("abs(stride) must be >= width");
+    }
+    if (width > 0 && height > 0) {
+      int lastRow = offset + (height - 1) * stride;
+      if (offset < 0 || offset + width > pixels.length || lastRow < 0 || lastRow + width > pixels.length) {
+        throw new ArrayIndexOutOfBoundsException();
+      }
+    }
+  }
+
   private void internalCheckPixelAccess(int x, int y) {
     if (x < 0) {
       throw new IllegalArgumentException("x must be >= 0");
@@ -4,6 +4,7 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.ColorFilter;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import org.robolectric.annotation.Implementation;
@@ -24,7 +25,8 @@ public class ShadowBitmapDrawable extends ShadowDrawable {
   @RealObject private BitmapDrawable realBitmapDrawable;
 
   /**
-   * Draws the contained bitmap onto the canvas at 0,0 with a default {@code Paint}
+   * Draws the contained bitmap onto the canvas at 0,0 with a default {@code Paint}, or stretched over the
+   * drawable's bounds in raster mode.
    *
    * @param canvas the canvas to draw on
    */
@@ -32,7 +34,12 @@ public class ShadowBitmapDrawable extends ShadowDrawable {
   public void draw(Canvas canvas) {
     Paint paint = new Paint();
     paint.setColorFilter(colorFilter);
-    canvas.drawBitmap(realBitmapDrawable.getBitmap(), 0, 0, paint);
+    Rect bounds = realBitmapDrawable.getBounds();
+    if (ShadowCanvas.isRasterEnabled() && !bounds.isEmpty()) {
+      canvas.drawBitmap(realBitmapDrawable.getBitmap(), null, bounds, paint);
+    } else {
+      canvas.drawBitmap(realBitmapDrawable.getBitmap(), 0, 0, paint);
+    }
   }
 
   @Implementation
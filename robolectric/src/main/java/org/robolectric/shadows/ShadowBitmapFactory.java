@@ -6,6 +6,7 @@ import android.graphics.BitmapFactory;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.net.Uri;
+import android.util.DisplayMetrics;
 import android.util.TypedValue;
 import org.robolectric.Robolectric;
 import org.robolectric.annotation.Implementation;
@@ -13,10 +14,17 @@ import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.Resetter;
 import org.robolectric.internal.NamedStream;
 import org.robolectric.internal.ReflectionHelpers;
+import org.robolectric.res.DrawableNode;
+import org.robolectric.res.FsFile;
+import org.robolectric.res.ResName;
+import org.robolectric.res.ResourceLoader;
 import org.robolectric.util.Join;
 
 import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
@@ -27,7 +35,6 @@ import java.util.Map;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
-import static org.robolectric.Robolectric.directlyOn;
 import static org.robolectric.Robolectric.shadowOf;
 
 @SuppressWarnings({"UnusedDeclaration"})
@@ -38,9 +45,23 @@ public class ShadowBitmapFactory {
   @Implementation
   public static Bitmap decodeResourceStream(Resources res, TypedValue value,
                         InputStream is, Rect pad, BitmapFactory.Options opts) {
-    Bitmap bitmap = directlyOn(BitmapFactory.class, "decodeResourceStream", new ReflectionHelpers.ClassParameter(Resources.class, res),
-        new ReflectionHelpers.ClassParameter(TypedValue.class, value), new ReflectionHelpers.ClassParameter(InputStream.class, is),
-        new ReflectionHelpers.ClassParameter(Rect.class, pad), new ReflectionHelpers.ClassParameter(BitmapFactory.Options.class, opts));
+    if (opts == null) {
+      opts = new BitmapFactory.Options();
+    }
+    if (opts.inDensity == 0 && value != null) {
+      if (value.density == TypedValue.DENSITY_DEFAULT) {
+        opts.inDensity = DisplayMetrics.DENSITY_DEFAULT;
+      } else if (value.density != TypedValue.DENSITY_NONE) {
+        opts.inDensity = value.density;
+      }
+    }
+    if (opts.inTargetDensity == 0 && res != null) {
+      opts.inTargetDensity = res.getDisplayMetrics().densityDpi;
+    }
+
+    // the value's string is the path of the resource file, which makes decoding the stream cacheable
+    String key = value != null && value.string != null ? "resource:" + value.string : null;
+    Bitmap bitmap = decodeCacheableStream(is, opts, key);
     if (value != null && value.string != null && value.string.toString().contains(".9.")) {
       // todo: better support for nine-patches
       ReflectionHelpers.callInstanceMethodReflectively(bitmap, "setNinePatchChunk", new ReflectionHelpers.ClassParameter(byte[].class, new byte[0]));
@@ -50,7 +71,9 @@ public class ShadowBitmapFactory {
 
   @Implementation
   public static Bitmap decodeResource(Resources res, int id, BitmapFactory.Options options) {
-    Bitmap bitmap = create("resource:" + getResourceName(id), options);
+    String name = "resource:" + getResourceName(id);
+    ImageDecoder.Image image = widthAndHeightMap.containsKey(name) ? null : decodeResourceFile(res, id, options);
+    Bitmap bitmap = createFromImage(name, options, image);
     shadowOf(bitmap).createdFromResId = id;
     return bitmap;
   }
@@ -64,6 +87,22 @@ public class ShadowBitmapFactory {
     return shadowOf(Robolectric.application).getResourceLoader().getNameForId(id);
   }
 
+  private static ImageDecoder.Image decodeResourceFile(Resources res, int id, BitmapFactory.Options options) {
+    ResourceLoader resourceLoader = shadowOf(Robolectric.application).getResourceLoader();
+    ResName resName = resourceLoader.getResourceIndex().getResName(id);
+    if (resName == null) return null;
+    Resources resources = res != null ? res : Robolectric.application.getResources();
+    DrawableNode drawableNode = resourceLoader.getDrawableNode(resName, shadowOf(resources.getAssets()).getQualifiers());
+    if (drawableNode == null) return null;
+
+    final FsFile file = drawableNode.getFsFile();
+    return ImageDecoder.decode("resource:" + file.getPath(), new ImageDecoder.Source() {
+      @Override public ImageInputStream open() throws IOException {
+        return new MemoryCacheImageInputStream(new ByteArrayInputStream(file.getBytes()));
+      }
+    }, justDecodeBounds(options), sampleSize(options));
+  }
+
   @Implementation
   public static Bitmap decodeFile(String pathName) {
     return decodeFile(pathName, null);
@@ -71,7 +110,18 @@ public class ShadowBitmapFactory {
 
   @Implementation
   public static Bitmap decodeFile(String pathName, BitmapFactory.Options options) {
-    Bitmap bitmap = create("file:" + pathName, options);
+    String name = "file:" + pathName;
+    final File file = new File(pathName);
+    ImageDecoder.Image image = null;
+    if (!widthAndHeightMap.containsKey(name) && file.isFile()) {
+      String key = "file:" + file.getAbsolutePath() + "@" + file.lastModified() + ":" + file.length();
+      image = ImageDecoder.decode(key, new ImageDecoder.Source() {
+        @Override public ImageInputStream open() throws IOException {
+          return ImageIO.createImageInputStream(file);
+        }
+      }, justDecodeBounds(options), sampleSize(options));
+    }
+    Bitmap bitmap = createFromImage(name, options, image);
     ShadowBitmap shadowBitmap = shadowOf(bitmap);
     shadowBitmap.createdFromPath = pathName;
     return bitmap;
@@ -84,9 +134,20 @@ public class ShadowBitmapFactory {
 
   @Implementation
   public static Bitmap decodeStream(InputStream is, Rect outPadding, BitmapFactory.Options opts) {
+    return decodeCacheableStream(is, opts, null);
+  }
+
+  private static Bitmap decodeCacheableStream(final InputStream is, BitmapFactory.Options opts, String key) {
     String name = is instanceof NamedStream ? is.toString().replace("stream for ", "") : null;
-    Point imageSize = is instanceof NamedStream ? null : getImageSizeFromStream(is);
-    Bitmap bitmap = create(name, opts, imageSize);
+    ImageDecoder.Image image = null;
+    if (!(is instanceof NamedStream) && is != null) {
+      image = ImageDecoder.decode(key, new ImageDecoder.Source() {
+        @Override public ImageInputStream open() {
+          return new MemoryCacheImageInputStream(is);
+        }
+      }, justDecodeBounds(opts), sampleSize(opts));
+    }
+    Bitmap bitmap = createFromImage(name, opts, image);
     ShadowBitmap shadowBitmap = shadowOf(bitmap);
     shadowBitmap.createdFromStream = is;
 
@@ -102,7 +163,7 @@ public class ShadowBitmapFactory {
   }
 
   @Implementation
-  public static Bitmap decodeByteArray(byte[] data, int offset, int length, BitmapFactory.Options opts) {
+  public static Bitmap decodeByteArray(final byte[] data, final int offset, final int length, BitmapFactory.Options opts) {
     String desc = new String(data);
     if (!Charset.forName("US-ASCII").newEncoder().canEncode(desc)) {
       Checksum checksumEngine = new CRC32();
@@ -114,7 +175,17 @@ public class ShadowBitmapFactory {
     if (offset != 0 || length != data.length) {
       desc += " bytes " + offset + ".." + length;
     }
-    return create(desc, opts);
+
+    // a size hint wins over the image, so there's no need to decode it
+    ImageDecoder.Image image = null;
+    if (!widthAndHeightMap.containsKey(desc)) {
+      image = ImageDecoder.decode(null, new ImageDecoder.Source() {
+        @Override public ImageInputStream open() {
+          return new MemoryCacheImageInputStream(new ByteArrayInputStream(data, offset, length));
+        }
+      }, justDecodeBounds(opts), sampleSize(opts));
+    }
+    return createFromImage(desc, opts, image);
   }
 
   static Bitmap create(String name) {
@@ -126,6 +197,29 @@ public class ShadowBitmapFactory {
   }
 
   public static Bitmap create(final String name, final BitmapFactory.Options options, final Point widthAndHeight) {
+    Point p = new Point(selectWidthAndHeight(name, widthAndHeight));
+    if (options != null && options.inSampleSize > 1) {
+      p.x = p.x / options.inSampleSize;
+      p.y = p.y / options.inSampleSize;
+
+      p.x = p.x == 0 ? 1 : p.x;
+      p.y = p.y == 0 ? 1 : p.y;
+    }
+    return create(name, options, p, null);
+  }
+
+  /**
+   * Creates a bitmap of the decoded image's size and pixels, unless the image couldn't be decoded or there is a
+   * size hint for {@code name}, which win over the actual image.
+   */
+  private static Bitmap createFromImage(String name, BitmapFactory.Options options, ImageDecoder.Image image) {
+    if (image == null || widthAndHeightMap.containsKey(name)) {
+      return create(name, options, (Point) null);
+    }
+    return create(name, options, new Point(image.width, image.height), image.pixels == null ? null : image.pixels.clone());
+  }
+
+  private static Bitmap create(String name, BitmapFactory.Options options, Point size, int[] pixels) {
     Bitmap bitmap = Robolectric.newInstanceOf(Bitmap.class);
     ShadowBitmap shadowBitmap = shadowOf(bitmap);
     shadowBitmap.appendDescription(name == null ? "Bitmap" : "Bitmap for " + name);
@@ -144,20 +238,13 @@ public class ShadowBitmapFactory {
       shadowBitmap.appendDescription(optionsString);
     }
 
-    Point p = new Point(selectWidthAndHeight(name, widthAndHeight));
-    if (options != null && options.inSampleSize > 1) {
-      p.x = p.x / options.inSampleSize;
-      p.y = p.y / options.inSampleSize;
-
-      p.x = p.x == 0 ? 1 : p.x;
-      p.y = p.y == 0 ? 1 : p.y;
-    }
-
-    shadowBitmap.setWidth(p.x);
-    shadowBitmap.setHeight(p.y);
+    shadowBitmap.setWidth(size.x);
+    shadowBitmap.setHeight(size.y);
+    shadowBitmap.setPixelArray(pixels);
     if (options != null) {
-      options.outWidth = p.x;
-      options.outHeight = p.y;
+      options.outWidth = size.x;
+      options.outHeight = size.y;
+      shadowBitmap.setMutable(options.inMutable);
     }
     return bitmap;
   }
@@ -203,19 +290,11 @@ public class ShadowBitmapFactory {
     return new Point(100, 100);
   }
 
-  private static Point getImageSizeFromStream(final InputStream is) {
-    try {
-      final BufferedImage image = ImageIO.read(is);
-
-      if (image != null) {
-        return new Point(image.getWidth(), image.getHeight());
-      } else {
-        return null;
-      }
-    }
+  private static boolean justDecodeBounds(BitmapFactory.Options options) {
+    return options != null && options.inJustDecodeBounds;
+  }
 
-    catch (IOException e) {
-      throw new RuntimeException(e);
-    }
+  private static int sampleSize(BitmapFactory.Options options) {
+    return options != null ? options.inSampleSize : 1;
   }
 }
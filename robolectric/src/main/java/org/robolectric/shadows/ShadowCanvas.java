@@ -10,10 +10,12 @@ import android.graphics.Rect;
 import android.graphics.RectF;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.RealObject;
 
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.robolectric.Robolectric.directlyOn;
 import static org.robolectric.Robolectric.newInstanceOf;
 import static org.robolectric.Robolectric.shadowOf;
 
@@ -23,10 +25,16 @@ import static org.robolectric.Robolectric.shadowOf;
  * Broken.
  * This implementation is very specific to the application for which it was developed.
  * Todo: Reimplement. Consider using the same strategy of collecting a history of draw events and providing methods for writing queries based on type, number, and order of events.
+ * <p/>
+ * In raster mode (see {@link #setRasterEnabled(boolean)}) drawing operations are also executed into the pixels of
+ * the target bitmap, honouring translations, scales, {@code clipRect} and {@code save}/{@code restore}, so tests
+ * can assert on {@link Bitmap#getPixel(int, int)} of what a view or drawable actually drew. Outside of raster mode,
+ * matrix, clip and save/restore calls go to {@code Canvas} as they always did.
  */
 @SuppressWarnings({"UnusedDeclaration"})
 @Implements(Canvas.class)
 public class ShadowCanvas {
+  @RealObject private Canvas realCanvas;
   private List<PathPaintHistoryEvent> pathPaintEvents = new ArrayList<PathPaintHistoryEvent>();
   private List<CirclePaintHistoryEvent> circlePaintEvents = new ArrayList<CirclePaintHistoryEvent>();
   private List<ArcPaintHistoryEvent> arcPaintEvents = new ArrayList<ArcPaintHistoryEvent>();
@@ -39,11 +47,28 @@ public class ShadowCanvas {
   private float scaleY = 1;
   private int height;
   private int width;
+  private DeviceState deviceState = new DeviceState();
+  private final List<DeviceState> savedDeviceStates = new ArrayList<DeviceState>();
 
   public void __constructor__(Bitmap bitmap) {
     this.targetBitmap = bitmap;
   }
 
+  /**
+   * Non-Android accessor. Turns {@link Feature#RASTER_GRAPHICS} on or off. In raster mode canvases fill, blend and
+   * copy real ARGB pixels into their target bitmap and keep their own save, clip and matrix stacks, and views draw
+   * themselves and their children instead of just their background.
+   *
+   * @param enabled whether drawing operations should touch pixels
+   */
+  public static void setRasterEnabled(boolean enabled) {
+    Feature.RASTER_GRAPHICS.setEnabled(enabled);
+  }
+
+  public static boolean isRasterEnabled() {
+    return Feature.RASTER_GRAPHICS.isEnabled();
+  }
+
   public void appendDescription(String s) {
     shadowOf(targetBitmap).appendDescription(s);
   }
@@ -66,28 +91,208 @@ public class ShadowCanvas {
   public void translate(float x, float y) {
     this.translateX = x;
     this.translateY = y;
+    deviceState.translate(x, y);
   }
 
   @Implementation
   public void scale(float sx, float sy) {
     this.scaleX = sx;
     this.scaleY = sy;
+    deviceState.scale(sx, sy);
   }
 
   @Implementation
   public void scale(float sx, float sy, float px, float py) {
     this.scaleX = sx;
     this.scaleY = sy;
+    deviceState.translate(px, py);
+    deviceState.scale(sx, sy);
+    deviceState.translate(-px, -py);
+  }
+
+  @Implementation
+  public void concat(Matrix matrix) {
+    if (!isRasterEnabled()) {
+      directlyOn(realCanvas, Canvas.class).concat(matrix);
+      return;
+    }
+    float[] values = new float[9];
+    matrix.getValues(values);
+    if (isScaleAndTranslate(values)) {
+      deviceState.translate(values[Matrix.MTRANS_X], values[Matrix.MTRANS_Y]);
+      deviceState.scale(values[Matrix.MSCALE_X], values[Matrix.MSCALE_Y]);
+    }
+  }
+
+  @Implementation
+  public void setMatrix(Matrix matrix) {
+    if (!isRasterEnabled()) {
+      directlyOn(realCanvas, Canvas.class).setMatrix(matrix);
+      return;
+    }
+    float[] values = new float[9];
+    if (matrix != null) {
+      matrix.getValues(values);
+    }
+    if (matrix == null || !isScaleAndTranslate(values)) {
+      deviceState.scaleX = deviceState.scaleY = 1;
+      deviceState.translateX = deviceState.translateY = 0;
+    } else {
+      deviceState.scaleX = values[Matrix.MSCALE_X];
+      deviceState.scaleY = values[Matrix.MSCALE_Y];
+      deviceState.translateX = values[Matrix.MTRANS_X];
+      deviceState.translateY = values[Matrix.MTRANS_Y];
+    }
+  }
+
+  @Implementation
+  public void getMatrix(Matrix ctm) {
+    if (!isRasterEnabled()) {
+      directlyOn(realCanvas, Canvas.class).getMatrix(ctm);
+      return;
+    }
+    ctm.setScale(deviceState.scaleX, deviceState.scaleY);
+    ctm.postTranslate(deviceState.translateX, deviceState.translateY);
+  }
+
+  @Implementation
+  public int save() {
+    if (!isRasterEnabled()) return directlyOn(realCanvas, Canvas.class).save();
+    savedDeviceStates.add(deviceState.copy());
+    return savedDeviceStates.size();
+  }
+
+  @Implementation
+  public int save(int saveFlags) {
+    if (!isRasterEnabled()) return directlyOn(realCanvas, Canvas.class).save(saveFlags);
+    return save();
+  }
+
+  @Implementation
+  public int saveLayer(RectF bounds, Paint paint, int saveFlags) {
+    if (!isRasterEnabled()) return directlyOn(realCanvas, Canvas.class).saveLayer(bounds, paint, saveFlags);
+    return save();
+  }
+
+  @Implementation
+  public int saveLayerAlpha(RectF bounds, int alpha, int saveFlags) {
+    if (!isRasterEnabled()) return directlyOn(realCanvas, Canvas.class).saveLayerAlpha(bounds, alpha, saveFlags);
+    return save();
+  }
+
+  @Implementation
+  public int saveLayerAlpha(float left, float top, float right, float bottom, int alpha, int saveFlags) {
+    if (!isRasterEnabled()) {
+      return directlyOn(realCanvas, Canvas.class).saveLayerAlpha(left, top, right, bottom, alpha, saveFlags);
+    }
+    return save();
+  }
+
+  @Implementation
+  public void restore() {
+    if (!isRasterEnabled()) {
+      directlyOn(realCanvas, Canvas.class).restore();
+      return;
+    }
+    if (!savedDeviceStates.isEmpty()) {
+      deviceState = savedDeviceStates.remove(savedDeviceStates.size() - 1);
+    }
+  }
+
+  @Implementation
+  public int getSaveCount() {
+    if (!isRasterEnabled()) return directlyOn(realCanvas, Canvas.class).getSaveCount();
+    return savedDeviceStates.size() + 1;
+  }
+
+  @Implementation
+  public void restoreToCount(int saveCount) {
+    if (!isRasterEnabled()) {
+      directlyOn(realCanvas, Canvas.class).restoreToCount(saveCount);
+      return;
+    }
+    while (savedDeviceStates.size() >= Math.max(saveCount, 1)) {
+      restore();
+    }
+  }
+
+  @Implementation
+  public boolean clipRect(float left, float top, float right, float bottom) {
+    if (!isRasterEnabled()) return directlyOn(realCanvas, Canvas.class).clipRect(left, top, right, bottom);
+    return deviceState.clip(left, top, right, bottom);
+  }
+
+  @Implementation
+  public boolean clipRect(int left, int top, int right, int bottom) {
+    if (!isRasterEnabled()) return directlyOn(realCanvas, Canvas.class).clipRect(left, top, right, bottom);
+    return deviceState.clip(left, top, right, bottom);
+  }
+
+  @Implementation
+  public boolean clipRect(Rect rect) {
+    if (!isRasterEnabled()) return directlyOn(realCanvas, Canvas.class).clipRect(rect);
+    return deviceState.clip(rect.left, rect.top, rect.right, rect.bottom);
+  }
+
+  @Implementation
+  public boolean clipRect(RectF rect) {
+    if (!isRasterEnabled()) return directlyOn(realCanvas, Canvas.class).clipRect(rect);
+    return deviceState.clip(rect.left, rect.top, rect.right, rect.bottom);
   }
 
   @Implementation
   public void drawPaint(Paint paint) {
     drawnPaint = paint;
+    fillClip(paint.getColor());
   }
 
   @Implementation
   public void drawColor(int color) {
     appendDescription("draw color " + color);
+    fillClip(color);
+  }
+
+  @Implementation
+  public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+    Raster raster = raster();
+    if (raster == null) return;
+
+    int color = paint.getColor();
+    if (isStroke(paint)) {
+      float halfStroke = Math.max(1f, paint.getStrokeWidth()) / 2;
+      float outerLeft = left - halfStroke, outerTop = top - halfStroke;
+      float outerRight = right + halfStroke, outerBottom = bottom + halfStroke;
+      float innerLeft = left + halfStroke, innerTop = top + halfStroke;
+      float innerRight = right - halfStroke, innerBottom = bottom - halfStroke;
+      if (innerLeft >= innerRight || innerTop >= innerBottom) {
+        fillRect(raster, outerLeft, outerTop, outerRight, outerBottom, color);
+      } else {
+        fillRect(raster, outerLeft, outerTop, outerRight, innerTop, color);
+        fillRect(raster, outerLeft, innerBottom, outerRight, outerBottom, color);
+        fillRect(raster, outerLeft, innerTop, innerLeft, innerBottom, color);
+        fillRect(raster, innerRight, innerTop, outerRight, innerBottom, color);
+      }
+    } else {
+      fillRect(raster, left, top, right, bottom, color);
+    }
+  }
+
+  @Implementation
+  public void drawRect(Rect rect, Paint paint) {
+    drawRect(rect.left, rect.top, rect.right, rect.bottom, paint);
+  }
+
+  @Implementation
+  public void drawRect(RectF rect, Paint paint) {
+    drawRect(rect.left, rect.top, rect.right, rect.bottom, paint);
+  }
+
+  @Implementation
+  public void drawOval(RectF oval, Paint paint) {
+    if (oval == null) {
+      throw new NullPointerException();
+    }
+    fillOval(oval.left, oval.top, oval.right, oval.bottom, paint);
   }
 
   @Implementation
@@ -103,6 +308,8 @@ public class ShadowCanvas {
     if (scaleX != 1 && scaleY != 1) {
       appendDescription(" scaled by (" + scaleX + "," + scaleY + ")");
     }
+
+    drawPixels(bitmap, null, left, top, left + bitmap.getWidth(), top + bitmap.getHeight());
   }
 
   @Implementation
@@ -119,6 +326,10 @@ public class ShadowCanvas {
       descriptionBuilder.append( " taken from ").append(src.toString());
     }
     appendDescription(descriptionBuilder.toString());
+
+    if (dst != null) {
+      drawPixels(bitmap, src, dst.left, dst.top, dst.right, dst.bottom);
+    }
   }
 
   @Implementation
@@ -126,6 +337,14 @@ public class ShadowCanvas {
     describeBitmap(bitmap, paint);
 
     appendDescription(" transformed by matrix");
+
+    float[] values = new float[9];
+    matrix.getValues(values);
+    if (isScaleAndTranslate(values)) {
+      RectF bounds = new RectF(0, 0, bitmap.getWidth(), bitmap.getHeight());
+      matrix.mapRect(bounds);
+      drawPixels(bitmap, null, bounds.left, bounds.top, bounds.right, bounds.bottom);
+    }
   }
 
   @Implementation
@@ -139,6 +358,7 @@ public class ShadowCanvas {
   @Implementation
   public void drawCircle(float cx, float cy, float radius, Paint paint) {
     circlePaintEvents.add(new CirclePaintHistoryEvent(cx, cy, radius, paint));
+    fillOval(cx - radius, cy - radius, cx + radius, cy + radius, paint);
   }
 
   @Implementation
@@ -147,6 +367,98 @@ public class ShadowCanvas {
     arcPaintEvents.add(new ArcPaintHistoryEvent(oval, startAngle, sweepAngle, useCenter, paint));
   }
 
+  /**
+   * @return The raster to draw into, or {@code null} if raster mode is off or there is nothing to draw into.
+   */
+  private Raster raster() {
+    if (!isRasterEnabled() || targetBitmap == null || targetBitmap.getWidth() <= 0 || targetBitmap.getHeight() <= 0) {
+      return null;
+    }
+    return new Raster(shadowOf(targetBitmap).getOrCreatePixelArray(), targetBitmap.getWidth());
+  }
+
+  private void fillClip(int color) {
+    Raster raster = raster();
+    if (raster != null) {
+      raster.fillRect(clipLeft(), clipTop(), clipRight(), clipBottom(), color);
+    }
+  }
+
+  private void fillRect(Raster raster, float left, float top, float right, float bottom, int color) {
+    float deviceLeft = deviceState.mapX(left), deviceRight = deviceState.mapX(right);
+    float deviceTop = deviceState.mapY(top), deviceBottom = deviceState.mapY(bottom);
+    raster.fillRect(
+        Math.max(clipLeft(), Math.round(Math.min(deviceLeft, deviceRight))),
+        Math.max(clipTop(), Math.round(Math.min(deviceTop, deviceBottom))),
+        Math.min(clipRight(), Math.round(Math.max(deviceLeft, deviceRight))),
+        Math.min(clipBottom(), Math.round(Math.max(deviceTop, deviceBottom))),
+        color);
+  }
+
+  private void fillOval(float left, float top, float right, float bottom, Paint paint) {
+    Raster raster = raster();
+    if (raster == null) return;
+
+    float deviceLeft = deviceState.mapX(left), deviceRight = deviceState.mapX(right);
+    float deviceTop = deviceState.mapY(top), deviceBottom = deviceState.mapY(bottom);
+    float inset = 0;
+    if (isStroke(paint)) {
+      float halfStroke = Math.max(1f, paint.getStrokeWidth() * Math.min(Math.abs(deviceState.scaleX), Math.abs(deviceState.scaleY))) / 2;
+      deviceLeft -= halfStroke;
+      deviceTop -= halfStroke;
+      deviceRight += halfStroke;
+      deviceBottom += halfStroke;
+      inset = halfStroke * 2;
+    }
+    raster.fillOval(Math.min(deviceLeft, deviceRight), Math.min(deviceTop, deviceBottom),
+        Math.max(deviceLeft, deviceRight), Math.max(deviceTop, deviceBottom), inset,
+        clipLeft(), clipTop(), clipRight(), clipBottom(), paint.getColor());
+  }
+
+  private void drawPixels(Bitmap bitmap, Rect src, float left, float top, float right, float bottom) {
+    Raster raster = raster();
+    int[] srcPixels = shadowOf(bitmap).getPixelArray();
+    if (raster == null || srcPixels == null) return;
+
+    Rect srcRect = new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight());
+    if (src != null && !srcRect.intersect(src)) return;
+
+    float deviceLeft = deviceState.mapX(left), deviceRight = deviceState.mapX(right);
+    float deviceTop = deviceState.mapY(top), deviceBottom = deviceState.mapY(bottom);
+    raster.drawPixels(srcPixels, bitmap.getWidth(), srcRect.left, srcRect.top, srcRect.right, srcRect.bottom,
+        Math.min(deviceLeft, deviceRight), Math.min(deviceTop, deviceBottom),
+        Math.max(deviceLeft, deviceRight), Math.max(deviceTop, deviceBottom),
+        clipLeft(), clipTop(), clipRight(), clipBottom());
+  }
+
+  private int clipLeft() {
+    return Math.max(0, deviceState.clipLeft);
+  }
+
+  private int clipTop() {
+    return Math.max(0, deviceState.clipTop);
+  }
+
+  private int clipRight() {
+    return Math.min(targetBitmap.getWidth(), deviceState.clipRight);
+  }
+
+  private int clipBottom() {
+    return Math.min(targetBitmap.getHeight(), deviceState.clipBottom);
+  }
+
+  /**
+   * Only scales and translations are tracked in device space; anything which would rotate or skew is ignored.
+   */
+  private static boolean isScaleAndTranslate(float[] values) {
+    return values[Matrix.MSKEW_X] == 0 && values[Matrix.MSKEW_Y] == 0
+        && values[Matrix.MPERSP_0] == 0 && values[Matrix.MPERSP_1] == 0 && values[Matrix.MPERSP_2] == 1;
+  }
+
+  private static boolean isStroke(Paint paint) {
+    return paint.getStyle() == Paint.Style.STROKE;
+  }
+
   private void describeBitmap(Bitmap bitmap, Paint paint) {
     separateLines();
 
@@ -239,6 +551,62 @@ public class ShadowCanvas {
     return drawnTextEventHistory.size();
   }
 
+  /**
+   * The scale and translation mapping canvas coordinates to pixels, and the clip in pixels. Rotations and skews
+   * aren't tracked.
+   */
+  private static class DeviceState {
+    float scaleX = 1;
+    float scaleY = 1;
+    float translateX;
+    float translateY;
+    int clipLeft = Integer.MIN_VALUE;
+    int clipTop = Integer.MIN_VALUE;
+    int clipRight = Integer.MAX_VALUE;
+    int clipBottom = Integer.MAX_VALUE;
+
+    DeviceState copy() {
+      DeviceState copy = new DeviceState();
+      copy.scaleX = scaleX;
+      copy.scaleY = scaleY;
+      copy.translateX = translateX;
+      copy.translateY = translateY;
+      copy.clipLeft = clipLeft;
+      copy.clipTop = clipTop;
+      copy.clipRight = clipRight;
+      copy.clipBottom = clipBottom;
+      return copy;
+    }
+
+    void translate(float dx, float dy) {
+      translateX += dx * scaleX;
+      translateY += dy * scaleY;
+    }
+
+    void scale(float sx, float sy) {
+      scaleX *= sx;
+      scaleY *= sy;
+    }
+
+    float mapX(float x) {
+      return x * scaleX + translateX;
+    }
+
+    float mapY(float y) {
+      return y * scaleY + translateY;
+    }
+
+    boolean clip(float left, float top, float right, float bottom) {
+      float deviceLeft = mapX(left), deviceRight = mapX(right);
+      float deviceTop = mapY(top), deviceBottom = mapY(bottom);
+      clipLeft = Math.max(clipLeft, Math.round(Math.min(deviceLeft, deviceRight)));
+      clipTop = Math.max(clipTop, Math.round(Math.min(deviceTop, deviceBottom)));
+      clipRight = Math.min(clipRight, Math.round(Math.max(deviceLeft, deviceRight)));
+      clipBottom = Math.min(clipBottom, Math.round(Math.max(deviceTop, deviceBottom)));
+      return clipLeft < clipRight && clipTop < clipBottom;
+    }
+  }
+
   private static class PathPaintHistoryEvent {
     private final Path drawnPath;
     private final Paint pathPaint;
@@ -1,22 +1,52 @@
 package org.robolectric.shadows;
 
 import android.os.Looper;
+import android.os.SystemClock;
 import android.view.Choreographer;
 
+import org.robolectric.Robolectric;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.RealObject;
 import org.robolectric.annotation.Resetter;
 import org.robolectric.bytecode.RobolectricInternals;
+import org.robolectric.internal.HiddenApi;
+import org.robolectric.internal.ReflectionHelpers;
+import org.robolectric.util.Scheduler;
 import org.robolectric.util.SoftThreadLocal;
 
+import static org.robolectric.Robolectric.directlyOn;
+import static org.robolectric.Robolectric.shadowOf;
+
+/**
+ * Shadow of {@code Choreographer} that keeps frame statistics and, when {@link Feature#SIMULATED_VSYNC} is on,
+ * simulates vsync on the scheduler of the choreographer's looper. When it is off, frames run as the real choreographer
+ * runs them without a vsync signal, 10 milliseconds after the last one or right away.
+ *
+ * With simulated vsync, vsyncs happen at the refresh rate set with {@link #setRefreshRate(float)}, rounded to whole milliseconds of the
+ * scheduler clock. Whenever a callback is posted, a frame is scheduled for the next vsync, and runs when the scheduler
+ * gets there, e.g. through {@link #advanceFrames(int)} or {@link ShadowLooper#idle(long)}. As with the real
+ * choreographer when there is no vsync signal, a frame asked for when no frame ran during the last refresh interval
+ * runs right away, and vsyncs carry on from there. The frame time seen by callbacks is the vsync time on the
+ * {@link SystemClock#uptimeMillis()} clock.
+ */
 @Implements(Choreographer.class)
 public class ShadowChoreographer {
   private static final Thread MAIN_THREAD = Thread.currentThread();
+  private static final long NANOS_PER_MS = 1000000;
+  private static final float DEFAULT_REFRESH_RATE = 60;
 
   private static SoftThreadLocal<Choreographer> sThreadInstance = makeThreadLocal();
+  private static float refreshRate = defaultRefreshRate();
+
+  private static int frameCount;
+  private static long totalFrameNanos;
+  private static long maxFrameNanos;
 
   @RealObject private Choreographer realChoreographer;
+  private Runnable pendingFrame;
+  private long firstVsyncTime;
+  private long lastFrameTime = Long.MIN_VALUE;
 
   private static SoftThreadLocal<Choreographer> makeThreadLocal() {
     return new SoftThreadLocal<Choreographer>() {
@@ -45,6 +75,188 @@ public class ShadowChoreographer {
     }
 
     sThreadInstance = makeThreadLocal();
+    refreshRate = defaultRefreshRate();
+    resetFrameStats();
+  }
+
+  /**
+   * Non-Android accessor. Turns {@link Feature#SIMULATED_VSYNC} on or off. Frames already scheduled run at the time
+   * they were scheduled for. Frame-driven animators need vsync to make progress, so it stays on while
+   * {@link Feature#FRAME_DRIVEN_ANIMATORS} is.
+   *
+   * @param enabled whether frames should run on simulated vsyncs
+   */
+  public static void setVsyncEnabled(boolean enabled) {
+    Feature.SIMULATED_VSYNC.setEnabled(enabled);
+  }
+
+  public static boolean isVsyncEnabled() {
+    return Feature.SIMULATED_VSYNC.isEnabled() || Feature.FRAME_DRIVEN_ANIMATORS.isEnabled();
   }
-}
 
+  /**
+   * Non-Android accessor. Sets how many vsyncs there are per second, for the current test only. It is 60 by default
+   * unless the {@code robolectric.refreshRate} system property says otherwise.
+   *
+   * @param framesPerSecond the refresh rate of the simulated display
+   */
+  public static void setRefreshRate(float framesPerSecond) {
+    if (framesPerSecond <= 0) {
+      throw new IllegalArgumentException("refresh rate must be positive: " + framesPerSecond);
+    }
+    refreshRate = framesPerSecond;
+  }
+
+  @HiddenApi @Implementation
+  public static float getRefreshRate() {
+    return refreshRate;
+  }
+
+  /**
+   * Non-Android accessor. Advances the main looper's clock to the {@code frames}th vsync from now, running every
+   * frame and every other task due on the way.
+   *
+   * @param frames how many vsyncs to advance by
+   * @return the number of frames that ran, which is fewer than {@code frames} when nothing asked for some of them
+   */
+  public static int advanceFrames(int frames) {
+    ShadowChoreographer shadowChoreographer = (ShadowChoreographer) Robolectric.shadowOf_(getInstance());
+    Scheduler scheduler = Robolectric.getUiThreadScheduler();
+    int framesBefore = frameCount;
+    if (frames > 0) {
+      long now = scheduler.getCurrentTime();
+      scheduler.advanceTo(shadowChoreographer.vsyncTime(shadowChoreographer.nextVsync(now) + frames - 1));
+    }
+    return frameCount - framesBefore;
+  }
+
+  /**
+   * Non-Android accessor.
+   *
+   * @return the number of frames run since the start of the test or the last {@link #resetFrameStats()}
+   */
+  public static int getFrameCount() {
+    return frameCount;
+  }
+
+  /**
+   * Non-Android accessor.
+   *
+   * @return the wall clock time spent running frame callbacks since the start of the test or the last
+   * {@link #resetFrameStats()}, in nanoseconds
+   */
+  public static long getTotalFrameTimeNanos() {
+    return totalFrameNanos;
+  }
+
+  /**
+   * Non-Android accessor.
+   *
+   * @return the wall clock time spent in the slowest frame since the start of the test or the last
+   * {@link #resetFrameStats()}, in nanoseconds
+   */
+  public static long getMaxFrameTimeNanos() {
+    return maxFrameNanos;
+  }
+
+  public static void resetFrameStats() {
+    frameCount = 0;
+    totalFrameNanos = 0;
+    maxFrameNanos = 0;
+  }
+
+  @HiddenApi @Implementation
+  public void scheduleFrameLocked(long now) {
+    if (!isVsyncEnabled()) {
+      directlyOn(realChoreographer, Choreographer.class, "scheduleFrameLocked",
+          new ReflectionHelpers.ClassParameter(long.class, now));
+      return;
+    }
+    scheduleFrame();
+  }
+
+  @HiddenApi @Implementation
+  public void scheduleVsyncLocked() {
+    if (!isVsyncEnabled()) {
+      directlyOn(realChoreographer, Choreographer.class, "scheduleVsyncLocked");
+      return;
+    }
+    scheduleFrame();
+  }
+
+  @HiddenApi @Implementation
+  public void doFrame(long frameTimeNanos, int frame) {
+    long start = System.nanoTime();
+    directlyOn(realChoreographer, Choreographer.class, "doFrame",
+        new ReflectionHelpers.ClassParameter(long.class, frameTimeNanos),
+        new ReflectionHelpers.ClassParameter(int.class, frame));
+    long elapsed = System.nanoTime() - start;
+
+    frameCount++;
+    totalFrameNanos += elapsed;
+    maxFrameNanos = Math.max(maxFrameNanos, elapsed);
+  }
+
+  private void scheduleFrame() {
+    ReflectionHelpers.setFieldReflectively(realChoreographer, "mFrameScheduled", true);
+    Looper looper = ReflectionHelpers.getFieldReflectively(realChoreographer, "mLooper");
+    Scheduler scheduler = shadowOf(looper).getScheduler();
+    // a frame is already pending, unless the scheduler has dropped it since, e.g. because it was reset
+    if (pendingFrame != null && scheduler.isQueued(pendingFrame)) return;
+
+    long now = scheduler.getCurrentTime();
+    final long vsync;
+    if (now < lastFrameTime || now >= vsyncTime(nextVsync(lastFrameTime))) {
+      firstVsyncTime = now;
+      vsync = 0;
+    } else {
+      vsync = nextVsync(Math.max(now - 1, lastFrameTime));
+    }
+    pendingFrame = new Runnable() {
+      @Override public void run() {
+        // a frame replaced by a later one, because its scheduler dropped it, mustn't run as well
+        if (pendingFrame != this) return;
+        pendingFrame = null;
+        runFrame(vsync);
+      }
+    };
+    scheduler.postDelayed(pendingFrame, vsyncTime(vsync) - now);
+  }
+
+  private void runFrame(long vsync) {
+    lastFrameTime = vsyncTime(vsync);
+    long frameTimeNanos = SystemClock.uptimeMillis() * NANOS_PER_MS;
+    long lastFrameTimeNanos = ReflectionHelpers.getFieldReflectively(realChoreographer, "mLastFrameTimeNanos");
+    if (lastFrameTimeNanos > frameTimeNanos) {
+      // the clock started over for a new test, so the last frame is from the past
+      ReflectionHelpers.setFieldReflectively(realChoreographer, "mLastFrameTimeNanos", Long.MIN_VALUE);
+    }
+    ReflectionHelpers.setFieldReflectively(realChoreographer, "mFrameScheduled", true);
+    doFrame(frameTimeNanos, (int) vsync);
+  }
+
+  /**
+   * @return the number of the first vsync strictly after {@code time} on the scheduler clock, counting from the
+   * first vsync of the current sequence
+   */
+  private long nextVsync(long time) {
+    if (time < firstVsyncTime) return 0;
+    long vsync = (long) ((time - firstVsyncTime) * (double) refreshRate / 1000);
+    while (vsyncTime(vsync) <= time) {
+      vsync++;
+    }
+    while (vsync > 0 && vsyncTime(vsync - 1) > time) {
+      vsync--;
+    }
+    return vsync;
+  }
+
+  private long vsyncTime(long vsync) {
+    return firstVsyncTime + Math.round(vsync * 1000.0 / refreshRate);
+  }
+
+  private static float defaultRefreshRate() {
+    String value = System.getProperty("robolectric.refreshRate");
+    return value == null ? DEFAULT_REFRESH_RATE : Float.parseFloat(value);
+  }
+}
@@ -28,12 +28,14 @@ import org.robolectric.tester.android.database.TestCursor;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
 
 @Implements(ContentResolver.class)
 public class ShadowContentResolver {
@@ -46,21 +48,25 @@ public class ShadowContentResolver {
   private final List<InsertStatement> insertStatements = new ArrayList<InsertStatement>();
   private final List<UpdateStatement> updateStatements = new ArrayList<UpdateStatement>();
   private final List<DeleteStatement> deleteStatements = new ArrayList<DeleteStatement>();
-  private List<NotifiedUri> notifiedUris = new ArrayList<NotifiedUri>();
+  private final ArrayDeque<NotifiedUri> notifiedUris = new ArrayDeque<NotifiedUri>();
+  private int maxNotifiedUris = Integer.getInteger("robolectric.maxNotifiedUris", DEFAULT_MAX_NOTIFIED_URIS);
   private Map<Uri, TestCursor> uriCursorMap = new HashMap<Uri, TestCursor>();
   private Map<Uri, InputStream> inputStreamMap = new HashMap<Uri, InputStream>();
   private final Map<String, ArrayList<ContentProviderOperation>> contentProviderOperations = new HashMap<String, ArrayList<ContentProviderOperation>>();
   private ContentProviderResult[] contentProviderResults;
 
-  private final Map<Uri, ContentObserver> contentObservers = new HashMap<Uri,ContentObserver>();
+  private final ObserverTree contentObservers = new ObserverTree();
 
+  // Sync adapters and providers get called from background threads, so the static state is guarded by the class lock
   private static final Map<String, Map<Account, Status>>  syncableAccounts =
       new HashMap<String, Map<Account, Status>>();
   private static final Map<String, ContentProvider> providers = new HashMap<String, ContentProvider>();
-  private static boolean masterSyncAutomatically;
+  private static volatile boolean masterSyncAutomatically;
+
+  static final int DEFAULT_MAX_NOTIFIED_URIS = -1;
 
   @Resetter
-  public static void reset() {
+  public static synchronized void reset() {
     syncableAccounts.clear();
     providers.clear();
     masterSyncAutomatically = false;
@@ -266,12 +272,19 @@ public class ShadowContentResolver {
 
   @Implementation
   public void notifyChange(Uri uri, ContentObserver observer, boolean syncToNetwork) {
-    notifiedUris.add(new NotifiedUri(uri, observer, syncToNetwork));
+    synchronized (notifiedUris) {
+      if (maxNotifiedUris != 0) {
+        if (notifiedUris.size() == maxNotifiedUris) {
+          notifiedUris.removeFirst();
+        }
+        notifiedUris.addLast(new NotifiedUri(uri, observer, syncToNetwork));
+      }
+    }
 
-    // TODO does not support multiple observers for a URI
-    ContentObserver obs = contentObservers.get(uri);
-    if ( obs != null && obs != observer  ) {
-      obs.dispatchChange( false, uri );
+    for (ContentObserver obs : contentObservers.collect(uri)) {
+      if (obs != observer) {
+        obs.dispatchChange(false, uri);
+      }
     }
     if ( observer != null && observer.deliverSelfNotifications() ) {
       observer.dispatchChange( true, uri );
@@ -295,7 +308,7 @@ public class ShadowContentResolver {
   }
 
   @Implementation
-  public static void requestSync(Account account, String authority, Bundle extras) {
+  public static synchronized void requestSync(Account account, String authority, Bundle extras) {
     validateSyncExtrasBundle(extras);
     Status status = getStatus(account, authority, true);
     status.syncRequests++;
@@ -303,34 +316,34 @@ public class ShadowContentResolver {
   }
 
   @Implementation
-  public static boolean isSyncActive(Account account, String authority) {
+  public static synchronized boolean isSyncActive(Account account, String authority) {
     ShadowContentResolver.Status status = getStatus(account, authority);
     // TODO: this means a sync is *perpetually* active after one request
     return status != null && status.syncRequests > 0;
   }
 
   @Implementation
-  public static void setIsSyncable(Account account, String authority, int syncable) {
+  public static synchronized void setIsSyncable(Account account, String authority, int syncable) {
     getStatus(account, authority, true).state = syncable;
   }
 
   @Implementation
-  public static int getIsSyncable(Account account, String authority) {
+  public static synchronized int getIsSyncable(Account account, String authority) {
     return getStatus(account, authority, true).state;
   }
 
   @Implementation
-  public static boolean getSyncAutomatically(Account account, String authority) {
+  public static synchronized boolean getSyncAutomatically(Account account, String authority) {
     return getStatus(account, authority, true).syncAutomatically;
   }
 
   @Implementation
-  public static void setSyncAutomatically(Account account, String authority, boolean sync) {
+  public static synchronized void setSyncAutomatically(Account account, String authority, boolean sync) {
     getStatus(account, authority, true).syncAutomatically = sync;
   }
 
   @Implementation
-  public static void addPeriodicSync(Account account, String authority, Bundle extras,
+  public static synchronized void addPeriodicSync(Account account, String authority, Bundle extras,
                      long pollFrequency) {
 
     validateSyncExtrasBundle(extras);
@@ -338,14 +351,14 @@ public class ShadowContentResolver {
   }
 
   @Implementation
-  public static void removePeriodicSync(Account account, String authority, Bundle extras) {
+  public static synchronized void removePeriodicSync(Account account, String authority, Bundle extras) {
     validateSyncExtrasBundle(extras);
     Status status = getStatus(account, authority);
     if (status != null) status.syncs.clear();
   }
 
   @Implementation
-  public static List<PeriodicSync> getPeriodicSyncs(Account account, String authority) {
+  public static synchronized List<PeriodicSync> getPeriodicSyncs(Account account, String authority) {
     return getStatus(account, authority, true).syncs;
   }
 
@@ -384,7 +397,7 @@ public class ShadowContentResolver {
     return getProvider(uri.getAuthority());
   }
 
-  private static ContentProvider getProvider(String authority) {
+  private static synchronized ContentProvider getProvider(String authority) {
     if (!providers.containsKey(authority)) {
       AndroidManifest manifest = Robolectric.getShadowApplication().getAppManifest();
       if (manifest != null) {
@@ -398,7 +411,7 @@ public class ShadowContentResolver {
     return providers.get(authority);
   }
 
-  public static void registerProvider(String authority, ContentProvider provider) {
+  public static synchronized void registerProvider(String authority, ContentProvider provider) {
     providers.put(authority, provider);
   }
 
@@ -406,7 +419,7 @@ public class ShadowContentResolver {
     return getStatus(account, authority, false);
   }
 
-  public static Status getStatus(Account account, String authority, boolean create) {
+  public static synchronized Status getStatus(Account account, String authority, boolean create) {
     Map<Account, Status> map = syncableAccounts.get(authority);
     if (map == null) {
       map = new HashMap<Account, Status>();
@@ -456,8 +469,37 @@ public class ShadowContentResolver {
     return deleteStatements;
   }
 
+  /**
+   * Non-Android accessor. Returns the notifications, oldest first; if {@link #setMaxNotifiedUris(int)} set a limit,
+   * only the most recent ones are kept.
+   */
   public List<NotifiedUri> getNotifiedUris() {
-    return notifiedUris;
+    synchronized (notifiedUris) {
+      return new ArrayList<NotifiedUri>(notifiedUris);
+    }
+  }
+
+  /**
+   * Non-Android accessor. Clears the notification history.
+   */
+  public void clearNotifiedUris() {
+    synchronized (notifiedUris) {
+      notifiedUris.clear();
+    }
+  }
+
+  /**
+   * Non-Android accessor. Sets how many notifications {@link #getNotifiedUris()} remembers, dropping the oldest
+   * ones past that. A negative value keeps them all, which is the default unless the
+   * {@code robolectric.maxNotifiedUris} system property sets a limit.
+   */
+  public void setMaxNotifiedUris(int max) {
+    synchronized (notifiedUris) {
+      maxNotifiedUris = max;
+      while (max >= 0 && notifiedUris.size() > max) {
+        notifiedUris.removeFirst();
+      }
+    }
   }
 
   public ArrayList<ContentProviderOperation> getContentProviderOperations(String authority) {
@@ -473,8 +515,7 @@ public class ShadowContentResolver {
 
   @Implementation
   public void registerContentObserver( Uri uri, boolean notifyForDescendents, ContentObserver observer) {
-    // TODO does not support multiple observers for a URI
-    contentObservers.put( uri, observer );
+    contentObservers.add(uri, notifyForDescendents, observer);
   }
 
   @Implementation
@@ -484,15 +525,8 @@ public class ShadowContentResolver {
 
   @Implementation
   public void unregisterContentObserver( ContentObserver observer ) {
-    if ( observer != null && contentObservers.containsValue( observer ) ) {
-      Set<Entry<Uri,ContentObserver>> entries = contentObservers.entrySet();
-      for ( Entry<Uri,ContentObserver> e : entries ) {
-        ContentObserver other = e.getValue();
-        if ( observer == other || observer.equals(other) ) {
-              contentObservers.remove( e.getKey() );
-              return;
-        }
-      }
+    if (observer != null) {
+      contentObservers.remove(observer);
     }
   }
 
@@ -506,11 +540,21 @@ public class ShadowContentResolver {
 
   /**
    * Non-Android accessor.  Returns the content observer registered with
-   * the given URI, or null if none registered.
+   * the given URI, or null if none registered. If there are several, returns
+   * the first one registered.
    * @param uri
    * @return
    */
   public ContentObserver getContentObserver( Uri uri ) {
+    List<ContentObserver> observers = contentObservers.get(uri);
+    return observers.isEmpty() ? null : observers.get(0);
+  }
+
+  /**
+   * Non-Android accessor.  Returns the content observers registered with
+   * exactly the given URI, in the order they were registered.
+   */
+  public List<ContentObserver> getContentObservers(Uri uri) {
     return contentObservers.get(uri);
   }
 
@@ -610,6 +654,142 @@ public class ShadowContentResolver {
     }
   }
 
+  /**
+   * Registered observers, in a tree with a level per URI segment (the authority, then each path segment) like the
+   * one the platform's ContentService keeps. A notification only visits the nodes along its URI and the subtree
+   * below it rather than every registration.
+   */
+  private static class ObserverTree {
+    private final Node root = new Node(null, null);
+    private final Map<ContentObserver, List<Node>> nodesByObserver = new IdentityHashMap<ContentObserver, List<Node>>();
+
+    synchronized void add(Uri uri, boolean notifyForDescendents, ContentObserver observer) {
+      Node node = root;
+      for (String segment : segments(uri)) {
+        Node child = node.children.get(segment);
+        if (child == null) {
+          child = new Node(node, segment);
+          node.children.put(segment, child);
+        }
+        node = child;
+      }
+      node.entries.add(new Entry(observer, notifyForDescendents));
+
+      List<Node> nodes = nodesByObserver.get(observer);
+      if (nodes == null) {
+        nodes = new ArrayList<Node>(1);
+        nodesByObserver.put(observer, nodes);
+      }
+      nodes.add(node);
+    }
+
+    synchronized void remove(ContentObserver observer) {
+      List<Node> nodes = nodesByObserver.remove(observer);
+      if (nodes == null) return;
+      for (Node node : nodes) {
+        for (Iterator<Entry> entries = node.entries.iterator(); entries.hasNext(); ) {
+          if (entries.next().observer == observer) {
+            entries.remove();
+          }
+        }
+        while (node.parent != null && node.entries.isEmpty() && node.children.isEmpty()) {
+          node.parent.children.remove(node.segment);
+          node = node.parent;
+        }
+      }
+    }
+
+    synchronized void clear() {
+      root.children.clear();
+      root.entries.clear();
+      nodesByObserver.clear();
+    }
+
+    /**
+     * @return The observers registered with exactly {@code uri}.
+     */
+    synchronized List<ContentObserver> get(Uri uri) {
+      Node node = find(uri);
+      if (node == null) return Collections.emptyList();
+      List<ContentObserver> observers = new ArrayList<ContentObserver>(node.entries.size());
+      for (Entry entry : node.entries) {
+        observers.add(entry.observer);
+      }
+      return observers;
+    }
+
+    /**
+     * @return The observers a change to {@code uri} should be dispatched to: those registered with it or one of its
+     * descendants, and those registered with one of its ancestors that asked to be notified for descendants.
+     */
+    synchronized List<ContentObserver> collect(Uri uri) {
+      List<ContentObserver> observers = new ArrayList<ContentObserver>();
+      List<String> segments = segments(uri);
+      Node node = root;
+      for (int i = 0; i <= segments.size(); i++) {
+        if (i == segments.size()) {
+          collectAll(node, observers);
+          break;
+        }
+        for (Entry entry : node.entries) {
+          if (entry.notifyForDescendents) observers.add(entry.observer);
+        }
+        node = node.children.get(segments.get(i));
+        if (node == null) break;
+      }
+      return observers;
+    }
+
+    private static void collectAll(Node node, List<ContentObserver> observers) {
+      for (Entry entry : node.entries) {
+        observers.add(entry.observer);
+      }
+      for (Node child : node.children.values()) {
+        collectAll(child, observers);
+      }
+    }
+
+    private Node find(Uri uri) {
+      Node node = root;
+      for (String segment : segments(uri)) {
+        node = node.children.get(segment);
+        if (node == null) return null;
+      }
+      return node;
+    }
+
+    private static List<String> segments(Uri uri) {
+      List<String> pathSegments = uri.getPathSegments();
+      List<String> segments = new ArrayList<String>(pathSegments.size() + 1);
+      String authority = uri.getAuthority();
+      segments.add(authority == null ? "" : authority);
+      segments.addAll(pathSegments);
+      return segments;
+    }
+
+    private static class Node {
+      final Node parent;
+      final String segment;
+      final Map<String, Node> children = new HashMap<String, Node>();
+      final List<Entry> entries = new ArrayList<Entry>(1);
+
+      Node(Node parent, String segment) {
+        this.parent = parent;
+        this.segment = segment;
+      }
+    }
+
+    private static class Entry {
+      final ContentObserver observer;
+      final boolean notifyForDescendents;
+
+      Entry(ContentObserver observer, boolean notifyForDescendents) {
+        this.observer = observer;
+        this.notifyForDescendents = notifyForDescendents;
+      }
+    }
+  }
+
   private static class UnregisteredInputStream extends InputStream implements NamedStream {
     private final Uri uri;
 
@@ -10,10 +10,12 @@ import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.RealObject;
 import org.robolectric.annotation.Resetter;
+import org.robolectric.internal.HiddenApi;
 import org.robolectric.internal.ReflectionHelpers;
 import org.robolectric.res.Attribute;
 import org.robolectric.res.ResName;
 import org.robolectric.res.ResourceLoader;
+import org.robolectric.tester.android.content.TestSharedPreferences;
 
 import java.io.*;
 import java.util.List;
@@ -32,6 +34,7 @@ abstract public class ShadowContext {
   public static final File FILES_DIR = createTempDir("android-tmp");
   public static final File EXTERNAL_FILES_DIR = createTempDir("android-external-files");
   public static final File DATABASE_DIR = createTempDir("android-database");
+  public static final File SHARED_PREFS_DIR = createTempDir("android-shared-prefs");
 
   @RealObject private Context realContext;
   private ShadowApplication shadowApplication;
@@ -92,6 +95,27 @@ abstract public class ShadowContext {
     }
   }
 
+  @HiddenApi @Implementation
+  public File getSharedPrefsFile(String name) {
+    SHARED_PREFS_DIR.mkdirs();
+    return new File(SHARED_PREFS_DIR, name + ".xml");
+  }
+
+  /**
+   * Non-Android accessor. Turns {@link Feature#PERSISTENT_SHARED_PREFERENCES} on or off. Preferences obtained while
+   * it is on are also kept in XML files in {@link #SHARED_PREFS_DIR}, written synchronously on {@code commit()} and
+   * in the background on {@code apply()}; preferences obtained earlier stay in memory only.
+   *
+   * @param enabled whether shared preferences obtained from now on should be persisted
+   */
+  public static void setPersistentSharedPreferencesEnabled(boolean enabled) {
+    Feature.PERSISTENT_SHARED_PREFERENCES.setEnabled(enabled);
+  }
+
+  public static boolean isPersistentSharedPreferencesEnabled() {
+    return Feature.PERSISTENT_SHARED_PREFERENCES.isEnabled();
+  }
+
   @Implementation
   public File getExternalCacheDir() {
     EXTERNAL_CACHE_DIR.mkdir();
@@ -156,6 +180,8 @@ abstract public class ShadowContext {
 
   @Resetter
   public static void reset() {
+    TestSharedPreferences.awaitPendingWrites();
+    clearFiles(SHARED_PREFS_DIR);
     clearFiles(FILES_DIR);
     clearFiles(CACHE_DIR);
     clearFiles(EXTERNAL_CACHE_DIR);
@@ -21,6 +21,7 @@ import org.robolectric.Robolectric;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.RealObject;
+import org.robolectric.internal.HiddenApi;
 import org.robolectric.res.ResourceLoader;
 import org.robolectric.tester.android.content.TestSharedPreferences;
 
@@ -87,6 +88,11 @@ public class ShadowContextWrapper extends ShadowContext {
     return super.getFileStreamPath(name);
   }
 
+  @HiddenApi @Implementation
+  @Override public File getSharedPrefsFile(String name) {
+    return super.getSharedPrefsFile(name);
+  }
+
   @Override public ResourceLoader getResourceLoader() {
     return super.getResourceLoader();
   }
@@ -251,7 +257,8 @@ public class ShadowContextWrapper extends ShadowContext {
   @Implementation
   public SharedPreferences getSharedPreferences(String name, int mode) {
     if (!sharedPreferencesMap.containsKey(name)) {
-      sharedPreferencesMap.put(name, new TestSharedPreferences(getShadowApplication().getSharedPreferenceMap(), name, mode));
+      File file = isPersistentSharedPreferencesEnabled() ? getSharedPrefsFile(name) : null;
+      sharedPreferencesMap.put(name, new TestSharedPreferences(getShadowApplication().getSharedPreferenceMap(), name, mode, file));
     }
 
     return sharedPreferencesMap.get(name);
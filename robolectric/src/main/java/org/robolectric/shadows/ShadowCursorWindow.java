@@ -8,8 +8,7 @@ import com.almworks.sqlite4java.SQLiteStatement;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -30,15 +29,16 @@ public class ShadowCursorWindow {
 
   @Implementation
   public static byte[] nativeGetBlob(int windowPtr, int row, int column) {
-    Value value = WINDOW_DATA.get(windowPtr).value(row, column);
+    Data data = WINDOW_DATA.get(windowPtr);
+    int cell = data.cell(row, column);
 
-    switch (value.type) {
+    switch (data.type(cell)) {
       case Cursor.FIELD_TYPE_NULL:
         return null;
       case Cursor.FIELD_TYPE_BLOB:
-        return (byte[])value.value;
+        return (byte[]) data.object(cell);
       case Cursor.FIELD_TYPE_STRING:
-        return ((String)value.value).getBytes();
+        return ((String) data.object(cell)).getBytes();
       default:
         throw new android.database.sqlite.SQLiteException("Getting blob when column is non-blob. Row " + row + ", col " + column);
     }
@@ -46,27 +46,58 @@ public class ShadowCursorWindow {
 
   @Implementation
   public static String nativeGetString(int windowPtr, int row, int column) {
-    Value val = WINDOW_DATA.get(windowPtr).value(row, column);
-    if (val.type == Cursor.FIELD_TYPE_BLOB) {
-      throw new android.database.sqlite.SQLiteException("Getting string when column is blob. Row " + row + ", col " + column);
+    Data data = WINDOW_DATA.get(windowPtr);
+    int cell = data.cell(row, column);
+
+    switch (data.type(cell)) {
+      case Cursor.FIELD_TYPE_NULL:
+        return null;
+      case Cursor.FIELD_TYPE_INTEGER:
+        return String.valueOf(data.longValue(cell));
+      case Cursor.FIELD_TYPE_FLOAT:
+        return String.valueOf(data.doubleValue(cell));
+      case Cursor.FIELD_TYPE_STRING:
+        return (String) data.object(cell);
+      default:
+        throw new android.database.sqlite.SQLiteException("Getting string when column is blob. Row " + row + ", col " + column);
     }
-    Object value = val.value;
-    return value == null ? null : String.valueOf(value);
   }
 
+  // https://github.com/android/platform_frameworks_base/blob/master/core/jni/android_database_CursorWindow.cpp#L364
   @Implementation
   public static long nativeGetLong(int windowPtr, int row, int column) {
-    return nativeGetNumber(windowPtr, row, column).longValue();
+    Data data = WINDOW_DATA.get(windowPtr);
+    int cell = data.cell(row, column);
+
+    switch (data.type(cell)) {
+      case Cursor.FIELD_TYPE_INTEGER:
+        return data.longValue(cell);
+      case Cursor.FIELD_TYPE_FLOAT:
+        return (long) data.doubleValue(cell);
+      default:
+        return (long) nonNumericValue(data, cell);
+    }
   }
 
   @Implementation
   public static double nativeGetDouble(int windowPtr, int row, int column) {
-    return nativeGetNumber(windowPtr, row, column).doubleValue();
+    Data data = WINDOW_DATA.get(windowPtr);
+    int cell = data.cell(row, column);
+
+    switch (data.type(cell)) {
+      case Cursor.FIELD_TYPE_INTEGER:
+        return data.longValue(cell);
+      case Cursor.FIELD_TYPE_FLOAT:
+        return data.doubleValue(cell);
+      default:
+        return nonNumericValue(data, cell);
+    }
   }
 
   @Implementation
   public static int nativeGetType(int windowPtr, int row, int column) {
-    return WINDOW_DATA.get(windowPtr).value(row, column).type;
+    Data data = WINDOW_DATA.get(windowPtr);
+    return data.type(data.cell(row, column));
   }
 
   @Implementation
@@ -81,27 +112,27 @@ public class ShadowCursorWindow {
 
   @Implementation
   public static boolean nativePutBlob(int windowPtr, byte[] value, int row, int column) {
-    return WINDOW_DATA.get(windowPtr).putValue(new Value(value, Cursor.FIELD_TYPE_BLOB), row, column);
+    return WINDOW_DATA.get(windowPtr).putBlob(value, row, column);
   }
 
   @Implementation
   public static boolean nativePutString(int windowPtr, String value, int row, int column) {
-    return WINDOW_DATA.get(windowPtr).putValue(new Value(value, Cursor.FIELD_TYPE_STRING), row, column);
+    return WINDOW_DATA.get(windowPtr).putString(value, row, column);
   }
 
   @Implementation
   public static boolean nativePutLong(int windowPtr, long value, int row, int column) {
-    return WINDOW_DATA.get(windowPtr).putValue(new Value(value, Cursor.FIELD_TYPE_INTEGER), row, column);
+    return WINDOW_DATA.get(windowPtr).putLong(value, row, column);
   }
 
   @Implementation
   public static boolean nativePutDouble(int windowPtr, double value, int row, int column) {
-    return WINDOW_DATA.get(windowPtr).putValue(new Value(value, Cursor.FIELD_TYPE_FLOAT), row, column);
+    return WINDOW_DATA.get(windowPtr).putDouble(value, row, column);
   }
 
   @Implementation
   public static boolean nativePutNull(int windowPtr, int row, int column) {
-    return WINDOW_DATA.get(windowPtr).putValue(new Value(null, Cursor.FIELD_TYPE_NULL), row, column);
+    return WINDOW_DATA.get(windowPtr).putNull(row, column);
   }
 
   @Implementation
@@ -119,99 +150,265 @@ public class ShadowCursorWindow {
     return WINDOW_DATA.get(windowPtr).getName();
   }
 
-  protected static int setData(int windowPtr, SQLiteStatement stmt) throws SQLiteException {
-    return WINDOW_DATA.setData(windowPtr, stmt);
+  @Implementation
+  public static void nativeFreeLastRow(int windowPtr) {
+    WINDOW_DATA.get(windowPtr).freeLastRow();
+  }
+
+  protected static long setData(int windowPtr, SQLiteStatement stmt, int startPos, int requiredPos, boolean countAllRows) throws SQLiteException {
+    return WINDOW_DATA.setData(windowPtr, stmt, startPos, requiredPos, countAllRows);
   }
 
-  // https://github.com/android/platform_frameworks_base/blob/master/core/jni/android_database_CursorWindow.cpp#L364
-  private static Number nativeGetNumber(int windowPtr, int row, int column) {
-    Value value = WINDOW_DATA.get(windowPtr).value(row, column);
-    switch (value.type) {
+  private static double nonNumericValue(Data data, int cell) {
+    switch (data.type(cell)) {
       case Cursor.FIELD_TYPE_NULL:
-      case SQLiteConstants.SQLITE_NULL:
         return 0;
-      case Cursor.FIELD_TYPE_INTEGER:
-      case Cursor.FIELD_TYPE_FLOAT:
-        return (Number) value.value;
       case Cursor.FIELD_TYPE_STRING: {
         try {
-          return Double.parseDouble((String) value.value);
+          return Double.parseDouble((String) data.object(cell));
         } catch (NumberFormatException e) {
           return 0;
         }
       }
       case Cursor.FIELD_TYPE_BLOB:
-        throw new android.database.sqlite.SQLiteException("could not convert "+value);
+        throw new android.database.sqlite.SQLiteException("could not convert blob to number");
       default:
-        throw new android.database.sqlite.SQLiteException("unknown type: "+value.type);
+        throw new android.database.sqlite.SQLiteException("unknown type: " + data.type(cell));
     }
   }
 
+  /**
+   * Row-major cell storage: every cell is addressed as {@code row * numColumns + column} into parallel
+   * primitive arrays, so numeric values are never boxed. Doubles are kept as their raw long bits
+   * in the same array as longs; strings and blobs live in a side array of objects.
+   *
+   * Space accounting mirrors the native CursorWindow: each row costs a row slot plus one field slot per column,
+   * and strings and blobs additionally cost their encoded size. Once the window's byte budget is used up,
+   * {@link #allocRow()} and the put methods fail the way a full native window does.
+   */
   private static class Data {
-    private final List<Row> rows;
+    private static final int ROW_SLOT_SIZE = 4;
+    private static final int FIELD_SLOT_SIZE = 12;
+    private static final int INITIAL_CELL_CAPACITY = 64;
+
     private final String name;
+    private final int capacityBytes;
     private int numColumns;
+    private int numRows;
+    private int usedBytes;
+
+    private byte[] types = new byte[0];
+    private long[] numbers = new long[0];
+    private Object[] objects = new Object[0];
 
     public Data(String name, int cursorWindowSize) {
       this.name = name;
-      this.rows = new ArrayList<Row>(cursorWindowSize);
+      this.capacityBytes = cursorWindowSize;
     }
 
-    public Value value(int rowN, int colN) {
-      Row row = rows.get(rowN);
-      if (row == null) {
-        throw new IllegalArgumentException("Bad row number: " + rowN + ", count: " + rows.size());
+    public int cell(int rowN, int colN) {
+      if (rowN < 0 || rowN >= numRows) {
+        throw new IllegalArgumentException("Bad row number: " + rowN + ", count: " + numRows);
       }
-      return row.get(colN);
+      if (colN < 0 || colN >= numColumns) {
+        throw new IllegalArgumentException("Bad column number: " + colN + ", count: " + numColumns);
+      }
+      return rowN * numColumns + colN;
+    }
+
+    public int type(int cell) {
+      return types[cell];
+    }
+
+    public long longValue(int cell) {
+      return numbers[cell];
+    }
+
+    public double doubleValue(int cell) {
+      return Double.longBitsToDouble(numbers[cell]);
+    }
+
+    public Object object(int cell) {
+      return objects[cell];
     }
 
     public int numRows() {
-      return rows.size();
+      return numRows;
+    }
+
+    public boolean putNull(int rowN, int colN) {
+      int cell = cell(rowN, colN);
+      types[cell] = Cursor.FIELD_TYPE_NULL;
+      objects[cell] = null;
+      return true;
     }
 
-    public boolean putValue(Value value, int rowN, int colN) {
-      return rows.get(rowN).set(colN, value);
+    public boolean putLong(long value, int rowN, int colN) {
+      int cell = cell(rowN, colN);
+      types[cell] = Cursor.FIELD_TYPE_INTEGER;
+      numbers[cell] = value;
+      objects[cell] = null;
+      return true;
+    }
+
+    public boolean putDouble(double value, int rowN, int colN) {
+      int cell = cell(rowN, colN);
+      types[cell] = Cursor.FIELD_TYPE_FLOAT;
+      numbers[cell] = Double.doubleToRawLongBits(value);
+      objects[cell] = null;
+      return true;
     }
 
-    public void fillWith(SQLiteStatement stmt) throws SQLiteException {
-      //Android caches results in the WindowedCursor to allow moveToPrevious() to function.
-      //Robolectric will have to cache the results too. In the rows list.
-      while (stmt.step()) {
-        rows.add(fillRowValues(stmt));
+    public boolean putString(String value, int rowN, int colN) {
+      if (value == null) {
+        return putNull(rowN, colN);
       }
+      int cell = cell(rowN, colN);
+      if (!reserve(utf8Length(value) + 1)) {
+        return false;
+      }
+      types[cell] = Cursor.FIELD_TYPE_STRING;
+      objects[cell] = value;
+      return true;
     }
 
-    private static int cursorValueType(final int sqliteType) {
-      switch (sqliteType) {
-        case SQLiteConstants.SQLITE_NULL:    return Cursor.FIELD_TYPE_NULL;
-        case SQLiteConstants.SQLITE_INTEGER: return Cursor.FIELD_TYPE_INTEGER;
-        case SQLiteConstants.SQLITE_FLOAT:   return Cursor.FIELD_TYPE_FLOAT;
-        case SQLiteConstants.SQLITE_TEXT:    return Cursor.FIELD_TYPE_STRING;
-        case SQLiteConstants.SQLITE_BLOB:    return Cursor.FIELD_TYPE_BLOB;
-        default:
-          throw new IllegalArgumentException("Bad SQLite type " + sqliteType + ". See possible values in SQLiteConstants.");
+    public boolean putBlob(byte[] value, int rowN, int colN) {
+      if (value == null) {
+        return putNull(rowN, colN);
       }
+      int cell = cell(rowN, colN);
+      if (!reserve(value.length)) {
+        return false;
+      }
+      types[cell] = Cursor.FIELD_TYPE_BLOB;
+      objects[cell] = value;
+      return true;
     }
 
-    private static Row fillRowValues(SQLiteStatement stmt) throws SQLiteException {
+    /**
+     * Port of the row copying loop in android_database_SQLiteConnection.cpp: rows before {@code startPos} are
+     * stepped over, rows are copied until the window is full, and if the window fills up before reaching
+     * {@code requiredPos} it is cleared and refilled starting from the current row. Only one window's worth of
+     * rows is ever held in memory.
+     *
+     * @return the actual start position in the high 32 bits and the number of rows stepped over in the low 32 bits.
+     */
+    public long fillWith(SQLiteStatement stmt, int startPos, int requiredPos, boolean countAllRows) throws SQLiteException {
       final int columnCount = stmt.columnCount();
-      Row row = new Row(columnCount);
-      for (int index = 0; index < columnCount; index++) {
-        row.set(index, new Value(stmt.columnValue(index), cursorValueType(stmt.columnType(index))));
+      clear();
+      numColumns = columnCount;
+
+      int totalRows = 0;
+      int addedRows = 0;
+      boolean windowFull = false;
+      try {
+        while ((!windowFull || countAllRows) && stmt.step()) {
+          totalRows += 1;
+          if (startPos >= totalRows || windowFull) {
+            continue;
+          }
+
+          boolean copied = copyRow(stmt);
+          if (!copied && addedRows > 0 && startPos + addedRows <= requiredPos) {
+            // We filled the window before we got to the one row that we really wanted.
+            // Clear the window and start filling it again from here.
+            clear();
+            numColumns = columnCount;
+            startPos += addedRows;
+            addedRows = 0;
+            copied = copyRow(stmt);
+          }
+
+          if (copied) {
+            addedRows += 1;
+          } else {
+            windowFull = true;
+          }
+        }
+      } finally {
+        stmt.reset(false);
+      }
+      return ((long) startPos << 32) | (totalRows & 0xFFFFFFFFL);
+    }
+
+    private boolean copyRow(SQLiteStatement stmt) throws SQLiteException {
+      int mark = usedBytes;
+      if (!allocRow()) {
+        return false;
+      }
+      int base = (numRows - 1) * numColumns;
+      for (int index = 0; index < numColumns; index++) {
+        if (!fillCell(stmt, index, base + index)) {
+          freeLastRow();
+          usedBytes = mark;
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private boolean fillCell(SQLiteStatement stmt, int index, int cell) throws SQLiteException {
+      switch (stmt.columnType(index)) {
+        case SQLiteConstants.SQLITE_NULL:
+          types[cell] = Cursor.FIELD_TYPE_NULL;
+          return true;
+        case SQLiteConstants.SQLITE_INTEGER:
+          types[cell] = Cursor.FIELD_TYPE_INTEGER;
+          numbers[cell] = stmt.columnLong(index);
+          return true;
+        case SQLiteConstants.SQLITE_FLOAT:
+          types[cell] = Cursor.FIELD_TYPE_FLOAT;
+          numbers[cell] = Double.doubleToRawLongBits(stmt.columnDouble(index));
+          return true;
+        case SQLiteConstants.SQLITE_TEXT: {
+          String value = stmt.columnString(index);
+          if (!reserve(utf8Length(value) + 1)) {
+            return false;
+          }
+          types[cell] = Cursor.FIELD_TYPE_STRING;
+          objects[cell] = value;
+          return true;
+        }
+        case SQLiteConstants.SQLITE_BLOB: {
+          byte[] value = stmt.columnBlob(index);
+          if (!reserve(value.length)) {
+            return false;
+          }
+          types[cell] = Cursor.FIELD_TYPE_BLOB;
+          objects[cell] = value;
+          return true;
+        }
+        default:
+          throw new IllegalArgumentException("Bad SQLite type " + stmt.columnType(index) + ". See possible values in SQLiteConstants.");
+      }
+    }
+
+    public void freeLastRow() {
+      if (numRows > 0) {
+        numRows--;
+        Arrays.fill(objects, numRows * numColumns, (numRows + 1) * numColumns, null);
       }
-      return row;
     }
 
     public void clear() {
-      rows.clear();
+      Arrays.fill(objects, 0, numRows * numColumns, null);
+      numRows = 0;
+      numColumns = 0;
+      usedBytes = 0;
     }
 
     public boolean allocRow() {
-      rows.add(new Row(numColumns));
+      if (!reserve(ROW_SLOT_SIZE + numColumns * FIELD_SLOT_SIZE)) {
+        return false;
+      }
+      addRow();
       return true;
     }
 
     public boolean setNumColumns(int numColumns) {
+      if ((this.numColumns != 0 || numRows != 0) && this.numColumns != numColumns) {
+        return false;
+      }
       this.numColumns = numColumns;
       return true;
     }
@@ -219,35 +416,47 @@ public class ShadowCursorWindow {
     public String getName() {
       return name;
     }
-  }
 
-  private static class Row {
-    private final List<Value> values;
-
-    public Row(int length) {
-      values = new ArrayList<Value>(length);
-      for (int i=0; i<length; i++) {
-        values.add(new Value(null, Cursor.FIELD_TYPE_NULL));
+    private void addRow() {
+      int cells = (numRows + 1) * numColumns;
+      if (cells > types.length) {
+        int newCapacity = Math.max(cells, Math.max(INITIAL_CELL_CAPACITY, types.length * 2));
+        types = Arrays.copyOf(types, newCapacity);
+        numbers = Arrays.copyOf(numbers, newCapacity);
+        objects = Arrays.copyOf(objects, newCapacity);
       }
+      int base = numRows * numColumns;
+      for (int i = base; i < cells; i++) {
+        types[i] = Cursor.FIELD_TYPE_NULL;
+        objects[i] = null;
+      }
+      numRows++;
     }
 
-    public Value get(int n) {
-      return values.get(n);
-    }
-
-    public boolean set(int colN, Value value) {
-      values.set(colN, value);
+    private boolean reserve(int bytes) {
+      if (usedBytes + bytes > capacityBytes) {
+        return false;
+      }
+      usedBytes += bytes;
       return true;
     }
-  }
-
-  private static class Value {
-    final Object value;
-    final int type;
 
-    public Value(final Object value, final int type) {
-      this.value = value;
-      this.type = type;
+    private static int utf8Length(String value) {
+      int length = value.length();
+      int bytes = length;
+      for (int i = 0; i < length; i++) {
+        char c = value.charAt(i);
+        if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+          // a supplementary character is 4 bytes for its 2 chars
+          bytes += 2;
+          i++;
+        } else if (c >= 0x800) {
+          bytes += 2;
+        } else if (c >= 0x80) {
+          bytes += 1;
+        }
+      }
+      return bytes;
     }
   }
 
@@ -263,10 +472,8 @@ public class ShadowCursorWindow {
       return data;
     }
 
-    public int setData(final int ptr, final SQLiteStatement stmt) throws SQLiteException {
-      Data data = get(ptr);
-      data.fillWith(stmt);
-      return data.numRows();
+    public long setData(final int ptr, final SQLiteStatement stmt, int startPos, int requiredPos, boolean countAllRows) throws SQLiteException {
+      return get(ptr).fillWith(stmt, startPos, requiredPos, countAllRows);
     }
 
     public void close(final int ptr) {
@@ -291,7 +498,6 @@ public class ShadowCursorWindow {
   /* TODO:
   private static native int nativeCreateFromParcel(Parcel parcel);
   private static native void nativeWriteToParcel(int windowPtr, Parcel parcel);
-  private static native void nativeFreeLastRow(int windowPtr);
   private static native void nativeCopyStringToBuffer(int windowPtr, int row, int column,
                                                       CharArrayBuffer buffer);
    */
@@ -16,16 +16,19 @@ import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.conn.routing.HttpRoutePlanner;
 import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.impl.client.DefaultRequestDirector;
 import org.apache.http.params.HttpParams;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpProcessor;
 import org.apache.http.protocol.HttpRequestExecutor;
+import org.apache.http.util.EntityUtils;
 import org.robolectric.Robolectric;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.RealObject;
+import org.robolectric.tester.org.apache.http.HttpFixtureArchive;
 import org.robolectric.tester.org.apache.http.HttpRequestInfo;
 import org.robolectric.util.Util;
 
@@ -168,6 +171,11 @@ public class ShadowDefaultRequestDirector {
         interceptResponseContent(response);
       }
 
+      HttpFixtureArchive.Writer httpFixtureWriter = Robolectric.getFakeHttpLayer().getHttpFixtureWriter();
+      if (httpFixtureWriter != null) {
+        recordHttpFixture(httpFixtureWriter, httpRequest, response);
+      }
+
       Robolectric.getFakeHttpLayer().addHttpResponse(response);
       return response;
     }
@@ -225,6 +233,19 @@ public class ShadowDefaultRequestDirector {
     return httpParams;
   }
 
+  private void recordHttpFixture(HttpFixtureArchive.Writer writer, HttpRequest request, HttpResponse response) throws IOException {
+    HttpEntity entity = response.getEntity();
+    byte[] content = new byte[0];
+    if (entity != null) {
+      content = EntityUtils.toByteArray(entity);
+      ByteArrayEntity bufferedEntity = new ByteArrayEntity(content);
+      bufferedEntity.setContentType(entity.getContentType());
+      bufferedEntity.setContentEncoding(entity.getContentEncoding());
+      response.setEntity(bufferedEntity);
+    }
+    writer.add(request, response, content);
+  }
+
   private void interceptResponseContent(HttpResponse response) {
     HttpEntity entity = response.getEntity();
     if (entity instanceof HttpEntityWrapper) {
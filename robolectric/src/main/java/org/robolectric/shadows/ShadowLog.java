@@ -2,6 +2,7 @@ package org.robolectric.shadows;
 
 import android.util.Log;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 
@@ -10,7 +11,10 @@ import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.Resetter;
 
 import java.io.PrintStream;
-import java.util.ArrayList;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,8 +22,15 @@ import java.util.Map;
 @Implements(Log.class)
 public class ShadowLog {
   private static final int extraLogLength = "l/: \n".length();
-  private static Map<String,List<LogItem>> logsByTag = new HashMap<String,List<LogItem>>();
-  private static List<LogItem> logs = new ArrayList<LogItem>();
+  private static final LogRing logs = new LogRing();
+  private static Map<String,LogRing> logsByTag = new HashMap<String,LogRing>();
+  private static int defaultMinimumLevel = Log.VERBOSE;
+  private static int defaultMaxLogsPerTag = -1;
+  private static volatile int minimumLevel = defaultMinimumLevel;
+  private static int maxLogsPerTag = defaultMaxLogsPerTag;
+  private static volatile AsyncLogWriter asyncWriter;
+  private static File logDirectory;
+  private static String logName;
   public static PrintStream stream;
 
   @Implementation
@@ -90,7 +101,7 @@ public class ShadowLog {
 
   @Implementation
   public static boolean isLoggable(String tag, int level) {
-    return stream != null || level >= Log.INFO;
+    return level >= minimumLevel && (stream != null || level >= Log.INFO);
   }
 
   @Implementation
@@ -99,44 +110,58 @@ public class ShadowLog {
     return extraLogLength + tag.length() + msg.length();
   }
 
-  private static synchronized void addLog(int level, String tag, String msg, Throwable throwable) {
-    if (stream != null) {
-      logToStream(stream, level, tag, msg, throwable);
+  private static void addLog(int level, String tag, String msg, Throwable throwable) {
+    if (level < minimumLevel) {
+      return;
     }
 
+    // written outside of the lock, since a full async queue blocks the caller until the writer catches up
     LogItem item = new LogItem(level, tag, msg, throwable);
-    List<LogItem> itemList;
+    PrintStream stream = ShadowLog.stream;
+    if (stream != null) {
+      AsyncLogWriter writer = asyncWriter;
+      if (writer != null && stream == writer.getPrintStream()) {
+        writer.append(item);
+      } else {
+        stream.print(item.format());
+      }
+    }
+    capture(item);
+  }
 
-    if (!logsByTag.containsKey(tag)) {
-      itemList = new ArrayList<LogItem>();
-      logsByTag.put(tag, itemList);
-    } else {
-      itemList = logsByTag.get(tag);
+  private static synchronized void capture(LogItem item) {
+    if (maxLogsPerTag == 0) {
+      return;
     }
 
+    LogRing itemList = logsByTag.get(item.tag);
+    if (itemList == null) {
+      itemList = new LogRing();
+      logsByTag.put(item.tag, itemList);
+    }
+
+    if (maxLogsPerTag > 0 && itemList.count == maxLogsPerTag) {
+      logs.drop(itemList.removeFirst());
+    }
     itemList.add(item);
     logs.add(item);
   }
 
-  private static void logToStream(PrintStream ps, int level, String tag, String msg, Throwable throwable) {
-    final char c;
+  static char levelChar(int level) {
     switch (level) {
-      case Log.ASSERT: c = 'A'; break;
-      case Log.DEBUG:  c = 'D'; break;
-      case Log.ERROR:  c = 'E'; break;
-      case Log.WARN:   c = 'W'; break;
-      case Log.INFO:   c = 'I'; break;
-      case Log.VERBOSE:c = 'V'; break;
-      default:         c = '?';
-    }
-    ps.println(c + "/" + tag + ": " + msg);
-    if (throwable != null) {
-      throwable.printStackTrace(ps);
+      case Log.ASSERT: return 'A';
+      case Log.DEBUG:  return 'D';
+      case Log.ERROR:  return 'E';
+      case Log.WARN:   return 'W';
+      case Log.INFO:   return 'I';
+      case Log.VERBOSE:return 'V';
+      default:         return '?';
     }
   }
 
   /**
-   * Non-Android accessor.  Returns ordered list of all log entries.
+   * Non-Android accessor.  Returns ordered list of all log entries still held in the per-tag buffers.
+   * The list is live: it reflects later logging, but can't be modified other than cleared.
    * @return
    */
   public static synchronized List<LogItem> getLogs() {
@@ -145,6 +170,7 @@ public class ShadowLog {
 
   /**
    * Non-Android accessor.  Returns ordered list of all log items for a specific tag.
+   * The list is live: it reflects later logging, but can't be modified other than cleared.
    *
    * @param tag
    * @return
@@ -153,24 +179,123 @@ public class ShadowLog {
     return logsByTag.get(tag);
   }
 
+  /**
+   * Non-Android accessor.  Drops log calls below the given level; they are neither captured nor written to
+   * {@link #stream}, and {@link Log#isLoggable(String, int)} reports them as disabled. Reset to
+   * the {@code robolectric.logging.level} system property (verbose by default) before each test.
+   *
+   * @param level One of the {@link Log} priority constants
+   */
+  public static synchronized void setMinimumLevel(int level) {
+    minimumLevel = level;
+  }
+
+  /**
+   * Non-Android accessor.  Limits how many log items are kept for each tag, dropping the oldest ones first.
+   * {@code 0} keeps nothing and a negative value keeps everything. Reset to the
+   * {@code robolectric.logging.maxPerTag} system property (unbounded by default) before each test.
+   *
+   * @param max Maximum number of log items per tag
+   */
+  public static synchronized void setMaxLogsPerTag(int max) {
+    maxLogsPerTag = max;
+    if (max >= 0) {
+      for (LogRing itemList : logsByTag.values()) {
+        while (itemList.count > max) {
+          logs.drop(itemList.removeFirst());
+        }
+      }
+    }
+  }
+
+  /**
+   * Non-Android accessor.  Blocks until everything logged so far has been written to the configured output.
+   * Called between tests, so a test's output is never interleaved with the next one's.
+   */
+  public static void flush() {
+    AsyncLogWriter writer = asyncWriter;
+    if (writer != null) {
+      writer.flush();
+    }
+    PrintStream stream = ShadowLog.stream;
+    if (stream != null) {
+      stream.flush();
+    }
+  }
+
+  /**
+   * Non-Android accessor.  When {@code robolectric.logging} names a directory, starts writing the log output
+   * to a memory-mapped {@code <name>.log} file in it, closing the previous file.
+   *
+   * @param name Log file name, usually the test class name
+   */
+  public static void setLogName(String name) {
+    AsyncLogWriter writer;
+    File directory;
+    synchronized (ShadowLog.class) {
+      if (logDirectory == null || asyncWriter == null || name.equals(logName)) {
+        return;
+      }
+      writer = asyncWriter;
+      directory = logDirectory;
+      logName = name;
+    }
+    try {
+      writer.switchTo(AsyncLogWriter.MappedFileSink.open(directory, name));
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
   @Resetter
-  public static synchronized void reset() {
-    logs.clear();
-    logsByTag.clear();
+  public static void reset() {
+    flush();
+    synchronized (ShadowLog.class) {
+      logs.clear();
+      logsByTag.clear();
+      minimumLevel = defaultMinimumLevel;
+      maxLogsPerTag = defaultMaxLogsPerTag;
+    }
   }
 
   public static void setupLogging() {
+    String level = System.getProperty("robolectric.logging.level");
+    if (level != null) {
+      synchronized (ShadowLog.class) {
+        minimumLevel = defaultMinimumLevel = parseLevel(level);
+      }
+    }
+    String maxPerTag = System.getProperty("robolectric.logging.maxPerTag");
+    if (maxPerTag != null) {
+      synchronized (ShadowLog.class) {
+        maxLogsPerTag = defaultMaxLogsPerTag = Integer.parseInt(maxPerTag.trim());
+      }
+    }
+
     String logging = System.getProperty("robolectric.logging");
     if (logging != null && stream == null) {
+      boolean async = Boolean.getBoolean("robolectric.logging.async");
       PrintStream stream = null;
       if ("stdout".equalsIgnoreCase(logging)) {
         stream = System.out;
       } else if ("stderr".equalsIgnoreCase(logging)) {
         stream = System.err;
+      } else if (new File(logging).isDirectory()) {
+        // per test class files, which only the async writer can switch between, see setLogName(); anything
+        // logged outside of a test class goes to stdout
+        synchronized (ShadowLog.class) {
+          logDirectory = new File(logging);
+        }
+        stream = System.out;
+        async = true;
       } else {
         try {
-          final PrintStream file = new PrintStream(new FileOutputStream(logging), true);
+          final PrintStream file = new PrintStream(new FileOutputStream(logging), !async);
           stream = file;
+          if (async) {
+            startAsyncWriter(new AsyncLogWriter.PrintStreamSink(file, true));
+            return;
+          }
           Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override public void run() {
               try {
@@ -183,15 +308,45 @@ public class ShadowLog {
           e.printStackTrace();
         }
       }
-      ShadowLog.stream = stream;
+      if (stream != null && async) {
+        startAsyncWriter(new AsyncLogWriter.PrintStreamSink(stream, false));
+      } else {
+        ShadowLog.stream = stream;
+      }
     }
   }
 
+  private static void startAsyncWriter(AsyncLogWriter.Sink sink) {
+    final AsyncLogWriter writer = new AsyncLogWriter(sink);
+    synchronized (ShadowLog.class) {
+      asyncWriter = writer;
+      ShadowLog.stream = writer.getPrintStream();
+    }
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+      @Override public void run() {
+        writer.close();
+      }
+    });
+  }
+
+  private static int parseLevel(String level) {
+    String name = level.trim().toUpperCase();
+    if (name.startsWith("V")) return Log.VERBOSE;
+    if (name.startsWith("D")) return Log.DEBUG;
+    if (name.startsWith("I")) return Log.INFO;
+    if (name.startsWith("W")) return Log.WARN;
+    if (name.startsWith("E")) return Log.ERROR;
+    if (name.startsWith("A")) return Log.ASSERT;
+    return Integer.parseInt(name);
+  }
+
   public static class LogItem {
     public final int type;
     public final String tag;
     public final String msg;
     public final Throwable throwable;
+    private boolean dropped;
+    private String formatted;
 
     public LogItem(int type, String tag, String msg, Throwable throwable) {
       this.type = type;
@@ -200,6 +355,23 @@ public class ShadowLog {
       this.throwable = throwable;
     }
 
+    /**
+     * @return The item as written to {@link #stream}, stack trace included; formatted the first time it's asked for
+     */
+    String format() {
+      if (formatted == null) {
+        StringWriter text = new StringWriter();
+        PrintWriter writer = new PrintWriter(text);
+        writer.println(levelChar(type) + "/" + tag + ": " + msg);
+        if (throwable != null) {
+          throwable.printStackTrace(writer);
+        }
+        writer.flush();
+        formatted = text.toString();
+      }
+      return formatted;
+    }
+
     @Override
     public boolean equals(Object o) {
       if (this == o) return true;
@@ -231,4 +403,95 @@ public class ShadowLog {
           '}';
     }
   }
+
+  /*
+    Log items in logged order, in a ring that grows while it's unbounded. The per-tag rings drop their oldest items
+    as they fill up; the ring of all items only flags those as dropped, and compacts when they make up half of it or
+    when it's read, so logging stays constant time. Reads lock ShadowLog like logging does, so the live lists handed
+    out by getLogs() and getLogsForTag() can be read while other threads log.
+   */
+  private static class LogRing extends AbstractList<LogItem> {
+    private LogItem[] items = new LogItem[16];
+    private int head;
+    private int count;
+    private int droppedCount;
+
+    @Override public LogItem get(int index) {
+      synchronized (ShadowLog.class) {
+        compact();
+        if (index < 0 || index >= count) {
+          throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+        return items[(head + index) % items.length];
+      }
+    }
+
+    @Override public int size() {
+      synchronized (ShadowLog.class) {
+        compact();
+        return count;
+      }
+    }
+
+    @Override public void clear() {
+      synchronized (ShadowLog.class) {
+        Arrays.fill(items, null);
+        head = count = droppedCount = 0;
+        modCount++;
+      }
+    }
+
+    @Override public boolean add(LogItem item) {
+      if (count == items.length) {
+        resize(items.length * 2);
+      }
+      items[(head + count) % items.length] = item;
+      count++;
+      modCount++;
+      return true;
+    }
+
+    LogItem removeFirst() {
+      LogItem first = items[head];
+      items[head] = null;
+      head = (head + 1) % items.length;
+      count--;
+      modCount++;
+      return first;
+    }
+
+    void drop(LogItem item) {
+      item.dropped = true;
+      droppedCount++;
+      if (droppedCount * 2 > count) {
+        compact();
+      }
+    }
+
+    private void compact() {
+      if (droppedCount == 0) return;
+      LogItem[] kept = new LogItem[Math.max(16, (count - droppedCount) * 2)];
+      int keptCount = 0;
+      for (int i = 0; i < count; i++) {
+        LogItem item = items[(head + i) % items.length];
+        if (!item.dropped) {
+          kept[keptCount++] = item;
+        }
+      }
+      items = kept;
+      head = 0;
+      count = keptCount;
+      droppedCount = 0;
+      modCount++;
+    }
+
+    private void resize(int capacity) {
+      LogItem[] resized = new LogItem[capacity];
+      for (int i = 0; i < count; i++) {
+        resized[i] = items[(head + i) % items.length];
+      }
+      items = resized;
+      head = 0;
+    }
+  }
 }
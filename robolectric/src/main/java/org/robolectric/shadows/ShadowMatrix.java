@@ -1,10 +1,10 @@
 package org.robolectric.shadows;
 
 import android.graphics.Matrix;
-import java.util.ArrayDeque;
+import android.graphics.RectF;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Deque;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -13,6 +13,15 @@ import org.robolectric.annotation.Implements;
 
 import static org.robolectric.Robolectric.shadowOf;
 
+/**
+ * Shadow of {@code android.graphics.Matrix} backed by the nine values of a real 3x3 matrix, laid out like
+ * {@link Matrix#getValues(float[])}, so that concatenation, inversion and mapping give the same results as on a
+ * device. Transforming and mapping don't allocate.
+ *
+ * The operations performed on a matrix are also recorded, in a compact form which is only turned into the strings
+ * of {@link #getPreOperations()}, {@link #getPostOperations()}, {@link #getSetOperations()} and
+ * {@link #toString()} when those are called.
+ */
 @SuppressWarnings({"UnusedDeclaration"})
 @Implements(Matrix.class)
 public class ShadowMatrix {
@@ -23,9 +32,13 @@ public class ShadowMatrix {
   public static final String SKEW = "skew";
   public static final String MATRIX = "matrix";
 
-  private final Deque<String> preOps = new ArrayDeque<String>();
-  private final Deque<String> postOps = new ArrayDeque<String>();
-  private final Map<String, String> setOps = new LinkedHashMap<String, String>();
+  private static final float NEARLY_ZERO = 1f / (1 << 12);
+
+  private final float[] values = setIdentity(new float[9]);
+  private final float[] operand = new float[9];
+  private final Operations preOps = new Operations();
+  private final Operations postOps = new Operations();
+  private final Operations setOps = new Operations();
 
   public void __constructor__(Matrix src) {
     set(src);
@@ -36,7 +49,11 @@ public class ShadowMatrix {
    * be first in the list.
    */
   public List<String> getPreOperations() {
-    return Collections.unmodifiableList(new ArrayList<String>(preOps));
+    List<String> operations = new ArrayList<String>(preOps.size);
+    for (int i = preOps.size - 1; i >= 0; i--) {
+      operations.add(preOps.describe(i));
+    }
+    return Collections.unmodifiableList(operations);
   }
 
   /**
@@ -44,31 +61,53 @@ public class ShadowMatrix {
    * be last in the list.
    */
   public List<String> getPostOperations() {
-    return Collections.unmodifiableList(new ArrayList<String>(postOps));
+    List<String> operations = new ArrayList<String>(postOps.size);
+    for (int i = 0; i < postOps.size; i++) {
+      operations.add(postOps.describe(i));
+    }
+    return Collections.unmodifiableList(operations);
   }
 
   /** A map of all 'set' operations performed on this Matrix. */
   public Map<String, String> getSetOperations() {
-    return Collections.unmodifiableMap(new LinkedHashMap<String, String>(setOps));
+    Map<String, String> operations = new LinkedHashMap<String, String>();
+    for (int i = 0; i < setOps.size; i++) {
+      operations.put(setOps.name(i), setOps.arguments(i));
+    }
+    return Collections.unmodifiableMap(operations);
   }
 
   @Implementation
   public boolean isIdentity() {
-    return preOps.isEmpty() && postOps.isEmpty() && setOps.isEmpty();
+    return values[0] == 1 && values[1] == 0 && values[2] == 0
+        && values[3] == 0 && values[4] == 1 && values[5] == 0
+        && values[6] == 0 && values[7] == 0 && values[8] == 1;
+  }
+
+  @Implementation
+  public boolean rectStaysRect() {
+    if (hasPerspective()) return false;
+    return (values[0] != 0 && values[4] != 0 && values[1] == 0 && values[3] == 0)
+        || (values[0] == 0 && values[4] == 0 && values[1] != 0 && values[3] != 0);
   }
 
   @Implementation
   public void set(Matrix src) {
-    reset();
+    if (src == null) {
+      reset();
+      return;
+    }
 
     ShadowMatrix shadowMatrix = shadowOf(src);
-    preOps.addAll(shadowMatrix.preOps);
-    postOps.addAll(shadowMatrix.postOps);
-    setOps.putAll(shadowMatrix.setOps);
+    System.arraycopy(shadowMatrix.values, 0, values, 0, 9);
+    preOps.set(shadowMatrix.preOps);
+    postOps.set(shadowMatrix.postOps);
+    setOps.set(shadowMatrix.setOps);
   }
 
   @Implementation
   public void reset() {
+    setIdentity(values);
     preOps.clear();
     postOps.clear();
     setOps.clear();
@@ -76,131 +115,589 @@ public class ShadowMatrix {
 
   @Implementation
   public void setTranslate(float dx, float dy) {
-    setOps.put(TRANSLATE, dx + " " + dy);
+    setOps.put(Operations.TRANSLATE, 2, dx, dy, 0, 0);
+    translate(values, dx, dy);
   }
 
   @Implementation
   public void setScale(float sx, float sy, float px, float py) {
-    setOps.put(SCALE, sx + " " + sy + " " + py + " " + py);
+    setOps.put(Operations.SCALE, 4, sx, sy, px, py);
+    scale(values, sx, sy, px, py);
   }
 
   @Implementation
   public void setScale(float sx, float sy) {
-    setOps.put(SCALE, sx + " " + sy);
+    setOps.put(Operations.SCALE, 2, sx, sy, 0, 0);
+    scale(values, sx, sy, 0, 0);
   }
 
   @Implementation
   public void setRotate(float degrees, float px, float py) {
-    setOps.put(ROTATE, degrees + " " + px + " " + py);
+    setOps.put(Operations.ROTATE, 3, degrees, px, py, 0);
+    rotate(values, degrees, px, py);
   }
 
   @Implementation
   public void setRotate(float degrees) {
-    setOps.put(ROTATE, Float.toString(degrees));
+    setOps.put(Operations.ROTATE, 1, degrees, 0, 0, 0);
+    rotate(values, degrees, 0, 0);
   }
 
   @Implementation
   public void setSinCos(float sinValue, float cosValue, float px, float py) {
-    setOps.put(SINCOS, sinValue + " " + cosValue + " " + px + " " + py);
+    setOps.put(Operations.SINCOS, 4, sinValue, cosValue, px, py);
+    sinCos(values, sinValue, cosValue, px, py);
   }
 
   @Implementation
   public void setSinCos(float sinValue, float cosValue) {
-    setOps.put(SINCOS, sinValue + " " + cosValue);
+    setOps.put(Operations.SINCOS, 2, sinValue, cosValue, 0, 0);
+    sinCos(values, sinValue, cosValue, 0, 0);
   }
 
   @Implementation
   public void setSkew(float kx, float ky, float px, float py) {
-    setOps.put(SKEW, kx + " " + ky + " " + px + " " + py);
+    setOps.put(Operations.SKEW, 4, kx, ky, px, py);
+    skew(values, kx, ky, px, py);
   }
 
   @Implementation
   public void setSkew(float kx, float ky) {
-    setOps.put(SKEW, kx + " " + ky);
+    setOps.put(Operations.SKEW, 2, kx, ky, 0, 0);
+    skew(values, kx, ky, 0, 0);
+  }
+
+  @Implementation
+  public boolean setConcat(Matrix a, Matrix b) {
+    multiply(shadowOf(a).values, shadowOf(b).values, values);
+    return true;
+  }
+
+  @Implementation
+  public boolean preTranslate(float dx, float dy) {
+    preOps.add(Operations.TRANSLATE, 2, dx, dy, 0, 0);
+    return preConcat(translate(operand, dx, dy));
+  }
+
+  @Implementation
+  public boolean preScale(float sx, float sy, float px, float py) {
+    preOps.add(Operations.SCALE, 4, sx, sy, px, py);
+    return preConcat(scale(operand, sx, sy, px, py));
+  }
+
+  @Implementation
+  public boolean preScale(float sx, float sy) {
+    preOps.add(Operations.SCALE, 2, sx, sy, 0, 0);
+    return preConcat(scale(operand, sx, sy, 0, 0));
+  }
+
+  @Implementation
+  public boolean preRotate(float degrees, float px, float py) {
+    preOps.add(Operations.ROTATE, 3, degrees, px, py, 0);
+    return preConcat(rotate(operand, degrees, px, py));
+  }
+
+  @Implementation
+  public boolean preRotate(float degrees) {
+    preOps.add(Operations.ROTATE, 1, degrees, 0, 0, 0);
+    return preConcat(rotate(operand, degrees, 0, 0));
+  }
+
+  @Implementation
+  public boolean preSkew(float kx, float ky, float px, float py) {
+    preOps.add(Operations.SKEW, 4, kx, ky, px, py);
+    return preConcat(skew(operand, kx, ky, px, py));
+  }
+
+  @Implementation
+  public boolean preSkew(float kx, float ky) {
+    preOps.add(Operations.SKEW, 2, kx, ky, 0, 0);
+    return preConcat(skew(operand, kx, ky, 0, 0));
   }
 
   @Implementation
-  public void preTranslate(float dx, float dy) {
-    preOps.addFirst(TRANSLATE + " " + dx + " " + dy);
+  public boolean preConcat(Matrix other) {
+    ShadowMatrix otherMatrix = shadowOf(other);
+    preOps.addMatrix(otherMatrix.snapshot());
+    return preConcat(otherMatrix.values);
   }
 
   @Implementation
-  public void preScale(float sx, float sy, float px, float py) {
-    preOps.addFirst(SCALE + " " + sx + " " + sy + " " + px + " " + py);
+  public boolean postTranslate(float dx, float dy) {
+    postOps.add(Operations.TRANSLATE, 2, dx, dy, 0, 0);
+    return postConcat(translate(operand, dx, dy));
   }
 
   @Implementation
-  public void preScale(float sx, float sy) {
-    preOps.addFirst(SCALE + " " + sx + " " + sy);
+  public boolean postScale(float sx, float sy, float px, float py) {
+    postOps.add(Operations.SCALE, 4, sx, sy, px, py);
+    return postConcat(scale(operand, sx, sy, px, py));
   }
 
   @Implementation
-  public void preRotate(float degrees, float px, float py) {
-    preOps.addFirst(ROTATE + " " + degrees + " " + px + " " + py);
+  public boolean postScale(float sx, float sy) {
+    postOps.add(Operations.SCALE, 2, sx, sy, 0, 0);
+    return postConcat(scale(operand, sx, sy, 0, 0));
   }
 
   @Implementation
-  public void preRotate(float degrees) {
-    preOps.addFirst(ROTATE + " " + Float.toString(degrees));
+  public boolean postRotate(float degrees, float px, float py) {
+    postOps.add(Operations.ROTATE, 3, degrees, px, py, 0);
+    return postConcat(rotate(operand, degrees, px, py));
   }
 
   @Implementation
-  public void preSkew(float kx, float ky, float px, float py) {
-    preOps.addFirst(SKEW + " " + kx + " " + ky + " " + px + " " + py);
+  public boolean postRotate(float degrees) {
+    postOps.add(Operations.ROTATE, 1, degrees, 0, 0, 0);
+    return postConcat(rotate(operand, degrees, 0, 0));
   }
 
   @Implementation
-  public void preSkew(float kx, float ky) {
-    preOps.addFirst(SKEW + " " + kx + " " + ky);
+  public boolean postSkew(float kx, float ky, float px, float py) {
+    postOps.add(Operations.SKEW, 4, kx, ky, px, py);
+    return postConcat(skew(operand, kx, ky, px, py));
   }
 
   @Implementation
-  public void preConcat(Matrix other) {
-    preOps.addFirst(MATRIX + " " + other);
+  public boolean postSkew(float kx, float ky) {
+    postOps.add(Operations.SKEW, 2, kx, ky, 0, 0);
+    return postConcat(skew(operand, kx, ky, 0, 0));
   }
 
   @Implementation
-  public void postTranslate(float dx, float dy) {
-    postOps.addLast(TRANSLATE + " " + dx + " " + dy);
+  public boolean postConcat(Matrix other) {
+    ShadowMatrix otherMatrix = shadowOf(other);
+    postOps.addMatrix(otherMatrix.snapshot());
+    return postConcat(otherMatrix.values);
   }
 
   @Implementation
-  public void postScale(float sx, float sy, float px, float py) {
-    postOps.addLast(SCALE + " " + sx + " " + sy + " " + px + " " + py);
+  public boolean setRectToRect(RectF src, RectF dst, Matrix.ScaleToFit stf) {
+    if (dst == null || src == null) {
+      throw new NullPointerException();
+    }
+    if (src.isEmpty()) {
+      setIdentity(values);
+      return false;
+    }
+    if (dst.isEmpty()) {
+      setIdentity(values);
+      values[0] = 0;
+      values[4] = 0;
+      return true;
+    }
+
+    float sx = dst.width() / src.width();
+    float sy = dst.height() / src.height();
+    boolean xLarger = false;
+    if (stf != Matrix.ScaleToFit.FILL) {
+      if (sx > sy) {
+        xLarger = true;
+        sx = sy;
+      } else {
+        sy = sx;
+      }
+    }
+
+    float tx = dst.left - src.left * sx;
+    float ty = dst.top - src.top * sy;
+    if (stf == Matrix.ScaleToFit.CENTER || stf == Matrix.ScaleToFit.END) {
+      float diff = xLarger ? dst.width() - src.width() * sy : dst.height() - src.height() * sy;
+      if (stf == Matrix.ScaleToFit.CENTER) {
+        diff /= 2;
+      }
+      if (xLarger) {
+        tx += diff;
+      } else {
+        ty += diff;
+      }
+    }
+
+    setIdentity(values);
+    values[Matrix.MSCALE_X] = sx;
+    values[Matrix.MSCALE_Y] = sy;
+    values[Matrix.MTRANS_X] = tx;
+    values[Matrix.MTRANS_Y] = ty;
+    return true;
   }
 
   @Implementation
-  public void postScale(float sx, float sy) {
-    postOps.addLast(SCALE + " " + sx + " " + sy);
+  public boolean invert(Matrix inverse) {
+    float[] m = values;
+    float cofactor0 = m[4] * m[8] - m[5] * m[7];
+    float cofactor3 = m[5] * m[6] - m[3] * m[8];
+    float cofactor6 = m[3] * m[7] - m[4] * m[6];
+    float determinant = m[0] * cofactor0 + m[1] * cofactor3 + m[2] * cofactor6;
+    if (Math.abs(determinant) <= NEARLY_ZERO * NEARLY_ZERO * NEARLY_ZERO) {
+      return false;
+    }
+    if (inverse == null) {
+      return true;
+    }
+
+    float scale = 1 / determinant;
+    float i0 = cofactor0 * scale;
+    float i1 = (m[2] * m[7] - m[1] * m[8]) * scale;
+    float i2 = (m[1] * m[5] - m[2] * m[4]) * scale;
+    float i3 = cofactor3 * scale;
+    float i4 = (m[0] * m[8] - m[2] * m[6]) * scale;
+    float i5 = (m[2] * m[3] - m[0] * m[5]) * scale;
+    float i6 = cofactor6 * scale;
+    float i7 = (m[1] * m[6] - m[0] * m[7]) * scale;
+    float i8 = (m[0] * m[4] - m[1] * m[3]) * scale;
+
+    float[] out = shadowOf(inverse).values;
+    out[0] = i0; out[1] = i1; out[2] = i2;
+    out[3] = i3; out[4] = i4; out[5] = i5;
+    out[6] = i6; out[7] = i7; out[8] = i8;
+    return true;
   }
 
   @Implementation
-  public void postRotate(float degrees, float px, float py) {
-    postOps.addLast(ROTATE + " " + degrees + " " + px + " " + py);
+  public void mapPoints(float[] dst, int dstIndex, float[] src, int srcIndex, int pointCount) {
+    internalCheckPointArrays(dst, dstIndex, src, srcIndex, pointCount);
+    if (dst == src && dstIndex > srcIndex) {
+      for (int i = pointCount - 1; i >= 0; i--) {
+        mapPoint(dst, dstIndex + i * 2, src[srcIndex + i * 2], src[srcIndex + i * 2 + 1], true);
+      }
+    } else {
+      for (int i = 0; i < pointCount; i++) {
+        mapPoint(dst, dstIndex + i * 2, src[srcIndex + i * 2], src[srcIndex + i * 2 + 1], true);
+      }
+    }
   }
 
   @Implementation
-  public void postRotate(float degrees) {
-    postOps.addLast(ROTATE + " " + Float.toString(degrees));
+  public void mapVectors(float[] dst, int dstIndex, float[] src, int srcIndex, int vectorCount) {
+    internalCheckPointArrays(dst, dstIndex, src, srcIndex, vectorCount);
+    if (dst == src && dstIndex > srcIndex) {
+      for (int i = vectorCount - 1; i >= 0; i--) {
+        mapPoint(dst, dstIndex + i * 2, src[srcIndex + i * 2], src[srcIndex + i * 2 + 1], false);
+      }
+    } else {
+      for (int i = 0; i < vectorCount; i++) {
+        mapPoint(dst, dstIndex + i * 2, src[srcIndex + i * 2], src[srcIndex + i * 2 + 1], false);
+      }
+    }
   }
 
   @Implementation
-  public void postSkew(float kx, float ky, float px, float py) {
-    postOps.addLast(SKEW + " " + kx + " " + ky + " " + px + " " + py);
+  public boolean mapRect(RectF dst, RectF src) {
+    if (dst == null || src == null) {
+      throw new NullPointerException();
+    }
+    float left = src.left, top = src.top, right = src.right, bottom = src.bottom;
+    float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+    float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+    for (int corner = 0; corner < 4; corner++) {
+      float x = (corner & 1) == 0 ? left : right;
+      float y = (corner & 2) == 0 ? top : bottom;
+      float w = hasPerspective() ? values[6] * x + values[7] * y + values[8] : 1;
+      float mappedX = values[0] * x + values[1] * y + values[2];
+      float mappedY = values[3] * x + values[4] * y + values[5];
+      if (w != 1 && w != 0) {
+        mappedX /= w;
+        mappedY /= w;
+      }
+      minX = Math.min(minX, mappedX);
+      minY = Math.min(minY, mappedY);
+      maxX = Math.max(maxX, mappedX);
+      maxY = Math.max(maxY, mappedY);
+    }
+    dst.set(minX, minY, maxX, maxY);
+    return rectStaysRect();
   }
 
   @Implementation
-  public void postSkew(float kx, float ky) {
-    postOps.addLast(SKEW + " " + kx + " " + ky);
+  public float mapRadius(float radius) {
+    float x0 = values[0] * radius, y0 = values[3] * radius;
+    float x1 = values[1] * radius, y1 = values[4] * radius;
+    float length0 = (float) Math.sqrt(x0 * x0 + y0 * y0);
+    float length1 = (float) Math.sqrt(x1 * x1 + y1 * y1);
+    return (float) Math.sqrt(length0 * length1);
   }
 
   @Implementation
-  public void postConcat(Matrix other) {
-    postOps.addLast(MATRIX + " " + other);
+  public void getValues(float[] values) {
+    if (values.length < 9) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    System.arraycopy(this.values, 0, values, 0, 9);
   }
 
   @Implementation
+  public void setValues(float[] values) {
+    if (values.length < 9) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    System.arraycopy(values, 0, this.values, 0, 9);
+  }
+
+  @Override @Implementation
+  public boolean equals(Object obj) {
+    if (!(obj instanceof Matrix)) return false;
+    float[] other = shadowOf((Matrix) obj).values;
+    for (int i = 0; i < 9; i++) {
+      if (values[i] != other[i]) return false;
+    }
+    return true;
+  }
+
+  @Override @Implementation
+  public int hashCode() {
+    int hash = 1;
+    for (int i = 0; i < 9; i++) {
+      // equals() treats 0 and -0 as the same value, so they must hash the same
+      hash = 31 * hash + Float.floatToIntBits(values[i] == 0 ? 0f : values[i]);
+    }
+    return hash;
+  }
+
+  @Override @Implementation
   public String toString() {
-    return "Matrix[pre=" + preOps + ", set=" + setOps + ", post=" + postOps + "]";
+    return describe(preOps, setOps, postOps);
+  }
+
+  private boolean hasPerspective() {
+    return values[6] != 0 || values[7] != 0 || values[8] != 1;
+  }
+
+  private void mapPoint(float[] dst, int index, float x, float y, boolean isPoint) {
+    float mappedX = values[0] * x + values[1] * y;
+    float mappedY = values[3] * x + values[4] * y;
+    if (hasPerspective()) {
+      // vectors are mapped as the difference between the mapped point and the mapped origin
+      float w = values[6] * x + values[7] * y + values[8];
+      mappedX = w != 0 ? (mappedX + values[2]) / w : mappedX + values[2];
+      mappedY = w != 0 ? (mappedY + values[5]) / w : mappedY + values[5];
+      if (!isPoint) {
+        mappedX -= values[8] != 0 ? values[2] / values[8] : values[2];
+        mappedY -= values[8] != 0 ? values[5] / values[8] : values[5];
+      }
+    } else if (isPoint) {
+      mappedX += values[2];
+      mappedY += values[5];
+    }
+    dst[index] = mappedX;
+    dst[index + 1] = mappedY;
+  }
+
+  private static void internalCheckPointArrays(float[] dst, int dstIndex, float[] src, int srcIndex, int pointCount) {
+    int srcStop = srcIndex + (pointCount << 1);
+    int dstStop = dstIndex + (pointCount << 1);
+    if ((pointCount | dstIndex | srcIndex | srcStop | dstStop) < 0 || srcStop > src.length || dstStop > dst.length) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+  }
+
+  private boolean preConcat(float[] other) {
+    multiply(values, other, values);
+    return true;
+  }
+
+  private boolean postConcat(float[] other) {
+    multiply(other, values, values);
+    return true;
+  }
+
+  /**
+   * Sets {@code out} to {@code a * b}; {@code out} may be either of them.
+   */
+  private static void multiply(float[] a, float[] b, float[] out) {
+    float a0 = a[0], a1 = a[1], a2 = a[2], a3 = a[3], a4 = a[4], a5 = a[5], a6 = a[6], a7 = a[7], a8 = a[8];
+    float b0 = b[0], b1 = b[1], b2 = b[2], b3 = b[3], b4 = b[4], b5 = b[5], b6 = b[6], b7 = b[7], b8 = b[8];
+    out[0] = a0 * b0 + a1 * b3 + a2 * b6;
+    out[1] = a0 * b1 + a1 * b4 + a2 * b7;
+    out[2] = a0 * b2 + a1 * b5 + a2 * b8;
+    out[3] = a3 * b0 + a4 * b3 + a5 * b6;
+    out[4] = a3 * b1 + a4 * b4 + a5 * b7;
+    out[5] = a3 * b2 + a4 * b5 + a5 * b8;
+    out[6] = a6 * b0 + a7 * b3 + a8 * b6;
+    out[7] = a6 * b1 + a7 * b4 + a8 * b7;
+    out[8] = a6 * b2 + a7 * b5 + a8 * b8;
+  }
+
+  private static float[] setIdentity(float[] m) {
+    m[0] = 1; m[1] = 0; m[2] = 0;
+    m[3] = 0; m[4] = 1; m[5] = 0;
+    m[6] = 0; m[7] = 0; m[8] = 1;
+    return m;
+  }
+
+  private static float[] translate(float[] m, float dx, float dy) {
+    setIdentity(m);
+    m[2] = dx;
+    m[5] = dy;
+    return m;
+  }
+
+  private static float[] scale(float[] m, float sx, float sy, float px, float py) {
+    setIdentity(m);
+    m[0] = sx;
+    m[2] = px - sx * px;
+    m[4] = sy;
+    m[5] = py - sy * py;
+    return m;
+  }
+
+  private static float[] rotate(float[] m, float degrees, float px, float py) {
+    double radians = Math.toRadians(degrees);
+    return sinCos(m, snapToZero((float) Math.sin(radians)), snapToZero((float) Math.cos(radians)), px, py);
+  }
+
+  private static float[] sinCos(float[] m, float sin, float cos, float px, float py) {
+    setIdentity(m);
+    m[0] = cos;
+    m[1] = -sin;
+    m[2] = sin * py + (1 - cos) * px;
+    m[3] = sin;
+    m[4] = cos;
+    m[5] = -sin * px + (1 - cos) * py;
+    return m;
+  }
+
+  private static float[] skew(float[] m, float kx, float ky, float px, float py) {
+    setIdentity(m);
+    m[1] = kx;
+    m[2] = -kx * py;
+    m[3] = ky;
+    m[5] = -ky * px;
+    return m;
+  }
+
+  private static float snapToZero(float value) {
+    return Math.abs(value) <= NEARLY_ZERO ? 0 : value;
+  }
+
+  private Operations[] snapshot() {
+    return new Operations[] {preOps.copy(), setOps.copy(), postOps.copy()};
+  }
+
+  private static String describe(Operations preOps, Operations setOps, Operations postOps) {
+    StringBuilder builder = new StringBuilder("Matrix[pre=[");
+    for (int i = preOps.size - 1; i >= 0; i--) {
+      if (i < preOps.size - 1) builder.append(", ");
+      builder.append(preOps.describe(i));
+    }
+    builder.append("], set={");
+    for (int i = 0; i < setOps.size; i++) {
+      if (i > 0) builder.append(", ");
+      builder.append(setOps.name(i)).append('=').append(setOps.arguments(i));
+    }
+    builder.append("}, post=[");
+    for (int i = 0; i < postOps.size; i++) {
+      if (i > 0) builder.append(", ");
+      builder.append(postOps.describe(i));
+    }
+    return builder.append("]]").toString();
+  }
+
+  /**
+   * Operations in the order they were performed: a kind, up to four arguments, or for concatenations a snapshot
+   * of the other matrix's operations.
+   */
+  private static class Operations {
+    static final int TRANSLATE = 0;
+    static final int SCALE = 1;
+    static final int ROTATE = 2;
+    static final int SINCOS = 3;
+    static final int SKEW = 4;
+    static final int MATRIX = 5;
+    private static final String[] NAMES = {
+        ShadowMatrix.TRANSLATE, ShadowMatrix.SCALE, ShadowMatrix.ROTATE, ShadowMatrix.SINCOS, ShadowMatrix.SKEW, ShadowMatrix.MATRIX
+    };
+
+    private int[] kinds = new int[0];
+    private int[] argCounts = new int[0];
+    private float[] args = new float[0];
+    private Operations[][] matrices = new Operations[0][];
+    int size;
+
+    void add(int kind, int argCount, float a, float b, float c, float d) {
+      ensureCapacity(size + 1);
+      set(size++, kind, argCount, a, b, c, d);
+    }
+
+    void addMatrix(Operations[] snapshot) {
+      ensureCapacity(size + 1);
+      set(size, MATRIX, 0, 0, 0, 0, 0);
+      matrices[size++] = snapshot;
+    }
+
+    /**
+     * Replaces the earlier operation of the same kind, if any, otherwise adds it.
+     */
+    void put(int kind, int argCount, float a, float b, float c, float d) {
+      for (int i = 0; i < size; i++) {
+        if (kinds[i] == kind) {
+          set(i, kind, argCount, a, b, c, d);
+          return;
+        }
+      }
+      add(kind, argCount, a, b, c, d);
+    }
+
+    void clear() {
+      for (int i = 0; i < size; i++) {
+        matrices[i] = null;
+      }
+      size = 0;
+    }
+
+    void set(Operations other) {
+      if (other == this) return;
+      clear();
+      ensureCapacity(other.size);
+      System.arraycopy(other.kinds, 0, kinds, 0, other.size);
+      System.arraycopy(other.argCounts, 0, argCounts, 0, other.size);
+      System.arraycopy(other.args, 0, args, 0, other.size * 4);
+      System.arraycopy(other.matrices, 0, matrices, 0, other.size);
+      size = other.size;
+    }
+
+    Operations copy() {
+      Operations copy = new Operations();
+      copy.set(this);
+      return copy;
+    }
+
+    String name(int index) {
+      return NAMES[kinds[index]];
+    }
+
+    String arguments(int index) {
+      if (kinds[index] == MATRIX) {
+        Operations[] snapshot = matrices[index];
+        return ShadowMatrix.describe(snapshot[0], snapshot[1], snapshot[2]);
+      }
+      StringBuilder builder = new StringBuilder();
+      for (int i = 0; i < argCounts[index]; i++) {
+        if (i > 0) builder.append(' ');
+        builder.append(args[index * 4 + i]);
+      }
+      return builder.toString();
+    }
+
+    String describe(int index) {
+      return name(index) + " " + arguments(index);
+    }
+
+    private void set(int index, int kind, int argCount, float a, float b, float c, float d) {
+      kinds[index] = kind;
+      argCounts[index] = argCount;
+      args[index * 4] = a;
+      args[index * 4 + 1] = b;
+      args[index * 4 + 2] = c;
+      args[index * 4 + 3] = d;
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity <= kinds.length) return;
+      int newCapacity = Math.max(capacity, Math.max(4, kinds.length * 2));
+      kinds = Arrays.copyOf(kinds, newCapacity);
+      argCounts = Arrays.copyOf(argCounts, newCapacity);
+      args = Arrays.copyOf(args, newCapacity * 4);
+      matrices = Arrays.copyOf(matrices, newCapacity);
+    }
   }
 }
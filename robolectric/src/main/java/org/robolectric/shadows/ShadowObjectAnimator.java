@@ -91,6 +91,7 @@ public class ShadowObjectAnimator extends ShadowValueAnimator {
   @Implementation
   public void setTarget(Object target) {
     this.target = target;
+    directlyOn(realObject, ObjectAnimator.class).setTarget(target);
   }
 
   @Implementation
@@ -101,6 +102,7 @@ public class ShadowObjectAnimator extends ShadowValueAnimator {
   @Implementation
   public void setPropertyName(String propertyName) {
     this.propertyName = propertyName;
+    directlyOn(realObject, ObjectAnimator.class).setPropertyName(propertyName);
   }
 
   @Implementation
@@ -111,18 +113,21 @@ public class ShadowObjectAnimator extends ShadowValueAnimator {
   @Implementation
   public void setFloatValues(float... values) {
     this.floatValues = values;
+    directlyOn(realObject, ObjectAnimator.class).setFloatValues(values);
     RobolectricShadowOfLevel16.shadowOf(realObject).setAnimationType(float.class);
   }
 
   @Implementation
   public void setIntValues(int... values) {
     this.intValues = values;
+    directlyOn(realObject, ObjectAnimator.class).setIntValues(values);
     RobolectricShadowOfLevel16.shadowOf(realObject).setAnimationType(int.class);
   }
 
   @Implementation
   public void setObjectValues(Object... values) {
     this.objectValues = values;
+    directlyOn(realObject, ObjectAnimator.class).setObjectValues(values);
     RobolectricShadowOfLevel16.shadowOf(realObject).setAnimationType(values[0].getClass());
   }
 
@@ -135,11 +140,17 @@ public class ShadowObjectAnimator extends ShadowValueAnimator {
   @Implementation
   public ObjectAnimator setDuration(long duration) {
     this.duration = duration;
+    directlyOn(realObject, ObjectAnimator.class).setDuration(duration);
     return realObject;
   }
 
   @Implementation
   public void start() {
+    if (isFrameDrivenEnabled()) {
+      super.start();
+      return;
+    }
+
     isRunning = true;
     String methodName = "set" + Character.toUpperCase(propertyName.charAt(0)) + propertyName.substring(1);
     final Method setter;
@@ -185,6 +196,7 @@ public class ShadowObjectAnimator extends ShadowValueAnimator {
   @Override
   @Implementation
   public boolean isRunning() {
+    if (isFrameDrivenEnabled()) return super.isRunning();
     return isRunning;
   }
 
@@ -192,6 +204,7 @@ public class ShadowObjectAnimator extends ShadowValueAnimator {
   public void cancel() {
     cancelWasCalled = true;
     isRunning = false;
+    super.cancel();
   }
 
   public boolean cancelWasCalled() {
@@ -3,15 +3,24 @@ package org.robolectric.shadows;
 import android.graphics.ColorFilter;
 import android.graphics.Paint;
 import android.graphics.PathEffect;
+import android.graphics.Rect;
 import android.graphics.Shader;
 import android.graphics.Typeface;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.RealObject;
+import org.robolectric.internal.HiddenApi;
+
+import static org.robolectric.Robolectric.directlyOn;
+import static org.robolectric.Robolectric.shadowOf;
 
 /**
  * Shadow of {@code Paint} that has some extra accessors so that tests can tell whether a {@code Paint} object was
  * created with the expected parameters.
+ *
+ * With text measurement on (see {@link #setTextMeasurementEnabled(boolean)}) text is measured with real font
+ * metrics, so {@code StaticLayout} and {@code TextView} wrap, ellipsize and size text much like a device does.
+ * The built-in typefaces are measured with the host's fonts, since Android's fonts don't ship with the SDK jars.
  */
 @SuppressWarnings({"UnusedDeclaration"})
 @Implements(Paint.class)
@@ -44,6 +53,55 @@ public class ShadowPaint {
     antiAlias = (flags & Paint.ANTI_ALIAS_FLAG) == Paint.ANTI_ALIAS_FLAG;
   }
 
+  public void __constructor__(Paint otherPaint) {
+    copyFrom(shadowOf(otherPaint));
+  }
+
+  @Implementation
+  public void set(Paint src) {
+    directlyOn(paint, Paint.class).set(src);
+    if (src != paint) {
+      copyFrom(shadowOf(src));
+    }
+  }
+
+  private void copyFrom(ShadowPaint other) {
+    color = other.color;
+    style = other.style;
+    cap = other.cap;
+    join = other.join;
+    width = other.width;
+    shadowRadius = other.shadowRadius;
+    shadowDx = other.shadowDx;
+    shadowDy = other.shadowDy;
+    shadowColor = other.shadowColor;
+    shader = other.shader;
+    alpha = other.alpha;
+    filter = other.filter;
+    antiAlias = other.antiAlias;
+    dither = other.dither;
+    flags = other.flags;
+    pathEffect = other.pathEffect;
+    typeface = other.typeface;
+    textSize = other.textSize;
+    textAlign = other.textAlign;
+  }
+
+  /**
+   * Non-Android accessor. Turns {@link Feature#TEXT_MEASUREMENT} on or off. With it off {@link #measureText(String)}
+   * returns the length of the text and other measurements are zero. With it on, text is measured using the JDK's
+   * font engine with the paint's typeface and text size, so results depend on the fonts installed on the host.
+   *
+   * @param enabled whether text should be measured with real font metrics
+   */
+  public static void setTextMeasurementEnabled(boolean enabled) {
+    Feature.TEXT_MEASUREMENT.setEnabled(enabled);
+  }
+
+  public static boolean isTextMeasurementEnabled() {
+    return Feature.TEXT_MEASUREMENT.isEnabled();
+  }
+
   @Implementation
   public int getFlags() {
     return flags;
@@ -267,6 +325,172 @@ public class ShadowPaint {
 
   @Implementation
   public float measureText(String text) {
+    if (!isTextMeasurementEnabled()) return text.length();
+    return measurer().measure(text, 0, text.length(), null, 0);
+  }
+
+  @Implementation
+  public float measureText(String text, int start, int end) {
+    if (!isTextMeasurementEnabled()) return directlyOn(paint, Paint.class).measureText(text, start, end);
+    return measurer().measure(text, start, end, null, 0);
+  }
+
+  @Implementation
+  public float measureText(CharSequence text, int start, int end) {
+    if (!isTextMeasurementEnabled()) return directlyOn(paint, Paint.class).measureText(text, start, end);
+    return measurer().measure(text, start, end, null, 0);
+  }
+
+  @Implementation
+  public float measureText(char[] text, int index, int count) {
+    if (!isTextMeasurementEnabled()) return directlyOn(paint, Paint.class).measureText(text, index, count);
+    return measurer().measure(text, index, index + count, null, 0);
+  }
+
+  @Implementation
+  public int getTextWidths(String text, float[] widths) {
+    if (!isTextMeasurementEnabled()) return directlyOn(paint, Paint.class).getTextWidths(text, widths);
+    measurer().measure(text, 0, text.length(), widths, 0);
     return text.length();
   }
+
+  @Implementation
+  public int getTextWidths(String text, int start, int end, float[] widths) {
+    if (!isTextMeasurementEnabled()) return directlyOn(paint, Paint.class).getTextWidths(text, start, end, widths);
+    measurer().measure(text, start, end, widths, 0);
+    return end - start;
+  }
+
+  @Implementation
+  public int getTextWidths(CharSequence text, int start, int end, float[] widths) {
+    if (!isTextMeasurementEnabled()) return directlyOn(paint, Paint.class).getTextWidths(text, start, end, widths);
+    measurer().measure(text, start, end, widths, 0);
+    return end - start;
+  }
+
+  @Implementation
+  public int getTextWidths(char[] text, int index, int count, float[] widths) {
+    if (!isTextMeasurementEnabled()) return directlyOn(paint, Paint.class).getTextWidths(text, index, count, widths);
+    measurer().measure(text, index, index + count, widths, 0);
+    return count;
+  }
+
+  @HiddenApi @Implementation
+  public float getTextRunAdvances(char[] chars, int index, int count, int contextIndex, int contextCount, int flags,
+                                  float[] advances, int advancesIndex) {
+    if (!isTextMeasurementEnabled()) {
+      return directlyOn(paint, Paint.class).getTextRunAdvances(chars, index, count, contextIndex, contextCount, flags,
+          advances, advancesIndex);
+    }
+    return measurer().measure(chars, index, index + count, advances, advancesIndex);
+  }
+
+  @HiddenApi @Implementation
+  public float getTextRunAdvances(CharSequence text, int start, int end, int contextStart, int contextEnd, int flags,
+                                  float[] advances, int advancesIndex) {
+    if (!isTextMeasurementEnabled()) {
+      return directlyOn(paint, Paint.class).getTextRunAdvances(text, start, end, contextStart, contextEnd, flags,
+          advances, advancesIndex);
+    }
+    return measurer().measure(text, start, end, advances, advancesIndex);
+  }
+
+  @HiddenApi @Implementation
+  public float getTextRunAdvances(String text, int start, int end, int contextStart, int contextEnd, int flags,
+                                  float[] advances, int advancesIndex) {
+    if (!isTextMeasurementEnabled()) {
+      return directlyOn(paint, Paint.class).getTextRunAdvances(text, start, end, contextStart, contextEnd, flags,
+          advances, advancesIndex);
+    }
+    return measurer().measure(text, start, end, advances, advancesIndex);
+  }
+
+  @Implementation
+  public int breakText(String text, boolean measureForwards, float maxWidth, float[] measuredWidth) {
+    if (!isTextMeasurementEnabled()) {
+      return directlyOn(paint, Paint.class).breakText(text, measureForwards, maxWidth, measuredWidth);
+    }
+    return measurer().breakText(text, 0, text.length(), measureForwards, maxWidth, measuredWidth);
+  }
+
+  @Implementation
+  public int breakText(CharSequence text, int start, int end, boolean measureForwards, float maxWidth,
+                       float[] measuredWidth) {
+    if (!isTextMeasurementEnabled()) {
+      return directlyOn(paint, Paint.class).breakText(text, start, end, measureForwards, maxWidth, measuredWidth);
+    }
+    return measurer().breakText(text, start, end, measureForwards, maxWidth, measuredWidth);
+  }
+
+  @Implementation
+  public int breakText(char[] text, int index, int count, float maxWidth, float[] measuredWidth) {
+    if (!isTextMeasurementEnabled()) {
+      return directlyOn(paint, Paint.class).breakText(text, index, count, maxWidth, measuredWidth);
+    }
+    // as on Android, a negative count measures backwards from index
+    boolean forwards = count >= 0;
+    int start = forwards ? index : index + count;
+    int end = forwards ? index + count : index;
+    return measurer().breakText(new String(text, start, end - start), 0, end - start, forwards, maxWidth,
+        measuredWidth);
+  }
+
+  @Implementation
+  public void getTextBounds(String text, int start, int end, Rect bounds) {
+    if (!isTextMeasurementEnabled()) {
+      directlyOn(paint, Paint.class).getTextBounds(text, start, end, bounds);
+      return;
+    }
+    java.awt.Rectangle rectangle = measurer().bounds(text, start, end);
+    bounds.set(rectangle.x, rectangle.y, rectangle.x + rectangle.width, rectangle.y + rectangle.height);
+  }
+
+  @Implementation
+  public void getTextBounds(char[] text, int index, int count, Rect bounds) {
+    getTextBounds(new String(text, index, count), 0, count, bounds);
+  }
+
+  @Implementation
+  public float ascent() {
+    return isTextMeasurementEnabled() ? measurer().ascent() : 0;
+  }
+
+  @Implementation
+  public float descent() {
+    return isTextMeasurementEnabled() ? measurer().descent() : 0;
+  }
+
+  @Implementation
+  public float getFontMetrics(Paint.FontMetrics metrics) {
+    if (!isTextMeasurementEnabled()) return 0;
+    TextMeasurer measurer = measurer();
+    if (metrics != null) {
+      metrics.top = measurer.top();
+      metrics.ascent = measurer.ascent();
+      metrics.descent = measurer.descent();
+      metrics.bottom = measurer.bottom();
+      metrics.leading = measurer.leading();
+    }
+    return measurer.descent() - measurer.ascent() + measurer.leading();
+  }
+
+  @Implementation
+  public int getFontMetricsInt(Paint.FontMetricsInt metrics) {
+    if (!isTextMeasurementEnabled()) return 0;
+    TextMeasurer measurer = measurer();
+    if (metrics != null) {
+      metrics.top = (int) Math.floor(measurer.top());
+      metrics.ascent = Math.round(measurer.ascent());
+      metrics.descent = Math.round(measurer.descent());
+      metrics.bottom = (int) Math.ceil(measurer.bottom());
+      metrics.leading = Math.round(measurer.leading());
+    }
+    return Math.round(measurer.descent() - measurer.ascent() + measurer.leading());
+  }
+
+  private TextMeasurer measurer() {
+    String family = typeface == null ? null : shadowOf(typeface).getAssetPath();
+    int style = typeface == null ? Typeface.NORMAL : typeface.getStyle();
+    return TextMeasurer.get(family, style, textSize);
+  }
 }
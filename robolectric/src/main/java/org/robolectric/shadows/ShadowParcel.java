@@ -1,28 +1,24 @@
 package org.robolectric.shadows;
 
 import android.os.Parcel;
-import android.util.Pair;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.RealObject;
 import org.robolectric.internal.HiddenApi;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.lang.reflect.Field;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Implements(Parcel.class)
-@SuppressWarnings("unchecked")
 public class ShadowParcel {
   @RealObject private Parcel realObject;
-  private static final Map<Integer, ByteBuffer> NATIVE_PTR_TO_PARCEL = new LinkedHashMap<Integer, ByteBuffer>();
+  private static final ParcelStore PARCELS = new ParcelStore();
 
   // Unfortunately method must be shadowed since the implementation in API 16
   // calls Arrays.checkOffsetAndCount which is not preset in most JDK implementations.
@@ -37,137 +33,148 @@ public class ShadowParcel {
 
   @Implementation @HiddenApi
   public static int nativeDataSize(int nativePtr) {
-    return NATIVE_PTR_TO_PARCEL.get(nativePtr).dataSize();
+    return PARCELS.get(nativePtr).dataSize();
   }
 
   @Implementation @HiddenApi
   public static int nativeDataAvail(int nativePtr) {
-    return NATIVE_PTR_TO_PARCEL.get(nativePtr).dataAvailable();
+    return PARCELS.get(nativePtr).dataAvailable();
   }
 
   @Implementation @HiddenApi
   public static int nativeDataPosition(int nativePtr) {
-    return NATIVE_PTR_TO_PARCEL.get(nativePtr).dataPosition();
+    return PARCELS.get(nativePtr).dataPosition();
   }
 
   @Implementation @HiddenApi
   public static int nativeDataCapacity(int nativePtr) {
-    return NATIVE_PTR_TO_PARCEL.get(nativePtr).dataCapacity();
+    return PARCELS.get(nativePtr).dataCapacity();
   }
 
   @Implementation @HiddenApi
   public static void nativeSetDataSize(int nativePtr, int size) {
-    NATIVE_PTR_TO_PARCEL.get(nativePtr).setDataSize(size);
+    PARCELS.get(nativePtr).setDataSize(size);
   }
 
   @Implementation @HiddenApi
   public static void nativeSetDataPosition(int nativePtr, int pos) {
-    NATIVE_PTR_TO_PARCEL.get(nativePtr).setDataPosition(pos);
+    PARCELS.get(nativePtr).setDataPosition(pos);
   }
 
   @Implementation @HiddenApi
   public static void nativeSetDataCapacity(int nativePtr, int size) {
-    NATIVE_PTR_TO_PARCEL.get(nativePtr).setDataCapacity(size);
+    PARCELS.get(nativePtr).setDataCapacity(size);
   }
 
   @Implementation @HiddenApi
   public static void nativeWriteByteArray(int nativePtr, byte[] b, int offset, int len) {
-    NATIVE_PTR_TO_PARCEL.get(nativePtr).writeByteArray(b, offset, len);
+    PARCELS.getForWrite(nativePtr).writeByteArray(b, offset, len);
   }
 
   @Implementation @HiddenApi
   public static void nativeWriteInt(int nativePtr, int val) {
-    NATIVE_PTR_TO_PARCEL.get(nativePtr).writeInt(val);
+    PARCELS.getForWrite(nativePtr).writeInt(val);
   }
 
   @Implementation @HiddenApi
   public static void nativeWriteLong(int nativePtr, long val) {
-    NATIVE_PTR_TO_PARCEL.get(nativePtr).writeLong(val);
+    PARCELS.getForWrite(nativePtr).writeLong(val);
   }
 
   @Implementation @HiddenApi
   public static void nativeWriteFloat(int nativePtr, float val) {
-    NATIVE_PTR_TO_PARCEL.get(nativePtr).writeFloat(val);
+    PARCELS.getForWrite(nativePtr).writeFloat(val);
   }
 
   @Implementation @HiddenApi
   public static void nativeWriteDouble(int nativePtr, double val) {
-    NATIVE_PTR_TO_PARCEL.get(nativePtr).writeDouble(val);
+    PARCELS.getForWrite(nativePtr).writeDouble(val);
   }
 
   @Implementation @HiddenApi
   public static void nativeWriteString(int nativePtr, String val) {
-    NATIVE_PTR_TO_PARCEL.get(nativePtr).writeString(val);
+    PARCELS.getForWrite(nativePtr).writeString(val);
   }
 
   @Implementation @HiddenApi
   public static byte[] nativeCreateByteArray(int nativePtr) {
-    return NATIVE_PTR_TO_PARCEL.get(nativePtr).readByteArray();
+    return PARCELS.get(nativePtr).readByteArray();
   }
 
   @Implementation @HiddenApi
   public static int nativeReadInt(int nativePtr) {
-    return NATIVE_PTR_TO_PARCEL.get(nativePtr).readInt();
+    return PARCELS.get(nativePtr).readInt();
   }
 
   @Implementation @HiddenApi
   public static long nativeReadLong(int nativePtr) {
-    return NATIVE_PTR_TO_PARCEL.get(nativePtr).readLong();
+    return PARCELS.get(nativePtr).readLong();
   }
 
   @Implementation @HiddenApi
   public static float nativeReadFloat(int nativePtr) {
-    return NATIVE_PTR_TO_PARCEL.get(nativePtr).readFloat();
+    return PARCELS.get(nativePtr).readFloat();
   }
 
   @Implementation @HiddenApi
   public static double nativeReadDouble(int nativePtr) {
-    return NATIVE_PTR_TO_PARCEL.get(nativePtr).readDouble();
+    return PARCELS.get(nativePtr).readDouble();
   }
 
   @Implementation @HiddenApi
   public static String nativeReadString(int nativePtr) {
-    return NATIVE_PTR_TO_PARCEL.get(nativePtr).readString();
+    return PARCELS.get(nativePtr).readString();
   }
 
   @Implementation @HiddenApi
   public static int nativeCreate() {
-    // Pick a native ptr that hasn't been used.
-    int nativePtrUsed = 0;
-    while (NATIVE_PTR_TO_PARCEL.containsKey(nativePtrUsed)) {
-      nativePtrUsed++;
-    }
-    NATIVE_PTR_TO_PARCEL.put(nativePtrUsed, new ByteBuffer());
-    return nativePtrUsed;
+    return PARCELS.create();
   }
 
   @Implementation @HiddenApi
   public static void nativeFreeBuffer(int nativePtr) {
-    NATIVE_PTR_TO_PARCEL.get(nativePtr).clear();
+    PARCELS.free(nativePtr);
   }
 
   @Implementation @HiddenApi
   public static void nativeDestroy(int nativePtr) {
-    NATIVE_PTR_TO_PARCEL.remove(nativePtr);
+    PARCELS.destroy(nativePtr);
   }
 
   @Implementation @HiddenApi
   public static byte[] nativeMarshall(int nativePtr) {
-    return NATIVE_PTR_TO_PARCEL.get(nativePtr).toByteArray();
+    return PARCELS.get(nativePtr).toByteArray();
   }
 
   @Implementation @HiddenApi
   public static void nativeUnmarshall(int nativePtr, byte[] data, int offset, int length) {
-    NATIVE_PTR_TO_PARCEL.put(nativePtr, ByteBuffer.fromByteArray(data, offset, length));
+    PARCELS.getForWrite(nativePtr).fromByteArray(data, offset, length);
   }
 
   @Implementation @HiddenApi
   public static void nativeAppendFrom(int thisNativePtr, int otherNativePtr, int offset, int length) {
-    ByteBuffer thisByteBuffer = NATIVE_PTR_TO_PARCEL.get(thisNativePtr);
-    ByteBuffer otherByteBuffer = NATIVE_PTR_TO_PARCEL.get(otherNativePtr);
+    ByteBuffer thisByteBuffer = PARCELS.getForWrite(thisNativePtr);
+    ByteBuffer otherByteBuffer = PARCELS.get(otherNativePtr);
     thisByteBuffer.appendFrom(otherByteBuffer, offset, length);
   }
 
+  /**
+   * Returns the number of native parcels that currently exist, whether in use or sitting in
+   * {@link Parcel}'s own pool.
+   */
+  public static int getLiveParcelCount() {
+    return PARCELS.liveCount();
+  }
+
+  /**
+   * Returns the number of parcels that are in use, i.e. newly created or written to since they were last
+   * recycled, and have not been recycled yet. Comparing this before and after a piece of code shows whether
+   * it leaks parcels.
+   */
+  public static int getUnrecycledParcelCount() {
+    return PARCELS.unrecycledCount();
+  }
+
   private Object getPrivateField(Object o, String fieldName) {
     try {
       Field f = o.getClass().getDeclaredField(fieldName);
@@ -178,18 +185,99 @@ public class ShadowParcel {
     }
   }
 
+  /**
+   * Thread-safe registry of native parcels keyed by pointer. Parcels may be created, recycled and finalized on any
+   * thread, so lookups go through a concurrent map. Buffers of destroyed parcels are kept in a small pool and handed
+   * out again by {@link #create()} instead of being reallocated.
+   */
+  private static class ParcelStore {
+    private static final int POOL_SIZE = 32;
+    private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+
+    private final AtomicInteger pointerCounter = new AtomicInteger(0);
+    private final Map<Integer, ByteBuffer> buffers = new ConcurrentHashMap<Integer, ByteBuffer>();
+    private final BlockingQueue<ByteBuffer> pool = new ArrayBlockingQueue<ByteBuffer>(POOL_SIZE);
+    private final AtomicInteger unrecycled = new AtomicInteger(0);
+
+    public ByteBuffer get(int ptr) {
+      ByteBuffer buffer = buffers.get(ptr);
+      if (buffer == null) {
+        throw new IllegalArgumentException("Invalid parcel pointer: " + ptr);
+      }
+      return buffer;
+    }
+
+    public ByteBuffer getForWrite(int ptr) {
+      ByteBuffer buffer = get(ptr);
+      if (buffer.inUse.compareAndSet(false, true)) {
+        unrecycled.incrementAndGet();
+      }
+      return buffer;
+    }
+
+    public int create() {
+      ByteBuffer buffer = pool.poll();
+      if (buffer == null) {
+        buffer = new ByteBuffer();
+      }
+      int ptr = pointerCounter.incrementAndGet();
+      buffers.put(ptr, buffer);
+      getForWrite(ptr);
+      return ptr;
+    }
+
+    public void free(int ptr) {
+      ByteBuffer buffer = get(ptr);
+      release(buffer);
+      buffer.clear();
+    }
+
+    public void destroy(int ptr) {
+      ByteBuffer buffer = buffers.remove(ptr);
+      if (buffer == null) {
+        return;
+      }
+      release(buffer);
+      buffer.clear();
+      if (buffer.dataCapacity() <= MAX_POOLED_CAPACITY) {
+        pool.offer(buffer);
+      }
+    }
+
+    public int liveCount() {
+      return buffers.size();
+    }
+
+    public int unrecycledCount() {
+      return unrecycled.get();
+    }
+
+    private void release(ByteBuffer buffer) {
+      if (buffer.inUse.compareAndSet(true, false)) {
+        unrecycled.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Byte-level model of a native Parcel, laid out the way libbinder lays it out: little-endian primitives,
+   * every write padded to four bytes, strings written as a length-prefixed, null-terminated UTF-16 sequence
+   * and byte arrays as a length-prefixed run of raw bytes. Positions are plain byte offsets.
+   */
   private static class ByteBuffer {
+    private static final byte[] EMPTY = new byte[0];
 
-    // List of elements where a pair is a piece of data and the sizeof that data
-    private List<Pair<Integer, ?>> buffer = new ArrayList<Pair<Integer, ?>>();
-    private int index;
+    private byte[] data = EMPTY;
+    private int dataSize;
+    private int dataPosition;
+    private final AtomicBoolean inUse = new AtomicBoolean();
 
     /**
-     * Removes all elements from the byte buffer
+     * Removes all elements from the byte buffer, keeping the allocated storage for reuse.
      */
     public void clear() {
-      index = 0;
-      buffer.clear();
+      dataSize = 0;
+      dataPosition = 0;
     }
 
     /**
@@ -197,110 +285,135 @@ public class ShadowParcel {
      */
     public byte[] readByteArray() {
       int length = readInt();
-      if (length == -1) {
+      if (length < 0 || length > dataAvailable()) {
         return null;
       }
       byte[] array = new byte[length];
-      for (int i = 0; i < length; i++) {
-        array[i] = readByte();
-      }
+      System.arraycopy(data, dataPosition, array, 0, length);
+      dataPosition += pad(length);
       return array;
     }
 
-    /**
-     * Writes a byte to the byte buffer at the current data position
-     */
-    public void writeByte(byte b) {
-      writeValue(Byte.SIZE / 8, b);
-    }
-
     /**
      * Writes a byte array starting at offset for length bytes to the byte buffer at the current
      * data position
      */
     public void writeByteArray(byte[] b, int offset, int length) {
-      writeInt(b.length);
-      for (int i = offset; i < offset + length && i < b.length; i++) {
-        writeByte(b[i]);
-      }
-    }
-
-    /**
-     * Reads a byte from the byte buffer based on the current data position
-     */
-    public byte readByte() {
-      return readValue((byte) 0);
+      writeInt(length);
+      int start = prepareWrite(pad(length));
+      System.arraycopy(b, offset, data, start, length);
     }
 
     /**
      * Writes an int to the byte buffer at the current data position
      */
     public void writeInt(int i) {
-      writeValue(Integer.SIZE / 8, i);
+      int start = prepareWrite(4);
+      data[start] = (byte) i;
+      data[start + 1] = (byte) (i >> 8);
+      data[start + 2] = (byte) (i >> 16);
+      data[start + 3] = (byte) (i >> 24);
     }
 
     /**
      * Reads a int from the byte buffer based on the current data position
      */
     public int readInt() {
-      return readValue(0);
+      if (dataPosition + 4 > dataSize) {
+        return 0;
+      }
+      int i = getInt(dataPosition);
+      dataPosition += 4;
+      return i;
     }
 
     /**
      * Writes a long to the byte buffer at the current data position
      */
     public void writeLong(long l) {
-      writeValue(Long.SIZE / 8, l);
+      writeInt((int) l);
+      writeInt((int) (l >>> 32));
     }
 
     /**
      * Reads a long from the byte buffer based on the current data position
      */
     public long readLong() {
-      return readValue(0l);
+      if (dataPosition + 8 > dataSize) {
+        return 0;
+      }
+      long low = getInt(dataPosition) & 0xFFFFFFFFL;
+      long high = getInt(dataPosition + 4);
+      dataPosition += 8;
+      return (high << 32) | low;
     }
 
     /**
      * Writes a float to the byte buffer at the current data position
      */
     public void writeFloat(float f) {
-      writeValue(Float.SIZE / 8, f);
+      writeInt(Float.floatToRawIntBits(f));
     }
 
     /**
      * Reads a float from the byte buffer based on the current data position
      */
     public float readFloat() {
-      return readValue(0f);
+      return Float.intBitsToFloat(readInt());
     }
 
     /**
      * Writes a double to the byte buffer at the current data position
      */
     public void writeDouble(double d) {
-      writeValue(Double.SIZE / 8, d);
+      writeLong(Double.doubleToRawLongBits(d));
     }
 
     /**
      * Reads a double from the byte buffer based on the current data position
      */
     public double readDouble() {
-      return readValue(0d);
+      return Double.longBitsToDouble(readLong());
     }
 
     /**
      * Writes a String to the byte buffer at the current data position
      */
     public void writeString(String s) {
-      int length = s == null ? Integer.SIZE / 8 : s.length();
-      writeValue(length, s);
+      if (s == null) {
+        writeInt(-1);
+        return;
+      }
+      int length = s.length();
+      writeInt(length);
+      int start = prepareWrite(pad((length + 1) * 2));
+      for (int i = 0; i < length; i++) {
+        char c = s.charAt(i);
+        data[start++] = (byte) c;
+        data[start++] = (byte) (c >> 8);
+      }
+      data[start++] = 0;
+      data[start] = 0;
     }
 
     /**
      * Reads a String from the byte buffer based on the current data position
      */
     public String readString() {
-      return readValue(null);
+      int length = readInt();
+      if (length < 0) {
+        return null;
+      }
+      int size = pad((length + 1) * 2);
+      if (size < 0 || dataPosition + size > dataSize) {
+        return null;
+      }
+      char[] chars = new char[length];
+      for (int i = 0, pos = dataPosition; i < length; i++, pos += 2) {
+        chars[i] = (char) ((data[pos] & 0xFF) | (data[pos + 1] << 8));
+      }
+      dataPosition += size;
+      return new String(chars);
     }
 
     /**
@@ -312,39 +425,25 @@ public class ShadowParcel {
      * @param length number of bytes to copy
      */
     public void appendFrom(ByteBuffer other, int offset, int length) {
-      int otherIndex = other.toIndex(offset);
-      int otherEndIndex = other.toIndex(offset + length);
-      for (int i = otherIndex; i < otherEndIndex && i < other.buffer.size(); i++) {
-        int elementSize = other.buffer.get(i).first;
-        Object elementValue = other.buffer.get(i).second;
-        writeValue(elementSize, elementValue);
+      if (length <= 0 || offset < 0 || offset + length > other.dataSize) {
+        return;
       }
+      int start = prepareWrite(length);
+      System.arraycopy(other.data, offset, data, start, length);
     }
 
     /**
-     * Creates a Byte buffer from a raw byte array.
+     * Replaces the contents of this byte buffer with a raw byte array, as produced by {@link #toByteArray()}.
      *
      * @param array byte array to read from
      * @param offset starting position in bytes to start reading array at
      * @param length number of bytes to read from array
      */
-    public static ByteBuffer fromByteArray(byte[] array, int offset, int length) {
-      ByteBuffer byteBuffer = new ByteBuffer();
-
-      try {
-        ByteArrayInputStream bis = new ByteArrayInputStream(array, offset,
-            length);
-        ObjectInputStream ois = new ObjectInputStream(bis);
-        int numElements = ois.readInt();
-        for (int i = 0; i < numElements; i++) {
-          int sizeOf = ois.readInt();
-          Object value = ois.readObject();
-          byteBuffer.buffer.add(Pair.create(sizeOf, value));
-        }
-        return byteBuffer;
-      } catch (Exception e) {
-        throw new RuntimeException(e);
-      }
+    public void fromByteArray(byte[] array, int offset, int length) {
+      ensureCapacity(length);
+      System.arraycopy(array, offset, data, 0, length);
+      dataSize = length;
+      dataPosition = 0;
     }
 
     /**
@@ -352,49 +451,35 @@ public class ShadowParcel {
      * symmetrical with fromByteArray.
      */
     public byte[] toByteArray() {
-      try {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(bos);
-        int length = buffer.size();
-        oos.writeInt(length);
-        for (Pair<Integer, ?> element : buffer) {
-          oos.writeInt(element.first);
-          oos.writeObject(element.second);
-        }
-        return bos.toByteArray();
-      } catch (IOException e) {
-        throw new RuntimeException(e);
-      }
+      return Arrays.copyOf(data, dataSize);
     }
 
     /**
      * Number of unused bytes in this byte buffer.
      */
     public int dataAvailable() {
-      return dataSize() - dataPosition();
+      return dataPosition > dataSize ? 0 : dataSize - dataPosition;
     }
 
     /**
      * Total buffer size in bytes of byte buffer included unused space.
      */
     public int dataCapacity() {
-      return dataSize();
+      return data.length;
     }
 
     /**
      * Current data position of byte buffer in bytes. Reads / writes are from this position.
      */
     public int dataPosition() {
-      return toDataPosition(index);
+      return dataPosition;
     }
 
     /**
      * Current amount of bytes currently written for ByteBuffer.
      */
     public int dataSize() {
-      int totalSize = totalSize();
-      int dataPosition = dataPosition();
-      return totalSize > dataPosition ? totalSize : dataPosition;
+      return dataSize;
     }
 
     /**
@@ -404,56 +489,58 @@ public class ShadowParcel {
      *          Desired position in bytes
      */
     public void setDataPosition(int pos) {
-      index = toIndex(pos);
+      dataPosition = pos;
     }
 
     public void setDataSize(int size) {
-      // TODO
+      ensureCapacity(size);
+      if (size > dataSize) {
+        Arrays.fill(data, dataSize, size, (byte) 0);
+      }
+      dataSize = size;
+      if (dataPosition > size) {
+        dataPosition = size;
+      }
     }
 
     public void setDataCapacity(int size) {
-      // TODO
+      ensureCapacity(size);
     }
 
-    private int totalSize() {
-      int size = 0;
-      for (Pair<Integer, ?> element : buffer) {
-        size += element.first;
+    /**
+     * Reserves {@code length} bytes at the current position, advances past them and returns where they start.
+     * Any gap left by a position set beyond the end of the data is zeroed, as is the reserved range's padding.
+     */
+    private int prepareWrite(int length) {
+      int start = dataPosition;
+      int end = start + length;
+      ensureCapacity(end);
+      if (start > dataSize) {
+        Arrays.fill(data, dataSize, start, (byte) 0);
       }
-      return size;
-    }
-
-    private <T extends Object> T readValue(T defaultValue) {
-      T value = (index < buffer.size()) ? (T) buffer.get(index++).second
-          : defaultValue;
-      return value;
+      Arrays.fill(data, Math.max(start, end - 3), end, (byte) 0);
+      dataPosition = end;
+      if (end > dataSize) {
+        dataSize = end;
+      }
+      return start;
     }
 
-    private void writeValue(int i, Object o) {
-      Pair<Integer, ?> value = Pair.create(i, o);
-      if (index < buffer.size()) {
-        buffer.set(index, value);
-      } else {
-        buffer.add(value);
+    private void ensureCapacity(int capacity) {
+      if (capacity > data.length) {
+        data = Arrays.copyOf(data, Math.max(capacity, (data.length * 3) / 2));
       }
-      index++;
     }
 
-    private int toDataPosition(int index) {
-      int pos = 0;
-      for (int i = 0; i < index; i++) {
-        pos += buffer.get(i).first;
-      }
-      return pos;
+    private int getInt(int pos) {
+      return (data[pos] & 0xFF)
+          | (data[pos + 1] & 0xFF) << 8
+          | (data[pos + 2] & 0xFF) << 16
+          | data[pos + 3] << 24;
     }
 
-    private int toIndex(int dataPosition) {
-      int calculatedPos = 0;
-      int i = 0;
-      for (; i < buffer.size() && calculatedPos < dataPosition; i++) {
-        calculatedPos += buffer.get(i).first;
-      }
-      return i;
+    private static int pad(int length) {
+      return (length + 3) & ~3;
     }
   }
 }
@@ -66,6 +66,8 @@ public class ShadowResources {
         }
       }
     }
+    // nothing is cached under the old cookies any more
+    Converter.resetStringCookies();
   }
 
   public static void setSystemResources(ResourceLoader systemResourceLoader) {
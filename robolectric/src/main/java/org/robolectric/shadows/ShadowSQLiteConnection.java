@@ -10,6 +10,11 @@ import org.robolectric.annotation.Implements;
 import org.robolectric.util.SQLiteLibraryLoader;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
@@ -17,7 +22,9 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Shadows Android native SQLite connection.
@@ -94,10 +101,9 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static long nativeExecuteForLong(final int connectionPtr, final int statementPtr) {
-    return CONNECTIONS.execute("execute for long", new Callable<Long>() {
+    return CONNECTIONS.executeStatement("execute for long", connectionPtr, statementPtr, new StatementCallable<Long>() {
       @Override
-      public Long call() throws SQLiteException {
-        SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
+      public Long call(SQLiteStatement stmt) throws SQLiteException {
         if (!stmt.step()) {
           throw new SQLiteDoneException();
         }
@@ -109,10 +115,9 @@ public class ShadowSQLiteConnection {
   @Implementation
   public static void nativeExecute(final int connectionPtr, final int statementPtr) {
     if (statementPtr == IGNORED_REINDEX_STMT) { return; } // TODO
-    CONNECTIONS.execute("execute", new Callable<Object>() {
+    CONNECTIONS.executeStatement("execute", connectionPtr, statementPtr, new StatementCallable<Object>() {
       @Override
-      public Object call() throws SQLiteException {
-        SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
+      public Object call(SQLiteStatement stmt) throws SQLiteException {
         stmt.stepThrough();
         return null;
       }
@@ -121,10 +126,9 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static String nativeExecuteForString(final int connectionPtr, final int statementPtr) {
-    return CONNECTIONS.execute("execute for string", new Callable<String>() {
+    return CONNECTIONS.executeStatement("execute for string", connectionPtr, statementPtr, new StatementCallable<String>() {
       @Override
-      public String call() throws SQLiteException {
-        SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
+      public String call(SQLiteStatement stmt) throws SQLiteException {
         if (!stmt.step()) {
           throw new SQLiteDoneException();
         }
@@ -224,10 +228,9 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static int nativeExecuteForChangedRowCount(final int connectionPtr, final int statementPtr) {
-    return CONNECTIONS.execute("execute for changed row count", new Callable<Integer>() {
+    return CONNECTIONS.executeStatement("execute for changed row count", connectionPtr, statementPtr, new StatementCallable<Integer>() {
       @Override
-      public Integer call() throws Exception {
-        SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
+      public Integer call(SQLiteStatement stmt) throws Exception {
         stmt.stepThrough();
         return connection(connectionPtr).getChanges();
       }
@@ -236,10 +239,9 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static long nativeExecuteForLastInsertedRowId(final int connectionPtr, final int statementPtr) {
-    return CONNECTIONS.execute("execute for last inserted row ID", new Callable<Long>() {
+    return CONNECTIONS.executeStatement("execute for last inserted row ID", connectionPtr, statementPtr, new StatementCallable<Long>() {
       @Override
-      public Long call() throws Exception {
-        SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
+      public Long call(SQLiteStatement stmt) throws Exception {
         stmt.stepThrough();
         return connection(connectionPtr).getLastInsertId();
       }
@@ -250,11 +252,10 @@ public class ShadowSQLiteConnection {
   public static long nativeExecuteForCursorWindow(final int connectionPtr, final int statementPtr, final int windowPtr,
                                                   final int startPos, final int requiredPos, final boolean countAllRows) {
 
-    return CONNECTIONS.execute("execute for cursor window", new Callable<Integer>() {
+    return CONNECTIONS.executeStatement("execute for cursor window", connectionPtr, statementPtr, new StatementCallable<Long>() {
       @Override
-      public Integer call() throws Exception {
-        SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
-        return ShadowCursorWindow.setData(windowPtr, stmt);
+      public Long call(SQLiteStatement stmt) throws Exception {
+        return ShadowCursorWindow.setData(windowPtr, stmt, startPos, requiredPos, countAllRows);
       }
     });
 
@@ -299,6 +300,96 @@ public class ShadowSQLiteConnection {
     return 0;
   }
 
+  /**
+   * Returns execution statistics for every SQL statement executed so far, keyed by SQL, ordered by
+   * cumulative execution time with the slowest statement first.
+   */
+  public static List<StatementStatistics> getStatementStatistics() {
+    return CONNECTIONS.getStatementStatistics();
+  }
+
+  /**
+   * Returns the number of statements prepared so far by reusing a compiled statement the framework had finalized,
+   * instead of compiling the SQL again.
+   */
+  public static long getStatementCacheHits() {
+    return CONNECTIONS.statementCacheHits.get();
+  }
+
+  /**
+   * Forgets all statistics gathered so far.
+   */
+  public static void clearStatementStatistics() {
+    CONNECTIONS.clearStatementStatistics();
+  }
+
+  /**
+   * Number of executions and cumulative time spent executing a single SQL statement.
+   */
+  public static class StatementStatistics {
+    private final String sql;
+    private final AtomicLong executionCount = new AtomicLong();
+    private final AtomicLong totalTimeNanos = new AtomicLong();
+
+    StatementStatistics(String sql) {
+      this.sql = sql;
+    }
+
+    public String getSql() {
+      return sql;
+    }
+
+    public long getExecutionCount() {
+      return executionCount.get();
+    }
+
+    public long getTotalTimeNanos() {
+      return totalTimeNanos.get();
+    }
+
+    void record(long elapsedNanos) {
+      executionCount.incrementAndGet();
+      totalTimeNanos.addAndGet(elapsedNanos);
+    }
+
+    @Override
+    public String toString() {
+      return sql + ": " + getExecutionCount() + " executions, " + TimeUnit.NANOSECONDS.toMillis(getTotalTimeNanos()) + " ms";
+    }
+  }
+
+  private interface StatementCallable<T> {
+    T call(SQLiteStatement stmt) throws Exception;
+  }
+
+  /**
+   * Compiled statements finalized by the framework, kept per connection for reuse when the same SQL is prepared
+   * again. Only touched from the database executor thread.
+   */
+  private static class StatementCache extends LinkedHashMap<String, SQLiteStatement> {
+    private static final int MAX_SIZE = 25;
+
+    StatementCache() {
+      super(16, 0.75f, true);
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+      if (size() > MAX_SIZE) {
+        eldest.getValue().dispose();
+        return true;
+      }
+      return false;
+    }
+
+    void disposeAll() {
+      for (SQLiteStatement stmt : values()) {
+        stmt.dispose();
+      }
+      clear();
+    }
+  }
+
 
   private static class Connections {
 
@@ -306,6 +397,9 @@ public class ShadowSQLiteConnection {
 
     private final Map<Integer, SQLiteStatement> statementsMap = new ConcurrentHashMap<Integer, SQLiteStatement>();
     private final Map<Integer, SQLiteConnection> connectionsMap = new ConcurrentHashMap<Integer, SQLiteConnection>();
+    private final Map<Integer, StatementCache> statementCaches = new ConcurrentHashMap<Integer, StatementCache>();
+    private final Map<String, StatementStatistics> statistics = new ConcurrentHashMap<String, StatementStatistics>();
+    private final AtomicLong statementCacheHits = new AtomicLong();
 
     private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor();
 
@@ -349,6 +443,7 @@ public class ShadowSQLiteConnection {
 
       int ptr = pointerCounter.incrementAndGet();
       connectionsMap.put(ptr, dbConnection);
+      statementCaches.put(ptr, new StatementCache());
       return ptr;
     }
 
@@ -362,7 +457,13 @@ public class ShadowSQLiteConnection {
         @Override
         public SQLiteStatement call() throws Exception {
           SQLiteConnection connection = getConnection(connectionPtr);
-          return connection.prepare(sql);
+          StatementCache cache = statementCaches.get(connectionPtr);
+          SQLiteStatement cached = cache != null ? cache.remove(sql) : null;
+          if (cached == null) {
+            return connection.prepare(sql, false);
+          }
+          statementCacheHits.incrementAndGet();
+          return cached;
         }
       });
 
@@ -376,6 +477,10 @@ public class ShadowSQLiteConnection {
         @Override
         public Object call() throws Exception {
           SQLiteConnection connection = getConnection(ptr);
+          StatementCache cache = statementCaches.remove(ptr);
+          if (cache != null) {
+            cache.disposeAll();
+          }
           connection.dispose();
           return null;
         }
@@ -391,7 +496,16 @@ public class ShadowSQLiteConnection {
         public Object call() throws Exception {
           SQLiteStatement stmt = getStatement(connectionPtr, statementPtr);
           statementsMap.remove(statementPtr);
-          stmt.dispose();
+          StatementCache cache = statementCaches.get(connectionPtr);
+          if (cache == null) {
+            stmt.dispose();
+            return null;
+          }
+          stmt.reset(true);
+          SQLiteStatement replaced = cache.put(stmt.getSqlParts().toString(), stmt);
+          if (replaced != null) {
+            replaced.dispose();
+          }
           return null;
         }
       });
@@ -412,6 +526,46 @@ public class ShadowSQLiteConnection {
       });
     }
 
+    public <T> T executeStatement(final String comment, final int connectionPtr, final int statementPtr, final StatementCallable<T> work) {
+      return execute(comment, new Callable<T>() {
+        @Override
+        public T call() throws Exception {
+          SQLiteStatement stmt = getStatement(connectionPtr, statementPtr);
+          long start = System.nanoTime();
+          try {
+            return work.call(stmt);
+          } finally {
+            recordExecution(stmt.getSqlParts().toString(), System.nanoTime() - start);
+          }
+        }
+      });
+    }
+
+    public List<StatementStatistics> getStatementStatistics() {
+      List<StatementStatistics> result = new ArrayList<StatementStatistics>(statistics.values());
+      Collections.sort(result, new Comparator<StatementStatistics>() {
+        @Override
+        public int compare(StatementStatistics a, StatementStatistics b) {
+          long diff = b.getTotalTimeNanos() - a.getTotalTimeNanos();
+          return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+        }
+      });
+      return result;
+    }
+
+    public void clearStatementStatistics() {
+      statistics.clear();
+    }
+
+    private void recordExecution(String sql, long elapsedNanos) {
+      StatementStatistics stats = statistics.get(sql);
+      if (stats == null) {
+        stats = new StatementStatistics(sql);
+        statistics.put(sql, stats);
+      }
+      stats.record(elapsedNanos);
+    }
+
     public <T> T execute(final String comment, final Callable<T> work) {
       Future<DbOperationResult<T>> future = dbExecutor.submit(new Callable<DbOperationResult<T>>() {
         @Override
@@ -7,7 +7,17 @@ import android.view.animation.LinearInterpolator;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.RealObject;
+import org.robolectric.annotation.Resetter;
+import org.robolectric.internal.ReflectionHelpers;
 
+import static org.robolectric.Robolectric.directlyOn;
+
+/**
+ * Shadow of {@code ValueAnimator}. By default animators jump straight to their end when started.
+ *
+ * With frame-driven animators on (see {@link #setFrameDrivenEnabled(boolean)}) animators run for real, one step
+ * per frame of the {@link ShadowChoreographer}, so their values and listeners follow the main looper's clock.
+ */
 @Implements(ValueAnimator.class)
 public class ShadowValueAnimator extends ShadowAnimator {
   private TimeInterpolator interpolator;
@@ -15,6 +25,27 @@ public class ShadowValueAnimator extends ShadowAnimator {
   private ValueAnimator realObject;
   private TypeEvaluator typeEvaluator;
 
+  /**
+   * Non-Android accessor. Turns {@link Feature#FRAME_DRIVEN_ANIMATORS} on or off. Animators started while it is on
+   * advance when {@link ShadowChoreographer} posts a frame, and listeners are only told about their progress if
+   * they are added while it is on.
+   *
+   * @param enabled whether started animators should run frame by frame
+   */
+  public static void setFrameDrivenEnabled(boolean enabled) {
+    Feature.FRAME_DRIVEN_ANIMATORS.setEnabled(enabled);
+  }
+
+  public static boolean isFrameDrivenEnabled() {
+    return Feature.FRAME_DRIVEN_ANIMATORS.isEnabled();
+  }
+
+  @Resetter
+  public static void resetFrameDriven() {
+    // drop the animations left running by the previous test, along with the choreographer they were waiting on
+    ReflectionHelpers.setStaticFieldReflectively(ValueAnimator.class, "sAnimationHandler", new ThreadLocal());
+  }
+
   @Implementation
   public void setInterpolator(TimeInterpolator value) {
     if (value != null) {
@@ -22,11 +53,13 @@ public class ShadowValueAnimator extends ShadowAnimator {
     } else {
       interpolator = new LinearInterpolator();
     }
+    directlyOn(realObject, ValueAnimator.class).setInterpolator(value);
   }
 
   @Implementation
   public void setEvaluator(TypeEvaluator typeEvaluator) {
     this.typeEvaluator = typeEvaluator;
+    directlyOn(realObject, ValueAnimator.class).setEvaluator(typeEvaluator);
   }
 
   @Implementation
@@ -36,21 +69,27 @@ public class ShadowValueAnimator extends ShadowAnimator {
 
   @Implementation
   public boolean isRunning() {
+    if (isFrameDrivenEnabled()) return directlyOn(realObject, ValueAnimator.class).isRunning();
     return false;
   }
 
   @Implementation @Override
   public long getDuration() {
+    if (isFrameDrivenEnabled()) return directlyOn(realObject, ValueAnimator.class).getDuration();
     return super.getDuration();
   }
 
   @Implementation
   public void cancel() {
-
+    if (isFrameDrivenEnabled()) directlyOn(realObject, ValueAnimator.class).cancel();
   }
 
   @Implementation
   public void start() {
-    realObject.end();
+    if (isFrameDrivenEnabled()) {
+      directlyOn(realObject, ValueAnimator.class).start();
+    } else {
+      realObject.end();
+    }
   }
 }
@@ -140,6 +140,10 @@ public class ShadowView {
 
   @Implementation
   public void draw(android.graphics.Canvas canvas) {
+    if (ShadowCanvas.isRasterEnabled()) {
+      directlyOn(realView, View.class, "draw", new ReflectionHelpers.ClassParameter(android.graphics.Canvas.class, canvas));
+      return;
+    }
     Drawable background = realView.getBackground();
     if (background != null) {
       shadowOf(canvas).appendDescription("background:");
@@ -0,0 +1,289 @@
+package org.robolectric.shadows;
+
+import java.awt.Font;
+import java.awt.FontFormatException;
+import java.awt.Rectangle;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.LineMetrics;
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Font metrics and glyph advances behind the text measurement mode of {@link ShadowPaint}, computed with the
+ * JDK's font engine from the system fonts or from the font files typefaces were loaded from.
+ *
+ * Android's own fonts (Roboto, Droid Sans and friends) live on the device's system partition and aren't part of
+ * the SDK jars, so the default, serif, sans-serif and monospace families are measured with the host JDK's logical
+ * fonts instead. Measurements are therefore close to a device's but not identical, and can differ slightly
+ * between hosts; tests that need exact metrics should create their typeface from a font file.
+ *
+ * There is one measurer per typeface family, style and text size, shared by all tests since fonts never change.
+ * Animated or computed text sizes can ask for any number of them, so they are all dropped once there are too many.
+ * The advances of the printable ASCII characters are computed up front in one go and kept in an array, so
+ * measuring ASCII text is a loop of array lookups; other characters are laid out once, when first seen.
+ */
+class TextMeasurer {
+  private static final FontRenderContext RENDER_CONTEXT = new FontRenderContext(null, true, true);
+  private static final int ASCII_END = 128;
+  private static final int MAX_MEASURERS = 256;
+
+  private static final ConcurrentMap<Key, TextMeasurer> MEASURERS = new ConcurrentHashMap<Key, TextMeasurer>();
+  private static final ConcurrentMap<String, Font> FONT_FILES = new ConcurrentHashMap<String, Font>();
+
+  private final Font font;
+  private final float[] asciiAdvances = new float[ASCII_END];
+  private final ConcurrentMap<Character, Float> otherAdvances = new ConcurrentHashMap<Character, Float>();
+  private final float ascent;
+  private final float descent;
+  private final float leading;
+  private final float top;
+  private final float bottom;
+
+  /**
+   * @param family The typeface family name or font file path, or {@code null} for the default typeface
+   * @param style The typeface style, {@link android.graphics.Typeface#BOLD} and friends
+   * @param size The text size in pixels
+   * @return The measurer for the font, shared with every other caller asking for the same one
+   */
+  static TextMeasurer get(String family, int style, float size) {
+    Key key = new Key(family, style, size);
+    TextMeasurer measurer = MEASURERS.get(key);
+    if (measurer == null) {
+      if (MEASURERS.size() >= MAX_MEASURERS) {
+        MEASURERS.clear();
+      }
+      measurer = new TextMeasurer(baseFont(family).deriveFont(style & (Font.BOLD | Font.ITALIC), size));
+      TextMeasurer previous = MEASURERS.putIfAbsent(key, measurer);
+      if (previous != null) {
+        measurer = previous;
+      }
+    }
+    return measurer;
+  }
+
+  private TextMeasurer(Font font) {
+    this.font = font;
+
+    char[] ascii = new char[ASCII_END - ' '];
+    for (int i = 0; i < ascii.length; i++) {
+      ascii[i] = (char) (' ' + i);
+    }
+    GlyphVector glyphs = font.createGlyphVector(RENDER_CONTEXT, ascii);
+    for (int i = 0; i < ascii.length; i++) {
+      asciiAdvances[ascii[i]] = glyphs.getGlyphMetrics(i).getAdvanceX();
+    }
+
+    LineMetrics lineMetrics = font.getLineMetrics("Xg", RENDER_CONTEXT);
+    ascent = -lineMetrics.getAscent();
+    descent = lineMetrics.getDescent();
+    leading = lineMetrics.getLeading();
+    Rectangle2D maxBounds = font.getMaxCharBounds(RENDER_CONTEXT);
+    top = Math.min(ascent, (float) maxBounds.getMinY());
+    bottom = Math.max(descent, (float) maxBounds.getMaxY());
+  }
+
+  /**
+   * @return Distance from the baseline to the top of the tallest letters; negative, as on Android
+   */
+  float ascent() {
+    return ascent;
+  }
+
+  float descent() {
+    return descent;
+  }
+
+  float leading() {
+    return leading;
+  }
+
+  float top() {
+    return top;
+  }
+
+  float bottom() {
+    return bottom;
+  }
+
+  /**
+   * Measures the {@code [start, end)} range of the text, optionally storing the advance of each character into
+   * {@code advances} from {@code advancesIndex} on. As on Android, the second half of a surrogate pair has no
+   * advance of its own.
+   *
+   * @return The total advance of the range
+   */
+  float measure(CharSequence text, int start, int end, float[] advances, int advancesIndex) {
+    float total = 0;
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      float advance;
+      if (c < ASCII_END) {
+        advance = asciiAdvances[c];
+      } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+        advance = layOut(String.valueOf(new char[] {c, text.charAt(i + 1)}));
+        if (advances != null) {
+          advances[advancesIndex + i - start] = advance;
+          advances[advancesIndex + i + 1 - start] = 0;
+        }
+        total += advance;
+        i++;
+        continue;
+      } else {
+        advance = advance(c);
+      }
+      if (advances != null) {
+        advances[advancesIndex + i - start] = advance;
+      }
+      total += advance;
+    }
+    return total;
+  }
+
+  float measure(char[] text, int start, int end, float[] advances, int advancesIndex) {
+    return measure(new CharArray(text), start, end, advances, advancesIndex);
+  }
+
+  /**
+   * Counts how many characters of the text, going forwards from {@code start} or backwards from {@code end},
+   * fit in {@code maxWidth}.
+   *
+   * @param measuredWidth If not {@code null}, receives the width of the characters that fit in its first element
+   * @return The number of characters that fit
+   */
+  int breakText(CharSequence text, int start, int end, boolean forwards, float maxWidth, float[] measuredWidth) {
+    float width = 0;
+    int count = 0;
+    int length = end - start;
+    while (count < length) {
+      int index = forwards ? start + count : end - count - 1;
+      int chars = 1;
+      if (forwards && Character.isHighSurrogate(text.charAt(index)) && count + 1 < length
+          && Character.isLowSurrogate(text.charAt(index + 1))) {
+        chars = 2;
+      } else if (!forwards && Character.isLowSurrogate(text.charAt(index)) && count + 1 < length
+          && Character.isHighSurrogate(text.charAt(index - 1))) {
+        chars = 2;
+        index--;
+      }
+      float advance = measure(text, index, index + chars, null, 0);
+      if (width + advance > maxWidth) break;
+      width += advance;
+      count += chars;
+    }
+    if (measuredWidth != null && measuredWidth.length > 0) {
+      measuredWidth[0] = width;
+    }
+    return count;
+  }
+
+  /**
+   * @return The smallest integer rectangle enclosing the glyphs of the text when drawn at the origin
+   */
+  Rectangle bounds(CharSequence text, int start, int end) {
+    if (start >= end) return new Rectangle();
+    GlyphVector glyphs = font.createGlyphVector(RENDER_CONTEXT, text.subSequence(start, end).toString());
+    return glyphs.getPixelBounds(RENDER_CONTEXT, 0, 0);
+  }
+
+  private float advance(char c) {
+    Float advance = otherAdvances.get(c);
+    if (advance == null) {
+      advance = layOut(String.valueOf(c));
+      otherAdvances.put(c, advance);
+    }
+    return advance;
+  }
+
+  private float layOut(String glyph) {
+    return (float) font.getStringBounds(glyph, RENDER_CONTEXT).getWidth();
+  }
+
+  private static Font baseFont(String family) {
+    if (family == null) return new Font(Font.SANS_SERIF, Font.PLAIN, 1);
+    if (family.startsWith("serif")) return new Font(Font.SERIF, Font.PLAIN, 1);
+    if (family.startsWith("monospace")) return new Font(Font.MONOSPACED, Font.PLAIN, 1);
+    if (family.startsWith("sans-serif")) return new Font(Font.SANS_SERIF, Font.PLAIN, 1);
+
+    Font font = FONT_FILES.get(family);
+    if (font == null) {
+      font = loadFontFile(family);
+      FONT_FILES.putIfAbsent(family, font);
+    }
+    return font;
+  }
+
+  private static Font loadFontFile(String path) {
+    File file = new File(path);
+    if (file.isFile()) {
+      try {
+        return Font.createFont(Font.TRUETYPE_FONT, file);
+      } catch (FontFormatException e) {
+        // fall back to a system font below
+      } catch (IOException e) {
+        // fall back to a system font below
+      }
+    }
+    return new Font(path, Font.PLAIN, 1);
+  }
+
+  private static class Key {
+    private final String family;
+    private final int style;
+    private final float size;
+
+    Key(String family, int style, float size) {
+      this.family = family;
+      this.style = style;
+      this.size = size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      Key key = (Key) o;
+      return style == key.style && Float.compare(size, key.size) == 0
+          && (family == null ? key.family == null : family.equals(key.family));
+    }
+
+    @Override
+    public int hashCode() {
+      int result = family != null ? family.hashCode() : 0;
+      result = 31 * result + style;
+      result = 31 * result + Float.floatToIntBits(size);
+      return result;
+    }
+  }
+
+  private static class CharArray implements CharSequence {
+    private final char[] chars;
+
+    CharArray(char[] chars) {
+      this.chars = chars;
+    }
+
+    @Override
+    public int length() {
+      return chars.length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return new String(chars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+      return new String(chars);
+    }
+  }
+}
@@ -0,0 +1,307 @@
+package org.robolectric.tester.android.content;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The XML file behind a persistent {@link TestSharedPreferences}, in the format Android keeps shared preferences in.
+ *
+ * There is one instance per file, so every {@code SharedPreferences} backed by a file writes it under the same lock.
+ * Each write is tagged with a generation, taken under the same lock as the copy of the in-memory state, so a later
+ * generation always holds later state, and a write older than the one already on disk is skipped. Asynchronous
+ * writes go through a single background thread; when several pile up for the same file only the newest is written.
+ *
+ * Control characters are written as character references. XML 1.0 has no way to write most of them, so a file
+ * holding any is declared XML 1.1 instead. No XML can hold a NUL character, so preferences holding one aren't
+ * written at all.
+ */
+class PreferencesFile {
+  private static final ConcurrentMap<String, PreferencesFile> FILES = new ConcurrentHashMap<String, PreferencesFile>();
+  private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    @Override public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "shared preferences writer");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  private final File file;
+  private final Object writeLock = new Object();
+  private long generation;
+  private long writtenGeneration;
+  private Map<String, Object> pendingSnapshot;
+  private long pendingGeneration;
+  private int writeCount;
+
+  private PreferencesFile(File file) {
+    this.file = file;
+  }
+
+  static PreferencesFile forFile(File file) {
+    String path = file.getAbsolutePath();
+    PreferencesFile preferencesFile = FILES.get(path);
+    if (preferencesFile == null) {
+      preferencesFile = new PreferencesFile(file);
+      PreferencesFile previous = FILES.putIfAbsent(path, preferencesFile);
+      if (previous != null) {
+        preferencesFile = previous;
+      }
+    }
+    return preferencesFile;
+  }
+
+  /**
+   * Blocks until every asynchronous write queued so far is on disk.
+   */
+  static void awaitPendingWrites() {
+    try {
+      WRITER.submit(new Runnable() {
+        @Override public void run() {
+        }
+      }).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  File getFile() {
+    return file;
+  }
+
+  /**
+   * @return The number of times the file was written
+   */
+  int getWriteCount() {
+    synchronized (writeLock) {
+      return writeCount;
+    }
+  }
+
+  /**
+   * Reads the preferences in the file. As on Android, a missing or unreadable file holds no preferences.
+   */
+  Map<String, Object> read() {
+    synchronized (writeLock) {
+      Map<String, Object> values = new HashMap<String, Object>();
+      if (!file.isFile()) return values;
+      try {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+        NodeList entries = document.getDocumentElement().getChildNodes();
+        for (int i = 0; i < entries.getLength(); i++) {
+          Node node = entries.item(i);
+          if (node instanceof Element) {
+            Element entry = (Element) node;
+            Object value = parseValue(entry);
+            if (value != null) {
+              values.put(entry.getAttribute("name"), value);
+            }
+          }
+        }
+        return values;
+      } catch (Exception e) {
+        return new HashMap<String, Object>();
+      }
+    }
+  }
+
+  /**
+   * Writes the preferences right away, on the calling thread.
+   *
+   * @return Whether the preferences made it to disk
+   */
+  boolean write(Map<String, Object> values) {
+    Map<String, Object> snapshot;
+    long snapshotGeneration;
+    synchronized (this) {
+      snapshot = new HashMap<String, Object>(values);
+      snapshotGeneration = ++generation;
+    }
+    return write(snapshot, snapshotGeneration);
+  }
+
+  /**
+   * Queues the preferences to be written on the background thread, replacing any write of this file still waiting.
+   */
+  void enqueue(Map<String, Object> values) {
+    synchronized (this) {
+      boolean queued = pendingSnapshot != null;
+      pendingSnapshot = new HashMap<String, Object>(values);
+      pendingGeneration = ++generation;
+      if (queued) return;
+    }
+
+    WRITER.execute(new Runnable() {
+      @Override public void run() {
+        Map<String, Object> snapshot;
+        long snapshotGeneration;
+        synchronized (PreferencesFile.this) {
+          snapshot = pendingSnapshot;
+          snapshotGeneration = pendingGeneration;
+          pendingSnapshot = null;
+        }
+        write(snapshot, snapshotGeneration);
+      }
+    });
+  }
+
+  private boolean write(Map<String, Object> values, long valuesGeneration) {
+    synchronized (writeLock) {
+      if (valuesGeneration <= writtenGeneration) return true;
+
+      File directory = file.getParentFile();
+      if (directory != null && !directory.isDirectory() && !directory.mkdirs()) return false;
+      File temporaryFile = new File(file.getPath() + ".tmp");
+      try {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporaryFile), "UTF-8"));
+        try {
+          writeXml(values, writer);
+        } finally {
+          writer.close();
+        }
+      } catch (IOException e) {
+        temporaryFile.delete();
+        return false;
+      }
+      if (!temporaryFile.renameTo(file)) {
+        // renaming over an existing file fails on some platforms
+        file.delete();
+        if (!temporaryFile.renameTo(file)) return false;
+      }
+
+      writtenGeneration = valuesGeneration;
+      writeCount++;
+      return true;
+    }
+  }
+
+  private static void writeXml(Map<String, Object> values, Writer writer) throws IOException {
+    String version = needsXml11(values) ? "1.1" : "1.0";
+    writer.write("<?xml version='" + version + "' encoding='utf-8' standalone='yes' ?>\n<map>\n");
+    for (Map.Entry<String, Object> entry : new TreeMap<String, Object>(values).entrySet()) {
+      String name = escape(entry.getKey());
+      Object value = entry.getValue();
+      if (value instanceof String) {
+        writer.write("    <string name=\"" + name + "\">" + escape((String) value) + "</string>\n");
+      } else if (value instanceof Set) {
+        writer.write("    <set name=\"" + name + "\">\n");
+        for (Object item : (Set) value) {
+          writer.write("        <string>" + escape(String.valueOf(item)) + "</string>\n");
+        }
+        writer.write("    </set>\n");
+      } else {
+        String type = typeOf(value);
+        if (type != null) {
+          writer.write("    <" + type + " name=\"" + name + "\" value=\"" + value + "\" />\n");
+        }
+      }
+    }
+    writer.write("</map>\n");
+  }
+
+  private static boolean needsXml11(Map<String, Object> values) {
+    for (Map.Entry<String, Object> entry : values.entrySet()) {
+      if (needsXml11(entry.getKey())) return true;
+      Object value = entry.getValue();
+      if (value instanceof String && needsXml11((String) value)) return true;
+      if (value instanceof Set) {
+        for (Object item : (Set) value) {
+          if (needsXml11(String.valueOf(item))) return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean needsXml11(String text) {
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c < 0x20 && c != '\t' && c != '\n' && c != '\r') return true;
+    }
+    return false;
+  }
+
+  private static String typeOf(Object value) {
+    if (value instanceof Integer) return "int";
+    if (value instanceof Long) return "long";
+    if (value instanceof Float) return "float";
+    if (value instanceof Boolean) return "boolean";
+    if (value instanceof Double) return "double";
+    // SharedPreferences can't hold anything else, so whatever a test slipped into the map is left out of the file
+    return null;
+  }
+
+  private static Object parseValue(Element entry) {
+    String type = entry.getTagName();
+    String value = entry.getAttribute("value");
+    if (type.equals("string")) return entry.getTextContent();
+    if (type.equals("int")) return Integer.parseInt(value);
+    if (type.equals("long")) return Long.parseLong(value);
+    if (type.equals("float")) return Float.parseFloat(value);
+    if (type.equals("double")) return Double.parseDouble(value);
+    if (type.equals("boolean")) return Boolean.parseBoolean(value);
+    if (type.equals("set")) {
+      Set<String> items = new HashSet<String>();
+      NodeList children = entry.getElementsByTagName("string");
+      for (int i = 0; i < children.getLength(); i++) {
+        items.add(children.item(i).getTextContent());
+      }
+      return items;
+    }
+    return null;
+  }
+
+  private static String escape(String text) throws IOException {
+    StringBuilder builder = null;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      String replacement;
+      switch (c) {
+        case '&': replacement = "&amp;"; break;
+        case '<': replacement = "&lt;"; break;
+        case '>': replacement = "&gt;"; break;
+        case '"': replacement = "&quot;"; break;
+        case '\'': replacement = "&apos;"; break;
+        case '\u0000': throw new IOException("XML can't hold \\u0000");
+        default:
+          // control characters only survive parsing as references: most are illegal as they are, and parsers
+          // normalize line breaks and tabs
+          boolean control = c < 0x20 || (c >= 0x7f && c <= 0x9f) || c == '\u2028';
+          replacement = control ? "&#" + (int) c + ";" : null;
+      }
+      if (replacement != null && builder == null) {
+        builder = new StringBuilder(text.length() + 16).append(text, 0, i);
+      }
+      if (builder != null) {
+        if (replacement != null) {
+          builder.append(replacement);
+        } else {
+          builder.append(c);
+        }
+      }
+    }
+    return builder == null ? text : builder.toString();
+  }
+}
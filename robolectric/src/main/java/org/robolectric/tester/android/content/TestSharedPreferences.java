@@ -2,6 +2,7 @@ package org.robolectric.tester.android.content;
 
 import android.content.SharedPreferences;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -9,6 +10,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * In-memory {@code SharedPreferences}, shared through a map of preference file names to their contents.
+ *
+ * Given a file, the preferences are also persisted to it in Android's XML format: they are read from it when the
+ * map doesn't know the name yet, {@link Editor#commit()} writes it before returning and {@link Editor#apply()}
+ * leaves the write to a background thread, as on a device.
+ */
 public class TestSharedPreferences implements SharedPreferences {
 
   public Map<String, Map<String, Object>> content;
@@ -16,14 +24,24 @@ public class TestSharedPreferences implements SharedPreferences {
   public int mode;
 
   private ArrayList<OnSharedPreferenceChangeListener> listeners;
+  private final PreferencesFile file;
 
   public TestSharedPreferences(Map<String, Map<String, Object>> content,
       String name, int mode) {
+    this(content, name, mode, null);
+  }
+
+  /**
+   * @param file The XML file to persist the preferences in, or {@code null} to keep them in memory only
+   */
+  public TestSharedPreferences(Map<String, Map<String, Object>> content,
+      String name, int mode, File file) {
     this.content = content;
     this.filename = name;
     this.mode = mode;
+    this.file = file == null ? null : PreferencesFile.forFile(file);
     if (!content.containsKey(name)) {
-      content.put(name, new HashMap<String, Object>());
+      content.put(name, this.file == null ? new HashMap<String, Object>() : this.file.read());
     }
 
     listeners = new ArrayList<OnSharedPreferenceChangeListener>();
@@ -97,6 +115,29 @@ public class TestSharedPreferences implements SharedPreferences {
     return listeners.contains(listener);
   }
 
+  /**
+   * @return The XML file the preferences are persisted in, or {@code null} if they are kept in memory only
+   */
+  public File getFile() {
+    return file == null ? null : file.getFile();
+  }
+
+  /**
+   * @return How many times the XML file was written, which is fewer than the number of changes when asynchronous
+   * writes were coalesced
+   */
+  public int getDiskWriteCount() {
+    return file == null ? 0 : file.getWriteCount();
+  }
+
+  /**
+   * Blocks until every change applied with {@link Editor#apply()} so far is on disk, like the framework does before
+   * an activity is paused or stopped.
+   */
+  public static void awaitPendingWrites() {
+    PreferencesFile.awaitPendingWrites();
+  }
+
   private class TestSharedPreferencesEditor implements Editor {
 
     Map<String, Object> editsThatNeedCommit = new HashMap<String, Object>();
@@ -167,6 +208,19 @@ public class TestSharedPreferences implements SharedPreferences {
 
     @Override
     public boolean commit() {
+      commitToMemory();
+      return file == null || file.write(content.get(filename));
+    }
+
+    @Override
+    public void apply() {
+      commitToMemory();
+      if (file != null) {
+        file.enqueue(content.get(filename));
+      }
+    }
+
+    private void commitToMemory() {
       Map<String, Object> previousContent = content.get(filename);
       List<String> keysToPassToListeners = new ArrayList<String>();
 
@@ -193,13 +247,6 @@ public class TestSharedPreferences implements SharedPreferences {
           listener.onSharedPreferenceChanged(TestSharedPreferences.this, key);
         }
       }
-
-      return true;
-    }
-
-    @Override
-    public void apply() {
-      commit();
     }
   }
 
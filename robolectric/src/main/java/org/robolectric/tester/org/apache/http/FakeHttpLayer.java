@@ -17,22 +17,27 @@ import org.robolectric.shadows.HttpResponseGenerator;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.regex.Pattern;
 
 public class FakeHttpLayer {
-  List<HttpResponseGenerator> pendingHttpResponses = new ArrayList<HttpResponseGenerator>();
-  List<HttpRequestInfo> httpRequestInfos = new ArrayList<HttpRequestInfo>();
-  List<HttpResponse> httpResponses = new ArrayList<HttpResponse>();
-  List<HttpEntityStub.ResponseRule> httpResponseRules = new ArrayList<HttpEntityStub.ResponseRule>();
+  Queue<HttpResponseGenerator> pendingHttpResponses = new ArrayDeque<HttpResponseGenerator>();
+  LinkedList<HttpRequestInfo> httpRequestInfos = new LinkedList<HttpRequestInfo>();
+  LinkedList<HttpResponse> httpResponses = new LinkedList<HttpResponse>();
+  ResponseRuleIndex httpResponseRules = new ResponseRuleIndex();
   HttpResponse defaultHttpResponse;
   private HttpResponse defaultResponse;
   private boolean interceptHttpRequests = true;
   private boolean logHttpRequests = false;
-  private List<byte[]> httpResposeContent = new ArrayList<byte[]>();
+  private int historyLimit = -1;
+  private HttpFixtureArchive.Writer httpFixtureWriter;
+  private LinkedList<byte[]> httpResposeContent = new LinkedList<byte[]>();
   private boolean interceptResponseContent;
 
   public HttpRequestInfo getLastSentHttpRequestInfo() {
@@ -86,8 +91,37 @@ public class FakeHttpLayer {
     addHttpResponseRule(new RequestMatcherResponseRule(requestMatcher, responses));
   }
 
+  /**
+   * Add a response rule. Rules added later take precedence over rules added earlier.
+   *
+   * @param responseRule Response rule
+   */
   public void addHttpResponseRule(HttpEntityStub.ResponseRule responseRule) {
-    httpResponseRules.add(0, responseRule);
+    httpResponseRules.add(responseRule);
+  }
+
+  /**
+   * Replays the responses recorded in a fixture archive. The archive is matched like any other rule, taking
+   * precedence over rules added before it.
+   *
+   * @param archive Fixture archive, usually shared between tests through {@link HttpFixtureArchive#load(java.io.File)}
+   */
+  public void addHttpFixtures(HttpFixtureArchive archive) {
+    addHttpResponseRule(archive.newResponseRule());
+  }
+
+  /**
+   * Records every real HTTP call made while requests aren't intercepted into a fixture archive, which can
+   * later be replayed with {@link #addHttpFixtures(HttpFixtureArchive)}.
+   *
+   * @param writer Archive writer, or {@code null} to stop recording
+   */
+  public void recordHttpFixtures(HttpFixtureArchive.Writer writer) {
+    this.httpFixtureWriter = writer;
+  }
+
+  public HttpFixtureArchive.Writer getHttpFixtureWriter() {
+    return httpFixtureWriter;
   }
 
   public void setDefaultHttpResponse(HttpResponse defaultHttpResponse) {
@@ -100,13 +134,12 @@ public class FakeHttpLayer {
 
   private HttpResponse findResponse(HttpRequest httpRequest) throws HttpException, IOException {
     if (!pendingHttpResponses.isEmpty()) {
-      return pendingHttpResponses.remove(0).getResponse(httpRequest);
+      return pendingHttpResponses.remove().getResponse(httpRequest);
     }
 
-    for (HttpEntityStub.ResponseRule httpResponseRule : httpResponseRules) {
-      if (httpResponseRule.matches(httpRequest)) {
-        return httpResponseRule.getResponse();
-      }
+    HttpEntityStub.ResponseRule httpResponseRule = httpResponseRules.findMatch(httpRequest);
+    if (httpResponseRule != null) {
+      return httpResponseRule.getResponse();
     }
 
     System.err.println("Unexpected HTTP call " + httpRequest.getRequestLine());
@@ -163,6 +196,29 @@ public class FakeHttpLayer {
    */
   public void addRequestInfo(HttpRequestInfo requestInfo) {
     httpRequestInfos.add(requestInfo);
+    trimHistory(httpRequestInfos);
+  }
+
+  /**
+   * Limits how many sent requests, responses and response contents the fake http layer keeps, dropping the
+   * oldest ones first. A limit of {@code 0} stops keeping them at all; a negative limit (the default) keeps
+   * everything.
+   *
+   * @param historyLimit maximum number of entries to keep in each history
+   */
+  public void setHistoryLimit(int historyLimit) {
+    this.historyLimit = historyLimit;
+    trimHistory(httpRequestInfos);
+    trimHistory(httpResponses);
+    trimHistory(httpResposeContent);
+  }
+
+  private void trimHistory(LinkedList<?> history) {
+    if (historyLimit >= 0) {
+      while (history.size() > historyLimit) {
+        history.removeFirst();
+      }
+    }
   }
 
   public boolean hasResponseRules() {
@@ -187,7 +243,7 @@ public class FakeHttpLayer {
   }
 
   public HttpRequestInfo getNextSentHttpRequestInfo() {
-    return httpRequestInfos.size() > 0 ? httpRequestInfos.remove(0) : null;
+    return httpRequestInfos.poll();
   }
 
   public void logHttpRequests() {
@@ -231,10 +287,12 @@ public class FakeHttpLayer {
    */
   public void addHttpResponse(HttpResponse response) {
     this.httpResponses.add(response);
+    trimHistory(httpResponses);
   }
 
   public void addHttpResponseContent(byte[] content) {
     this.httpResposeContent.add(content);
+    trimHistory(httpResposeContent);
   }
 
   public List<byte[]> getHttpResposeContentList() {
@@ -246,8 +304,7 @@ public class FakeHttpLayer {
    * @return The latest HTTP response or null, if no responses are available
    */
   public HttpResponse getLastHttpResponse() {
-    if (httpResponses.isEmpty()) return null;
-    return httpResponses.get(httpResponses.size()-1) ;
+    return httpResponses.peekLast();
   }
 
   /**
@@ -280,6 +337,112 @@ public class FakeHttpLayer {
     return interceptResponseContent;
   }
 
+  /**
+   * Response rules bucketed by the request method, uri, host and path that their matchers require, so that a
+   * request is only matched against the rules that can accept it. Candidates are still evaluated newest first,
+   * exactly as if all rules were kept in a single list. {@link RequestMatcherBuilder}s can still be configured
+   * after their rule is added, so they are always candidates.
+   */
+  static class ResponseRuleIndex {
+    private static final String ANY = "*";
+
+    private final Map<String, List<IndexedResponseRule>> rulesByUri = new HashMap<String, List<IndexedResponseRule>>();
+    private final List<IndexedResponseRule> unindexedRules = new ArrayList<IndexedResponseRule>();
+    private int nextSequence;
+
+    void add(HttpEntityStub.ResponseRule responseRule) {
+      IndexedResponseRule rule = new IndexedResponseRule(nextSequence++, responseRule);
+      RequestMatcher requestMatcher = responseRule instanceof RequestMatcherResponseRule
+          ? ((RequestMatcherResponseRule) responseRule).requestMatcher : null;
+
+      if (requestMatcher instanceof DefaultRequestMatcher) {
+        DefaultRequestMatcher matcher = (DefaultRequestMatcher) requestMatcher;
+        put(rulesByUri, key(matcher.method, matcher.uri), rule);
+      } else if (requestMatcher instanceof UriRequestMatcher) {
+        put(rulesByUri, key(ANY, ((UriRequestMatcher) requestMatcher).uri), rule);
+      } else {
+        unindexedRules.add(rule);
+      }
+    }
+
+    HttpEntityStub.ResponseRule findMatch(HttpRequest request) {
+      String method = request.getRequestLine().getMethod();
+      String uri = request.getRequestLine().getUri();
+
+      List<List<IndexedResponseRule>> candidates = new ArrayList<List<IndexedResponseRule>>();
+      addCandidates(candidates, rulesByUri, key(method, uri));
+      addCandidates(candidates, rulesByUri, key(ANY, uri));
+      if (!unindexedRules.isEmpty()) {
+        candidates.add(unindexedRules);
+      }
+
+      int[] positions = new int[candidates.size()];
+      for (int i = 0; i < positions.length; i++) {
+        positions[i] = candidates.get(i).size() - 1;
+      }
+      while (true) {
+        int newest = -1;
+        for (int i = 0; i < positions.length; i++) {
+          if (positions[i] >= 0 && (newest < 0
+              || candidates.get(i).get(positions[i]).sequence > candidates.get(newest).get(positions[newest]).sequence)) {
+            newest = i;
+          }
+        }
+        if (newest < 0) {
+          return null;
+        }
+        HttpEntityStub.ResponseRule rule = candidates.get(newest).get(positions[newest]--).responseRule;
+        if (rule.matches(request)) {
+          return rule;
+        }
+      }
+    }
+
+    boolean isEmpty() {
+      return nextSequence == 0;
+    }
+
+    void clear() {
+      rulesByUri.clear();
+      unindexedRules.clear();
+      nextSequence = 0;
+    }
+
+    private static void put(Map<String, List<IndexedResponseRule>> rules, String key, IndexedResponseRule rule) {
+      List<IndexedResponseRule> bucket = rules.get(key);
+      if (bucket == null) {
+        bucket = new ArrayList<IndexedResponseRule>();
+        rules.put(key, bucket);
+      }
+      bucket.add(rule);
+    }
+
+    private static void addCandidates(List<List<IndexedResponseRule>> candidates, Map<String, List<IndexedResponseRule>> rules, String key) {
+      List<IndexedResponseRule> bucket = rules.get(key);
+      if (bucket != null) {
+        candidates.add(bucket);
+      }
+    }
+
+    private static String key(String... parts) {
+      StringBuilder builder = new StringBuilder();
+      for (String part : parts) {
+        builder.append(part).append('\0');
+      }
+      return builder.toString();
+    }
+  }
+
+  private static class IndexedResponseRule {
+    final int sequence;
+    final HttpEntityStub.ResponseRule responseRule;
+
+    IndexedResponseRule(int sequence, HttpEntityStub.ResponseRule responseRule) {
+      this.sequence = sequence;
+      this.responseRule = responseRule;
+    }
+  }
+
   public static class RequestMatcherResponseRule implements HttpEntityStub.ResponseRule {
     private RequestMatcher requestMatcher;
     private HttpResponse responseToGive;
@@ -0,0 +1,265 @@
+package org.robolectric.tester.org.apache.http;
+
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.message.BasicHeader;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Recorded request/response pairs, replayed by {@link FakeHttpLayer#addHttpFixtures(HttpFixtureArchive)}.
+ *
+ * Requests are matched by a normalized key made of the method, the lower-cased scheme and host, the port when
+ * it isn't the default one, the path and the query parameters in sorted order. The file is read into memory in
+ * one go and response bodies are served as read-only slices of it, never copied. It isn't memory-mapped: a
+ * fixture rewritten while a test is replaying it would pull the pages out from under the mapping. Loaded archives
+ * are cached until the file's modification time or length changes, so every test method replaying the same file
+ * shares one parsed, immutable copy.
+ *
+ * Archives are written by {@link Writer}, either by hand or by recording real traffic through
+ * {@link FakeHttpLayer#recordHttpFixtures(Writer)}.
+ */
+public class HttpFixtureArchive {
+  private static final int MAGIC = 0x52484631; // "RHF1"
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final Map<String, HttpFixtureArchive> LOADED = new ConcurrentHashMap<String, HttpFixtureArchive>();
+
+  private final long lastModified;
+  private final long length;
+  private final Map<String, List<Fixture>> fixtures;
+
+  private HttpFixtureArchive(long lastModified, long length, Map<String, List<Fixture>> fixtures) {
+    this.lastModified = lastModified;
+    this.length = length;
+    this.fixtures = fixtures;
+  }
+
+  /**
+   * Returns the archive stored in the given file, reading it only if it hasn't been loaded yet or has changed
+   * since.
+   *
+   * @param file Archive file written by {@link Writer}
+   * @return Archive
+   * @throws IOException if the file can't be read or isn't an archive
+   */
+  public static HttpFixtureArchive load(File file) throws IOException {
+    String key = file.getCanonicalPath();
+    HttpFixtureArchive archive = LOADED.get(key);
+    if (archive == null || archive.lastModified != file.lastModified() || archive.length != file.length()) {
+      archive = read(file);
+      LOADED.put(key, archive);
+    }
+    return archive;
+  }
+
+  private static HttpFixtureArchive read(File file) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      ByteBuffer buffer = readFully(randomAccessFile.getChannel());
+      if (buffer.remaining() < 4 || buffer.getInt() != MAGIC) {
+        throw new IOException(file + " is not an HTTP fixture archive");
+      }
+
+      Map<String, List<Fixture>> fixtures = new HashMap<String, List<Fixture>>();
+      while (buffer.hasRemaining()) {
+        String key = normalize(readString(buffer), readString(buffer));
+        int statusCode = buffer.getInt();
+        Header[] headers = new Header[buffer.getShort() & 0xffff];
+        for (int i = 0; i < headers.length; i++) {
+          headers[i] = new BasicHeader(readString(buffer), readString(buffer));
+        }
+        ByteBuffer body = readBytes(buffer);
+
+        List<Fixture> sameKey = fixtures.get(key);
+        if (sameKey == null) {
+          sameKey = new ArrayList<Fixture>(1);
+          fixtures.put(key, sameKey);
+        }
+        sameKey.add(new Fixture(statusCode, headers, body));
+      }
+      return new HttpFixtureArchive(file.lastModified(), file.length(), Collections.unmodifiableMap(fixtures));
+    } catch (RuntimeException e) {
+      throw new IOException(file + " is not a valid HTTP fixture archive", e);
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+  private static ByteBuffer readFully(FileChannel channel) throws IOException {
+    long size = channel.size();
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("HTTP fixture archive too large: " + size + " bytes");
+    }
+    ByteBuffer buffer = ByteBuffer.allocate((int) size);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) break;
+    }
+    buffer.flip();
+    return buffer.asReadOnlyBuffer();
+  }
+
+  private static ByteBuffer readBytes(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    ByteBuffer bytes = buffer.slice();
+    bytes.limit(length);
+    buffer.position(buffer.position() + length);
+    return bytes;
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    ByteBuffer bytes = readBytes(buffer);
+    return UTF_8.decode(bytes).toString();
+  }
+
+  /**
+   * @return Number of distinct request keys in the archive
+   */
+  public int size() {
+    return fixtures.size();
+  }
+
+  /**
+   * Returns a new rule replaying this archive. Requests with the same key get the recorded responses in order,
+   * and the last one once they run out. Each rule keeps its own position, so the archive itself stays immutable.
+   *
+   * @return Response rule
+   */
+  public HttpEntityStub.ResponseRule newResponseRule() {
+    return new FixtureResponseRule();
+  }
+
+  static String normalize(String method, String uri) {
+    StringBuilder key = new StringBuilder(method.toUpperCase()).append(' ');
+    URI parsedUri;
+    try {
+      parsedUri = URI.create(uri);
+    } catch (IllegalArgumentException e) {
+      return key.append(uri).toString();
+    }
+
+    if (parsedUri.getScheme() != null) {
+      key.append(parsedUri.getScheme().toLowerCase()).append("://");
+    }
+    if (parsedUri.getHost() != null) {
+      key.append(parsedUri.getHost().toLowerCase());
+    }
+    int port = parsedUri.getPort();
+    if (port != -1 && !(port == 80 && "http".equalsIgnoreCase(parsedUri.getScheme()))
+        && !(port == 443 && "https".equalsIgnoreCase(parsedUri.getScheme()))) {
+      key.append(':').append(port);
+    }
+    String path = parsedUri.getRawPath();
+    key.append(path == null || path.length() == 0 ? "/" : path);
+
+    String query = parsedUri.getRawQuery();
+    if (query != null && query.length() > 0) {
+      String[] params = query.split("&");
+      Arrays.sort(params);
+      key.append('?');
+      for (int i = 0; i < params.length; i++) {
+        if (i > 0) key.append('&');
+        key.append(params[i]);
+      }
+    }
+    return key.toString();
+  }
+
+  private static class Fixture {
+    final int statusCode;
+    final Header[] headers;
+    final ByteBuffer body;
+
+    Fixture(int statusCode, Header[] headers, ByteBuffer body) {
+      this.statusCode = statusCode;
+      this.headers = headers;
+      this.body = body;
+    }
+
+    HttpResponse newResponse() {
+      return new TestHttpResponse(statusCode, body.duplicate(), headers.clone());
+    }
+  }
+
+  private class FixtureResponseRule implements HttpEntityStub.ResponseRule {
+    private final Map<String, Integer> replayed = new HashMap<String, Integer>();
+    private String matchedKey;
+
+    @Override
+    public boolean matches(HttpRequest request) {
+      String key = normalize(request.getRequestLine().getMethod(), request.getRequestLine().getUri());
+      if (fixtures.containsKey(key)) {
+        matchedKey = key;
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public HttpResponse getResponse() {
+      List<Fixture> sameKey = fixtures.get(matchedKey);
+      Integer count = replayed.get(matchedKey);
+      int index = count == null ? 0 : count;
+      replayed.put(matchedKey, index + 1);
+      return sameKey.get(Math.min(index, sameKey.size() - 1)).newResponse();
+    }
+  }
+
+  /**
+   * Appends request/response pairs to an archive file.
+   */
+  public static class Writer implements Closeable {
+    private final DataOutputStream out;
+
+    public Writer(File file) throws IOException {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      out.writeInt(MAGIC);
+    }
+
+    public synchronized void add(String method, String uri, int statusCode, Header[] headers, byte[] body) throws IOException {
+      writeString(method);
+      writeString(uri);
+      out.writeInt(statusCode);
+      out.writeShort(headers.length);
+      for (Header header : headers) {
+        writeString(header.getName());
+        writeString(header.getValue());
+      }
+      out.writeInt(body.length);
+      out.write(body);
+    }
+
+    public void add(HttpRequest request, HttpResponse response, byte[] body) throws IOException {
+      add(request.getRequestLine().getMethod(), request.getRequestLine().getUri(),
+          response.getStatusLine().getStatusCode(), response.getAllHeaders(), body);
+    }
+
+    private void writeString(String value) throws IOException {
+      byte[] bytes = value.getBytes(UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      out.close();
+    }
+  }
+}
@@ -9,11 +9,12 @@ import org.apache.http.StatusLine;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpParams;
 import org.robolectric.shadows.StatusLineStub;
+import org.robolectric.util.Util;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -22,7 +23,7 @@ import java.util.NoSuchElementException;
 public class TestHttpResponse extends HttpResponseStub {
 
   private int statusCode;
-  private byte[] responseBody;
+  private ByteBuffer responseBody;
   private TestStatusLine statusLine = new TestStatusLine();
   private TestHttpEntity httpEntity = new TestHttpEntity();
   private int openEntityContentStreamCount = 0;
@@ -31,12 +32,12 @@ public class TestHttpResponse extends HttpResponseStub {
 
   public TestHttpResponse() {
     this.statusCode = 200;
-    this.responseBody = new byte[0];
+    this.responseBody = ByteBuffer.allocate(0);
   }
 
   public TestHttpResponse(int statusCode, String responseBody) {
     this.statusCode = statusCode;
-    this.responseBody = responseBody.getBytes();
+    this.responseBody = ByteBuffer.wrap(responseBody.getBytes());
   }
 
   public TestHttpResponse(int statusCode, String responseBody, Header... headers) {
@@ -45,12 +46,26 @@ public class TestHttpResponse extends HttpResponseStub {
 
   public TestHttpResponse(int statusCode, byte[] responseBody, Header... headers) {
     this.statusCode = statusCode;
-    this.responseBody = responseBody.clone();
+    this.responseBody = ByteBuffer.wrap(responseBody.clone());
+    this.headers = headers;
+  }
+
+  /**
+   * Creates a response whose body is read straight from the given buffer, which is not copied. The buffer's
+   * position and limit are left untouched, so the same (possibly memory-mapped) buffer can back many responses.
+   *
+   * @param statusCode   HTTP status code
+   * @param responseBody Response body, from its position to its limit
+   * @param headers      Response headers
+   */
+  public TestHttpResponse(int statusCode, ByteBuffer responseBody, Header... headers) {
+    this.statusCode = statusCode;
+    this.responseBody = responseBody.slice();
     this.headers = headers;
   }
 
   protected void setResponseBody(String responseBody) {
-    this.responseBody = responseBody.getBytes();
+    this.responseBody = ByteBuffer.wrap(responseBody.getBytes());
   }
 
   @Override public StatusLine getStatusLine() {
@@ -186,10 +201,10 @@ public class TestHttpResponse extends HttpResponseStub {
 
   public class TestHttpEntity extends HttpEntityStub {
 
-    private ByteArrayInputStream inputStream;
+    private InputStream inputStream;
 
     @Override public long getContentLength() {
-      return responseBody.length;
+      return responseBody.remaining();
     }
 
     @Override public Header getContentType() {
@@ -210,7 +225,7 @@ public class TestHttpResponse extends HttpResponseStub {
 
     @Override public InputStream getContent() throws IOException, IllegalStateException {
       openEntityContentStreamCount++;
-      inputStream = new ByteArrayInputStream(responseBody) {
+      inputStream = new ByteBufferInputStream(responseBody.duplicate()) {
         @Override
         public void close() throws IOException {
           openEntityContentStreamCount--;
@@ -221,13 +236,61 @@ public class TestHttpResponse extends HttpResponseStub {
     }
 
     @Override public void writeTo(OutputStream outputStream) throws IOException {
-      outputStream.write(responseBody);
+      if (responseBody.hasArray()) {
+        outputStream.write(responseBody.array(), responseBody.arrayOffset() + responseBody.position(), responseBody.remaining());
+      } else {
+        Util.copy(getContent(), outputStream);
+      }
     }
 
     @Override public void consumeContent() throws IOException {
     }
   }
 
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+    private int mark;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+      this.mark = buffer.position();
+    }
+
+    @Override public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) return 0;
+      if (!buffer.hasRemaining()) return -1;
+      int count = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, count);
+      return count;
+    }
+
+    @Override public long skip(long n) {
+      int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + count);
+      return count;
+    }
+
+    @Override public int available() {
+      return buffer.remaining();
+    }
+
+    @Override public boolean markSupported() {
+      return true;
+    }
+
+    @Override public synchronized void mark(int readLimit) {
+      mark = buffer.position();
+    }
+
+    @Override public synchronized void reset() {
+      buffer.position(mark);
+    }
+  }
+
   public class TestStatusLine extends StatusLineStub {
     @Override public ProtocolVersion getProtocolVersion() {
       return new HttpVersion(1, 0);
@@ -0,0 +1,164 @@
+package org.robolectric.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the work Robolectric does around tests: loading and instrumenting classes, working out how to
+ * dispatch calls to instrumented methods, loading resources and creating the application.
+ *
+ * The counters are process-wide and only ever go up; {@link #snapshot()} captures them, and the difference of two
+ * snapshots, from {@link #since(PerfStats)}, is the work done in between. {@link org.robolectric.RobolectricTestRunner}
+ * does that around every test and reports it in the test's {@link org.robolectric.TestTiming}.
+ *
+ * Some of the counters sit on the path of every call to an instrumented method, so nothing is counted until
+ * someone wants the numbers: {@link #enable()} is called when a {@link org.robolectric.TestTimingListener} is
+ * created or a timing report is asked for. Until then every counter stays at zero.
+ */
+public final class PerfStats {
+  private static volatile boolean enabled;
+
+  private static final AtomicLong classesLoaded = new AtomicLong();
+  private static final AtomicLong classesInstrumented = new AtomicLong();
+  private static final AtomicLong classLoadingNanos = new AtomicLong();
+  private static final AtomicLong planCacheHits = new AtomicLong();
+  private static final AtomicLong planCacheMisses = new AtomicLong();
+  private static final AtomicLong resourceLoads = new AtomicLong();
+  private static final AtomicLong resourceLoadingNanos = new AtomicLong();
+  private static final AtomicLong applicationCreateNanos = new AtomicLong();
+
+  private final long classesLoadedCount;
+  private final long classesInstrumentedCount;
+  private final long classLoadingTime;
+  private final long planCacheHitCount;
+  private final long planCacheMissCount;
+  private final long resourceLoadCount;
+  private final long resourceLoadingTime;
+  private final long applicationCreateTime;
+
+  private PerfStats(long classesLoadedCount, long classesInstrumentedCount, long classLoadingTime,
+                    long planCacheHitCount, long planCacheMissCount, long resourceLoadCount,
+                    long resourceLoadingTime, long applicationCreateTime) {
+    this.classesLoadedCount = classesLoadedCount;
+    this.classesInstrumentedCount = classesInstrumentedCount;
+    this.classLoadingTime = classLoadingTime;
+    this.planCacheHitCount = planCacheHitCount;
+    this.planCacheMissCount = planCacheMissCount;
+    this.resourceLoadCount = resourceLoadCount;
+    this.resourceLoadingTime = resourceLoadingTime;
+    this.applicationCreateTime = applicationCreateTime;
+  }
+
+  /**
+   * Starts counting, for the rest of the run.
+   */
+  public static void enable() {
+    enabled = true;
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Records a class defined by an instrumenting class loader.
+   *
+   * @param instrumented whether its bytecode was rewritten, rather than loaded as it is
+   * @param nanos the time spent reading, instrumenting and defining it, without that of classes loaded meanwhile
+   */
+  public static void classLoaded(boolean instrumented, long nanos) {
+    if (!enabled) return;
+    classesLoaded.incrementAndGet();
+    if (instrumented) classesInstrumented.incrementAndGet();
+    classLoadingNanos.addAndGet(nanos);
+  }
+
+  /**
+   * Records a lookup of how to dispatch a call to an instrumented method.
+   *
+   * @param cached whether the plan was already known
+   */
+  public static void planLookedUp(boolean cached) {
+    if (!enabled) return;
+    (cached ? planCacheHits : planCacheMisses).incrementAndGet();
+  }
+
+  public static void resourcesLoaded(long nanos) {
+    if (!enabled) return;
+    resourceLoads.incrementAndGet();
+    resourceLoadingNanos.addAndGet(nanos);
+  }
+
+  public static void applicationCreated(long nanos) {
+    if (!enabled) return;
+    applicationCreateNanos.addAndGet(nanos);
+  }
+
+  /**
+   * @return the current value of every counter
+   */
+  public static PerfStats snapshot() {
+    return new PerfStats(classesLoaded.get(), classesInstrumented.get(), classLoadingNanos.get(),
+        planCacheHits.get(), planCacheMisses.get(), resourceLoads.get(), resourceLoadingNanos.get(),
+        applicationCreateNanos.get());
+  }
+
+  /**
+   * @return the work counted between {@code earlier} and this snapshot
+   */
+  public PerfStats since(PerfStats earlier) {
+    return new PerfStats(classesLoadedCount - earlier.classesLoadedCount,
+        classesInstrumentedCount - earlier.classesInstrumentedCount,
+        classLoadingTime - earlier.classLoadingTime,
+        planCacheHitCount - earlier.planCacheHitCount,
+        planCacheMissCount - earlier.planCacheMissCount,
+        resourceLoadCount - earlier.resourceLoadCount,
+        resourceLoadingTime - earlier.resourceLoadingTime,
+        applicationCreateTime - earlier.applicationCreateTime);
+  }
+
+  public long getClassesLoaded() {
+    return classesLoadedCount;
+  }
+
+  public long getClassesInstrumented() {
+    return classesInstrumentedCount;
+  }
+
+  public long getClassLoadingNanos() {
+    return classLoadingTime;
+  }
+
+  public long getPlanCacheHits() {
+    return planCacheHitCount;
+  }
+
+  public long getPlanCacheMisses() {
+    return planCacheMissCount;
+  }
+
+  /**
+   * @return the share of plan lookups answered from the cache, or 1 if there were none
+   */
+  public double getPlanCacheHitRate() {
+    long lookups = planCacheHitCount + planCacheMissCount;
+    return lookups == 0 ? 1 : (double) planCacheHitCount / lookups;
+  }
+
+  /**
+   * @return the number of resource packages loaded
+   */
+  public long getResourceLoads() {
+    return resourceLoadCount;
+  }
+
+  public long getResourceLoadingNanos() {
+    return resourceLoadingTime;
+  }
+
+  /**
+   * @return the time spent in {@code Application.onCreate()}
+   */
+  public long getApplicationCreateNanos() {
+    return applicationCreateTime;
+  }
+}
@@ -78,6 +78,15 @@ public class Scheduler {
     }
   }
 
+  public synchronized boolean isQueued(Runnable runnable) {
+    for (PostedRunnable postedRunnable : postedRunnables) {
+      if (postedRunnable.runnable == runnable) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public synchronized boolean advanceToLastPostedRunnable() {
     if (enqueuedTaskCount() < 1) {
       return false;
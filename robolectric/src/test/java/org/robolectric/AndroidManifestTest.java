@@ -19,6 +19,7 @@ import org.robolectric.test.TemporaryFolder;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -359,6 +360,77 @@ public class AndroidManifestTest {
     assertThat(intentFilterData.getAuthorities().get(2).getPort()).isEqualTo("3");
   }
 
+  @Test
+  public void shouldParseManifestsWithTheSameContentOnce() throws Exception {
+    String cacheDir = System.getProperty("robolectric.manifestCacheDir");
+    System.setProperty("robolectric.manifestCacheDir", "");
+    try {
+      String content = manifestWithActivity("once" + System.nanoTime());
+      int parseCount = ManifestModel.getParseCount();
+
+      AndroidManifest first = new AndroidManifest(Fs.newFile(temporaryFolder.newFile("first.xml", content)), null, null);
+      AndroidManifest second = new AndroidManifest(Fs.newFile(temporaryFolder.newFile("second.xml", content)), null, null);
+      assertThat(first.getActivityDatas().keySet()).containsExactly("org.robolectric.MainActivity");
+      assertThat(second.getActivityDatas().keySet()).containsExactly("org.robolectric.MainActivity");
+      assertThat(ManifestModel.getParseCount()).isEqualTo(parseCount + 1);
+    } finally {
+      restoreProperty("robolectric.manifestCacheDir", cacheDir);
+    }
+  }
+
+  @Test
+  public void shouldReadManifestModelsBackFromTheCacheDirectory() throws Exception {
+    String cacheDir = System.getProperty("robolectric.manifestCacheDir");
+    System.setProperty("robolectric.manifestCacheDir", temporaryFolder.newFolder("manifest-cache").getPath());
+    try {
+      File manifestFile = temporaryFolder.newFile("cached.xml", manifestWithActivity("cached" + System.nanoTime()));
+      new AndroidManifest(Fs.newFile(manifestFile), null, null).parseAndroidManifest();
+      assertThat(new File(System.getProperty("robolectric.manifestCacheDir")).list()).hasSize(1);
+
+      ManifestModel.clearMemoryCache();
+      int parseCount = ManifestModel.getParseCount();
+      AndroidManifest manifest = new AndroidManifest(Fs.newFile(manifestFile), null, null);
+      manifest.setPackageName("org.robolectric.other");
+
+      assertThat(manifest.getActivityDatas().keySet()).containsExactly("org.robolectric.other.MainActivity");
+      IntentFilterData intentFilter = manifest.getActivityData("org.robolectric.other.MainActivity").getIntentFilters().get(0);
+      assertThat(intentFilter.getActions()).containsExactly("android.intent.action.VIEW");
+      assertThat(intentFilter.getSchemes()).containsExactly("http");
+      assertThat(manifest.getApplicationMetaData()).containsEntry("key", "value");
+      assertThat(manifest.getUsedPermissions()).containsExactly(Manifest.permission.INTERNET);
+      assertThat(ManifestModel.getParseCount()).isEqualTo(parseCount);
+    } finally {
+      restoreProperty("robolectric.manifestCacheDir", cacheDir);
+    }
+  }
+
+  @Test
+  public void shouldParseManifestsWhoseCacheFileIsCorrupt() throws Exception {
+    String cacheDir = System.getProperty("robolectric.manifestCacheDir");
+    File cacheDirectory = temporaryFolder.newFolder("corrupt-manifest-cache");
+    System.setProperty("robolectric.manifestCacheDir", cacheDirectory.getPath());
+    try {
+      File manifestFile = temporaryFolder.newFile("corrupt.xml", manifestWithActivity("corrupt" + System.nanoTime()));
+      new AndroidManifest(Fs.newFile(manifestFile), null, null).parseAndroidManifest();
+      File cacheFile = cacheDirectory.listFiles()[0];
+      RandomAccessFile randomAccessFile = new RandomAccessFile(cacheFile, "rw");
+      try {
+        randomAccessFile.seek(randomAccessFile.length() / 2);
+        randomAccessFile.writeInt(Integer.MAX_VALUE);
+      } finally {
+        randomAccessFile.close();
+      }
+
+      ManifestModel.clearMemoryCache();
+      int parseCount = ManifestModel.getParseCount();
+      AndroidManifest manifest = new AndroidManifest(Fs.newFile(manifestFile), null, null);
+      assertThat(manifest.getActivityDatas().keySet()).containsExactly("org.robolectric.MainActivity");
+      assertThat(ManifestModel.getParseCount()).isEqualTo(parseCount + 1);
+    } finally {
+      restoreProperty("robolectric.manifestCacheDir", cacheDir);
+    }
+  }
+
   /////////////////////////////
 
   public AndroidManifest newConfigWith(String usesSdkAttrs) throws IOException {
@@ -372,6 +444,31 @@ public class AndroidManifestTest {
     return new AndroidManifest(Fs.newFile(f), null, null);
   }
 
+  private static String manifestWithActivity(String versionName) {
+    return "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+        "<manifest xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+        "          package=\"org.robolectric\" android:versionName=\"" + versionName + "\">\n" +
+        "    <uses-permission android:name=\"android.permission.INTERNET\"/>\n" +
+        "    <application>\n" +
+        "        <meta-data android:name=\"key\" android:value=\"value\"/>\n" +
+        "        <activity android:name=\".MainActivity\">\n" +
+        "            <intent-filter>\n" +
+        "                <action android:name=\"android.intent.action.VIEW\"/>\n" +
+        "                <data android:scheme=\"http\"/>\n" +
+        "            </intent-filter>\n" +
+        "        </activity>\n" +
+        "    </application>\n" +
+        "</manifest>\n";
+  }
+
+  private static void restoreProperty(String name, String value) {
+    if (value == null) {
+      System.clearProperty(name);
+    } else {
+      System.setProperty(name, value);
+    }
+  }
+
   private List<String> stringify(Collection<ResourcePath> resourcePaths) {
     List<String> resourcePathBases = new ArrayList<String>();
     for (ResourcePath resourcePath : resourcePaths) {
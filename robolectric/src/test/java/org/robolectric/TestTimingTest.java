@@ -0,0 +1,100 @@
+package org.robolectric;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.model.InitializationError;
+import org.robolectric.res.FsFile;
+import org.robolectric.test.TemporaryFolder;
+import org.robolectric.util.Strings;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.util.TestUtil.resourceFile;
+
+public class TestTimingTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void shouldTellListenersWhereTheTimeOfEachTestWent() throws Exception {
+    final Map<String, TestTiming> timings = new HashMap<String, TestTiming>();
+    RunNotifier notifier = new RunNotifier();
+    notifier.addListener(new TestTimingListener() {
+      @Override public void testTimed(Description description, TestTiming timing) {
+        timings.put(description.getMethodName(), timing);
+      }
+    });
+
+    new Runner(TwoTests.class).run(notifier);
+
+    assertThat(timings.keySet()).containsOnly("first", "second");
+    TestTiming first = timings.get("first");
+    assertThat(first.getClassName()).isEqualTo(TwoTests.class.getName());
+    TestTiming second = timings.get("second");
+    TestTiming ranFirst = first.getPhaseNanos().containsKey(TestTiming.BEFORE_CLASS) ? first : second;
+    TestTiming ranSecond = ranFirst == first ? second : first;
+    assertThat(ranFirst.getPhaseNanos().keySet()).containsExactly(TestTiming.ENVIRONMENT, TestTiming.BEFORE_CLASS,
+        TestTiming.RESET_STATIC_STATE, TestTiming.SET_UP_APPLICATION_STATE, TestTiming.TEST, TestTiming.TEAR_DOWN);
+    assertThat(ranFirst.getPhaseNanos(TestTiming.BEFORE_CLASS)).isGreaterThanOrEqualTo(5000000L);
+    assertThat(ranSecond.getPhaseNanos().keySet()).containsExactly(TestTiming.ENVIRONMENT,
+        TestTiming.RESET_STATIC_STATE, TestTiming.SET_UP_APPLICATION_STATE, TestTiming.TEST, TestTiming.TEAR_DOWN);
+    assertThat(first.getPhaseNanos(TestTiming.TEST)).isGreaterThanOrEqualTo(5000000L);
+    assertThat(first.getTotalNanos()).isGreaterThanOrEqualTo(first.getPhaseNanos(TestTiming.TEST));
+    assertThat(first.getStats().getPlanCacheHits() + first.getStats().getPlanCacheMisses()).isGreaterThan(0);
+    assertThat(first.getStats().getPlanCacheHitRate()).isBetween(0.0, 1.0);
+    assertThat(second.getMethodName()).isEqualTo("second");
+  }
+
+  @Test
+  public void shouldWriteAJsonReportPerTestClass() throws Exception {
+    File reportDir = temporaryFolder.newFolder("timings");
+    String previous = System.getProperty("robolectric.timingReportDir");
+    System.setProperty("robolectric.timingReportDir", reportDir.getPath());
+    try {
+      new Runner(TwoTests.class).run(new RunNotifier());
+    } finally {
+      if (previous == null) {
+        System.clearProperty("robolectric.timingReportDir");
+      } else {
+        System.setProperty("robolectric.timingReportDir", previous);
+      }
+    }
+
+    File report = new File(reportDir, TwoTests.class.getName() + ".json");
+    String json = Strings.fromStream(new FileInputStream(report));
+    assertThat(json).contains("\"testClass\": \"" + TwoTests.class.getName() + "\"");
+    assertThat(json).contains("\"name\": \"first\"").contains("\"name\": \"second\"");
+    assertThat(json).contains("\"phasesMs\": {\"environment\": ");
+    assertThat(json).contains("\"planCacheHitRate\": ").contains("\"resourceLoadingMs\": ");
+  }
+
+  public static class TwoTests {
+    @BeforeClass public static void setUpClass() throws Exception {
+      Thread.sleep(5);
+    }
+
+    @Test public void first() throws Exception {
+      Thread.sleep(5);
+    }
+
+    @Test public void second() throws Exception {
+    }
+  }
+
+  public static class Runner extends RobolectricTestRunner {
+    public Runner(Class<?> testClass) throws InitializationError {
+      super(testClass);
+    }
+
+    @Override
+    protected AndroidManifest createAppManifest(FsFile manifestFile, FsFile resDir, FsFile assetsDir) {
+      return new AndroidManifest(resourceFile("TestAndroidManifest.xml"), resourceFile("res"), resourceFile("assets"));
+    }
+  }
+}
@@ -33,6 +33,19 @@ public class ReflectionHelpersTest {
     }
   }
 
+  @Test
+  public void getFieldReflectively_resolvesFieldsSeparatelyForEachClass() {
+    ExampleDescendant descendant = new ExampleDescendant();
+    descendant.overridden = 5;
+    ((ExampleBase) descendant).overridden = 3;
+    ExampleBase base = new ExampleBase();
+    base.overridden = 4;
+
+    assertEquals(ReflectionHelpers.getFieldReflectively(descendant, "overridden"), 5);
+    assertEquals(ReflectionHelpers.getFieldReflectively(base, "overridden"), 4);
+    assertEquals(ReflectionHelpers.getFieldReflectively(descendant, "overridden"), 5);
+  }
+
   @Test
   public void setFieldReflectively_setsPrivateFields() {
     ExampleDescendant example = new ExampleDescendant();
@@ -105,6 +118,20 @@ public class ReflectionHelpersTest {
     }
   }
 
+  @Test
+  public void callInstanceMethodReflectively_givesHelpfulExceptionsWhenCalledAgain() {
+    ExampleDescendant example = new ExampleDescendant();
+    for (int i = 0; i < 2; i++) {
+      try {
+        ReflectionHelpers.callInstanceMethodReflectively(example, "returnNumber", new ReflectionHelpers.ClassParameter(String.class, "5"));
+        fail("no Exception thrown");
+      } catch (RuntimeException e) {
+        assertTrue(e.getMessage().contains("returnNumber"));
+      }
+      assertEquals(ReflectionHelpers.callInstanceMethodReflectively(example, "returnNumber"), 1337);
+    }
+  }
+
   @Test
   public void callStaticMethodReflectively_callsPrivateStaticMethodsReflectively() {
     assertEquals(ReflectionHelpers.callStaticMethodReflectively(ExampleDescendant.class, "getConstantNumber"), 1);
@@ -0,0 +1,39 @@
+package org.robolectric.res;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AttrDataTest {
+  @Test
+  public void shouldCompileFormatsInDeclarationOrder() throws Exception {
+    AttrData attrData = new AttrData("layout_width", "dimension|enum", null);
+    assertThat(attrData.getFormats()).isEqualTo(AttrData.FORMAT_DIMENSION | AttrData.FORMAT_ENUM);
+    assertThat(attrData.getFormatsInOrder()).containsExactly(AttrData.FORMAT_DIMENSION, AttrData.FORMAT_ENUM);
+    assertThat(attrData.hasFormat(AttrData.FORMAT_REFERENCE)).isFalse();
+  }
+
+  @Test
+  public void shouldIgnoreUnknownFormats() throws Exception {
+    AttrData attrData = new AttrData("weird", "reference|something", null);
+    assertThat(attrData.getFormatsInOrder()).containsExactly(AttrData.FORMAT_REFERENCE);
+  }
+
+  @Test
+  public void shouldCompileEnumAndFlagValuesToInts() throws Exception {
+    AttrData attrData = new AttrData("gravity", "flag", Arrays.asList(
+        new AttrData.Pair("top", "0x30"),
+        new AttrData.Pair("bottom", "80"),
+        new AttrData.Pair("broken", "not a number")));
+
+    assertThat(attrData.getIntValueFor("top")).isEqualTo(0x30);
+    assertThat(attrData.getIntValueFor("bottom")).isEqualTo(80);
+    assertThat(attrData.getIntValueFor("broken")).isNull();
+    assertThat(attrData.getIntValueFor("left")).isNull();
+    assertThat(attrData.isIntValue(80)).isTrue();
+    assertThat(attrData.isIntValue(81)).isFalse();
+    assertThat(attrData.getValueFor("top")).isEqualTo("0x30");
+  }
+}
@@ -34,6 +34,7 @@ import org.robolectric.test.TemporaryFolder;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(manifest = Config.NONE)
@@ -132,6 +133,48 @@ public class RobolectricPackageManagerTest {
     assertThat(activities.get(0).activityInfo.targetActivity.toString()).isEqualTo("org.robolectric.shadows.TestActivity");
   }
 
+  @Test
+  @Config(manifest = "src/test/resources/TestAndroidManifestForActivitiesWithDeepLinks.xml")
+  public void queryIntentActivities_MatchesOnlyCandidateFiltersInManifestOrder() throws Exception {
+    rpm.addManifest(Robolectric.getShadowApplication().getAppManifest(), Robolectric.getShadowApplication().getResourceLoader());
+    rpm.setQueryIntentImplicitly(true);
+
+    assertThat(targetActivities(new Intent(Intent.ACTION_VIEW, Uri.parse("http://example.com/path"))))
+        .containsExactly("org.robolectric.shadows.TestActivity", "org.robolectric.BrowserActivity");
+    assertThat(targetActivities(new Intent(Intent.ACTION_VIEW, Uri.parse("http://other.com/path"))))
+        .containsExactly("org.robolectric.BrowserActivity");
+    assertThat(targetActivities(new Intent(Intent.ACTION_VIEW).setType("image/png")))
+        .containsExactly("org.robolectric.ImageViewerActivity");
+    assertThat(targetActivities(new Intent(Intent.ACTION_VIEW).setType("*/*")))
+        .containsExactly("org.robolectric.ImageViewerActivity");
+    assertThat(targetActivities(new Intent(Intent.ACTION_SEND).setType("text/plain")))
+        .containsExactly("org.robolectric.BrowserActivity");
+    assertThat(targetActivities(new Intent(Intent.ACTION_SEND).setType("image/png"))).isEmpty();
+    assertThat(targetActivities(new Intent(Intent.ACTION_VIEW, Uri.parse("ftp://example.com/path")))).isEmpty();
+  }
+
+  @Test
+  public void queryIntentActivities_FailsOnlyQueriesReachingAMalformedMimeType() throws Exception {
+    rpm.addManifest(newConfigWith("<application>\n" +
+        "  <activity android:name=\"org.robolectric.ImageViewerActivity\">\n" +
+        "    <intent-filter>\n" +
+        "      <action android:name=\"android.intent.action.VIEW\"/>\n" +
+        "      <category android:name=\"android.intent.category.DEFAULT\"/>\n" +
+        "      <data android:mimeType=\"image\"/>\n" +
+        "    </intent-filter>\n" +
+        "  </activity>\n" +
+        "</application>"), Robolectric.getShadowApplication().getResourceLoader());
+    rpm.setQueryIntentImplicitly(true);
+
+    assertThat(targetActivities(new Intent(Intent.ACTION_SEND).setType("image/png"))).isEmpty();
+    try {
+      targetActivities(new Intent(Intent.ACTION_VIEW).setType("image/png"));
+      fail("expected the malformed MIME type to be reported");
+    } catch (RuntimeException e) {
+      assertThat(e.getCause()).isInstanceOf(IntentFilter.MalformedMimeTypeException.class);
+    }
+  }
+
   @Test
   @Config(manifest = "src/test/resources/TestAndroidManifestForActivityAliases.xml")
   public void queryIntentActivities_MatchWithAliasIntents() throws Exception {
@@ -574,4 +617,12 @@ public class RobolectricPackageManagerTest {
             "</manifest>\n");
     return new AndroidManifest(Fs.newFile(f), null, null);
   }
+
+  private List<String> targetActivities(Intent intent) {
+    List<String> targetActivities = new ArrayList<String>();
+    for (ResolveInfo resolveInfo : rpm.queryIntentActivities(intent, 0)) {
+      targetActivities.add(resolveInfo.activityInfo.targetActivity);
+    }
+    return targetActivities;
+  }
 }
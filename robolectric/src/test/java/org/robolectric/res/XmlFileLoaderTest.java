@@ -731,4 +731,31 @@ public class XmlFileLoaderTest {
     assertThat(parser.getStyleAttribute()).isEqualTo(0);
   }
 
+  @Test
+  public void parsersOfTheSameDocumentShouldNotShareTheirPosition() throws Exception {
+    Document document = resBundle.get(new ResName(TEST_PACKAGE, "xml", "preferences"), "");
+    XmlResourceParser first = xmlFileBuilder.getXml(document, "preferences", "packageName", resourceIndex);
+    XmlResourceParser second = xmlFileBuilder.getXml(document, "preferences", "packageName", resourceIndex);
+
+    assertThat(first.next()).isEqualTo(XmlResourceParser.START_DOCUMENT);
+    assertThat(first.next()).isEqualTo(XmlResourceParser.START_TAG);
+    assertThat(first.next()).isEqualTo(XmlResourceParser.START_TAG);
+    assertThat(first.getDepth()).isEqualTo(2);
+
+    assertThat(second.next()).isEqualTo(XmlResourceParser.START_DOCUMENT);
+    assertThat(second.next()).isEqualTo(XmlResourceParser.START_TAG);
+    assertThat(second.getName()).isEqualTo("PreferenceScreen");
+    assertThat(second.getDepth()).isEqualTo(1);
+    assertThat(first.getDepth()).isEqualTo(2);
+  }
+
+  @Test
+  public void testGetAttributeValue_shouldLookUpByNamespaceAndLocalName() throws Exception {
+    forgeAndOpenDocument("<foo xmlns:a=\"urn:a\" xmlns:b=\"urn:b\" a:bar=\"one\" b:bar=\"two\" bar=\"three\"/>");
+    assertThat(parser.getAttributeValue("urn:a", "bar")).isEqualTo("one");
+    assertThat(parser.getAttributeValue("urn:b", "bar")).isEqualTo("two");
+    assertThat(parser.getAttributeValue(null, "bar")).isEqualTo("three");
+    assertThat(parser.getAttributeValue("urn:c", "bar")).isNull();
+    assertThat(parser.getAttributeValue(null, "baz")).isNull();
+  }
 }
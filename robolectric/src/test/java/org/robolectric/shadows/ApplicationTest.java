@@ -315,6 +315,74 @@ public class ApplicationTest {
     assertEquals(broadcastIntent, broadcastIntents.get(0));
   }
 
+  @Test
+  public void broadcasts_shouldOnlyKeepTheConfiguredNumberOfIntents() {
+    ShadowApplication shadowApplication = shadowOf(Robolectric.application);
+    shadowApplication.setBroadcastIntentsLimit(2);
+    Robolectric.application.sendBroadcast(new Intent("first"));
+    Robolectric.application.sendBroadcast(new Intent("second"));
+    Robolectric.application.sendBroadcast(new Intent("third"));
+
+    List<Intent> broadcastIntents = shadowApplication.getBroadcastIntents();
+    assertThat(broadcastIntents).hasSize(2);
+    assertThat(broadcastIntents.get(0).getAction()).isEqualTo("second");
+    assertThat(broadcastIntents.get(1).getAction()).isEqualTo("third");
+
+    shadowApplication.setBroadcastIntentsLimit(0);
+    Robolectric.application.sendBroadcast(new Intent("fourth"));
+    assertThat(shadowApplication.getBroadcastIntents()).isEmpty();
+  }
+
+  @Test
+  public void broadcasts_shouldOnlyReachReceiversRegisteredForTheAction() {
+    TestBroadcastReceiver fooReceiver = new TestBroadcastReceiver();
+    TestBroadcastReceiver barReceiver = new TestBroadcastReceiver();
+    IntentFilter fooAndBar = new IntentFilter("Foo");
+    fooAndBar.addAction("Bar");
+    Robolectric.application.registerReceiver(fooReceiver, fooAndBar);
+    Robolectric.application.registerReceiver(barReceiver, new IntentFilter("Bar"));
+
+    Robolectric.application.sendBroadcast(new Intent("Foo"));
+    assertThat(fooReceiver.intent.getAction()).isEqualTo("Foo");
+    assertThat(barReceiver.intent).isNull();
+
+    Robolectric.application.unregisterReceiver(fooReceiver);
+    Robolectric.application.sendBroadcast(new Intent("Bar"));
+    assertThat(fooReceiver.intent.getAction()).isEqualTo("Foo");
+    assertThat(barReceiver.intent.getAction()).isEqualTo("Bar");
+    assertThat(shadowOf(Robolectric.application).getReceiversForIntent(new Intent("Foo"))).isEmpty();
+  }
+
+  @Test
+  public void broadcasts_shouldFollowChangesMadeThroughTheRegisteredReceiversList() {
+    TestBroadcastReceiver fooReceiver = new TestBroadcastReceiver();
+    TestBroadcastReceiver barReceiver = new TestBroadcastReceiver();
+    Robolectric.application.registerReceiver(fooReceiver, new IntentFilter("Foo"));
+    Robolectric.application.registerReceiver(barReceiver, new IntentFilter("Bar"));
+
+    List<ShadowApplication.Wrapper> receivers = shadowOf(Robolectric.application).getRegisteredReceivers();
+    receivers.remove(0);
+    assertThat(shadowOf(Robolectric.application).hasReceiverForIntent(new Intent("Foo"))).isFalse();
+    assertThat(shadowOf(Robolectric.application).hasReceiverForIntent(new Intent("Bar"))).isTrue();
+
+    receivers.clear();
+    Robolectric.application.sendBroadcast(new Intent("Bar"));
+    assertThat(barReceiver.intent).isNull();
+  }
+
+  @Test
+  public void broadcasts_shouldUseTheFilterAsItWasWhenTheReceiverWasRegistered() {
+    TestBroadcastReceiver receiver = new TestBroadcastReceiver();
+    IntentFilter filter = new IntentFilter("Foo");
+    Robolectric.application.registerReceiver(receiver, filter);
+    filter.addAction("Bar");
+
+    Robolectric.application.sendBroadcast(new Intent("Bar"));
+    assertThat(receiver.intent).isNull();
+    Robolectric.application.sendBroadcast(new Intent("Foo"));
+    assertThat(receiver.intent.getAction()).isEqualTo("Foo");
+  }
+
   private static class NullBinder implements IBinder {
     @Override
     public String getInterfaceDescriptor() throws RemoteException {
@@ -0,0 +1,116 @@
+package org.robolectric.shadows;
+
+import android.util.Log;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.TestRunners;
+import org.robolectric.test.TemporaryFolder;
+import org.robolectric.util.Strings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(TestRunners.WithDefaults.class)
+public class AsyncLogWriterTest {
+  private static final String NEWLINE = System.getProperty("line.separator");
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void shouldWriteEverythingBeforeFlushReturns() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    AsyncLogWriter writer = new AsyncLogWriter(new AsyncLogWriter.PrintStreamSink(new PrintStream(out), false));
+    try {
+      for (int i = 0; i < 1000; i++) {
+        writer.append(new ShadowLog.LogItem(Log.INFO, "tag", "message " + i, null));
+      }
+      writer.getPrintStream().println("printed");
+      writer.append(new ShadowLog.LogItem(Log.WARN, "tag", "last", new RuntimeException("boom")));
+      writer.flush();
+
+      String[] lines = out.toString().split(NEWLINE);
+      assertThat(lines[0]).isEqualTo("I/tag: message 0");
+      assertThat(lines[999]).isEqualTo("I/tag: message 999");
+      assertThat(lines[1000]).isEqualTo("printed");
+      assertThat(lines[1001]).isEqualTo("W/tag: last");
+      assertThat(lines[1002]).isEqualTo("java.lang.RuntimeException: boom");
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void shouldWriteToMemoryMappedFilesPerName() throws Exception {
+    File directory = temporaryFolder.newFolder("logs");
+    AsyncLogWriter writer = new AsyncLogWriter(new AsyncLogWriter.PrintStreamSink(new PrintStream(new ByteArrayOutputStream()), false));
+    writer.switchTo(AsyncLogWriter.MappedFileSink.open(directory, "FirstTest"));
+    writer.append(new ShadowLog.LogItem(Log.DEBUG, "tag", "first", null));
+    writer.switchTo(AsyncLogWriter.MappedFileSink.open(directory, "SecondTest"));
+    writer.append(new ShadowLog.LogItem(Log.ERROR, "tag", "second", null));
+    writer.close();
+
+    assertThat(read(new File(directory, "FirstTest.log"))).isEqualTo("D/tag: first" + NEWLINE);
+    assertThat(read(new File(directory, "SecondTest.log"))).isEqualTo("E/tag: second" + NEWLINE);
+  }
+
+  @Test
+  public void shouldNotShareMappedFilesBetweenWriters() throws Exception {
+    File directory = temporaryFolder.newFolder("logs");
+    AsyncLogWriter.MappedFileSink first = AsyncLogWriter.MappedFileSink.open(directory, "SomeTest");
+    AsyncLogWriter.MappedFileSink second = AsyncLogWriter.MappedFileSink.open(directory, "SomeTest");
+    first.write("one".getBytes());
+    second.write("two".getBytes());
+    first.close();
+    second.close();
+
+    assertThat(read(new File(directory, "SomeTest.log"))).isEqualTo("one");
+    assertThat(read(new File(directory, "SomeTest-1.log"))).isEqualTo("two");
+  }
+
+  @Test
+  public void shouldStopWritingToASinkOnceItFails() throws Exception {
+    final int[] writes = new int[1];
+    AsyncLogWriter writer = new AsyncLogWriter(new AsyncLogWriter.Sink() {
+      @Override public void write(byte[] bytes) throws IOException {
+        writes[0]++;
+        throw new IOException("disk full");
+      }
+
+      @Override public void flush() {
+      }
+
+      @Override public void close() {
+      }
+    });
+    PrintStream err = System.err;
+    ByteArrayOutputStream errors = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(errors, true));
+    try {
+      writer.append(new ShadowLog.LogItem(Log.INFO, "tag", "first", null));
+      writer.flush();
+      writer.append(new ShadowLog.LogItem(Log.INFO, "tag", "second", null));
+      writer.close();
+    } finally {
+      System.setErr(err);
+    }
+
+    assertThat(writes[0]).isEqualTo(1);
+    assertThat(errors.toString()).contains("disk full");
+    assertThat(errors.toString().split(NEWLINE)).hasSize(1);
+  }
+
+  private static String read(File file) throws Exception {
+    FileInputStream in = new FileInputStream(file);
+    try {
+      return Strings.fromStream(in);
+    } finally {
+      in.close();
+    }
+  }
+}
@@ -2,15 +2,21 @@ package org.robolectric.shadows;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Color;
 import android.graphics.Point;
 import android.net.Uri;
 import android.provider.MediaStore;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.R;
 import org.robolectric.Robolectric;
 import org.robolectric.TestRunners;
+import org.robolectric.test.TemporaryFolder;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.InputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -19,14 +25,65 @@ import static org.robolectric.Robolectric.shadowOf;
 
 @RunWith(TestRunners.WithDefaults.class)
 public class BitmapFactoryTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   @Test
   public void decodeResource_shouldSetDescriptionAndCreatedFrom() throws Exception {
     Bitmap bitmap = BitmapFactory.decodeResource(Robolectric.application.getResources(), R.drawable.an_image);
     ShadowBitmap shadowBitmap = shadowOf(bitmap);
     assertEquals("Bitmap for resource:org.robolectric:drawable/an_image", shadowBitmap.getDescription());
     assertEquals(R.drawable.an_image, shadowBitmap.getCreatedFromResId());
-    assertEquals(100, bitmap.getWidth());
-    assertEquals(100, bitmap.getHeight());
+    assertEquals(64, bitmap.getWidth());
+    assertEquals(53, bitmap.getHeight());
+  }
+
+  @Test
+  public void decodeResource_shouldHonorSampleSizeAndJustDecodeBounds() throws Exception {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    options.inSampleSize = 2;
+    BitmapFactory.decodeResource(Robolectric.application.getResources(), R.drawable.an_image, options);
+    assertThat(options.outWidth).isEqualTo(32);
+    assertThat(options.outHeight).isEqualTo(26);
+  }
+
+  @Test
+  public void decodeFile_shouldDecodeActualPixels() throws Exception {
+    BufferedImage image = new BufferedImage(4, 2, BufferedImage.TYPE_INT_ARGB);
+    for (int x = 0; x < 4; x++) {
+      image.setRGB(x, 0, Color.RED);
+      image.setRGB(x, 1, x < 2 ? Color.BLUE : Color.GREEN);
+    }
+    File file = temporaryFolder.newFile("image.png");
+    ImageIO.write(image, "png", file);
+
+    Bitmap bitmap = BitmapFactory.decodeFile(file.getPath());
+    assertThat(bitmap.getWidth()).isEqualTo(4);
+    assertThat(bitmap.getHeight()).isEqualTo(2);
+    assertThat(bitmap.getPixel(3, 0)).isEqualTo(Color.RED);
+    assertThat(bitmap.getPixel(1, 1)).isEqualTo(Color.BLUE);
+    assertThat(bitmap.getPixel(2, 1)).isEqualTo(Color.GREEN);
+
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inSampleSize = 2;
+    Bitmap sampled = BitmapFactory.decodeFile(file.getPath(), options);
+    assertThat(sampled.getWidth()).isEqualTo(2);
+    assertThat(sampled.getHeight()).isEqualTo(1);
+    assertThat(sampled.getPixel(1, 0)).isEqualTo(Color.RED);
+  }
+
+  @Test
+  public void decodeCache_shouldEvictLeastRecentlyUsedImagesOverBudget() throws Exception {
+    ImageDecoder.Cache cache = new ImageDecoder.Cache(64);
+    cache.put("a", new ImageDecoder.Image(2, 4, new int[8]));
+    cache.put("b", new ImageDecoder.Image(2, 4, new int[8]));
+    cache.get("a");
+    cache.put("c", new ImageDecoder.Image(2, 2, new int[4]));
+
+    assertThat(cache.get("a")).isNotNull();
+    assertThat(cache.get("b")).isNull();
+    assertThat(cache.get("c")).isNotNull();
+    assertThat(cache.byteCount()).isEqualTo(48);
   }
 
   @Test
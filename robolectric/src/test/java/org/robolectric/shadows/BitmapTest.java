@@ -233,6 +233,66 @@ public class BitmapTest {
     Bitmap.createBitmap(100, 0, Config.ARGB_8888);
   }
 
+  @Test
+  public void eraseColor_shouldFillAllPixelsInRasterMode() throws Exception {
+    ShadowCanvas.setRasterEnabled(true);
+    Bitmap bitmap = Bitmap.createBitmap(4, 3, Config.ARGB_8888);
+    shadowOf(bitmap).setMutable(true);
+    bitmap.eraseColor(Color.GREEN);
+    assertThat(bitmap.getPixel(0, 0)).isEqualTo(Color.GREEN);
+    assertThat(bitmap.getPixel(3, 2)).isEqualTo(Color.GREEN);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void eraseColor_shouldRejectImmutableBitmapsInRasterMode() throws Exception {
+    ShadowCanvas.setRasterEnabled(true);
+    Bitmap.createBitmap(4, 3, Config.ARGB_8888).eraseColor(Color.GREEN);
+  }
+
+  @Test
+  public void eraseColor_shouldNotTouchPixelsWhenRasterModeIsOff() throws Exception {
+    Bitmap bitmap = Bitmap.createBitmap(4, 3, Config.ARGB_8888);
+    shadowOf(bitmap).setMutable(true);
+    bitmap.eraseColor(Color.GREEN);
+    assertThat(bitmap.getPixel(0, 0)).isEqualTo(0);
+  }
+
+  @Test
+  public void setPixels_shouldWriteRowsWithStrideAndGetPixelsShouldReadThemBack() throws Exception {
+    ShadowCanvas.setRasterEnabled(true);
+    Bitmap bitmap = Bitmap.createBitmap(4, 4, Config.ARGB_8888);
+    shadowOf(bitmap).setMutable(true);
+    bitmap.setPixels(new int[] {1, 2, 0, 3, 4, 0}, 0, 3, 1, 2, 2, 2);
+
+    assertThat(bitmap.getPixel(1, 2)).isEqualTo(1);
+    assertThat(bitmap.getPixel(2, 2)).isEqualTo(2);
+    assertThat(bitmap.getPixel(1, 3)).isEqualTo(3);
+    assertThat(bitmap.getPixel(2, 3)).isEqualTo(4);
+
+    int[] pixels = new int[4];
+    bitmap.getPixels(pixels, 0, 2, 1, 2, 2, 2);
+    assertThat(pixels).containsExactly(1, 2, 3, 4);
+  }
+
+  @Test
+  public void copyAndCreateScaledBitmap_shouldCarryPixels() throws Exception {
+    Bitmap bitmap = Bitmap.createBitmap(new int[] {Color.RED, Color.BLUE, Color.GREEN, Color.WHITE}, 2, 2, Config.ARGB_8888);
+
+    Bitmap copy = bitmap.copy(Config.ARGB_8888, true);
+    assertThat(copy.getWidth()).isEqualTo(2);
+    assertThat(copy.getPixel(1, 1)).isEqualTo(Color.WHITE);
+
+    Bitmap scaled = Bitmap.createScaledBitmap(bitmap, 4, 4, false);
+    assertThat(scaled.getPixel(0, 0)).isEqualTo(Color.RED);
+    assertThat(scaled.getPixel(1, 1)).isEqualTo(Color.RED);
+    assertThat(scaled.getPixel(2, 1)).isEqualTo(Color.BLUE);
+    assertThat(scaled.getPixel(3, 3)).isEqualTo(Color.WHITE);
+
+    Bitmap cropped = Bitmap.createBitmap(bitmap, 1, 0, 1, 2);
+    assertThat(cropped.getPixel(0, 0)).isEqualTo(Color.BLUE);
+    assertThat(cropped.getPixel(0, 1)).isEqualTo(Color.WHITE);
+  }
+
   private static Bitmap create(String name) {
     Bitmap bitmap = Robolectric.newInstanceOf(Bitmap.class);
     shadowOf(bitmap).appendDescription(name);
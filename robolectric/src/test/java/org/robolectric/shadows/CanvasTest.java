@@ -9,6 +9,8 @@ import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.view.View;
+import android.widget.FrameLayout;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -243,4 +245,107 @@ public class CanvasTest {
     ShadowCanvas shadowCanvas = shadowOf(canvas);
     assertThat(shadowCanvas.getArcPaintHistoryCount()).isEqualTo(2);
   }
+
+  @Test
+  public void rasterMode_shouldFillClipAndTranslateRects() throws Exception {
+    ShadowCanvas.setRasterEnabled(true);
+    Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+    Canvas canvas = new Canvas(bitmap);
+    canvas.drawColor(Color.WHITE);
+
+    Paint paint = new Paint();
+    paint.setColor(Color.RED);
+    int saveCount = canvas.save();
+    canvas.translate(2, 2);
+    canvas.clipRect(0, 0, 4, 4);
+    canvas.drawRect(0, 0, 10, 10, paint);
+    canvas.restoreToCount(saveCount);
+
+    assertThat(bitmap.getPixel(1, 1)).isEqualTo(Color.WHITE);
+    assertThat(bitmap.getPixel(2, 2)).isEqualTo(Color.RED);
+    assertThat(bitmap.getPixel(5, 5)).isEqualTo(Color.RED);
+    assertThat(bitmap.getPixel(6, 6)).isEqualTo(Color.WHITE);
+
+    paint.setColor(0x800000ff);
+    canvas.drawRect(new Rect(0, 0, 1, 1), paint);
+    assertThat(bitmap.getPixel(0, 0)).isEqualTo(Color.argb(255, 127, 127, 255));
+  }
+
+  @Test
+  public void rasterMode_shouldDrawCirclesAndStrokedRects() throws Exception {
+    ShadowCanvas.setRasterEnabled(true);
+    Bitmap bitmap = Bitmap.createBitmap(20, 20, Bitmap.Config.ARGB_8888);
+    Canvas canvas = new Canvas(bitmap);
+
+    Paint paint = new Paint();
+    paint.setColor(Color.BLUE);
+    canvas.drawCircle(10, 10, 5, paint);
+    assertThat(bitmap.getPixel(10, 10)).isEqualTo(Color.BLUE);
+    assertThat(bitmap.getPixel(10, 5)).isEqualTo(Color.BLUE);
+    assertThat(bitmap.getPixel(5, 5)).isZero();
+
+    paint.setStyle(Paint.Style.STROKE);
+    paint.setStrokeWidth(2);
+    paint.setColor(Color.GREEN);
+    canvas.drawRect(2, 2, 18, 18, paint);
+    assertThat(bitmap.getPixel(1, 10)).isEqualTo(Color.GREEN);
+    assertThat(bitmap.getPixel(2, 10)).isEqualTo(Color.GREEN);
+    assertThat(bitmap.getPixel(3, 10)).isZero();
+  }
+
+  @Test
+  public void rasterMode_shouldScaleBitmapsIntoDestination() throws Exception {
+    ShadowCanvas.setRasterEnabled(true);
+    Bitmap source = Bitmap.createBitmap(new int[] {Color.RED, Color.BLUE, Color.GREEN, Color.TRANSPARENT}, 2, 2, Bitmap.Config.ARGB_8888);
+    Bitmap bitmap = Bitmap.createBitmap(8, 8, Bitmap.Config.ARGB_8888);
+    Canvas canvas = new Canvas(bitmap);
+    canvas.drawColor(Color.WHITE);
+    canvas.drawBitmap(source, null, new Rect(0, 0, 4, 4), new Paint());
+    canvas.scale(2, 2);
+    canvas.drawBitmap(source, 2, 2, new Paint());
+
+    assertThat(bitmap.getPixel(1, 1)).isEqualTo(Color.RED);
+    assertThat(bitmap.getPixel(2, 0)).isEqualTo(Color.BLUE);
+    assertThat(bitmap.getPixel(0, 3)).isEqualTo(Color.GREEN);
+    assertThat(bitmap.getPixel(3, 3)).isEqualTo(Color.WHITE);
+    assertThat(bitmap.getPixel(4, 4)).isEqualTo(Color.RED);
+    assertThat(bitmap.getPixel(7, 5)).isEqualTo(Color.BLUE);
+    assertThat(bitmap.getPixel(7, 7)).isEqualTo(Color.WHITE);
+  }
+
+  @Test
+  public void rasterMode_shouldDrawViewHierarchies() throws Exception {
+    ShadowCanvas.setRasterEnabled(true);
+    FrameLayout parent = new FrameLayout(Robolectric.application);
+    parent.setBackgroundColor(Color.WHITE);
+    View child = new View(Robolectric.application);
+    child.setBackgroundColor(Color.RED);
+    parent.addView(child, new FrameLayout.LayoutParams(4, 4));
+    parent.measure(View.MeasureSpec.makeMeasureSpec(10, View.MeasureSpec.EXACTLY), View.MeasureSpec.makeMeasureSpec(10, View.MeasureSpec.EXACTLY));
+    parent.layout(0, 0, 10, 10);
+    child.layout(3, 3, 7, 7);
+
+    Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+    parent.draw(new Canvas(bitmap));
+
+    assertThat(bitmap.getPixel(0, 0)).isEqualTo(Color.WHITE);
+    assertThat(bitmap.getPixel(3, 3)).isEqualTo(Color.RED);
+    assertThat(bitmap.getPixel(6, 6)).isEqualTo(Color.RED);
+    assertThat(bitmap.getPixel(7, 7)).isEqualTo(Color.WHITE);
+  }
+
+  @Test
+  public void rasterMode_shouldBeOffByDefault() throws Exception {
+    Bitmap bitmap = Bitmap.createBitmap(4, 4, Bitmap.Config.ARGB_8888);
+    new Canvas(bitmap).drawColor(Color.RED);
+    assertThat(bitmap.getPixel(0, 0)).isZero();
+  }
+
+  @Test
+  public void rasterMode_shouldLeaveSaveAndClipToCanvasWhenOff() throws Exception {
+    Canvas canvas = new Canvas(Bitmap.createBitmap(4, 4, Bitmap.Config.ARGB_8888));
+    assertThat(canvas.save()).isZero();
+    assertThat(canvas.getSaveCount()).isZero();
+    assertThat(canvas.clipRect(0, 0, 2, 2)).isFalse();
+  }
 }
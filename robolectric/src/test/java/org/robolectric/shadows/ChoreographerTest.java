@@ -0,0 +1,174 @@
+package org.robolectric.shadows;
+
+import android.animation.ObjectAnimator;
+import android.animation.ValueAnimator;
+import android.os.SystemClock;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.animation.LinearInterpolator;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.TestRunners;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(TestRunners.WithDefaults.class)
+public class ChoreographerTest {
+
+  @Test
+  public void frameCallback_shouldRunRightAwayWhenIdleAndThenOnTheNextVsync() throws Exception {
+    ShadowChoreographer.setVsyncEnabled(true);
+    Robolectric.idleMainLooper(5);
+    final List<Long> frameTimes = new ArrayList<Long>();
+    Choreographer.FrameCallback callback = new Choreographer.FrameCallback() {
+      @Override public void doFrame(long frameTimeNanos) {
+        frameTimes.add(frameTimeNanos);
+      }
+    };
+    Choreographer.getInstance().postFrameCallback(callback);
+    assertThat(frameTimes).containsExactly(5000000L);
+
+    Choreographer.getInstance().postFrameCallback(callback);
+    Robolectric.idleMainLooper(16);
+    assertThat(frameTimes).hasSize(1);
+
+    Robolectric.idleMainLooper(1);
+    assertThat(frameTimes).containsExactly(5000000L, 22000000L);
+    assertThat(SystemClock.uptimeMillis()).isEqualTo(22);
+  }
+
+  @Test
+  public void advanceFrames_shouldRunOneFramePerVsync() throws Exception {
+    ShadowChoreographer.setVsyncEnabled(true);
+    final List<Long> frameTimes = new ArrayList<Long>();
+    Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+      @Override public void doFrame(long frameTimeNanos) {
+        frameTimes.add(frameTimeNanos / 1000000);
+        Choreographer.getInstance().postFrameCallback(this);
+      }
+    });
+
+    assertThat(frameTimes).containsExactly(0L);
+
+    assertThat(ShadowChoreographer.advanceFrames(60)).isEqualTo(60);
+    assertThat(frameTimes).hasSize(61);
+    assertThat(frameTimes.subList(0, 5)).containsExactly(0L, 17L, 33L, 50L, 67L);
+    assertThat(frameTimes.get(60)).isEqualTo(1000L);
+    assertThat(SystemClock.uptimeMillis()).isEqualTo(1000);
+
+    assertThat(ShadowChoreographer.getFrameCount()).isEqualTo(61);
+    assertThat(ShadowChoreographer.getTotalFrameTimeNanos()).isGreaterThanOrEqualTo(ShadowChoreographer.getMaxFrameTimeNanos());
+    ShadowChoreographer.resetFrameStats();
+    assertThat(ShadowChoreographer.getFrameCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void advanceFrames_shouldFollowTheRefreshRate() throws Exception {
+    ShadowChoreographer.setVsyncEnabled(true);
+    ShadowChoreographer.setRefreshRate(10);
+    final List<Long> frameTimes = new ArrayList<Long>();
+    Choreographer.FrameCallback callback = new Choreographer.FrameCallback() {
+      @Override public void doFrame(long frameTimeNanos) {
+        frameTimes.add(frameTimeNanos / 1000000);
+      }
+    };
+    Choreographer.getInstance().postFrameCallback(callback);
+    Choreographer.getInstance().postFrameCallback(callback);
+
+    assertThat(ShadowChoreographer.advanceFrames(3)).isEqualTo(1);
+    assertThat(frameTimes).containsExactly(0L, 100L);
+    assertThat(SystemClock.uptimeMillis()).isEqualTo(300);
+  }
+
+  @Test
+  public void frameCallback_shouldRunTenMillisecondsAfterTheLastFrameWithoutSimulatedVsync() throws Exception {
+    // the real choreographer takes frame times from System.nanoTime()
+    ShadowSystemClock.setNanoTime(0);
+    Robolectric.idleMainLooper(5);
+    final List<Long> frameTimes = new ArrayList<Long>();
+    Choreographer.FrameCallback callback = new Choreographer.FrameCallback() {
+      @Override public void doFrame(long frameTimeNanos) {
+        frameTimes.add(SystemClock.uptimeMillis());
+      }
+    };
+    Choreographer.getInstance().postFrameCallback(callback);
+    assertThat(frameTimes).containsExactly(5L);
+
+    Choreographer.getInstance().postFrameCallback(callback);
+    Robolectric.idleMainLooper(4);
+    assertThat(frameTimes).hasSize(1);
+
+    Robolectric.idleMainLooper(1);
+    assertThat(frameTimes).containsExactly(5L, 10L);
+    assertThat(ShadowChoreographer.getFrameCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void frameCallback_shouldStillRunWhenTheSchedulerIsResetWhileAFrameIsPending() throws Exception {
+    ShadowChoreographer.setVsyncEnabled(true);
+    final List<Long> frameTimes = new ArrayList<Long>();
+    Choreographer.FrameCallback callback = new Choreographer.FrameCallback() {
+      @Override public void doFrame(long frameTimeNanos) {
+        frameTimes.add(frameTimeNanos / 1000000);
+      }
+    };
+    Choreographer.getInstance().postFrameCallback(callback);
+    Choreographer.getInstance().postFrameCallback(callback);
+    assertThat(frameTimes).containsExactly(0L);
+
+    Robolectric.getUiThreadScheduler().reset();
+    Choreographer.getInstance().postFrameCallback(callback);
+    assertThat(ShadowChoreographer.advanceFrames(1)).isEqualTo(1);
+    assertThat(frameTimes).containsExactly(0L, 17L, 17L);
+  }
+
+  @Test
+  public void frameDrivenValueAnimator_shouldAnimateFrameByFrame() throws Exception {
+    ShadowValueAnimator.setFrameDrivenEnabled(true);
+    ValueAnimator animator = ValueAnimator.ofFloat(0, 1);
+    animator.setDuration(1000);
+    animator.setInterpolator(new LinearInterpolator());
+    TestAnimatorListener listener = new TestAnimatorListener();
+    animator.addListener(listener);
+
+    animator.start();
+    assertThat(listener.startWasCalled).isTrue();
+    assertThat(animator.isRunning()).isTrue();
+
+    ShadowChoreographer.advanceFrames(30);
+    assertThat((Float) animator.getAnimatedValue()).isGreaterThan(0.4f).isLessThan(0.6f);
+    assertThat(listener.endWasCalled).isFalse();
+
+    ShadowChoreographer.advanceFrames(40);
+    assertThat((Float) animator.getAnimatedValue()).isEqualTo(1f);
+    assertThat(animator.isRunning()).isFalse();
+    assertThat(listener.endWasCalled).isTrue();
+  }
+
+  @Test
+  public void frameDrivenObjectAnimator_shouldSetPropertyEachFrame() throws Exception {
+    ShadowValueAnimator.setFrameDrivenEnabled(true);
+    View target = new View(Robolectric.application);
+    ObjectAnimator animator = ObjectAnimator.ofFloat(target, "translationX", 0, 100);
+    animator.setDuration(500);
+    animator.setInterpolator(new LinearInterpolator());
+
+    final List<Float> values = new ArrayList<Float>();
+    animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+      @Override public void onAnimationUpdate(ValueAnimator animation) {
+        values.add((Float) animation.getAnimatedValue());
+      }
+    });
+    animator.start();
+    ShadowChoreographer.advanceFrames(40);
+
+    assertThat(values.size()).isGreaterThan(25);
+    assertThat(values.get(values.size() - 1)).isEqualTo(100f);
+    assertThat(target.getTranslationX()).isEqualTo(100f);
+    assertThat(animator.isRunning()).isFalse();
+  }
+}
@@ -33,6 +33,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static android.provider.MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -538,6 +539,94 @@ public class ContentResolverTest {
     assertThat(co.changed).isFalse();
   }
 
+  @Test
+  public void shouldNotifyEveryObserverOfTheUriAndItsDescendants() throws Exception {
+    TestContentObserver first = new TestContentObserver(null);
+    TestContentObserver second = new TestContentObserver(null);
+    TestContentObserver descendant = new TestContentObserver(null);
+    TestContentObserver unrelated = new TestContentObserver(null);
+    contentResolver.registerContentObserver(EXTERNAL_CONTENT_URI, false, first);
+    contentResolver.registerContentObserver(EXTERNAL_CONTENT_URI, false, second);
+    contentResolver.registerContentObserver(uri21, false, descendant);
+    contentResolver.registerContentObserver(uri22, false, unrelated);
+
+    assertThat(shadowContentResolver.getContentObservers(EXTERNAL_CONTENT_URI)).containsExactly(first, second);
+
+    contentResolver.notifyChange(EXTERNAL_CONTENT_URI, null);
+    assertThat(first.changed).isTrue();
+    assertThat(second.changed).isTrue();
+    assertThat(descendant.changed).isTrue();
+
+    unrelated.changed = false;
+    descendant.changed = false;
+    contentResolver.notifyChange(uri21, null);
+    assertThat(descendant.changed).isTrue();
+    assertThat(unrelated.changed).isFalse();
+  }
+
+  @Test
+  public void shouldOnlyNotifyAncestorObserversThatAskedForDescendants() throws Exception {
+    TestContentObserver forDescendants = new TestContentObserver(null);
+    TestContentObserver exactOnly = new TestContentObserver(null);
+    contentResolver.registerContentObserver(EXTERNAL_CONTENT_URI, true, forDescendants);
+    contentResolver.registerContentObserver(EXTERNAL_CONTENT_URI, false, exactOnly);
+
+    contentResolver.notifyChange(uri21, null);
+    assertThat(forDescendants.changed).isTrue();
+    assertThat(exactOnly.changed).isFalse();
+
+    contentResolver.unregisterContentObserver(forDescendants);
+    forDescendants.changed = false;
+    contentResolver.notifyChange(uri21, null);
+    assertThat(forDescendants.changed).isFalse();
+    assertThat(shadowContentResolver.getContentObserver(EXTERNAL_CONTENT_URI)).isSameAs((ContentObserver) exactOnly);
+  }
+
+  @Test
+  public void shouldOnlyKeepTheMostRecentNotifiedUris() throws Exception {
+    shadowContentResolver.setMaxNotifiedUris(2);
+    contentResolver.notifyChange(Uri.parse("foo"), null);
+    contentResolver.notifyChange(Uri.parse("bar"), null);
+    contentResolver.notifyChange(Uri.parse("baz"), null);
+
+    List<ShadowContentResolver.NotifiedUri> notifiedUris = shadowContentResolver.getNotifiedUris();
+    assertThat(notifiedUris).hasSize(2);
+    assertThat(notifiedUris.get(0).uri.toString()).isEqualTo("bar");
+    assertThat(notifiedUris.get(1).uri.toString()).isEqualTo("baz");
+
+    shadowContentResolver.clearNotifiedUris();
+    assertThat(shadowContentResolver.getNotifiedUris()).isEmpty();
+  }
+
+  @Test
+  public void shouldAcceptNotificationsAndSyncRequestsFromManyThreads() throws Exception {
+    final Account account = new Account("name", "type");
+    final CountingContentObserver observer = new CountingContentObserver();
+    contentResolver.registerContentObserver(EXTERNAL_CONTENT_URI, true, observer);
+    shadowContentResolver.setMaxNotifiedUris(-1);
+
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      final String authority = "authority" + i;
+      threads[i] = new Thread() {
+        @Override public void run() {
+          for (int j = 0; j < 500; j++) {
+            contentResolver.notifyChange(uri21, null);
+            ContentResolver.requestSync(account, authority, new Bundle());
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(observer.changes.get()).isEqualTo(2000);
+    assertThat(shadowContentResolver.getNotifiedUris()).hasSize(2000);
+    assertThat(ShadowContentResolver.getStatus(account, "authority3").syncRequests).isEqualTo(500);
+  }
+
   @Test
   public void getProvider_shouldCreateProviderFromManifest() {
     AndroidManifest manifest = Robolectric.getShadowApplication().getAppManifest();
@@ -586,6 +675,19 @@ public class ContentResolverTest {
     }
   }
 
+  private static class CountingContentObserver extends ContentObserver {
+    final AtomicInteger changes = new AtomicInteger();
+
+    public CountingContentObserver() {
+      super(null);
+    }
+
+    @Override
+    public void onChange(boolean selfChange, Uri uri) {
+      changes.incrementAndGet();
+    }
+  }
+
   public static class TestContentProvider extends ContentProvider {
     @Override
     public int delete(Uri arg0, String arg1, String[] arg2) {
@@ -1,5 +1,6 @@
 package org.robolectric.shadows;
 
+import android.database.Cursor;
 import android.database.CursorWindow;
 import android.database.DatabaseUtils;
 import android.database.MatrixCursor;
@@ -38,4 +39,86 @@ public class CursorWindowTest {
     assertThat(window.getInt(1, 0)).isEqualTo(34);
     assertThat(window.getFloat(1, 2)).isEqualTo(1.2f);
   }
+
+  @Test
+  public void shouldConvertBetweenNumericTypes() throws Exception {
+    CursorWindow window = new CursorWindow("name");
+    window.setNumColumns(3);
+    assertThat(window.allocRow()).isTrue();
+    window.putLong(Long.MAX_VALUE, 0, 0);
+    window.putDouble(2.5, 0, 1);
+    window.putString("42", 0, 2);
+
+    assertThat(window.getLong(0, 0)).isEqualTo(Long.MAX_VALUE);
+    assertThat(window.getString(0, 0)).isEqualTo(String.valueOf(Long.MAX_VALUE));
+    assertThat(window.getLong(0, 1)).isEqualTo(2L);
+    assertThat(window.getDouble(0, 1)).isEqualTo(2.5);
+    assertThat(window.getLong(0, 2)).isEqualTo(42L);
+    assertThat(window.getType(0, 2)).isEqualTo(Cursor.FIELD_TYPE_STRING);
+  }
+
+  @Test
+  public void shouldRefuseRowsOnceWindowIsFull() throws Exception {
+    CursorWindow window = new CursorWindow("name");
+    window.setNumColumns(1);
+
+    int rows = 0;
+    while (window.allocRow()) {
+      if (!window.putString("0123456789012345678901234567890123456789", rows, 0)) {
+        break;
+      }
+      rows++;
+    }
+
+    assertThat(rows).isGreaterThan(0);
+    assertThat(window.getString(rows - 1, 0)).isEqualTo("0123456789012345678901234567890123456789");
+  }
+
+  @Test
+  public void shouldCountSupplementaryCharactersAsFourBytes() throws Exception {
+    StringBuilder emoji = new StringBuilder();
+    StringBuilder ascii = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      emoji.append("\ud83d\ude00");
+      ascii.append("abcd");
+    }
+
+    assertThat(rowsThatFit(emoji.toString())).isEqualTo(rowsThatFit(ascii.toString()));
+  }
+
+  @Test
+  public void shouldStoreNullStringsAndBlobsAsNull() throws Exception {
+    CursorWindow window = new CursorWindow("name");
+    window.setNumColumns(2);
+    window.allocRow();
+
+    assertThat(window.putString(null, 0, 0)).isTrue();
+    assertThat(window.putBlob(null, 0, 1)).isTrue();
+    assertThat(window.getType(0, 0)).isEqualTo(Cursor.FIELD_TYPE_NULL);
+    assertThat(window.getType(0, 1)).isEqualTo(Cursor.FIELD_TYPE_NULL);
+    assertThat(window.getString(0, 0)).isNull();
+    assertThat(window.getBlob(0, 1)).isNull();
+  }
+
+  private static int rowsThatFit(String value) {
+    CursorWindow window = new CursorWindow("name");
+    window.setNumColumns(1);
+    int rows = 0;
+    while (window.allocRow() && window.putString(value, rows, 0)) {
+      rows++;
+    }
+    return rows;
+  }
+
+  @Test
+  public void shouldResetColumnsOnClear() throws Exception {
+    CursorWindow window = new CursorWindow("name");
+    window.setNumColumns(2);
+    window.allocRow();
+    assertThat(window.setNumColumns(3)).isFalse();
+
+    window.clear();
+    assertThat(window.getNumRows()).isEqualTo(0);
+    assertThat(window.setNumColumns(3)).isTrue();
+  }
 }
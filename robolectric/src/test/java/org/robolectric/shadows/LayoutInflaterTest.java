@@ -67,6 +67,22 @@ public class LayoutInflaterTest {
     assertSame(context, view.getContext());
   }
 
+  @Test
+  public void inflatingALayoutAgain_shouldCreateAnEquivalentButSeparateHierarchy() throws Exception {
+    ViewGroup first = (ViewGroup) LayoutInflater.from(context).inflate(R.layout.media, null);
+    ViewGroup second = (ViewGroup) LayoutInflater.from(context).inflate(R.layout.media, null);
+
+    assertThat(second).isNotSameAs(first);
+    assertThat(second.getChildCount()).isEqualTo(first.getChildCount());
+    for (int i = 0; i < first.getChildCount(); i++) {
+      assertThat(second.getChildAt(i).getClass()).isEqualTo(first.getChildAt(i).getClass());
+      assertThat(second.getChildAt(i).getId()).isEqualTo(first.getChildAt(i).getId());
+    }
+    TextView title = (TextView) second.findViewById(R.id.time);
+    assertThat(title.getText().toString()).isEqualTo("Media Layout");
+    assertThat(title).isNotSameAs(first.findViewById(R.id.time));
+  }
+
   @Test
   public void testChoosesLayoutBasedOnDefaultScreenSize() throws Exception {
     ViewGroup view = (ViewGroup) inflate("different_screen_sizes");
@@ -204,6 +204,67 @@ public class LogTest {
     ShadowLog.stream = old;
   }
 
+  @Test
+  public void shouldDropLogsBelowMinimumLevel() throws Exception {
+    ShadowLog.setMinimumLevel(Log.WARN);
+    Log.d("tag", "debug");
+    Log.i("tag", "info");
+    Log.w("tag", "warn");
+    Log.e("tag", "error");
+
+    assertThat(ShadowLog.getLogs()).containsExactly(
+        new LogItem(Log.WARN, "tag", "warn", null),
+        new LogItem(Log.ERROR, "tag", "error", null));
+    assertFalse(Log.isLoggable("tag", Log.INFO));
+    assertTrue(Log.isLoggable("tag", Log.WARN));
+  }
+
+  @Test
+  public void shouldOnlyKeepTheMostRecentLogsForEachTag() throws Exception {
+    ShadowLog.setMaxLogsPerTag(2);
+    Log.i("tag1", "1");
+    Log.i("tag2", "2");
+    Log.i("tag1", "3");
+    Log.i("tag1", "4");
+    Log.i("tag2", "5");
+    Log.i("tag2", "6");
+
+    assertThat(ShadowLog.getLogsForTag("tag1")).containsExactly(
+        new LogItem(Log.INFO, "tag1", "3", null),
+        new LogItem(Log.INFO, "tag1", "4", null));
+    List<LogItem> allItems = ShadowLog.getLogs();
+    assertThat(allItems).hasSize(4);
+    assertThat(allItems.get(0).msg).isEqualTo("3");
+    assertThat(allItems.get(3).msg).isEqualTo("6");
+  }
+
+  @Test
+  public void shouldKeepLogsInLoggedOrderAcrossTagsAsOldOnesAreDropped() throws Exception {
+    ShadowLog.setMaxLogsPerTag(1);
+    for (int i = 0; i < 100; i++) {
+      Log.i("tag" + (i % 3), Integer.toString(i));
+    }
+
+    List<LogItem> allItems = ShadowLog.getLogs();
+    assertThat(allItems).containsExactly(
+        new LogItem(Log.INFO, "tag1", "97", null),
+        new LogItem(Log.INFO, "tag2", "98", null),
+        new LogItem(Log.INFO, "tag0", "99", null));
+  }
+
+  @Test
+  public void shouldReturnLiveLists() throws Exception {
+    Log.i("tag1", "1");
+    List<LogItem> allItems = ShadowLog.getLogs();
+    List<LogItem> tag1Items = ShadowLog.getLogsForTag("tag1");
+
+    Log.i("tag2", "2");
+    Log.i("tag1", "3");
+    assertThat(allItems).hasSize(3);
+    assertThat(tag1Items).hasSize(2);
+    assertThat(tag1Items.get(1).msg).isEqualTo("3");
+  }
+
   private void assertLogged(int type, String tag, String msg, Throwable throwable) {
     LogItem lastLog = ShadowLog.getLogs().get(0);
     assertEquals(type, lastLog.type);
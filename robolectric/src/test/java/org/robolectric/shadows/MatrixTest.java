@@ -1,6 +1,7 @@
 package org.robolectric.shadows;
 
 import android.graphics.Matrix;
+import android.graphics.RectF;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.TestRunners;
@@ -52,4 +53,107 @@ public class MatrixTest {
 
     assertThat(shadowOf(m).getSetOperations()).contains(entry("rotate", "108.0"));
   }
+
+  @Test
+  public void preAndPostOperationsShouldConcatenate() {
+    Matrix m = new Matrix();
+    m.setScale(2, 3);
+    m.preTranslate(10, 20);
+    m.postTranslate(1, 1);
+
+    float[] point = {1, 1};
+    m.mapPoints(point);
+    assertThat(point).containsExactly(23, 64);
+
+    float[] vector = {1, 1};
+    m.mapVectors(vector);
+    assertThat(vector).containsExactly(2, 3);
+  }
+
+  @Test
+  public void rotateShouldMapPointsAroundPivot() {
+    Matrix m = new Matrix();
+    m.setRotate(90, 10, 10);
+
+    float[] points = {20, 10, 10, 20};
+    m.mapPoints(points);
+    assertThat(points).containsExactly(10, 20, 0, 10);
+    assertThat(m.rectStaysRect()).isTrue();
+  }
+
+  @Test
+  public void invertShouldUndoTheTransform() {
+    Matrix m = new Matrix();
+    m.setScale(4, 2, 1, 1);
+    m.postTranslate(5, -3);
+
+    Matrix inverse = new Matrix();
+    assertThat(m.invert(inverse)).isTrue();
+    inverse.preConcat(m);
+    assertThat(inverse.isIdentity()).isTrue();
+
+    Matrix singular = new Matrix();
+    singular.setScale(0, 1);
+    assertThat(singular.invert(new Matrix())).isFalse();
+  }
+
+  @Test
+  public void mapRectShouldReturnBoundsOfTheMappedRect() {
+    Matrix m = new Matrix();
+    m.setScale(2, 2);
+    m.postTranslate(1, 2);
+    RectF rect = new RectF(0, 0, 10, 5);
+    assertThat(m.mapRect(rect)).isTrue();
+    assertThat(rect).isEqualTo(new RectF(1, 2, 21, 12));
+
+    m.setRotate(45);
+    assertThat(m.mapRect(rect)).isFalse();
+  }
+
+  @Test
+  public void setRectToRectShouldFitTheSourceIntoTheDestination() {
+    Matrix m = new Matrix();
+    m.setRectToRect(new RectF(0, 0, 100, 50), new RectF(0, 0, 200, 200), Matrix.ScaleToFit.CENTER);
+
+    float[] values = new float[9];
+    m.getValues(values);
+    assertThat(values[Matrix.MSCALE_X]).isEqualTo(2f);
+    assertThat(values[Matrix.MSCALE_Y]).isEqualTo(2f);
+    assertThat(values[Matrix.MTRANS_X]).isEqualTo(0f);
+    assertThat(values[Matrix.MTRANS_Y]).isEqualTo(50f);
+  }
+
+  @Test
+  public void concatenatedMatricesShouldBeDescribedAsTheyWereWhenConcatenated() {
+    Matrix other = new Matrix();
+    other.setTranslate(1, 2);
+    Matrix m = new Matrix();
+    m.postConcat(other);
+    other.setTranslate(3, 4);
+
+    assertThat(shadowOf(m).getPostOperations()).containsExactly("matrix Matrix[pre=[], set={translate=1.0 2.0}, post=[]]");
+    assertThat(m).isEqualTo(new Matrix(m));
+  }
+
+  @Test
+  public void setToItselfShouldKeepItsOperations() {
+    Matrix m = new Matrix();
+    m.setTranslate(1, 2);
+    m.preScale(2, 3);
+    m.set(m);
+
+    assertThat(shadowOf(m).getPreOperations()).containsExactly("scale 2.0 3.0");
+    assertThat(shadowOf(m).getSetOperations()).containsEntry("translate", "1.0 2.0");
+  }
+
+  @Test
+  public void equalMatricesShouldHaveEqualHashCodes() {
+    Matrix m = new Matrix();
+    m.setScale(-0f, 1);
+    Matrix other = new Matrix();
+    other.setScale(0f, 1);
+
+    assertThat(m).isEqualTo(other);
+    assertThat(m.hashCode()).isEqualTo(other.hashCode());
+  }
 }
@@ -6,6 +6,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
@@ -263,20 +264,20 @@ public class ParcelTest {
     assertThat(parcel.readInt()).isEqualTo(0);
   }
 
-  @Test(expected = ClassCastException.class)
+  @Test
   public void testWriteStringReadInt() {
     String val = "test";
     parcel.writeString(val);
     parcel.setDataPosition(0);
-    parcel.readInt();
+    assertThat(parcel.readInt()).isEqualTo(val.length());
   }
 
-  @Test(expected = ClassCastException.class)
+  @Test
   public void testWriteIntReadString() {
     int val = 9;
     parcel.writeInt(val);
     parcel.setDataPosition(0);
-    parcel.readString();
+    assertThat(parcel.readString()).isNull();
   }
 
   @Test
@@ -316,20 +317,21 @@ public class ParcelTest {
     assertThat(parcel.readLong()).isEqualTo(0l);
   }
 
-  @Test(expected = ClassCastException.class)
+  @Test
   public void testWriteStringReadLong() {
     String val = "test";
     parcel.writeString(val);
     parcel.setDataPosition(0);
-    parcel.readLong();
+    // length followed by the UTF-16LE code units of "te"
+    assertThat(parcel.readLong()).isEqualTo(0x0065007400000004L);
   }
 
-  @Test(expected = ClassCastException.class)
+  @Test
   public void testWriteLongReadString() {
     long val = 9;
     parcel.writeLong(val);
     parcel.setDataPosition(0);
-    parcel.readString();
+    assertThat(parcel.readString()).isNull();
   }
 
   @Test
@@ -514,4 +516,97 @@ public class ParcelTest {
     assertThat(parcel2.readFloat()).isEqualTo(1.25f);
     assertThat(parcel2.readByte()).isEqualTo((byte) 0xAF);
   }
+
+  @Test
+  public void testStringsArePaddedUtf16() {
+    parcel.writeString("hello");
+    assertThat(parcel.dataPosition()).isEqualTo(16);
+
+    parcel.writeString(null);
+    assertThat(parcel.dataPosition()).isEqualTo(20);
+
+    parcel.writeString("");
+    assertThat(parcel.dataSize()).isEqualTo(28);
+  }
+
+  @Test
+  public void testByteArraysArePadded() {
+    parcel.writeByteArray(new byte[] { 1, 2, 3, 4, 5 });
+    parcel.writeInt(42);
+    assertThat(parcel.dataSize()).isEqualTo(16);
+
+    parcel.setDataPosition(0);
+    assertThat(parcel.createByteArray()).isEqualTo(new byte[] { 1, 2, 3, 4, 5 });
+    assertThat(parcel.readInt()).isEqualTo(42);
+  }
+
+  @Test
+  public void testWriteByteArrayWithOffset() {
+    parcel.writeByteArray(new byte[] { 1, 2, 3, 4, 5 }, 1, 3);
+    parcel.setDataPosition(0);
+    assertThat(parcel.createByteArray()).isEqualTo(new byte[] { 2, 3, 4 });
+  }
+
+  @Test
+  public void testMarshallReturnsDataSizeBytes() {
+    parcel.writeInt(1);
+    parcel.writeLong(2);
+    assertThat(parcel.marshall().length).isEqualTo(parcel.dataSize());
+  }
+
+  @Test
+  public void testSetDataSizeTruncatesPosition() {
+    parcel.writeInt(1);
+    parcel.writeInt(2);
+    parcel.setDataSize(4);
+
+    assertThat(parcel.dataSize()).isEqualTo(4);
+    assertThat(parcel.dataPosition()).isEqualTo(4);
+    assertThat(parcel.readInt()).isEqualTo(0);
+  }
+
+  @Test
+  public void testUnrecycledParcelCount() {
+    int before = ShadowParcel.getUnrecycledParcelCount();
+
+    Parcel p = Parcel.obtain();
+    p.writeInt(1);
+    assertThat(ShadowParcel.getUnrecycledParcelCount()).isEqualTo(before + 1);
+
+    p.recycle();
+    assertThat(ShadowParcel.getUnrecycledParcelCount()).isEqualTo(before);
+  }
+
+  @Test
+  public void testObtainAndRecycleFromManyThreads() throws Exception {
+    final int before = ShadowParcel.getUnrecycledParcelCount();
+    List<Thread> threads = new ArrayList<Thread>();
+    final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+    for (int t = 0; t < 4; t++) {
+      threads.add(new Thread() {
+        @Override public void run() {
+          try {
+            for (int i = 0; i < 500; i++) {
+              Parcel p = Parcel.obtain();
+              p.writeString("value" + i);
+              p.setDataPosition(0);
+              assertEquals("value" + i, p.readString());
+              p.recycle();
+            }
+          } catch (Throwable e) {
+            failures.add(e);
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(failures).isEmpty();
+    assertThat(ShadowParcel.getUnrecycledParcelCount()).isEqualTo(before);
+  }
 }
@@ -274,6 +274,30 @@ public class ResourcesTest {
     assertThat(Robolectric.getShadowApplication().getResources().getDrawable(R.drawable.nine_patch_drawable)).isInstanceOf(NinePatchDrawable.class);
   }
 
+  @Test
+  public void getDrawable_shouldReuseCachedConstantState() {
+    Drawable first = resources.getDrawable(R.drawable.an_image);
+    Drawable second = resources.getDrawable(R.drawable.an_image);
+    assertThat(second).isNotSameAs(first);
+    assertThat(second.getConstantState()).isSameAs(first.getConstantState());
+    assertThat(shadowOf(second).getCreatedFromResId()).isEqualTo(R.drawable.an_image);
+
+    assertThat(resources.getDrawable(R.drawable.third_image).getConstantState()).isNotSameAs(first.getConstantState());
+  }
+
+  @Test
+  public void getValue_shouldGiveTheSameFileTheSameAssetCookie() {
+    TypedValue first = new TypedValue();
+    TypedValue second = new TypedValue();
+    TypedValue other = new TypedValue();
+    resources.getValue(R.drawable.an_image, first, true);
+    resources.getValue(R.drawable.an_image, second, true);
+    resources.getValue(R.drawable.third_image, other, true);
+
+    assertThat(second.assetCookie).isEqualTo(first.assetCookie);
+    assertThat(other.assetCookie).isNotEqualTo(first.assetCookie);
+  }
+
   @Test(expected = Resources.NotFoundException.class)
   public void testGetBitmapDrawableForUnknownId() {
     assertThat(resources.getDrawable(Integer.MAX_VALUE)).isInstanceOf(BitmapDrawable.class);
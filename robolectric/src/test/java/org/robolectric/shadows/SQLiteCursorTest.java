@@ -460,6 +460,39 @@ public class SQLiteCursorTest {
     assertThat(cursor.getDouble(4)).isEqualTo(0d);
   }
 
+  @Test
+  public void testPagesThroughResultsLargerThanWindow() throws Exception {
+    char[] padding = new char[1024];
+    java.util.Arrays.fill(padding, 'x');
+    String clob = new String(padding);
+
+    database.beginTransaction();
+    for (int i = 0; i < 4000; i++) {
+      database.execSQL("INSERT INTO table_name (id, name, clob_value) VALUES(?, ?, ?);", new Object[] { 10000 + i, "name" + i, clob });
+    }
+    database.setTransactionSuccessful();
+    database.endTransaction();
+
+    SQLiteCursor cursor = (SQLiteCursor) database.rawQuery("SELECT id, name, clob_value FROM table_name WHERE id >= 10000 ORDER BY id;", null);
+    assertThat(cursor.getCount()).isEqualTo(4000);
+    assertThat(cursor.getWindow().getNumRows()).isLessThan(4000);
+
+    assertThat(cursor.moveToLast()).isTrue();
+    assertThat(cursor.getInt(0)).isEqualTo(13999);
+    assertThat(cursor.getString(1)).isEqualTo("name3999");
+
+    assertThat(cursor.moveToPosition(10)).isTrue();
+    assertThat(cursor.getInt(0)).isEqualTo(10010);
+
+    int expected = 10000;
+    assertThat(cursor.moveToFirst()).isTrue();
+    do {
+      assertThat(cursor.getInt(0)).isEqualTo(expected++);
+    } while (cursor.moveToNext());
+    assertThat(expected).isEqualTo(14000);
+    cursor.close();
+  }
+
   private void addPeople() throws Exception {
     String[] inserts = {
         "INSERT INTO table_name (id, name, long_value, float_value, double_value) VALUES(1234, 'Chuck', 3463, 1.5, 3.14159);",
@@ -5,6 +5,7 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
 import android.os.CancellationSignal;
 
 import org.junit.After;
@@ -875,4 +876,43 @@ public class SQLiteDatabaseTest extends DatabaseTestBase {
         data.moveToFirst();
         assertThat(data.getBlob(0)).isEqualTo(values.getAsString("first_column").getBytes());
     }
+
+    @Test
+    public void shouldRecordStatementStatistics() {
+        ShadowSQLiteConnection.clearStatementStatistics();
+        String sql = "SELECT COUNT(*) FROM rawtable";
+        for (int i = 0; i < 3; i++) {
+            database.compileStatement(sql).simpleQueryForLong();
+        }
+
+        ShadowSQLiteConnection.StatementStatistics stats = null;
+        for (ShadowSQLiteConnection.StatementStatistics candidate : ShadowSQLiteConnection.getStatementStatistics()) {
+            if (candidate.getSql().equals(sql)) {
+                stats = candidate;
+            }
+        }
+        assertThat(stats).isNotNull();
+        assertThat(stats.getExecutionCount()).isEqualTo(3);
+        assertThat(stats.getTotalTimeNanos()).isGreaterThan(0);
+    }
+
+    @Test
+    public void shouldReuseFinalizedStatementsWithFreshBindings() {
+        SQLiteStatement first = database.compileStatement("SELECT COUNT(*) FROM rawtable WHERE first_column = ?");
+        first.bindString(1, "column_value");
+        assertThat(first.simpleQueryForLong()).isEqualTo(1);
+        first.close();
+
+        // push the statement out of the framework's own cache, which finalizes it
+        for (int i = 0; i < 30; i++) {
+            database.compileStatement("SELECT " + i + " FROM rawtable").close();
+        }
+        long hits = ShadowSQLiteConnection.getStatementCacheHits();
+
+        SQLiteStatement second = database.compileStatement("SELECT COUNT(*) FROM rawtable WHERE first_column = ?");
+        second.bindString(1, "no such value");
+        assertThat(second.simpleQueryForLong()).isEqualTo(0);
+        second.close();
+        assertThat(ShadowSQLiteConnection.getStatementCacheHits()).isEqualTo(hits + 1);
+    }
 }
@@ -1,11 +1,16 @@
 package org.robolectric.shadows;
 
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
 import android.text.TextPaint;
+import org.assertj.core.data.Offset;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.TestRunners;
 
 import static junit.framework.Assert.assertEquals;
+import static org.assertj.core.api.Assertions.assertThat;
 
 
 @RunWith(TestRunners.WithDefaults.class)
@@ -16,4 +21,82 @@ public class TextPaintTest {
     TextPaint paint = new TextPaint();
     assertEquals(4f, paint.measureText("1234"));
   }
+
+  @Test
+  public void measureText_withTextMeasurement_shouldUseFontMetrics() throws Exception {
+    ShadowPaint.setTextMeasurementEnabled(true);
+    TextPaint paint = new TextPaint();
+    paint.setTextSize(20);
+
+    float wide = paint.measureText("WWWW");
+    float narrow = paint.measureText("WW");
+    assertThat(narrow).isGreaterThan(0f);
+    assertThat(wide).isGreaterThan(narrow);
+    assertThat(paint.measureText("WWWWWW")).isEqualTo(wide + narrow, Offset.offset(0.01f));
+    assertThat(paint.measureText("xWWWWx", 1, 5)).isEqualTo(wide, Offset.offset(0.01f));
+    assertThat(paint.measureText("xWWWWx".toCharArray(), 1, 4)).isEqualTo(wide, Offset.offset(0.01f));
+
+    paint.setTextSize(40);
+    assertThat(paint.measureText("WWWW")).isGreaterThan(wide);
+  }
+
+  @Test
+  public void getTextWidths_withTextMeasurement_shouldMatchMeasureText() throws Exception {
+    ShadowPaint.setTextMeasurementEnabled(true);
+    TextPaint paint = new TextPaint();
+    paint.setTextSize(16);
+    paint.setTypeface(Typeface.DEFAULT_BOLD);
+
+    float[] widths = new float[5];
+    assertThat(paint.getTextWidths("H\u00e9llo", widths)).isEqualTo(5);
+    float total = 0;
+    for (float width : widths) {
+      assertThat(width).isGreaterThan(0f);
+      total += width;
+    }
+    assertThat(total).isEqualTo(paint.measureText("H\u00e9llo"), Offset.offset(0.01f));
+  }
+
+  @Test
+  public void breakText_withTextMeasurement_shouldStopAtMaxWidth() throws Exception {
+    ShadowPaint.setTextMeasurementEnabled(true);
+    TextPaint paint = new TextPaint();
+    paint.setTextSize(12);
+    float width = paint.measureText("abc");
+
+    float[] measured = new float[1];
+    assertThat(paint.breakText("abcdef", true, width + 0.1f, measured)).isEqualTo(3);
+    assertThat(measured[0]).isEqualTo(width, Offset.offset(0.01f));
+    assertThat(paint.breakText("defabc", false, width + 0.1f, null)).isEqualTo(3);
+    assertThat(paint.breakText("abcdef", true, 0, null)).isEqualTo(0);
+  }
+
+  @Test
+  public void fontMetrics_withTextMeasurement_shouldScaleWithTextSize() throws Exception {
+    ShadowPaint.setTextMeasurementEnabled(true);
+    TextPaint paint = new TextPaint();
+    paint.setTextSize(10);
+    Paint.FontMetrics small = paint.getFontMetrics();
+    paint.setTextSize(30);
+    Paint.FontMetrics large = paint.getFontMetrics();
+
+    assertThat(small.ascent).isLessThan(0f);
+    assertThat(small.descent).isGreaterThan(0f);
+    assertThat(large.ascent).isLessThan(small.ascent);
+    assertThat(large.descent).isGreaterThan(small.descent);
+    assertThat(paint.ascent()).isEqualTo(large.ascent);
+
+    Rect bounds = new Rect();
+    paint.getTextBounds("Hg", 0, 2, bounds);
+    assertThat(bounds.top).isLessThan(0);
+    assertThat(bounds.bottom).isGreaterThan(0);
+    assertThat(bounds.width()).isGreaterThan(0);
+  }
+
+  @Test
+  public void textMeasurement_shouldBeOffAfterReset() throws Exception {
+    ShadowPaint.setTextMeasurementEnabled(true);
+    Feature.resetAll();
+    assertThat(ShadowPaint.isTextMeasurementEnabled()).isFalse();
+  }
 }
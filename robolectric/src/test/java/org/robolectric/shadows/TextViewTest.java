@@ -18,6 +18,7 @@ import android.util.TypedValue;
 import android.view.Gravity;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
+import android.view.View.MeasureSpec;
 import android.view.ViewGroup;
 import android.view.inputmethod.EditorInfo;
 import android.widget.TextView;
@@ -314,6 +315,22 @@ public class TextViewTest {
     assertThat(textView.getPaint().measureText("12345")).isEqualTo(5f);
   }
 
+  @Test
+  public void getLineCount_withTextMeasurement_shouldWrapToWidth() throws Exception {
+    ShadowPaint.setTextMeasurementEnabled(true);
+    textView.setTextSize(TypedValue.COMPLEX_UNIT_PX, 20);
+    textView.setText("the quick brown fox jumps over the lazy dog");
+
+    int width = (int) Math.ceil(textView.getPaint().measureText("the quick brown fox jumps over the lazy dog"));
+    textView.measure(MeasureSpec.makeMeasureSpec(width + 10, MeasureSpec.EXACTLY), MeasureSpec.UNSPECIFIED);
+    assertThat(textView.getLineCount()).isEqualTo(1);
+    int oneLineHeight = textView.getMeasuredHeight();
+
+    textView.measure(MeasureSpec.makeMeasureSpec(width / 3, MeasureSpec.EXACTLY), MeasureSpec.UNSPECIFIED);
+    assertThat(textView.getLineCount()).isGreaterThan(1);
+    assertThat(textView.getMeasuredHeight()).isGreaterThan(oneLineHeight);
+  }
+
   @Test
   public void append_whenSelectionIsAtTheEnd_shouldKeepSelectionAtTheEnd() throws Exception {
     textView.setText("1", TextView.BufferType.EDITABLE);
@@ -5,6 +5,7 @@ import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.drawable.ColorDrawable;
+import android.util.TypedValue;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -56,6 +57,25 @@ public class TypedArrayTest {
     assertThat(typedArray.getInt(0, -1)).isEqualTo(0x33);
   }
 
+  @Test
+  public void getValue_shouldGiveConvertedLiteralsTheLiteralsAssetCookieEveryTime() throws Exception {
+    TypedValue first = new TypedValue();
+    TypedValue second = new TypedValue();
+    TypedValue color = new TypedValue();
+    createTypedArray("android:attr/width", "50%", android.R.attr.width).getValue(0, first);
+    createTypedArray("android:attr/width", "50%", android.R.attr.width).getValue(0, second);
+    createTypedArray("android:attr/textColor", "#ff0000", android.R.attr.textColor).getValue(0, color);
+
+    assertThat(first.assetCookie).isNotEqualTo(0);
+    assertThat(second.assetCookie).isEqualTo(first.assetCookie);
+    assertThat(color.assetCookie).isEqualTo(0);
+  }
+
+  private TypedArray createTypedArray(String attrName, String value, int attrId) {
+    return shadowOf(resources).createTypedArray(
+        asList(new Attribute(attrName, value, TestUtil.SYSTEM_PACKAGE)), new int[]{attrId});
+  }
+
   @Test
   public void getResourceId_shouldReturnDefaultValue() throws Exception {
     assertThat(context.obtainStyledAttributes(new int[]{android.R.attr.alpha}).getResourceId(0, -1)).isEqualTo(-1);
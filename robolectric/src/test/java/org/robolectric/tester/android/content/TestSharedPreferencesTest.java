@@ -5,12 +5,19 @@ import android.content.SharedPreferences;
 import org.assertj.core.api.Assertions;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.Robolectric;
 import org.robolectric.TestRunners;
+import org.robolectric.shadows.ShadowContext;
+import org.robolectric.test.TemporaryFolder;
+import org.robolectric.util.Strings;
 import org.robolectric.util.Transcript;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -33,6 +40,8 @@ public class TestSharedPreferencesTest {
 
   private static final Set<String> stringSet;
 
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   static {
     stringSet = new HashSet<String>();
     stringSet.add( "string1" );
@@ -210,6 +219,123 @@ public class TestSharedPreferencesTest {
     transcript.assertEventsSoFar(testKey+ " called");
   }
 
+  @Test
+  public void commit_withFile_shouldWriteAndroidXmlThatCanBeReadBack() throws Exception {
+    File file = new File(temporaryFolder.newFolder("shared_prefs"), FILENAME + ".xml");
+    TestSharedPreferences persistent = new TestSharedPreferences(content, FILENAME, 3, file);
+    SharedPreferences.Editor persistentEditor = persistent.edit();
+    persistentEditor.putInt("int", 2);
+    persistentEditor.putString("string", "<b>\"fish\" & 'chips'</b>");
+    persistentEditor.putStringSet("stringSet", stringSet);
+    persistentEditor.putFloat("float", 1.1f);
+    assertTrue(persistentEditor.commit());
+
+    String xml = read(file);
+    assertThat(xml).startsWith("<?xml version='1.0' encoding='utf-8' standalone='yes' ?>");
+    assertThat(xml).contains("<int name=\"int\" value=\"2\" />");
+    assertThat(persistent.getDiskWriteCount()).isEqualTo(1);
+
+    TestSharedPreferences reloaded = new TestSharedPreferences(new HashMap<String, Map<String, Object>>(), FILENAME, 3, file);
+    assertThat(reloaded.getInt("int", 666)).isEqualTo(2);
+    assertThat(reloaded.getString("string", null)).isEqualTo("<b>\"fish\" & 'chips'</b>");
+    assertThat(reloaded.getStringSet("stringSet", null)).isEqualTo(stringSet);
+    assertThat(reloaded.getFloat("float", 666f)).isEqualTo(1.1f);
+    assertThat(reloaded.getAll().size()).isEqualTo(4);
+  }
+
+  @Test
+  public void commit_withFile_shouldKeepDoublesAndLeaveOutValuesPreferencesCantHold() throws Exception {
+    File file = new File(temporaryFolder.newFolder("shared_prefs"), FILENAME + ".xml");
+    TestSharedPreferences persistent = new TestSharedPreferences(content, FILENAME, 3, file);
+    content.get(FILENAME).put("double", 2.5d);
+    content.get(FILENAME).put("object", new Object());
+    assertTrue(persistent.edit().putInt("int", 2).commit());
+
+    TestSharedPreferences reloaded = new TestSharedPreferences(new HashMap<String, Map<String, Object>>(), FILENAME, 3, file);
+    Map<String, ?> values = reloaded.getAll();
+    assertThat(values.get("double")).isEqualTo(2.5d);
+    assertThat(values.get("int")).isEqualTo(2);
+    assertThat(values.containsKey("object")).isFalse();
+  }
+
+  @Test
+  public void commit_withFile_shouldKeepControlCharacters() throws Exception {
+    File file = new File(temporaryFolder.newFolder("shared_prefs"), FILENAME + ".xml");
+    TestSharedPreferences persistent = new TestSharedPreferences(content, FILENAME, 3, file);
+    assertTrue(persistent.edit()
+        .putString("control", "a\u0001b\tc\r\nd\u0085")
+        .putString("key\nwith\tbreaks", "value")
+        .putInt("int", 2)
+        .commit());
+
+    assertThat(read(file)).startsWith("<?xml version='1.1'");
+    TestSharedPreferences reloaded = new TestSharedPreferences(new HashMap<String, Map<String, Object>>(), FILENAME, 3, file);
+    assertThat(reloaded.getString("control", null)).isEqualTo("a\u0001b\tc\r\nd\u0085");
+    assertThat(reloaded.getString("key\nwith\tbreaks", null)).isEqualTo("value");
+    assertThat(reloaded.getInt("int", 666)).isEqualTo(2);
+  }
+
+  @Test
+  public void commit_withFile_shouldKeepTheLastFileWhenAValueCantBeWritten() throws Exception {
+    File file = new File(temporaryFolder.newFolder("shared_prefs"), FILENAME + ".xml");
+    TestSharedPreferences persistent = new TestSharedPreferences(content, FILENAME, 3, file);
+    assertTrue(persistent.edit().putInt("int", 2).commit());
+    assertThat(persistent.edit().putString("nul", "\u0000").commit()).isFalse();
+
+    TestSharedPreferences reloaded = new TestSharedPreferences(new HashMap<String, Map<String, Object>>(), FILENAME, 3, file);
+    assertThat(reloaded.getInt("int", 666)).isEqualTo(2);
+  }
+
+  @Test
+  public void apply_withFile_shouldWriteInTheBackground() throws Exception {
+    File file = new File(temporaryFolder.newFolder("shared_prefs"), FILENAME + ".xml");
+    TestSharedPreferences persistent = new TestSharedPreferences(content, FILENAME, 3, file);
+    for (int i = 0; i < 100; i++) {
+      persistent.edit().putInt("counter", i).apply();
+    }
+    assertThat(persistent.getInt("counter", 666)).isEqualTo(99);
+
+    TestSharedPreferences.awaitPendingWrites();
+    assertThat(persistent.getDiskWriteCount()).isBetween(1, 100);
+    TestSharedPreferences reloaded = new TestSharedPreferences(new HashMap<String, Map<String, Object>>(), FILENAME, 3, file);
+    assertThat(reloaded.getInt("counter", 666)).isEqualTo(99);
+
+    int writes = persistent.getDiskWriteCount();
+    persistent.edit().putInt("counter", 100).commit();
+    assertThat(persistent.getDiskWriteCount()).isEqualTo(writes + 1);
+  }
+
+  @Test
+  public void withUnreadableFile_shouldStartEmpty() throws Exception {
+    File file = new File(temporaryFolder.newFolder("shared_prefs"), FILENAME + ".xml");
+    FileOutputStream out = new FileOutputStream(file);
+    out.write("<map><int name=".getBytes("UTF-8"));
+    out.close();
+
+    TestSharedPreferences persistent = new TestSharedPreferences(content, FILENAME, 3, file);
+    assertThat(persistent.getAll()).isEmpty();
+  }
+
+  @Test
+  public void getSharedPreferences_withPersistentSharedPreferences_shouldUseTheSharedPrefsDirectory() throws Exception {
+    ShadowContext.setPersistentSharedPreferencesEnabled(true);
+    SharedPreferences preferences = Robolectric.application.getSharedPreferences("prefs", Context.MODE_PRIVATE);
+    preferences.edit().putBoolean("persisted", true).commit();
+
+    File file = ((TestSharedPreferences) preferences).getFile();
+    assertThat(file).isEqualTo(new File(ShadowContext.SHARED_PREFS_DIR, "prefs.xml"));
+    assertThat(read(file)).contains("<boolean name=\"persisted\" value=\"true\" />");
+  }
+
+  private static String read(File file) throws Exception {
+    FileInputStream in = new FileInputStream(file);
+    try {
+      return Strings.fromStream(in);
+    } finally {
+      in.close();
+    }
+  }
+
   private SharedPreferences.OnSharedPreferenceChangeListener testListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
@@ -1,6 +1,8 @@
 package org.robolectric.tester.org.apache.http;
 
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
@@ -13,6 +15,7 @@ import org.junit.runner.RunWith;
 import org.robolectric.TestRunners;
 
 import java.io.IOException;
+import java.util.regex.Pattern;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertFalse;
@@ -92,4 +95,77 @@ public class FakeHttpLayerTest {
     assertFalse(requestMatcherBuilder.matches(noMatch));
     assertTrue(requestMatcherBuilder.matches(match));
   }
+
+  @Test
+  public void emulateRequest_shouldPreferTheMostRecentlyAddedMatchingRule() throws Exception {
+    FakeHttpLayer fakeHttpLayer = new FakeHttpLayer();
+    TestHttpResponse byMethodAndUri = new TestHttpResponse(200, "method and uri");
+    TestHttpResponse byBuilder = new TestHttpResponse(200, "builder");
+    TestHttpResponse byCustomMatcher = new TestHttpResponse(200, "custom matcher");
+    TestHttpResponse byUri = new TestHttpResponse(200, "uri");
+
+    fakeHttpLayer.addHttpResponseRule("GET", "http://example.com/foo?bar=baz", byMethodAndUri);
+    fakeHttpLayer.addHttpResponseRule(new FakeHttpLayer.RequestMatcherBuilder().host("example.com").path("foo"), byBuilder);
+    assertThat(emulate(fakeHttpLayer, new HttpGet("http://example.com/foo?bar=baz"))).isSameAs(byBuilder);
+    assertThat(emulate(fakeHttpLayer, new HttpPost("http://example.com/foo"))).isSameAs(byBuilder);
+
+    fakeHttpLayer.addHttpResponseRule(new RequestMatcher() {
+      @Override public boolean matches(HttpRequest request) {
+        return Pattern.matches(".*/foo\\?.*", request.getRequestLine().getUri());
+      }
+    }, byCustomMatcher);
+    assertThat(emulate(fakeHttpLayer, new HttpGet("http://example.com/foo?bar=baz"))).isSameAs(byCustomMatcher);
+    assertThat(emulate(fakeHttpLayer, new HttpGet("http://example.com/foo"))).isSameAs(byBuilder);
+
+    fakeHttpLayer.addHttpResponseRule("http://example.com/foo?bar=baz", byUri);
+    assertThat(emulate(fakeHttpLayer, new HttpGet("http://example.com/foo?bar=baz"))).isSameAs(byUri);
+    assertThat(emulate(fakeHttpLayer, new HttpGet("http://other.com/foo?bar=baz"))).isSameAs(byCustomMatcher);
+  }
+
+  @Test
+  public void emulateRequest_shouldMatchBuildersConfiguredAfterTheirRuleWasAdded() throws Exception {
+    FakeHttpLayer fakeHttpLayer = new FakeHttpLayer();
+    TestHttpResponse response = new TestHttpResponse(200, "builder");
+    FakeHttpLayer.RequestMatcherBuilder builder = new FakeHttpLayer.RequestMatcherBuilder();
+    fakeHttpLayer.addHttpResponseRule(builder, response);
+    builder.host("example.com").path("foo");
+
+    assertThat(emulate(fakeHttpLayer, new HttpGet("http://example.com/foo"))).isSameAs(response);
+  }
+
+  @Test
+  public void emulateRequest_shouldServePendingResponsesInOrder() throws Exception {
+    FakeHttpLayer fakeHttpLayer = new FakeHttpLayer();
+    fakeHttpLayer.addPendingHttpResponse(200, "first");
+    fakeHttpLayer.addPendingHttpResponse(200, "second");
+
+    assertThat(EntityUtils.toString(emulate(fakeHttpLayer, new HttpGet("http://example.com")).getEntity())).isEqualTo("first");
+    assertThat(EntityUtils.toString(emulate(fakeHttpLayer, new HttpGet("http://example.com")).getEntity())).isEqualTo("second");
+    assertFalse(fakeHttpLayer.hasPendingResponses());
+  }
+
+  @Test
+  public void setHistoryLimit_shouldOnlyKeepTheMostRecentRequestsAndResponses() throws Exception {
+    FakeHttpLayer fakeHttpLayer = new FakeHttpLayer();
+    fakeHttpLayer.setDefaultHttpResponse(200, "default");
+    fakeHttpLayer.setHistoryLimit(2);
+    HttpGet first = new HttpGet("http://example.com/1");
+    HttpGet second = new HttpGet("http://example.com/2");
+    HttpGet third = new HttpGet("http://example.com/3");
+    emulate(fakeHttpLayer, first);
+    emulate(fakeHttpLayer, second);
+    emulate(fakeHttpLayer, third);
+
+    assertThat(fakeHttpLayer.getSentHttpRequestInfos()).hasSize(2);
+    assertThat(fakeHttpLayer.getHttpResponses()).hasSize(2);
+    assertThat(fakeHttpLayer.getNextSentHttpRequestInfo().getHttpRequest()).isSameAs(second);
+
+    fakeHttpLayer.setHistoryLimit(0);
+    assertFalse(fakeHttpLayer.hasRequestInfos());
+    assertThat(fakeHttpLayer.getLastHttpResponse()).isNull();
+  }
+
+  private static HttpResponse emulate(FakeHttpLayer fakeHttpLayer, HttpRequest request) throws Exception {
+    return fakeHttpLayer.emulateRequest(null, request, null, null);
+  }
 }
@@ -0,0 +1,77 @@
+package org.robolectric.tester.org.apache.http;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.util.EntityUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.TestRunners;
+import org.robolectric.test.TemporaryFolder;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(TestRunners.WithDefaults.class)
+public class HttpFixtureArchiveTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void shouldReplayRecordedResponsesByNormalizedRequest() throws Exception {
+    File file = temporaryFolder.newFile("fixtures.rhf");
+    HttpFixtureArchive.Writer writer = new HttpFixtureArchive.Writer(file);
+    writer.add("GET", "http://Example.com:80/items?b=2&a=1", 200,
+        new Header[] {new BasicHeader("Content-Type", "application/json")}, "[1, 2]".getBytes("UTF-8"));
+    writer.add("POST", "http://example.com/items", 201, new Header[0], "created".getBytes("UTF-8"));
+    writer.add("POST", "http://example.com/items", 409, new Header[0], "conflict".getBytes("UTF-8"));
+    writer.close();
+
+    HttpFixtureArchive archive = HttpFixtureArchive.load(file);
+    assertThat(archive.size()).isEqualTo(2);
+
+    FakeHttpLayer fakeHttpLayer = new FakeHttpLayer();
+    fakeHttpLayer.addHttpFixtures(archive);
+
+    HttpResponse response = fakeHttpLayer.emulateRequest(null, new HttpGet("http://example.com/items?a=1&b=2"), null, null);
+    assertThat(response.getStatusLine().getStatusCode()).isEqualTo(200);
+    assertThat(response.getFirstHeader("Content-Type").getValue()).isEqualTo("application/json");
+    assertThat(EntityUtils.toString(response.getEntity())).isEqualTo("[1, 2]");
+    assertThat(EntityUtils.toString(response.getEntity())).isEqualTo("[1, 2]");
+
+    assertThat(fakeHttpLayer.emulateRequest(null, new HttpPost("http://example.com/items"), null, null).getStatusLine().getStatusCode()).isEqualTo(201);
+    assertThat(fakeHttpLayer.emulateRequest(null, new HttpPost("http://example.com/items"), null, null).getStatusLine().getStatusCode()).isEqualTo(409);
+    assertThat(fakeHttpLayer.emulateRequest(null, new HttpPost("http://example.com/items"), null, null).getStatusLine().getStatusCode()).isEqualTo(409);
+  }
+
+  @Test
+  public void shouldShareLoadedArchivesUntilTheFileChanges() throws Exception {
+    File file = temporaryFolder.newFile("fixtures.rhf");
+    HttpFixtureArchive.Writer writer = new HttpFixtureArchive.Writer(file);
+    writer.add("GET", "http://example.com/", 200, new Header[0], new byte[0]);
+    writer.close();
+
+    HttpFixtureArchive archive = HttpFixtureArchive.load(file);
+    assertThat(HttpFixtureArchive.load(file)).isSameAs(archive);
+
+    writer = new HttpFixtureArchive.Writer(file);
+    writer.add("GET", "http://example.com/", 200, new Header[0], new byte[0]);
+    writer.add("GET", "http://example.com/other", 200, new Header[0], new byte[0]);
+    writer.close();
+
+    HttpFixtureArchive reloaded = HttpFixtureArchive.load(file);
+    assertThat(reloaded).isNotSameAs(archive);
+    assertThat(reloaded.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void normalize_shouldIgnoreCaseOfSchemeAndHostDefaultPortsAndParameterOrder() throws Exception {
+    assertThat(HttpFixtureArchive.normalize("get", "HTTPS://Example.COM:443?z=1&a=2"))
+        .isEqualTo(HttpFixtureArchive.normalize("GET", "https://example.com/?a=2&z=1"));
+    assertThat(HttpFixtureArchive.normalize("GET", "http://example.com:8080/"))
+        .isNotEqualTo(HttpFixtureArchive.normalize("GET", "http://example.com/"));
+  }
+}
@@ -125,6 +125,17 @@ public class SchedulerTest {
     assertThat(runnable.wasRun).isFalse();
   }
 
+  @Test
+  public void isQueuedShouldTellWhetherTheRunnableIsStillWaitingToRun() throws Exception {
+    TestRunnable runnable = new TestRunnable();
+    scheduler.postDelayed(runnable, 10);
+    assertThat(scheduler.isQueued(runnable)).isTrue();
+    assertThat(scheduler.isQueued(new TestRunnable())).isFalse();
+
+    scheduler.reset();
+    assertThat(scheduler.isQueued(runnable)).isFalse();
+  }
+
   @Test
   public void resetShouldUnPause() throws Exception {
     scheduler.pause();